@@ -24,6 +24,10 @@ package weka.associations;
 
 import java.util.Enumeration;
 import java.util.Hashtable;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import weka.core.AttributeStats;
 import weka.core.Capabilities;
@@ -32,6 +36,8 @@ import weka.core.FastVector;
 import weka.core.Instances;
 import weka.core.Option;
 import weka.core.OptionHandler;
+import weka.core.ParallelRanges;
+import weka.core.RangeTask;
 import weka.core.RevisionUtils;
 import weka.core.SelectedTag;
 import weka.core.Tag;
@@ -151,6 +157,18 @@ import weka.filters.unsupervised.attribute.Remove;
  *  The class index. (default = last)
  * </pre>
  * 
+ * <pre>
+ * -num-slots &lt;num&gt;
+ *  Number of execution slots for counting the support of
+ *  the item sets. (default 1 - i.e. no parallelism)
+ * </pre>
+ * 
+ * <pre>
+ * -tid-lists
+ *  If set the support is counted with TID lists (bitsets),
+ *  which is faster on dense data. (default = no)
+ * </pre>
+ * 
  * <!-- options-end -->
  * 
  * @author Eibe Frank (eibe@cs.waikato.ac.nz)
@@ -237,6 +255,18 @@ public class Apriori extends AbstractAssociator implements OptionHandler,
   /** Flag indicating whether class association rules are mined. */
   protected boolean m_car;
 
+  /** The number of threads to use for counting the support of item sets */
+  protected int m_executionSlots = 1;
+
+  /** Flag indicating whether support is counted with TID lists. */
+  protected boolean m_useTIDLists;
+
+  /** For parallel execution mode */
+  protected transient ThreadPoolExecutor m_executorPool;
+
+  /** The TID lists of the instances, if used for counting. */
+  protected transient TIDLists m_tidLists;
+
   /**
    * Returns a string describing this associator
    * 
@@ -314,6 +344,8 @@ public class Apriori extends AbstractAssociator implements OptionHandler,
     m_outputItemSets = false;
     m_car = false;
     m_classIndex = -1;
+    m_executionSlots = 1;
+    m_useTIDLists = false;
   }
 
   /**
@@ -406,11 +438,6 @@ public class Apriori extends AbstractAssociator implements OptionHandler,
    */
   public void buildAssociations(Instances instances) throws Exception {
 
-    double[] confidences, supports;
-    int[] indices;
-    FastVector[] sortedRuleSet;
-    int necSupport = 0;
-
     instances = new Instances(instances);
 
     if (m_removeMissingCols) {
@@ -459,6 +486,39 @@ public class Apriori extends AbstractAssociator implements OptionHandler,
           : m_minSupport;
     }
 
+    if (m_useTIDLists) {
+      m_tidLists = new TIDLists(m_instances, m_car ? m_onlyClass : null);
+    }
+    if (m_executionSlots > 1) {
+      m_executorPool = new ThreadPoolExecutor(m_executionSlots,
+          m_executionSlots, 120, TimeUnit.SECONDS,
+          new LinkedBlockingQueue<Runnable>());
+    }
+    try {
+      findRules(lowerBoundMinSupportToUse);
+    } finally {
+      if (m_executorPool != null) {
+        m_executorPool.shutdown();
+        m_executorPool = null;
+      }
+      m_tidLists = null;
+    }
+  }
+
+  /**
+   * Iteratively reduces the minimum support until the required number of
+   * rules is found.
+   * 
+   * @param lowerBoundMinSupportToUse the lower bound for the minimum support
+   * @throws Exception if rules can't be built successfully
+   */
+  private void findRules(double lowerBoundMinSupportToUse) throws Exception {
+
+    double[] confidences, supports;
+    int[] indices;
+    FastVector[] sortedRuleSet;
+    int necSupport = 0;
+
     do {
 
       // Reserve space for variables
@@ -667,7 +727,7 @@ public class Apriori extends AbstractAssociator implements OptionHandler,
         + m_lowerBoundMinSupport + ")", string6 = "\tIf used, rules are tested for significance at\n", string7 = "\tthe given level. Slower. (default = no significance testing)", string8 = "\tIf set the itemsets found are also output. (default = no)", string9 = "\tIf set class association rules are mined. (default = no)", string10 = "\tThe class index. (default = last)", stringType = "\tThe metric type by which to rank rules. (default = "
         + "confidence)";
 
-    FastVector newVector = new FastVector(11);
+    FastVector newVector = new FastVector(14);
 
     newVector.addElement(new Option(string1, "N", 1,
         "-N <required number of rules output>"));
@@ -690,6 +750,13 @@ public class Apriori extends AbstractAssociator implements OptionHandler,
         + "= no)", "V", 0, "-V"));
     newVector.addElement(new Option(string9, "A", 0, "-A"));
     newVector.addElement(new Option(string10, "c", 1, "-c <the class index>"));
+    newVector.addElement(new Option("\tNumber of execution slots for "
+        + "counting the support of\n\tthe item sets. "
+        + "(default 1 - i.e. no parallelism)", "num-slots", 1,
+        "-num-slots <num>"));
+    newVector.addElement(new Option("\tIf set the support is counted with "
+        + "TID lists (bitsets),\n\twhich is faster on dense data. "
+        + "(default = no)", "tid-lists", 0, "-tid-lists"));
 
     return newVector.elements();
   }
@@ -763,6 +830,18 @@ public class Apriori extends AbstractAssociator implements OptionHandler,
    *  The class index. (default = last)
    * </pre>
    * 
+   * <pre>
+   * -num-slots &lt;num&gt;
+   *  Number of execution slots for counting the support of
+   *  the item sets. (default 1 - i.e. no parallelism)
+   * </pre>
+   * 
+   * <pre>
+   * -tid-lists
+   *  If set the support is counted with TID lists (bitsets),
+   *  which is faster on dense data. (default = no)
+   * </pre>
+   * 
    * <!-- options-end -->
    * 
    * @param options the list of options as an array of strings
@@ -777,6 +856,7 @@ public class Apriori extends AbstractAssociator implements OptionHandler,
         options), significanceLevelString = Utils.getOption('S', options), classIndexString = Utils
         .getOption('c', options);
     String metricTypeString = Utils.getOption('T', options);
+    String numSlotsString = Utils.getOption("num-slots", options);
     if (metricTypeString.length() != 0) {
       setMetricType(new SelectedTag(Integer.parseInt(metricTypeString),
           TAGS_SELECTION));
@@ -813,6 +893,10 @@ public class Apriori extends AbstractAssociator implements OptionHandler,
     m_car = Utils.getFlag('A', options);
     m_verbose = Utils.getFlag('V', options);
     setRemoveAllMissingCols(Utils.getFlag('R', options));
+    if (numSlotsString.length() != 0) {
+      setNumExecutionSlots(Integer.parseInt(numSlotsString));
+    }
+    m_useTIDLists = Utils.getFlag("tid-lists", options);
   }
 
   /**
@@ -822,7 +906,7 @@ public class Apriori extends AbstractAssociator implements OptionHandler,
    */
   public String[] getOptions() {
 
-    String[] options = new String[20];
+    String[] options = new String[23];
     int current = 0;
 
     if (m_outputItemSets) {
@@ -853,6 +937,12 @@ public class Apriori extends AbstractAssociator implements OptionHandler,
       options[current++] = "-V";
     options[current++] = "-c";
     options[current++] = "" + m_classIndex;
+    if (m_executionSlots > 1) {
+      options[current++] = "-num-slots";
+      options[current++] = "" + m_executionSlots;
+    }
+    if (m_useTIDLists)
+      options[current++] = "-tid-lists";
 
     while (current < options.length) {
       options[current++] = "";
@@ -1382,6 +1472,130 @@ public class Apriori extends AbstractAssociator implements OptionHandler,
     return "If enabled the algorithm will be run in verbose mode.";
   }
 
+  /**
+   * Returns the tip text for this property
+   * 
+   * @return tip text for this property suitable for displaying in the
+   *         explorer/experimenter gui
+   */
+  public String numExecutionSlotsTipText() {
+    return "The number of execution slots (threads) to use for "
+        + "counting the support of the item sets.";
+  }
+
+  /**
+   * Sets the number of execution slots (threads) to use for counting the
+   * support of the item sets.
+   * 
+   * @param slots the number of slots to use
+   * @throws Exception if the number of slots is smaller than 1
+   */
+  public void setNumExecutionSlots(int slots) throws Exception {
+    if (slots <= 0) {
+      throw new Exception("Number of execution slots must be > 0");
+    }
+    m_executionSlots = slots;
+  }
+
+  /**
+   * Gets the number of execution slots (threads) to use for counting the
+   * support of the item sets.
+   * 
+   * @return the number of slots to use
+   */
+  public int getNumExecutionSlots() {
+    return m_executionSlots;
+  }
+
+  /**
+   * Returns the tip text for this property
+   * 
+   * @return tip text for this property suitable for displaying in the
+   *         explorer/experimenter gui
+   */
+  public String useTIDListsTipText() {
+    return "If enabled the support of the item sets is counted by "
+        + "intersecting bitsets of the transactions containing each item "
+        + "(TID lists), which is faster on dense data but needs one bit "
+        + "per transaction and attribute value.";
+  }
+
+  /**
+   * Sets whether the support is counted with TID lists
+   * 
+   * @param flag true if TID lists are to be used
+   */
+  public void setUseTIDLists(boolean flag) {
+    m_useTIDLists = flag;
+  }
+
+  /**
+   * Gets whether the support is counted with TID lists
+   * 
+   * @return true if TID lists are used
+   */
+  public boolean getUseTIDLists() {
+    return m_useTIDLists;
+  }
+
+  /**
+   * Updates the counters of a set of item sets with respect to the
+   * instances. With TID lists, the item sets are split up between the
+   * threads. Otherwise the instances are split up between the threads, each
+   * of which matches its instances against a hash tree of the item sets and
+   * counts into its own arrays, which are summed up afterwards.
+   * 
+   * @param itemSets the item sets to update, LabeledItemSets if class
+   *          association rules are mined
+   * @throws Exception if the counting fails
+   */
+  private void upDateCounters(final FastVector itemSets) throws Exception {
+
+    final int numItemSets = itemSets.size();
+    final Instances classes = m_car ? m_onlyClass : null;
+    final int[] counts = new int[numItemSets];
+    final int[] ruleCounts = m_car ? new int[numItemSets] : null;
+
+    if (m_tidLists != null) {
+      ParallelRanges.processRanges(m_executorPool, m_executionSlots,
+          numItemSets, new RangeTask<Object>() {
+        public Object process(int from, int to) {
+          m_tidLists.count(itemSets, from, to, counts, ruleCounts);
+          return null;
+        }
+      });
+    } else {
+      final ItemSetHashTree tree = new ItemSetHashTree(itemSets);
+      List<int[][]> results = ParallelRanges.processRanges(m_executorPool,
+          m_executionSlots, m_instances.numInstances(),
+          new RangeTask<int[][]>() {
+            public int[][] process(int from, int to) {
+              int[][] result = new int[2][];
+              result[0] = new int[numItemSets];
+              result[1] = m_car ? new int[numItemSets] : null;
+              tree.count(m_instances, classes, from, to, result[0], result[1]);
+              return result;
+            }
+          });
+      for (int[][] result : results) {
+        for (int i = 0; i < numItemSets; i++) {
+          counts[i] += result[0][i];
+          if (m_car) {
+            ruleCounts[i] += result[1][i];
+          }
+        }
+      }
+    }
+
+    for (int i = 0; i < numItemSets; i++) {
+      ItemSet current = (ItemSet) itemSets.elementAt(i);
+      current.m_counter += counts[i];
+      if (m_car) {
+        ((LabeledItemSet) current).m_ruleSupCounter += ruleCounts[i];
+      }
+    }
+  }
+
   /**
    * Method that finds all large itemsets for the given set of instances.
    * 
@@ -1400,7 +1614,7 @@ public class Apriori extends AbstractAssociator implements OptionHandler,
     necMaxSupport = (int) (m_upperBoundMinSupport * m_instances.numInstances() + 0.5);
 
     kSets = AprioriItemSet.singletons(m_instances);
-    AprioriItemSet.upDateCounters(kSets, m_instances);
+    upDateCounters(kSets);
     kSets = AprioriItemSet.deleteItemSets(kSets, necSupport,
         m_instances.numInstances());
     if (kSets.size() == 0)
@@ -1414,7 +1628,7 @@ public class Apriori extends AbstractAssociator implements OptionHandler,
           kMinusOneSets.size());
       m_hashtables.addElement(hashtable);
       kSets = AprioriItemSet.pruneItemSets(kSets, hashtable);
-      AprioriItemSet.upDateCounters(kSets, m_instances);
+      upDateCounters(kSets);
       kSets = AprioriItemSet.deleteItemSets(kSets, necSupport,
           m_instances.numInstances());
       i++;
@@ -1514,7 +1728,7 @@ public class Apriori extends AbstractAssociator implements OptionHandler,
 
     // find item sets of length one
     kSets = LabeledItemSet.singletons(m_instances, m_onlyClass);
-    LabeledItemSet.upDateCounters(kSets, m_instances, m_onlyClass);
+    upDateCounters(kSets);
 
     // check if a item set of lentgh one is frequent, if not delete it
     kSets = LabeledItemSet.deleteItemSets(kSets, necSupport,
@@ -1529,7 +1743,7 @@ public class Apriori extends AbstractAssociator implements OptionHandler,
       hashtable = LabeledItemSet.getHashtable(kMinusOneSets,
           kMinusOneSets.size());
       kSets = LabeledItemSet.pruneItemSets(kSets, hashtable);
-      LabeledItemSet.upDateCounters(kSets, m_instances, m_onlyClass);
+      upDateCounters(kSets);
       kSets = LabeledItemSet.deleteItemSets(kSets, necSupport,
           m_instances.numInstances());
       i++;
@@ -24,6 +24,7 @@ package weka.associations;
 
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
@@ -52,6 +53,8 @@ import weka.core.Utils;
 import weka.core.Capabilities.Capability;
 import weka.core.TechnicalInformation.Field;
 import weka.core.TechnicalInformation.Type;
+import weka.core.converters.IncrementalConverter;
+import weka.core.converters.Loader;
 
 /**
  <!-- globalinfo-start -->
@@ -957,6 +960,226 @@ public class FPGrowth extends AbstractAssociator
     }
   }
   
+  /**
+   * A compact FP-tree that stores its nodes in parallel int arrays instead
+   * of as linked objects. Items are identified by int ids that give their
+   * position in the descending order of frequency, so the items on a path
+   * from the root always have increasing ids. Node 0 is the root, and
+   * the nodes of each item are chained via node links starting at the 
+   * header table.
+   */
+  protected static class CompactFPTree implements Serializable {
+    
+    /** For serialization */
+    private static final long serialVersionUID = -2407926461356291773L;
+    
+    /** Marks a missing node link */
+    protected static final int NONE = -1;
+    
+    /** The number of item ids */
+    protected int m_numItems;
+    
+    /** The number of nodes, including the root */
+    protected int m_numNodes;
+    
+    /** The item of each node */
+    protected int[] m_item;
+    
+    /** The count of each node */
+    protected int[] m_count;
+    
+    /** The parent of each node */
+    protected int[] m_parent;
+    
+    /** The first child of each node */
+    protected int[] m_firstChild;
+    
+    /** The next sibling of each node */
+    protected int[] m_nextSibling;
+    
+    /** The next node holding the same item */
+    protected int[] m_nodeLink;
+    
+    /** The first node of each item */
+    protected int[] m_headerNode;
+    
+    /** The total count of each item */
+    protected int[] m_headerCount;
+    
+    /**
+     * Construct a new tree that only consists of the root.
+     * 
+     * @param numItems the number of item ids.
+     * @param capacity the number of nodes to allocate space for initially.
+     */
+    public CompactFPTree(int numItems, int capacity) {
+      m_numItems = numItems;
+      capacity = Math.max(capacity, 16);
+      m_item = new int[capacity];
+      m_count = new int[capacity];
+      m_parent = new int[capacity];
+      m_firstChild = new int[capacity];
+      m_nextSibling = new int[capacity];
+      m_nodeLink = new int[capacity];
+      m_headerNode = new int[numItems];
+      m_headerCount = new int[numItems];
+      Arrays.fill(m_headerNode, NONE);
+      
+      m_item[0] = NONE;
+      m_parent[0] = NONE;
+      m_firstChild[0] = NONE;
+      m_nextSibling[0] = NONE;
+      m_nodeLink[0] = NONE;
+      m_numNodes = 1;
+    }
+    
+    /**
+     * Copy an array into a larger one.
+     * 
+     * @param array the array to copy.
+     * @param length the length of the new array.
+     * @return the new array.
+     */
+    protected static int[] grow(int[] array, int length) {
+      int[] result = new int[length];
+      System.arraycopy(array, 0, result, 0, array.length);
+      return result;
+    }
+    
+    /**
+     * Make sure that there is space for another node.
+     */
+    protected void ensureCapacity() {
+      if (m_numNodes == m_item.length) {
+        int length = m_item.length + (m_item.length >> 1);
+        m_item = grow(m_item, length);
+        m_count = grow(m_count, length);
+        m_parent = grow(m_parent, length);
+        m_firstChild = grow(m_firstChild, length);
+        m_nextSibling = grow(m_nextSibling, length);
+        m_nodeLink = grow(m_nodeLink, length);
+      }
+    }
+    
+    /**
+     * Insert an item set into the tree.
+     * 
+     * @param items holds the ids of the items in ascending order.
+     * @param length the number of items.
+     * @param incr the amount by which to increase counts.
+     */
+    public void addItemSet(int[] items, int length, int incr) {
+      int node = 0;
+      for (int i = 0; i < length; i++) {
+        int item = items[i];
+        
+        // look for the child holding the item
+        int child = m_firstChild[node];
+        while (child != NONE && m_item[child] != item) {
+          child = m_nextSibling[child];
+        }
+        
+        if (child == NONE) {
+          // not in the tree, so add it
+          ensureCapacity();
+          child = m_numNodes++;
+          m_item[child] = item;
+          m_count[child] = 0;
+          m_parent[child] = node;
+          m_firstChild[child] = NONE;
+          m_nextSibling[child] = m_firstChild[node];
+          m_firstChild[node] = child;
+          m_nodeLink[child] = m_headerNode[item];
+          m_headerNode[item] = child;
+        }
+        
+        m_count[child] += incr;
+        m_headerCount[item] += incr;
+        node = child;
+      }
+    }
+    
+    /**
+     * Get the number of item ids.
+     * 
+     * @return the number of item ids.
+     */
+    public int getNumItems() {
+      return m_numItems;
+    }
+    
+    /**
+     * Get the number of nodes, including the root.
+     * 
+     * @return the number of nodes.
+     */
+    public int getNumNodes() {
+      return m_numNodes;
+    }
+    
+    /**
+     * Get the total count of an item.
+     * 
+     * @param item the id of the item.
+     * @return the total count of the item.
+     */
+    public int getSupport(int item) {
+      return m_headerCount[item];
+    }
+    
+    /**
+     * Returns true if the tree only consists of the root.
+     * 
+     * @return true if the tree is empty.
+     */
+    public boolean isEmpty() {
+      return m_numNodes == 1;
+    }
+    
+    /**
+     * Build the conditional tree of an item, i.e., the tree of the prefix 
+     * paths of its nodes, restricted to the items that are frequent in 
+     * these paths.
+     * 
+     * @param item the id of the item.
+     * @param minSupport the minimum support.
+     * @return the conditional tree, whose item ids are those of this tree.
+     */
+    public CompactFPTree conditionalTree(int item, int minSupport) {
+      
+      // only items with smaller ids occur on the prefix paths
+      int[] counts = new int[item];
+      int numPaths = 0;
+      for (int n = m_headerNode[item]; n != NONE; n = m_nodeLink[n]) {
+        for (int p = m_parent[n]; p != 0; p = m_parent[p]) {
+          counts[m_item[p]] += m_count[n];
+        }
+        numPaths++;
+      }
+      
+      CompactFPTree result = new CompactFPTree(item, numPaths);
+      int[] path = new int[item];
+      for (int n = m_headerNode[item]; n != NONE; n = m_nodeLink[n]) {
+        int length = 0;
+        for (int p = m_parent[n]; p != 0; p = m_parent[p]) {
+          if (counts[m_item[p]] >= minSupport) {
+            path[length++] = m_item[p];
+          }
+        }
+        
+        // the path was collected bottom up
+        for (int i = 0, j = length - 1; i < j; i++, j--) {
+          int temp = path[i];
+          path[i] = path[j];
+          path[j] = temp;
+        }
+        result.addItemSet(path, length, m_count[n]);
+      }
+      
+      return result;
+    }
+  }
+  
   /**
    * Class for storing and manipulating an association rule. Also has a utility
    * routine for generating (by brute force) all the association rules that meet
@@ -1591,25 +1814,37 @@ public class FPGrowth extends AbstractAssociator
     }
     
     for (int i = 0; i < data.numInstances(); i++) {
-      Instance current = data.instance(i);
-      if (current instanceof SparseInstance) {
-        for (int j = 0; j < current.numValues(); j++) {
-          int attIndex = current.index(j);
-          singletons.get(attIndex).increaseFrequency();
-        }
-      } else {
-        for (int j = 0; j < data.numAttributes(); j++) {
-          if (!current.isMissing(j)) {
-            if (current.attribute(j).numValues() == 1 
-                || current.value(j) == m_positiveIndex - 1) {
-              singletons.get(j).increaseFrequency();
-            }
+      updateSingletons(singletons, data.instance(i));
+    }
+    
+    return singletons;
+  }
+  
+  /**
+   * Increase the frequencies of the singleton items contained in a 
+   * transaction.
+   * 
+   * @param singletons the singleton item sets
+   * @param current the transaction
+   */
+  protected void updateSingletons(ArrayList<BinaryItem> singletons, 
+      Instance current) {
+    
+    if (current instanceof SparseInstance) {
+      for (int j = 0; j < current.numValues(); j++) {
+        int attIndex = current.index(j);
+        singletons.get(attIndex).increaseFrequency();
+      }
+    } else {
+      for (int j = 0; j < current.numAttributes(); j++) {
+        if (!current.isMissing(j)) {
+          if (current.attribute(j).numValues() == 1 
+              || current.value(j) == m_positiveIndex - 1) {
+            singletons.get(j).increaseFrequency();
           }
         }
       }
     }
-    
-    return singletons;
   }
   
   /*protected ArrayList<BinaryItem> getFrequent(ArrayList<BinaryItem> items, int minSupport) {
@@ -1754,6 +1989,213 @@ public class FPGrowth extends AbstractAssociator
     }
   }
   
+  /**
+   * Get the singleton items that meet the minimum support, sorted in 
+   * descending order of support. The position of an item in the returned 
+   * array is its id in a compact FP-tree.
+   * 
+   * @param singletons the singleton item sets
+   * @param minSupport the minimum support
+   * @return the frequent singleton items
+   */
+  protected BinaryItem[] getFrequentItems(ArrayList<BinaryItem> singletons, 
+      int minSupport) {
+    
+    ArrayList<BinaryItem> frequent = new ArrayList<BinaryItem>();
+    for (BinaryItem b : singletons) {
+      if (b.getFrequency() >= minSupport) {
+        frequent.add(b);
+      }
+    }
+    Collections.sort(frequent);
+    
+    return frequent.toArray(new BinaryItem[frequent.size()]);
+  }
+  
+  /**
+   * Map the attributes to the ids of their items in a compact FP-tree.
+   * 
+   * @param items the frequent items, as returned by getFrequentItems()
+   * @param numAttributes the number of attributes in the data
+   * @return the item id of each attribute, -1 if the attribute's item is
+   * not frequent
+   */
+  protected int[] getItemIDs(BinaryItem[] items, int numAttributes) {
+    int[] result = new int[numAttributes];
+    Arrays.fill(result, -1);
+    for (int i = 0; i < items.length; i++) {
+      result[items[i].getAttribute().index()] = i;
+    }
+    
+    return result;
+  }
+  
+  /**
+   * Get the ids of the frequent items contained in a transaction, in 
+   * ascending order.
+   * 
+   * @param current the transaction
+   * @param itemIDs the item id of each attribute
+   * @param transaction receives the item ids
+   * @return the number of item ids
+   */
+  protected int getTransaction(Instance current, int[] itemIDs, 
+      int[] transaction) {
+    
+    int length = 0;
+    if (current instanceof SparseInstance) {
+      for (int j = 0; j < current.numValues(); j++) {
+        int id = itemIDs[current.index(j)];
+        if (id >= 0) {
+          transaction[length++] = id;
+        }
+      }
+    } else {
+      for (int j = 0; j < current.numAttributes(); j++) {
+        if (itemIDs[j] >= 0 && !current.isMissing(j)) {
+          if (current.attribute(j).numValues() == 1 
+              || current.value(j) == m_positiveIndex - 1) {
+            transaction[length++] = itemIDs[j];
+          }
+        }
+      }
+    }
+    Arrays.sort(transaction, 0, length);
+    
+    return length;
+  }
+  
+  /**
+   * Construct a compact frequent pattern tree by inserting each transaction
+   * in the data into the tree. Only the frequent items of each transaction
+   * are inserted.
+   * 
+   * @param items the frequent items, as returned by getFrequentItems()
+   * @param data the Instances containing the transactions
+   * @return the tree
+   */
+  protected CompactFPTree buildCompactFPTree(BinaryItem[] items, 
+      Instances data) {
+    
+    CompactFPTree tree = new CompactFPTree(items.length, 1024);
+    int[] itemIDs = getItemIDs(items, data.numAttributes());
+    int[] transaction = new int[items.length];
+    
+    for (int i = 0; i < data.numInstances(); i++) {
+      int length = getTransaction(data.instance(i), itemIDs, transaction);
+      tree.addItemSet(transaction, length, 1);
+    }
+    
+    return tree;
+  }
+  
+  /**
+   * Construct a compact frequent pattern tree from the transactions read 
+   * incrementally from a loader, which gets reset first. Only the frequent 
+   * items of each transaction are inserted.
+   * 
+   * @param items the frequent items, as returned by getFrequentItems()
+   * @param loader the loader to read the transactions from
+   * @param transactionsMustContainIndexes the attributes that transactions
+   * must contain, null for all transactions
+   * @param numInTransactionsMustContainList the number of attributes
+   * that transactions must contain
+   * @return the tree
+   * @throws Exception if the transactions can't be read
+   */
+  protected CompactFPTree buildCompactFPTree(BinaryItem[] items, 
+      Loader loader, boolean[] transactionsMustContainIndexes,
+      int numInTransactionsMustContainList) throws Exception {
+    
+    loader.reset();
+    Instances structure = loader.getStructure();
+    CompactFPTree tree = new CompactFPTree(items.length, 1024);
+    int[] itemIDs = getItemIDs(items, structure.numAttributes());
+    int[] transaction = new int[items.length];
+    
+    Instance current;
+    while ((current = nextTransaction(loader, structure, 
+        transactionsMustContainIndexes, 
+        numInTransactionsMustContainList)) != null) {
+      int length = getTransaction(current, itemIDs, transaction);
+      tree.addItemSet(transaction, length, 1);
+    }
+    
+    return tree;
+  }
+  
+  /**
+   * Read the next transaction from a loader, skipping those that don't 
+   * contain the requested items (if any).
+   * 
+   * @param loader the loader to read the transactions from
+   * @param structure the structure of the data
+   * @param transactionsMustContainIndexes the attributes that transactions
+   * must contain, null for all transactions
+   * @param numInTransactionsMustContainList the number of attributes
+   * that transactions must contain
+   * @return the next transaction, null if there are no more
+   * @throws Exception if the transaction can't be read
+   */
+  private Instance nextTransaction(Loader loader, Instances structure,
+      boolean[] transactionsMustContainIndexes, 
+      int numInTransactionsMustContainList) throws Exception {
+    
+    Instance current;
+    while ((current = loader.getNextInstance(structure)) != null) {
+      if (transactionsMustContainIndexes == null 
+          || passesMustContain(current, transactionsMustContainIndexes, 
+              numInTransactionsMustContainList)) {
+        break;
+      }
+    }
+    
+    return current;
+  }
+  
+  /**
+   * Find large item sets in a compact FP-tree by recursively mining the
+   * conditional tree of each frequent item.
+   * 
+   * @param tree the tree to mine
+   * @param items the items that the ids in the tree refer to
+   * @param largeItemSets holds the large item sets found
+   * @param conditionalItems the current set of items that the tree is
+   * conditional on
+   * @param minSupport the minimum acceptable support
+   */
+  protected void mineTree(CompactFPTree tree, BinaryItem[] items, 
+      FrequentItemSets largeItemSets, FrequentBinaryItemSet conditionalItems, 
+      int minSupport) {
+    
+    if (m_maxItems > 0 && conditionalItems.numberOfItems() >= m_maxItems) {
+      // don't mine any further
+      return;
+    }
+    
+    for (int i = tree.getNumItems() - 1; i >= 0; i--) {
+      int support = tree.getSupport(i);
+      if (support >= minSupport) {
+        FrequentBinaryItemSet newConditional = 
+          (FrequentBinaryItemSet) conditionalItems.clone();
+        
+        // this item gets added to the conditional items
+        newConditional.addItem(items[i]);
+        newConditional.setSupport(support);
+        
+        // now add this conditional item set to the list of large item sets
+        largeItemSets.addItemSet(newConditional);
+        
+        // now recursively process the conditional tree
+        CompactFPTree conditionalTree = tree.conditionalTree(i, minSupport);
+        if (!conditionalTree.isEmpty()) {
+          mineTree(conditionalTree, items, largeItemSets, newConditional, 
+              minSupport);
+        }
+      }
+    }
+  }
+  
   /**
    * Construct a new FPGrowth object.
    */
@@ -2398,9 +2840,9 @@ public class FPGrowth extends AbstractAssociator
     return options.toArray(new String[1]);
   }
   
-  private Instances parseTransactionsMustContain(Instances data) {
+  private int parseTransactionsMustContain(Instances data, 
+      boolean[] transactionsMustContainIndexes) {
     String[] split = m_transactionsMustContain.trim().split(",");
-    boolean[] transactionsMustContainIndexes = new boolean[data.numAttributes()];
     int numInTransactionsMustContainList = split.length;
     
     for (int i = 0; i < split.length; i++) {
@@ -2415,6 +2857,14 @@ public class FPGrowth extends AbstractAssociator
       }
     }
     
+    return numInTransactionsMustContainList;
+  }
+  
+  private Instances parseTransactionsMustContain(Instances data) {
+    boolean[] transactionsMustContainIndexes = new boolean[data.numAttributes()];
+    int numInTransactionsMustContainList = 
+      parseTransactionsMustContain(data, transactionsMustContainIndexes);
+    
     if (numInTransactionsMustContainList == 0) {
       return data;
     } else {
@@ -2461,7 +2911,6 @@ public class FPGrowth extends AbstractAssociator
     
     // can we handle the data?
     getCapabilities().testWithFail(data);
-    boolean breakOnNext = false;
     
     // prune any instances that don't contain the requested items (if any)
     if (m_transactionsMustContain.length() > 0) {
@@ -2473,27 +2922,123 @@ public class FPGrowth extends AbstractAssociator
     if (m_rulesMustContain.length() > 0) {
       rulesMustContain = parseRulesMustContain(data);
     }
-        
+    
+    // first compute singletons
+    ArrayList<BinaryItem> singletons = getSingletons(data);
+    
+    findRules(singletons, data.numInstances(), rulesMustContain, data, 
+        null, null, 0);
+  }
+  
+  /**
+   * Method that generates all large item sets with a minimum support, and from
+   * these all association rules with a minimum metric (i.e. confidence, 
+   * lift etc.), from data that is read incrementally from a loader instead of
+   * being held in memory. The data is read once to find the singletons and
+   * once more for building the FP-tree at each minimum support that is tried,
+   * so the loader must be able to reset itself to the start of the data 
+   * (e.g., a loader reading from a file). Loaders that can't read 
+   * incrementally load the data as a whole.
+   *
+   * @param loader the loader providing the transactions
+   * @throws Exception if rules can't be built successfully
+   */
+  public void buildAssociations(Loader loader) throws Exception {
+    
+    if (!(loader instanceof IncrementalConverter)) {
+      buildAssociations(loader.getDataSet());
+      return;
+    }
+    
+    // can we handle the data?
+    Instances structure = loader.getStructure();
+    Capabilities cap = getCapabilities();
+    cap.setMinimumNumberInstances(0);
+    cap.testWithFail(structure);
+    
+    // the transactions that don't contain the requested items (if any)
+    // are skipped while reading
+    boolean[] transactionsMustContainIndexes = null;
+    int numInTransactionsMustContainList = 0;
+    if (m_transactionsMustContain.length() > 0) {
+      transactionsMustContainIndexes = new boolean[structure.numAttributes()];
+      numInTransactionsMustContainList = parseTransactionsMustContain(
+          structure, transactionsMustContainIndexes);
+      if (numInTransactionsMustContainList == 0) {
+        transactionsMustContainIndexes = null;
+      }
+    }
+    
+    ArrayList<Attribute> rulesMustContain = null;
+    if (m_rulesMustContain.length() > 0) {
+      rulesMustContain = parseRulesMustContain(structure);
+    }
+    
+    // first compute singletons
+    ArrayList<BinaryItem> singletons = new ArrayList<BinaryItem>();
+    for (int i = 0; i < structure.numAttributes(); i++) {
+      singletons.add(new BinaryItem(structure.attribute(i), m_positiveIndex - 1));
+    }
+    int numTransactions = 0;
+    Instance current;
+    while ((current = nextTransaction(loader, structure, 
+        transactionsMustContainIndexes, 
+        numInTransactionsMustContainList)) != null) {
+      updateSingletons(singletons, current);
+      numTransactions++;
+    }
+    if (numTransactions == 0) {
+      throw new Exception("No transactions to find rules in!");
+    }
+    
+    findRules(singletons, numTransactions, rulesMustContain, null, loader,
+        transactionsMustContainIndexes, numInTransactionsMustContainList);
+  }
+  
+  /**
+   * Iteratively reduces the minimum support and mines the large item sets
+   * until the required number of rules is found. The transactions are 
+   * either held in memory or read from a loader.
+   * 
+   * @param singletons the singleton item sets
+   * @param numTransactions the number of transactions
+   * @param rulesMustContain the attributes that rules must contain, null 
+   * for all rules
+   * @param data the transactions, null if they are read from the loader
+   * @param loader the loader providing the transactions, null if they are
+   * held in memory
+   * @param transactionsMustContainIndexes the attributes that transactions
+   * read from the loader must contain, null for all transactions
+   * @param numInTransactionsMustContainList the number of attributes
+   * that transactions read from the loader must contain
+   * @throws Exception if rules can't be built successfully
+   */
+  private void findRules(ArrayList<BinaryItem> singletons, 
+      int numTransactions, ArrayList<Attribute> rulesMustContain,
+      Instances data, Loader loader, boolean[] transactionsMustContainIndexes,
+      int numInTransactionsMustContainList) throws Exception {
+    
+    boolean breakOnNext = false;
     
     int upperBoundMinSuppAsInstances = (m_upperBoundMinSupport > 1) 
     ? (int) m_upperBoundMinSupport
-    : (int)Math.ceil(m_upperBoundMinSupport * data.numInstances());
+    : (int)Math.ceil(m_upperBoundMinSupport * numTransactions);
     
     int lowerBoundMinSuppAsInstances = (m_lowerBoundMinSupport > 1)
     ? (int)m_lowerBoundMinSupport
-        : (int)Math.ceil(m_lowerBoundMinSupport * data.numInstances());
+        : (int)Math.ceil(m_lowerBoundMinSupport * numTransactions);
 
 
     double upperBoundMinSuppAsFraction = (m_upperBoundMinSupport > 1)
-    ? m_upperBoundMinSupport / data.numInstances()
+    ? m_upperBoundMinSupport / numTransactions
         : m_upperBoundMinSupport;
 
     double lowerBoundMinSuppAsFraction = (m_lowerBoundMinSupport > 1)
-    ? m_lowerBoundMinSupport / data.numInstances()
+    ? m_lowerBoundMinSupport / numTransactions
         : m_lowerBoundMinSupport;
 
     double deltaAsFraction = (m_delta > 1)
-    ? m_delta / data.numInstances()
+    ? m_delta / numTransactions
         : m_delta;
 
     //double currentSupport = upperBoundMinSuppAsFraction;      
@@ -2502,44 +3047,29 @@ public class FPGrowth extends AbstractAssociator
     if (m_findAllRulesForSupportLevel) {
       currentSupport = lowerBoundMinSuppAsFraction;
     }
-    // first compute singletons
-    ArrayList<BinaryItem> singletons = getSingletons(data);
-    //ArrayList<BinaryItem> singletonsCopy = new ArrayList<BinaryItem>(singletons);
-/*    Collections.sort(singletonsCopy);
-    for (int i = 0; i < singletonsCopy.size(); i++) {
-      System.out.println(singletonsCopy.get(i).toString(true));
-    }
-    System.out.println("---------"); */
-//    System.out.println("Finished finding singletons...");
     
     // while not enough rules
     do {
       int currentSupportAsInstances = (currentSupport > 1)
       ? (int)currentSupport
-      : (int)Math.ceil(currentSupport * data.numInstances());
+      : (int)Math.ceil(currentSupport * numTransactions);
       
-      //System.err.println("Current support " + currentSupportAsInstances);
-      //ArrayList<BinaryItem> prunedSingletons = removeNonFrequent(singletons);
-
       // build the FPTree
-      FPTreeRoot tree = buildFPTree(singletons, data, currentSupportAsInstances);
-//      System.out.println("Finished building tree...");
-//      System.out.println(tree.toString(0));
-    /*System.out.println(tree.printHeaderTable(0)); */
+      BinaryItem[] items = getFrequentItems(singletons, currentSupportAsInstances);
+      CompactFPTree tree = (data != null)
+        ? buildCompactFPTree(items, data)
+        : buildCompactFPTree(items, loader, transactionsMustContainIndexes,
+            numInTransactionsMustContainList);
 
-      FrequentItemSets largeItemSets = new FrequentItemSets(data.numInstances());
+      FrequentItemSets largeItemSets = new FrequentItemSets(numTransactions);
 
       // mine the tree
       FrequentBinaryItemSet conditionalItems = 
         new FrequentBinaryItemSet(new ArrayList<BinaryItem>(), 0);
-      mineTree(tree, largeItemSets, 0, conditionalItems, currentSupportAsInstances);      
+      mineTree(tree, items, largeItemSets, conditionalItems, 
+          currentSupportAsInstances);
 
       m_largeItemSets = largeItemSets;
-//      System.err.println("Number of large item sets: " + m_largeItemSets.size());
-  //    System.err.println(m_largeItemSets.toString(100));
-
-      //    m_largeItemSets.sort(compF);
-//      System.err.println("Finished mining tree...");
       
       // save memory
       tree = null;
@@ -2547,7 +3077,7 @@ public class FPGrowth extends AbstractAssociator
       m_rules = 
         AssociationRule.generateRulesBruteForce(m_largeItemSets, m_metric, 
             m_metricThreshold, upperBoundMinSuppAsInstances, 
-            lowerBoundMinSuppAsInstances, data.numInstances());
+            lowerBoundMinSuppAsInstances, numTransactions);
       
       if (rulesMustContain != null && rulesMustContain.size() > 0) {
         m_rules = AssociationRule.pruneRules(m_rules, rulesMustContain, 
@@ -2577,9 +3107,6 @@ public class FPGrowth extends AbstractAssociator
     } while (m_rules.size() < m_numRulesToFind);
     
     Collections.sort(m_rules);
-//    for (AssociationRule)
-    
-//    System.out.println(graph(tree));
   }
     
   /**
@@ -164,17 +164,19 @@ public class ItemSet
   }
 
   /**
-   * Produces a hash code for a item set.
+   * Produces a hash code for a item set. All positions contribute to the
+   * code, so that the (k-1)-item sets looked up when pruning candidates
+   * spread evenly over the hashtable.
    *
    * @return a hash code for a set of items
    */
   public int hashCode() {
 
-    long result = 0;
+    int result = 0;
 
-    for (int i = m_items.length-1; i >= 0; i--)
-      result += (i * m_items[i]);
-    return (int)result;
+    for (int i = 0; i < m_items.length; i++)
+      result = 31 * result + (m_items[i] + 1);
+    return result;
   }
 
   /** Merges all item sets in the set of (k-1)-item sets
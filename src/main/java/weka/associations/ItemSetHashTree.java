@@ -0,0 +1,232 @@
+/*
+ *    This program is free software; you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation; either version 2 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program; if not, write to the Free Software
+ *    Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+/*
+ *    ItemSetHashTree.java
+ *
+ */
+
+package weka.associations;
+
+import weka.core.FastVector;
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.core.RevisionHandler;
+import weka.core.RevisionUtils;
+
+import java.io.Serializable;
+
+/**
+ * Hash tree over a set of candidate item sets, used for counting their
+ * support. The path from the root to the node of an item set follows its
+ * items in lexicographic order. The children of a node are hashed first by
+ * the attribute and then by the value of their item, so a transaction is
+ * matched against all candidates at once by following only the branches of
+ * its own attribute values, and candidates that share a prefix are tested
+ * for this prefix only once.
+ *
+ * @version $Revision: 1.1 $
+ */
+public class ItemSetHashTree
+  implements Serializable, RevisionHandler {
+
+  /** for serialization */
+  private static final long serialVersionUID = -3590224716281066823L;
+
+  /**
+   * A node of the hash tree.
+   */
+  protected static class Node
+    implements Serializable {
+
+    /** for serialization */
+    private static final long serialVersionUID = 4907381206453520187L;
+
+    /** The number of attributes of the children. */
+    protected int m_numAttributes;
+
+    /** The attributes of the children, in ascending order. */
+    protected int[] m_attributes = new int[2];
+
+    /** The children, indexed by the position of their attribute and their
+     * value. */
+    protected Node[][] m_children = new Node[2][];
+
+    /** The number of item sets ending at this node. */
+    protected int m_numItemSets;
+
+    /** The indices of the item sets ending at this node, null if none. */
+    protected int[] m_itemSets;
+
+    /**
+     * Returns the child for the given item, creating it if necessary.
+     *
+     * @param attribute the attribute of the item
+     * @param value the value of the item
+     * @return the child
+     */
+    public Node getChild(int attribute, int value) {
+      int pos = 0;
+      while ((pos < m_numAttributes) && (m_attributes[pos] < attribute))
+	pos++;
+
+      if ((pos == m_numAttributes) || (m_attributes[pos] != attribute)) {
+	if (m_numAttributes == m_attributes.length) {
+	  int[] attributes = new int[2 * m_numAttributes];
+	  System.arraycopy(m_attributes, 0, attributes, 0, m_numAttributes);
+	  m_attributes = attributes;
+	  Node[][] children = new Node[2 * m_numAttributes][];
+	  System.arraycopy(m_children, 0, children, 0, m_numAttributes);
+	  m_children = children;
+	}
+	System.arraycopy(m_attributes, pos, m_attributes, pos + 1,
+	    m_numAttributes - pos);
+	System.arraycopy(m_children, pos, m_children, pos + 1,
+	    m_numAttributes - pos);
+	m_attributes[pos] = attribute;
+	m_children[pos] = new Node[value + 1];
+	m_numAttributes++;
+      }
+
+      Node[] children = m_children[pos];
+      if (value >= children.length) {
+	Node[] newChildren = new Node[value + 1];
+	System.arraycopy(children, 0, newChildren, 0, children.length);
+	children = newChildren;
+	m_children[pos] = children;
+      }
+      if (children[value] == null)
+	children[value] = new Node();
+
+      return children[value];
+    }
+
+    /**
+     * Adds the index of an item set that ends at this node.
+     *
+     * @param index the index of the item set
+     */
+    public void addItemSet(int index) {
+      if (m_itemSets == null) {
+	m_itemSets = new int[1];
+      }
+      else if (m_numItemSets == m_itemSets.length) {
+	int[] itemSets = new int[2 * m_numItemSets];
+	System.arraycopy(m_itemSets, 0, itemSets, 0, m_numItemSets);
+	m_itemSets = itemSets;
+      }
+      m_itemSets[m_numItemSets++] = index;
+    }
+  }
+
+  /** The root of the tree. */
+  protected Node m_root;
+
+  /** The class labels of the item sets, null if they are not labeled. */
+  protected int[] m_classLabels;
+
+  /**
+   * Builds the hash tree for the given item sets.
+   *
+   * @param itemSets the item sets, either all of them ItemSets or all of
+   * them LabeledItemSets
+   */
+  public ItemSetHashTree(FastVector itemSets) {
+    m_root = new Node();
+    if ((itemSets.size() > 0)
+	&& (itemSets.elementAt(0) instanceof LabeledItemSet))
+      m_classLabels = new int[itemSets.size()];
+
+    for (int i = 0; i < itemSets.size(); i++) {
+      ItemSet current = (ItemSet) itemSets.elementAt(i);
+      Node node = m_root;
+      for (int j = 0; j < current.m_items.length; j++) {
+	if (current.m_items[j] != -1)
+	  node = node.getChild(j, current.m_items[j]);
+      }
+      node.addItemSet(i);
+      if (m_classLabels != null)
+	m_classLabels[i] = ((LabeledItemSet) current).m_classLabel;
+    }
+  }
+
+  /**
+   * Counts the item sets contained in a range of transactions.
+   *
+   * @param instances the transactions
+   * @param classes the class values of the transactions, if the item sets
+   * are labeled
+   * @param from the index of the first transaction
+   * @param to the index after the last transaction
+   * @param counts receives the number of transactions containing each item
+   * set
+   * @param ruleCounts receives the number of transactions containing each
+   * item set and having its class label, if the item sets are labeled
+   */
+  public void count(Instances instances, Instances classes, int from, int to,
+      int[] counts, int[] ruleCounts) {
+
+    int[] values = new int[instances.numAttributes()];
+    for (int i = from; i < to; i++) {
+      Instance current = instances.instance(i);
+      for (int j = 0; j < values.length; j++)
+	values[j] = current.isMissing(j) ? -1 : (int) current.value(j);
+      double classValue = (m_classLabels != null)
+	? classes.instance(i).value(0) : Double.NaN;
+      count(m_root, values, classValue, counts, ruleCounts);
+    }
+  }
+
+  /**
+   * Counts the item sets below a node contained in a transaction.
+   *
+   * @param node the node
+   * @param values the value indices of the transaction, -1 for missing
+   * values
+   * @param classValue the class value of the transaction
+   * @param counts receives the number of transactions containing each item
+   * set
+   * @param ruleCounts receives the number of transactions containing each
+   * item set and having its class label
+   */
+  protected void count(Node node, int[] values, double classValue,
+      int[] counts, int[] ruleCounts) {
+
+    for (int i = 0; i < node.m_numItemSets; i++) {
+      int index = node.m_itemSets[i];
+      counts[index]++;
+      if ((m_classLabels != null) && (m_classLabels[index] == classValue))
+	ruleCounts[index]++;
+    }
+
+    for (int i = 0; i < node.m_numAttributes; i++) {
+      int value = values[node.m_attributes[i]];
+      Node[] children = node.m_children[i];
+      if ((value >= 0) && (value < children.length) 
+	  && (children[value] != null))
+	count(children[value], values, classValue, counts, ruleCounts);
+    }
+  }
+
+  /**
+   * Returns the revision string.
+   *
+   * @return		the revision
+   */
+  public String getRevision() {
+    return RevisionUtils.extract("$Revision: 1.1 $");
+  }
+}
@@ -0,0 +1,170 @@
+/*
+ *    This program is free software; you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation; either version 2 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program; if not, write to the Free Software
+ *    Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+/*
+ *    TIDLists.java
+ *
+ */
+
+package weka.associations;
+
+import weka.core.FastVector;
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.core.RevisionHandler;
+import weka.core.RevisionUtils;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * Vertical representation of a set of transactions for counting the
+ * support of item sets. For each item (attribute value) the transactions
+ * containing it are stored as a bitset, and the support of an item set is
+ * the number of bits set in the intersection of the bitsets of its items.
+ * The bitsets take one bit per transaction and item, which makes this
+ * representation best suited to dense data with many transactions and
+ * comparatively few items.
+ *
+ * @version $Revision: 1.1 $
+ */
+public class TIDLists
+  implements Serializable, RevisionHandler {
+
+  /** for serialization */
+  private static final long serialVersionUID = 6319247051188342785L;
+
+  /** The number of 64 bit words per bitset. */
+  protected int m_numWords;
+
+  /** The bitsets of the items, indexed by attribute and value. */
+  protected long[][][] m_lists;
+
+  /** The bitsets of the class values, null if there is no class. */
+  protected long[][] m_classLists;
+
+  /**
+   * Builds the bitsets for the items of the given transactions.
+   *
+   * @param instances the transactions
+   * @param classes the class values of the transactions, null if there
+   * is no class
+   */
+  public TIDLists(Instances instances, Instances classes) {
+    m_numWords = (instances.numInstances() + 63) / 64;
+    m_lists = new long[instances.numAttributes()][][];
+    for (int i = 0; i < instances.numAttributes(); i++)
+      m_lists[i] = new long[instances.attribute(i).numValues()][m_numWords];
+    if (classes != null)
+      m_classLists = new long[classes.attribute(0).numValues()][m_numWords];
+
+    for (int n = 0; n < instances.numInstances(); n++) {
+      Instance current = instances.instance(n);
+      long bit = 1L << (n & 63);
+      int word = n >>> 6;
+      for (int i = 0; i < current.numAttributes(); i++) {
+	if (!current.isMissing(i))
+	  m_lists[i][(int) current.value(i)][word] |= bit;
+      }
+      if ((classes != null) && !classes.instance(n).isMissing(0))
+	m_classLists[(int) classes.instance(n).value(0)][word] |= bit;
+    }
+  }
+
+  /**
+   * Counts the support of a range of item sets. Item sets that share all
+   * but their last item with the previous item set, as the ones generated
+   * from a common (k-1)-item set do, reuse the intersection of the bitsets
+   * of these items.
+   *
+   * @param itemSets the item sets, either all of them ItemSets or all of
+   * them LabeledItemSets
+   * @param from the index of the first item set
+   * @param to the index after the last item set
+   * @param counts receives the number of transactions containing each item
+   * set
+   * @param ruleCounts receives the number of transactions containing each
+   * item set and having its class label, if the item sets are labeled
+   */
+  public void count(FastVector itemSets, int from, int to, int[] counts,
+      int[] ruleCounts) {
+
+    long[] prefix = new long[m_numWords];
+    int[] prefixItems = null;
+    int prefixLast = -1;
+
+    for (int i = from; i < to; i++) {
+      ItemSet current = (ItemSet) itemSets.elementAt(i);
+      int[] items = current.m_items;
+      int last = items.length - 1;
+      while ((last >= 0) && (items[last] == -1))
+	last--;
+      if (last < 0)
+	continue;
+
+      // intersect the bitsets of all items except the last one, unless
+      // the previous item set had the same ones
+      boolean samePrefix = (prefixItems != null);
+      for (int j = 0; samePrefix && (j < Math.max(last, prefixLast)); j++) {
+	int prefixItem = (j < prefixLast) ? prefixItems[j] : -1;
+	int item = (j < last) ? items[j] : -1;
+	samePrefix = (prefixItem == item);
+      }
+      if (!samePrefix) {
+	boolean first = true;
+	for (int j = 0; j < last; j++) {
+	  if (items[j] == -1)
+	    continue;
+	  long[] list = m_lists[j][items[j]];
+	  if (first)
+	    System.arraycopy(list, 0, prefix, 0, m_numWords);
+	  else
+	    for (int w = 0; w < m_numWords; w++)
+	      prefix[w] &= list[w];
+	  first = false;
+	}
+	if (first)
+	  Arrays.fill(prefix, -1L);
+	prefixItems = items;
+	prefixLast = last;
+      }
+
+      long[] list = m_lists[last][items[last]];
+      long[] classList = (ruleCounts != null)
+	? m_classLists[((LabeledItemSet) current).m_classLabel] : null;
+      int count = 0;
+      int ruleCount = 0;
+      for (int w = 0; w < m_numWords; w++) {
+	long bits = prefix[w] & list[w];
+	count += Long.bitCount(bits);
+	if (classList != null)
+	  ruleCount += Long.bitCount(bits & classList[w]);
+      }
+      counts[i] = count;
+      if (ruleCounts != null)
+	ruleCounts[i] = ruleCount;
+    }
+  }
+
+  /**
+   * Returns the revision string.
+   *
+   * @return		the revision
+   */
+  public String getRevision() {
+    return RevisionUtils.extract("$Revision: 1.1 $");
+  }
+}
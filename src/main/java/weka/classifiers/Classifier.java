@@ -139,6 +139,57 @@ public abstract class Classifier implements Cloneable, Serializable,
     }
   }
 
+  /**
+   * Predicts the class memberships for all instances of the given set. The
+   * distribution of the i-th instance, as distributionForInstance() would
+   * return it, is written into dists[i]; a row that is null or has the wrong
+   * length is replaced by a new array. Subclasses can override this to
+   * classify many instances faster than one at a time.
+   * 
+   * @param data the instances to be classified
+   * @param dists the array to store the distributions in, with at least one
+   *          row per instance
+   * @exception Exception if the distributions could not be computed
+   *              successfully
+   */
+  public void distributionsForInstances(Instances data, double[][] dists)
+    throws Exception {
+
+    for (int i = 0; i < data.numInstances(); i++) {
+      double[] dist = distributionForInstance(data.instance(i));
+      if ((dists[i] == null) || (dists[i].length != dist.length)) {
+        dists[i] = dist;
+      } else {
+        System.arraycopy(dist, 0, dists[i], 0, dist.length);
+      }
+    }
+  }
+
+  /**
+   * Returns the given row of the given array of distributions, cleared, for
+   * use by implementations of distributionsForInstances(). A row that is
+   * null or has the wrong length is replaced by a new array first.
+   * 
+   * @param dists the array of distributions
+   * @param index the index of the row
+   * @param numClasses the length of the distributions
+   * @return the cleared row
+   */
+  protected static double[] distributionRow(double[][] dists, int index,
+    int numClasses) {
+
+    double[] dist = dists[index];
+    if ((dist == null) || (dist.length != numClasses)) {
+      dist = new double[numClasses];
+      dists[index] = dist;
+    } else {
+      for (int i = 0; i < numClasses; i++) {
+        dist[i] = 0;
+      }
+    }
+    return dist;
+  }
+
   /**
    * Creates a new instance of a classifier given it's class name and (optional)
    * arguments to pass to it's setOptions method. If the classifier implements
@@ -39,7 +39,15 @@ import java.io.Reader;
 import java.lang.reflect.Method;
 import java.util.Date;
 import java.util.Enumeration;
+import java.util.LinkedList;
 import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.zip.GZIPInputStream;
 import java.util.zip.GZIPOutputStream;
 
@@ -209,6 +217,9 @@ import weka.estimators.KernelEstimator;
  */
 public class Evaluation implements Summarizable, RevisionHandler {
 
+  /** The number of test instances classified at a time. */
+  protected static final int BATCH_SIZE = 1000;
+
   /** The number of classes. */
   protected int m_NumClasses;
 
@@ -502,6 +513,225 @@ public class Evaluation implements Summarizable, RevisionHandler {
     m_NumFolds = numFolds;
   }
 
+  /**
+   * Performs a (stratified if class is nominal) cross-validation for a
+   * classifier on a set of instances, training and testing the folds
+   * concurrently. The folds are drawn and the results are merged in the
+   * same order as in the sequential version, so the statistics only differ
+   * from it by the rounding of the sums.
+   * 
+   * @param classifier the classifier with any options set.
+   * @param data the data on which the cross-validation is to be performed
+   * @param numFolds the number of folds for the cross-validation
+   * @param random random number generator for randomization
+   * @param executor the executor that trains and tests the folds
+   * @param forPredictionsString varargs parameter that, if supplied, is
+   *          expected to hold a StringBuffer to print predictions to, a Range
+   *          of attributes to output and a Boolean (true if the distribution is
+   *          to be printed)
+   * @throws Exception if a classifier could not be generated successfully or
+   *           the class is not defined
+   */
+  public void crossValidateModel(Classifier classifier, Instances data,
+    int numFolds, Random random, ExecutorService executor,
+    Object... forPredictionsPrinting) throws Exception {
+
+    // Make a copy of the data we can reorder
+    data = new Instances(data);
+    data.randomize(random);
+    if (data.classAttribute().isNominal()) {
+      data.stratify(numFolds);
+    }
+
+    StringBuffer buff = null;
+    if (forPredictionsPrinting.length > 0) {
+      // print the header first
+      buff = (StringBuffer) forPredictionsPrinting[0];
+      Range attsToOutput = (Range) forPredictionsPrinting[1];
+      boolean printDist = ((Boolean) forPredictionsPrinting[2]).booleanValue();
+      printClassificationsHeader(data, attsToOutput, printDist, buff);
+    }
+
+    // Draw the folds and copy the classifier here, so that the random
+    // number generator and the classifier are only used by this thread.
+    // At most maxPending folds are held by unfinished tasks.
+    int maxPending = Runtime.getRuntime().availableProcessors();
+    if (executor instanceof ThreadPoolExecutor) {
+      maxPending = ((ThreadPoolExecutor) executor).getMaximumPoolSize();
+    }
+    maxPending = 2 * Math.min(maxPending, numFolds);
+    LinkedList<Future<Evaluation>> folds = new LinkedList<Future<Evaluation>>();
+    LinkedList<StringBuffer> foldBuffs = new LinkedList<StringBuffer>();
+    Evaluation foldEval = null;
+    try {
+      for (int i = 0; i < numFolds; i++) {
+        if (folds.size() >= maxPending) {
+          foldEval = finishFold(folds.removeFirst(), foldBuffs.removeFirst(),
+            buff);
+        }
+        final Instances train = data.trainCV(numFolds, i, random);
+        final Instances test = data.testCV(numFolds, i);
+        final Classifier copiedClassifier = Classifier.makeCopy(classifier);
+        final Object[] foldPrinting;
+        StringBuffer foldBuff = null;
+        if (buff != null) {
+          foldBuff = new StringBuffer();
+          foldPrinting = new Object[] { foldBuff, forPredictionsPrinting[1],
+            forPredictionsPrinting[2] };
+        } else {
+          foldPrinting = new Object[0];
+        }
+        folds.addLast(executor.submit(new Callable<Evaluation>() {
+          public Evaluation call() throws Exception {
+            Evaluation foldEval = new Evaluation(train, m_CostMatrix);
+            copiedClassifier.buildClassifier(train);
+            foldEval.evaluateModel(copiedClassifier, test, foldPrinting);
+            return foldEval;
+          }
+        }));
+        foldBuffs.addLast(foldBuff);
+      }
+      while (!folds.isEmpty()) {
+        foldEval = finishFold(folds.removeFirst(), foldBuffs.removeFirst(),
+          buff);
+      }
+
+      // Leave the priors of the last training fold, as the sequential
+      // version does
+      if (foldEval != null) {
+        usePriors(foldEval);
+      }
+    } finally {
+      for (Future<Evaluation> fold : folds) {
+        fold.cancel(true);
+      }
+    }
+    m_NumFolds = numFolds;
+  }
+
+  /**
+   * Waits for a fold of the concurrent cross-validation and adds its
+   * statistics and predictions to this evaluation.
+   * 
+   * @param fold the task that trains and tests the fold
+   * @param foldBuff the predictions of the fold, null if not printed
+   * @param buff the buffer to append the predictions to, null if not printed
+   * @return the evaluation of the fold
+   * @throws Exception if the fold failed
+   */
+  protected Evaluation finishFold(Future<Evaluation> fold,
+    StringBuffer foldBuff, StringBuffer buff) throws Exception {
+
+    Evaluation foldEval;
+    try {
+      foldEval = fold.get();
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof Exception) {
+        throw (Exception) e.getCause();
+      }
+      throw e;
+    }
+    aggregate(foldEval);
+    if (buff != null) {
+      buff.append(foldBuff);
+    }
+    return foldEval;
+  }
+
+  /**
+   * Performs a (stratified if class is nominal) cross-validation for a
+   * classifier on a set of instances, training and testing the folds with
+   * the given number of threads.
+   * 
+   * @param classifier the classifier with any options set.
+   * @param data the data on which the cross-validation is to be performed
+   * @param numFolds the number of folds for the cross-validation
+   * @param random random number generator for randomization
+   * @param numExecutionSlots the number of threads
+   * @throws Exception if a classifier could not be generated successfully or
+   *           the class is not defined
+   */
+  public void crossValidateModel(Classifier classifier, Instances data,
+    int numFolds, Random random, int numExecutionSlots) throws Exception {
+
+    if (numExecutionSlots <= 1) {
+      crossValidateModel(classifier, data, numFolds, random);
+      return;
+    }
+
+    ThreadPoolExecutor executor =
+      new ThreadPoolExecutor(numExecutionSlots, numExecutionSlots, 120,
+        TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>());
+    try {
+      crossValidateModel(classifier, data, numFolds, random, executor);
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  /**
+   * Adds the statistics collected by the given evaluation, for the same
+   * data, to the statistics of this one.
+   * 
+   * @param evaluation the evaluation to add
+   */
+  protected void aggregate(Evaluation evaluation) {
+
+    m_Incorrect += evaluation.m_Incorrect;
+    m_Correct += evaluation.m_Correct;
+    m_Unclassified += evaluation.m_Unclassified;
+    m_MissingClass += evaluation.m_MissingClass;
+    m_WithClass += evaluation.m_WithClass;
+    if (m_ConfusionMatrix != null) {
+      for (int i = 0; i < m_NumClasses; i++) {
+        for (int j = 0; j < m_NumClasses; j++) {
+          m_ConfusionMatrix[i][j] += evaluation.m_ConfusionMatrix[i][j];
+        }
+      }
+    }
+    m_TotalCost += evaluation.m_TotalCost;
+    m_SumErr += evaluation.m_SumErr;
+    m_SumAbsErr += evaluation.m_SumAbsErr;
+    m_SumSqrErr += evaluation.m_SumSqrErr;
+    m_SumClass += evaluation.m_SumClass;
+    m_SumSqrClass += evaluation.m_SumSqrClass;
+    m_SumPredicted += evaluation.m_SumPredicted;
+    m_SumSqrPredicted += evaluation.m_SumSqrPredicted;
+    m_SumClassPredicted += evaluation.m_SumClassPredicted;
+    m_SumPriorAbsErr += evaluation.m_SumPriorAbsErr;
+    m_SumPriorSqrErr += evaluation.m_SumPriorSqrErr;
+    m_SumKBInfo += evaluation.m_SumKBInfo;
+    for (int i = 0; i < m_MarginCounts.length; i++) {
+      m_MarginCounts[i] += evaluation.m_MarginCounts[i];
+    }
+    m_SumPriorEntropy += evaluation.m_SumPriorEntropy;
+    m_SumSchemeEntropy += evaluation.m_SumSchemeEntropy;
+    if (evaluation.m_Predictions != null) {
+      if (m_Predictions == null) {
+        m_Predictions = new FastVector();
+      }
+      m_Predictions.appendElements(evaluation.m_Predictions);
+    }
+  }
+
+  /**
+   * Takes over the priors of the given evaluation, for the same data.
+   * 
+   * @param evaluation the evaluation whose priors are used
+   */
+  protected void usePriors(Evaluation evaluation) {
+
+    m_NoPriors = evaluation.m_NoPriors;
+    System.arraycopy(evaluation.m_ClassPriors, 0, m_ClassPriors, 0,
+      m_ClassPriors.length);
+    m_ClassPriorsSum = evaluation.m_ClassPriorsSum;
+    m_NumTrainClassVals = evaluation.m_NumTrainClassVals;
+    m_TrainClassVals = evaluation.m_TrainClassVals;
+    m_TrainClassWeights = evaluation.m_TrainClassWeights;
+    m_PriorErrorEstimator = evaluation.m_PriorErrorEstimator;
+    m_ErrorEstimator = evaluation.m_ErrorEstimator;
+  }
+
   /**
    * Performs a (stratified if class is nominal) cross-validation for a
    * classifier on a set of instances.
@@ -1476,13 +1706,31 @@ public class Evaluation implements Summarizable, RevisionHandler {
 
     // Need to be able to collect predictions if appropriate (for AUC)
 
+    if (buff == null) {
+      // classify the instances in batches, with their class hidden
+      double[][] dists = new double[Math.min(BATCH_SIZE, 
+        data.numInstances())][];
+      for (int first = 0; first < data.numInstances(); first += BATCH_SIZE) {
+        int num = Math.min(BATCH_SIZE, data.numInstances() - first);
+        Instances classMissing = new Instances(data, first, num);
+        for (int i = 0; i < num; i++) {
+          classMissing.instance(i).setClassMissing();
+        }
+        classifier.distributionsForInstances(classMissing, dists);
+        for (int i = 0; i < num; i++) {
+          predictions[first + i] =
+            evaluateModelOnceAndRecordPrediction(dists[i],
+              data.instance(first + i));
+        }
+      }
+      return predictions;
+    }
+
     for (int i = 0; i < data.numInstances(); i++) {
       predictions[i] =
         evaluateModelOnceAndRecordPrediction(classifier, data.instance(i));
-      if (buff != null) {
-        buff.append(predictionText(classifier, data.instance(i), i,
-          attsToOutput, printDist));
-      }
+      buff.append(predictionText(classifier, data.instance(i), i,
+        attsToOutput, printDist));
     }
 
     return predictions;
@@ -0,0 +1,251 @@
+/*
+ *    This program is free software; you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation; either version 2 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program; if not, write to the Free Software
+ *    Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+/*
+ *    ParallelIteratedSingleClassifierEnhancer.java
+ *
+ */
+
+package weka.classifiers;
+
+import weka.core.Instances;
+import weka.core.Option;
+import weka.core.Utils;
+
+import java.util.Enumeration;
+import java.util.LinkedList;
+import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Abstract utility class for handling settings common to
+ * meta classifiers that build an ensemble from a single base learner
+ * and can build the members of the ensemble in parallel. <p/>
+ *
+ * The training sets are created in the order of the members by the
+ * calling thread, so subclasses can draw them from a single random
+ * number generator and get the same ensemble for any number of
+ * execution slots.
+ *
+ * @version $Revision: 1.1 $
+ */
+public abstract class ParallelIteratedSingleClassifierEnhancer
+  extends IteratedSingleClassifierEnhancer {
+
+  /** for serialization */
+  private static final long serialVersionUID = -5026378741833046436L;
+
+  /** The number of threads used to build the ensemble. */
+  protected int m_numExecutionSlots = 1;
+
+  /**
+   * Returns an enumeration describing the available options.
+   *
+   * @return an enumeration of all the available options.
+   */
+  public Enumeration listOptions() {
+
+    Vector newVector = new Vector(2);
+
+    newVector.addElement(new Option(
+	      "\tNumber of execution slots.\n"
+	      + "\t(default 1 - i.e. no parallelism)",
+	      "num-slots", 1, "-num-slots <num>"));
+
+    Enumeration enu = super.listOptions();
+    while (enu.hasMoreElements()) {
+      newVector.addElement(enu.nextElement());
+    }
+    return newVector.elements();
+  }
+
+  /**
+   * Parses a given list of options. Valid options are:<p>
+   *
+   * -num-slots num <br>
+   * Set the number of execution slots to use (default 1 - i.e. no
+   * parallelism). <p>
+   *
+   * -W classname <br>
+   * Specify the full class name of the base learner.<p>
+   *
+   * -I num <br>
+   * Set the number of iterations (default 10). <p>
+   *
+   * Options after -- are passed to the designated classifier.<p>
+   *
+   * @param options the list of options as an array of strings
+   * @exception Exception if an option is not supported
+   */
+  public void setOptions(String[] options) throws Exception {
+
+    String slots = Utils.getOption("num-slots", options);
+    if (slots.length() != 0) {
+      setNumExecutionSlots(Integer.parseInt(slots));
+    } else {
+      setNumExecutionSlots(1);
+    }
+
+    super.setOptions(options);
+  }
+
+  /**
+   * Gets the current settings of the classifier.
+   *
+   * @return an array of strings suitable for passing to setOptions
+   */
+  public String [] getOptions() {
+
+    String [] superOptions = super.getOptions();
+    boolean slots = getNumExecutionSlots() > 1;
+    String [] options = new String [superOptions.length + (slots ? 2 : 0)];
+
+    int current = 0;
+    if (slots) {
+      options[current++] = "-num-slots";
+      options[current++] = "" + getNumExecutionSlots();
+    }
+
+    System.arraycopy(superOptions, 0, options, current,
+		     superOptions.length);
+
+    return options;
+  }
+
+  /**
+   * Returns the tip text for this property
+   * @return tip text for this property suitable for
+   * displaying in the explorer/experimenter gui
+   */
+  public String numExecutionSlotsTipText() {
+    return "The number of execution slots (threads) to use for "
+      + "constructing the ensemble.";
+  }
+
+  /**
+   * Sets the number of execution slots (threads) to use for building the
+   * members of the ensemble.
+   *
+   * @param numSlots the number of slots to use.
+   */
+  public void setNumExecutionSlots(int numSlots) {
+
+    m_numExecutionSlots = numSlots;
+  }
+
+  /**
+   * Gets the number of execution slots (threads) to use for building the
+   * members of the ensemble.
+   *
+   * @return the number of slots to use
+   */
+  public int getNumExecutionSlots() {
+
+    return m_numExecutionSlots;
+  }
+
+  /**
+   * Returns the training set for the given member of the ensemble. Called
+   * by the thread that builds the ensemble, once per member in order,
+   * before that member is built.
+   *
+   * @param iteration the index of the member
+   * @return the training set for the member
+   * @exception Exception if the training set can't be generated
+   */
+  protected abstract Instances getTrainingSet(int iteration)
+    throws Exception;
+
+  /**
+   * Creates a thread pool with the number of execution slots.
+   *
+   * @return the thread pool, to be shut down by the caller
+   */
+  protected ThreadPoolExecutor newExecutorPool() {
+
+    return new ThreadPoolExecutor(m_numExecutionSlots, m_numExecutionSlots,
+				  120, TimeUnit.SECONDS,
+				  new LinkedBlockingQueue<Runnable>());
+  }
+
+  /**
+   * Waits for the given task to finish and returns its result, passing on
+   * the exception the task threw, if any.
+   *
+   * @param future the task
+   * @return the result of the task
+   * @exception Exception if the task failed
+   */
+  protected static <T> T waitFor(Future<T> future) throws Exception {
+
+    try {
+      return future.get();
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof Exception) {
+	throw (Exception) e.getCause();
+      }
+      throw e;
+    }
+  }
+
+  /**
+   * Builds the members of the ensemble, which have been created by
+   * buildClassifier(), using as many threads as there are execution slots.
+   * At most two training sets per slot are kept waiting.
+   *
+   * @exception Exception if a member could not be built successfully
+   */
+  protected void buildClassifiers() throws Exception {
+
+    if (m_numExecutionSlots <= 1) {
+      for (int i = 0; i < m_Classifiers.length; i++) {
+	m_Classifiers[i].buildClassifier(getTrainingSet(i));
+      }
+      return;
+    }
+
+    ThreadPoolExecutor executorPool = newExecutorPool();
+    LinkedList<Future<Object>> pending = new LinkedList<Future<Object>>();
+    try {
+      for (int i = 0; i < m_Classifiers.length; i++) {
+	final Classifier currentClassifier = m_Classifiers[i];
+	final Instances trainingSet = getTrainingSet(i);
+	if (pending.size() >= 2 * m_numExecutionSlots) {
+	  waitFor(pending.removeFirst());
+	}
+	pending.addLast(executorPool.submit(new Callable<Object>() {
+	    public Object call() throws Exception {
+	      currentClassifier.buildClassifier(trainingSet);
+	      return null;
+	    }
+	  }));
+      }
+      while (!pending.isEmpty()) {
+	waitFor(pending.removeFirst());
+      }
+    } finally {
+      for (Future<Object> future : pending) {
+	future.cancel(true);
+      }
+      executorPool.shutdown();
+    }
+  }
+}
@@ -30,6 +30,7 @@ import weka.core.Instances;
 import weka.core.Option;
 import weka.core.OptionHandler;
 import weka.core.RevisionUtils;
+import weka.core.Statistics;
 import weka.core.TechnicalInformation;
 import weka.core.TechnicalInformationHandler;
 import weka.core.Utils;
@@ -42,6 +43,7 @@ import weka.estimators.Estimator;
 import weka.estimators.KernelEstimator;
 import weka.estimators.NormalEstimator;
 
+import java.util.Arrays;
 import java.util.Enumeration;
 import java.util.Vector;
 
@@ -105,6 +107,57 @@ implements OptionHandler, WeightedInstancesHandler,
   /** The class estimator. */
   protected Estimator m_ClassDistribution;
 
+  /**
+   * The indices of the attributes other than the class, in the order of
+   * m_Distributions. The following tables hold the model instead of the
+   * estimators unless kernel estimators are used, in which case they are
+   * null. The estimators are then only created for displaying the model.
+   */
+  protected int [] m_AttIndices;
+
+  /** The offsets of the nominal attributes in m_Counts, -1 for numeric 
+   * attributes. */
+  protected int [] m_CountOffsets;
+
+  /** The counts of the values of the nominal attributes per class, at
+   * offset + value * number of classes + class (initialised to 1). */
+  protected double [] m_Counts;
+
+  /** The sums of the weights (counts for nominal attributes) per attribute
+   * and class, at attribute * number of classes + class. */
+  protected double [] m_SumOfWeights;
+
+  /** The sums of the weighted values of the numeric attributes per 
+   * attribute and class. */
+  protected double [] m_SumOfValues;
+
+  /** The sums of the weighted squared values of the numeric attributes per
+   * attribute and class. */
+  protected double [] m_SumOfValuesSq;
+
+  /** The means of the numeric attributes per attribute and class. */
+  protected double [] m_Means;
+
+  /** The standard deviations of the numeric attributes per attribute and
+   * class. */
+  protected double [] m_StdDevs;
+
+  /** The precisions of the numeric attributes. */
+  protected double [] m_Precisions;
+
+  /** The counts of the classes (initialised to 1). */
+  protected double [] m_ClassCounts;
+
+  /** The sum of the counts of the classes. */
+  protected double m_SumOfClassCounts;
+
+  /** The classes whose means and standard deviations are out of date. */
+  protected boolean [] m_StaleClasses;
+
+  /** Whether the means and standard deviations of any class are out of 
+   * date. */
+  protected boolean m_Stale;
+
   /**
    * Whether to use kernel density estimator rather than normal distribution
    * for numeric attributes
@@ -231,10 +284,17 @@ implements OptionHandler, WeightedInstancesHandler,
     }
 
     // Reserve space for the distributions
-    m_Distributions = new Estimator[m_Instances.numAttributes() - 1]
-      [m_Instances.numClasses()];
-    m_ClassDistribution = new DiscreteEstimator(m_Instances.numClasses(), 
-                                                true);
+    if (m_UseKernelEstimator) {
+      m_Distributions = new Estimator[m_Instances.numAttributes() - 1]
+	[m_Instances.numClasses()];
+      m_ClassDistribution = new DiscreteEstimator(m_Instances.numClasses(), 
+						  true);
+    } else {
+      m_Distributions = null;
+      m_ClassDistribution = null;
+    }
+    m_SumOfWeights = null;
+    double [] precisions = new double[m_Instances.numAttributes() - 1];
     int attIndex = 0;
     Enumeration enu = m_Instances.enumerateAttributes();
     while (enu.hasMoreElements()) {
@@ -267,7 +327,16 @@ implements OptionHandler, WeightedInstancesHandler,
 	  }
 	}
       }
+      precisions[attIndex] = numPrecision;
 
+      if (!m_UseKernelEstimator) {
+	if ((attribute.type() != Attribute.NUMERIC) 
+	    && (attribute.type() != Attribute.NOMINAL)) {
+	  throw new Exception("Attribute type unknown to NaiveBayes");
+	}
+	attIndex++;
+	continue;
+      }
 
       for (int j = 0; j < m_Instances.numClasses(); j++) {
 	switch (attribute.type()) {
@@ -291,18 +360,205 @@ implements OptionHandler, WeightedInstancesHandler,
       attIndex++;
     }
 
-    // Compute counts
-    Enumeration enumInsts = m_Instances.enumerateInstances();
-    while (enumInsts.hasMoreElements()) {
-      Instance instance = 
-	(Instance) enumInsts.nextElement();
-      updateClassifier(instance);
+    if (!m_UseKernelEstimator) {
+      initTables(precisions);
     }
 
+    // Compute counts
+    updateClassifier(m_Instances);
+
     // Save space
     m_Instances = new Instances(m_Instances, 0);
   }
 
+  /**
+   * Reserves the tables that hold the model, for the attributes of 
+   * m_Instances.
+   *
+   * @param precisions the precisions of the numeric attributes
+   */
+  protected void initTables(double [] precisions) {
+
+    int numAtts = m_Instances.numAttributes() - 1;
+    m_AttIndices = new int[numAtts];
+    m_CountOffsets = new int[numAtts];
+    int numCounts = 0;
+    int attIndex = 0;
+    Enumeration enu = m_Instances.enumerateAttributes();
+    while (enu.hasMoreElements()) {
+      Attribute attribute = (Attribute) enu.nextElement();
+      m_AttIndices[attIndex] = attribute.index();
+      if (attribute.isNominal()) {
+	m_CountOffsets[attIndex] = numCounts;
+	numCounts += attribute.numValues() * m_NumClasses;
+      } else {
+	m_CountOffsets[attIndex] = -1;
+      }
+      attIndex++;
+    }
+
+    m_Counts = new double[numCounts];
+    Arrays.fill(m_Counts, 1);
+    m_SumOfWeights = new double[numAtts * m_NumClasses];
+    m_SumOfValues = new double[numAtts * m_NumClasses];
+    m_SumOfValuesSq = new double[numAtts * m_NumClasses];
+    m_Means = new double[numAtts * m_NumClasses];
+    m_StdDevs = new double[numAtts * m_NumClasses];
+    m_Precisions = precisions;
+    for (int i = 0; i < numAtts; i++) {
+      for (int j = 0; j < m_NumClasses; j++) {
+	if (m_CountOffsets[i] >= 0) {
+	  m_SumOfWeights[i * m_NumClasses + j] = 
+	    m_Instances.attribute(m_AttIndices[i]).numValues();
+	} else {
+	  // Allow at most 3 sd's within one interval
+	  m_StdDevs[i * m_NumClasses + j] = precisions[i] / (2 * 3);
+	}
+      }
+    }
+    m_ClassCounts = new double[m_NumClasses];
+    Arrays.fill(m_ClassCounts, 1);
+    m_SumOfClassCounts = m_NumClasses;
+    m_StaleClasses = new boolean[m_NumClasses];
+    m_Stale = false;
+  }
+
+  /**
+   * Updates the classifier with the given instances. Unless kernel 
+   * estimators are used, this only adds the instances to the tables of 
+   * counts and sums, and the means and standard deviations are updated
+   * once before the next prediction.
+   *
+   * @param instances the new training instances to include in the model 
+   * @exception Exception if the instances could not be incorporated in
+   * the model.
+   */
+  public void updateClassifier(Instances instances) throws Exception {
+
+    if (m_SumOfWeights == null) {
+      for (int i = 0; i < instances.numInstances(); i++) {
+	updateClassifier(instances.instance(i));
+      }
+      return;
+    }
+
+    for (int i = 0; i < instances.numInstances(); i++) {
+      addToTables(instances.instance(i));
+    }
+    m_Distributions = null;
+    m_ClassDistribution = null;
+  }
+
+  /**
+   * Adds the given instance to the tables of counts and sums.
+   *
+   * @param instance the instance to add
+   */
+  protected void addToTables(Instance instance) {
+
+    if (instance.classIsMissing()) {
+      return;
+    }
+    int numClasses = m_NumClasses;
+    int classIndex = (int) instance.classValue();
+    double weight = instance.weight();
+    for (int i = 0; i < m_AttIndices.length; i++) {
+      double value = instance.value(m_AttIndices[i]);
+      if (Instance.isMissingValue(value)) {
+	continue;
+      }
+      int pos = i * numClasses + classIndex;
+      int offset = m_CountOffsets[i];
+      if (offset >= 0) {
+	m_Counts[offset + (int) value * numClasses + classIndex] += weight;
+	m_SumOfWeights[pos] += weight;
+      } else if (weight != 0) {
+	// same rounding as NormalEstimator
+	double precision = m_Precisions[i];
+	value = Math.rint(value / precision) * precision;
+	m_SumOfWeights[pos] += weight;
+	m_SumOfValues[pos] += value * weight;
+	m_SumOfValuesSq[pos] += value * value * weight;
+      }
+    }
+    m_ClassCounts[classIndex] += weight;
+    m_SumOfClassCounts += weight;
+    m_StaleClasses[classIndex] = true;
+    m_Stale = true;
+  }
+
+  /**
+   * Updates the means and standard deviations of the numeric attributes 
+   * for the classes that have seen new instances, in the same way as 
+   * NormalEstimator does.
+   */
+  protected synchronized void updateStatistics() {
+
+    if (!m_Stale) {
+      return;
+    }
+    for (int j = 0; j < m_NumClasses; j++) {
+      if (!m_StaleClasses[j]) {
+	continue;
+      }
+      for (int i = 0; i < m_CountOffsets.length; i++) {
+	int pos = i * m_NumClasses + j;
+	if ((m_CountOffsets[i] >= 0) || (m_SumOfWeights[pos] <= 0)) {
+	  continue;
+	}
+	m_Means[pos] = m_SumOfValues[pos] / m_SumOfWeights[pos];
+	double stdDev = Math.sqrt(Math.abs(m_SumOfValuesSq[pos]
+					   - m_Means[pos] * m_SumOfValues[pos])
+				  / m_SumOfWeights[pos]);
+	// If the stdDev ~= 0, we really have no idea of scale yet, 
+	// so stick with the default. Otherwise...
+	if (stdDev > 1e-10) {
+	  m_StdDevs[pos] = Math.max(m_Precisions[i] / (2 * 3), stdDev);
+	}
+      }
+      m_StaleClasses[j] = false;
+    }
+    m_Stale = false;
+  }
+
+  /**
+   * Creates the estimators from the tables, if they are out of date, for
+   * displaying the model.
+   */
+  protected void updateEstimators() {
+
+    if ((m_SumOfWeights == null) || (m_Distributions != null)) {
+      return;
+    }
+    Estimator [][] distributions = 
+      new Estimator[m_AttIndices.length][m_NumClasses];
+    for (int i = 0; i < m_AttIndices.length; i++) {
+      for (int j = 0; j < m_NumClasses; j++) {
+	int pos = i * m_NumClasses + j;
+	if (m_CountOffsets[i] >= 0) {
+	  int numValues = m_Instances.attribute(m_AttIndices[i]).numValues();
+	  DiscreteEstimator d = new DiscreteEstimator(numValues, false);
+	  for (int k = 0; k < numValues; k++) {
+	    d.addValue(k, m_Counts[m_CountOffsets[i] + k * m_NumClasses + j]);
+	  }
+	  distributions[i][j] = d;
+	} else {
+	  NormalEstimator n = new NormalEstimator(m_Precisions[i]);
+	  n.addSums(m_SumOfWeights[pos], m_SumOfValues[pos], 
+		    m_SumOfValuesSq[pos]);
+	  distributions[i][j] = n;
+	}
+      }
+    }
+    DiscreteEstimator classDistribution = 
+      new DiscreteEstimator(m_NumClasses, false);
+    for (int j = 0; j < m_NumClasses; j++) {
+      classDistribution.addValue(j, m_ClassCounts[j]);
+    }
+    m_ClassDistribution = classDistribution;
+    m_Distributions = distributions;
+  }
+
 
   /**
    * Updates the classifier with the given instance.
@@ -313,6 +569,12 @@ implements OptionHandler, WeightedInstancesHandler,
    */
   public void updateClassifier(Instance instance) throws Exception {
 
+    if (m_SumOfWeights != null) {
+      addToTables(instance);
+      m_Distributions = null;
+      m_ClassDistribution = null;
+      return;
+    }
     if (!instance.classIsMissing()) {
       Enumeration enumAtts = m_Instances.enumerateAttributes();
       int attIndex = 0;
@@ -341,31 +603,72 @@ implements OptionHandler, WeightedInstancesHandler,
   public double [] distributionForInstance(Instance instance) 
     throws Exception { 
 
+    double [] probs = new double[m_NumClasses];
+    distributionForInstance(instance, probs);
+    return probs;
+  }
+
+  /**
+   * Calculates the class membership probabilities for all instances of
+   * the given set.
+   *
+   * @param data the instances to be classified
+   * @param dists the array to store the distributions in
+   * @exception Exception if there is a problem generating the predictions
+   */
+  public void distributionsForInstances(Instances data, double[][] dists)
+    throws Exception {
+
+    for (int i = 0; i < data.numInstances(); i++) {
+      distributionForInstance(data.instance(i), 
+                              distributionRow(dists, i, m_NumClasses));
+    }
+  }
+
+  /**
+   * Calculates the class membership probabilities for the given test 
+   * instance into the given array.
+   *
+   * @param instance the instance to be classified
+   * @param probs the array to store the distribution in
+   * @exception Exception if there is a problem generating the prediction
+   */
+  protected void distributionForInstance(Instance instance, double[] probs)
+    throws Exception {
+
     if (m_UseDiscretization) {
       m_Disc.input(instance);
       instance = m_Disc.output();
     }
-    double [] probs = new double[m_NumClasses];
+    if (m_SumOfWeights != null) {
+      distributionFromTables(instance, probs);
+      return;
+    }
     for (int j = 0; j < m_NumClasses; j++) {
       probs[j] = m_ClassDistribution.getProbability(j);
     }
-    Enumeration enumAtts = instance.enumerateAttributes();
     int attIndex = 0;
-    while (enumAtts.hasMoreElements()) {
-      Attribute attribute = (Attribute) enumAtts.nextElement();
-      if (!instance.isMissing(attribute)) {
+    for (int i = 0; i < instance.numAttributes(); i++) {
+      if (i == instance.classIndex()) {
+        continue;
+      }
+      if (!instance.isMissing(i)) {
+        double value = instance.value(i);
+        double weight = m_Instances.attribute(attIndex).weight();
 	double temp, max = 0;
 	for (int j = 0; j < m_NumClasses; j++) {
-	  temp = Math.max(1e-75, Math.pow(m_Distributions[attIndex][j].
-                                          getProbability(instance.value(attribute)), 
-                                          m_Instances.attribute(attIndex).weight()));
+          temp = m_Distributions[attIndex][j].getProbability(value);
+          if (weight != 1) {
+            temp = Math.pow(temp, weight);
+          }
+	  temp = Math.max(1e-75, temp);
 	  probs[j] *= temp;
 	  if (probs[j] > max) {
 	    max = probs[j];
 	  }
 	  if (Double.isNaN(probs[j])) {
 	    throw new Exception("NaN returned from estimator for attribute "
-                                + attribute.name() + ":\n"
+                                + instance.attribute(i).name() + ":\n"
                                 + m_Distributions[attIndex][j].toString());
 	  }
 	}
@@ -380,7 +683,80 @@ implements OptionHandler, WeightedInstancesHandler,
 
     // Display probabilities
     Utils.normalize(probs);
-    return probs;
+  }
+
+  /**
+   * Calculates the class membership probabilities for the given test 
+   * instance from the tables, with the same arithmetic as the estimators.
+   *
+   * @param instance the instance to be classified
+   * @param probs the array to store the distribution in
+   * @exception Exception if there is a problem generating the prediction
+   */
+  protected void distributionFromTables(Instance instance, double[] probs)
+    throws Exception {
+
+    updateStatistics();
+    int numClasses = m_NumClasses;
+    for (int j = 0; j < numClasses; j++) {
+      probs[j] = (m_SumOfClassCounts == 0) 
+	? 0 : m_ClassCounts[j] / m_SumOfClassCounts;
+    }
+    double [] temps = new double[numClasses];
+    for (int i = 0; i < m_AttIndices.length; i++) {
+      double value = instance.value(m_AttIndices[i]);
+      if (Instance.isMissingValue(value)) {
+	continue;
+      }
+      int pos = i * numClasses;
+      int offset = m_CountOffsets[i];
+      if (offset >= 0) {
+	offset += (int) value * numClasses;
+	for (int j = 0; j < numClasses; j++) {
+	  double sum = m_SumOfWeights[pos + j];
+	  temps[j] = (sum == 0) ? 0 : m_Counts[offset + j] / sum;
+	}
+      } else {
+	double precision = m_Precisions[i];
+	value = Math.rint(value / precision) * precision;
+	for (int j = 0; j < numClasses; j++) {
+	  double zLower = (value - m_Means[pos + j] - (precision / 2)) 
+	    / m_StdDevs[pos + j];
+	  double zUpper = (value - m_Means[pos + j] + (precision / 2)) 
+	    / m_StdDevs[pos + j];
+	  temps[j] = Statistics.normalProbability(zUpper) 
+	    - Statistics.normalProbability(zLower);
+	}
+      }
+
+      double weight = m_Instances.attribute(i).weight();
+      double temp, max = 0;
+      for (int j = 0; j < numClasses; j++) {
+	temp = temps[j];
+	if (weight != 1) {
+	  temp = Math.pow(temp, weight);
+	}
+	temp = Math.max(1e-75, temp);
+	probs[j] *= temp;
+	if (probs[j] > max) {
+	  max = probs[j];
+	}
+	if (Double.isNaN(probs[j])) {
+	  updateEstimators();
+	  throw new Exception("NaN returned from estimator for attribute "
+			      + m_Instances.attribute(m_AttIndices[i]).name() 
+			      + ":\n" + m_Distributions[i][j].toString());
+	}
+      }
+      if ((max > 0) && (max < 1e-75)) { // Danger of probability underflow
+	for (int j = 0; j < numClasses; j++) {
+	  probs[j] *= 1e75;
+	}
+      }
+    }
+
+    // Display probabilities
+    Utils.normalize(probs);
   }
 
   /**
@@ -479,6 +855,7 @@ implements OptionHandler, WeightedInstancesHandler,
    * @return a description of the classifier as a string.
    */
   public String toString() {
+    updateEstimators();
     if (m_displayModelInOldFormat) {
       return toStringOriginal();
     }
@@ -781,6 +1158,7 @@ implements OptionHandler, WeightedInstancesHandler,
    */
   protected String toStringOriginal() {
     
+    updateEstimators();
     StringBuffer text = new StringBuffer();
 
     text.append("Naive Bayes Classifier");
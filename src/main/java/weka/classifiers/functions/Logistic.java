@@ -30,6 +30,8 @@ import weka.core.Optimization;
 import weka.core.Option;
 import weka.core.OptionHandler;
 import weka.core.RevisionUtils;
+import weka.core.SparseInstance;
+import weka.core.SparseVectorMath;
 import weka.core.TechnicalInformation;
 import weka.core.TechnicalInformationHandler;
 import weka.core.Utils;
@@ -126,6 +128,21 @@ public class Logistic extends Classifier
     
   /** The data saved as a matrix */
   protected double [][] m_Data;
+
+  /** The predictors (1 to m_NumPredictors) of the non-zero values of each
+   * instance, if the data is sparse (m_Data is null then) */
+  protected int [][] m_SparseIndices;
+
+  /** The non-zero values of each instance, not standardized */
+  protected double [][] m_SparseValues;
+
+  /** The means subtracted from the predictors when standardizing, 0 for
+   * predictors that are not standardized */
+  protected double [] m_SparseMeans;
+
+  /** The factors the predictors are multiplied with when standardizing, 1
+   * for predictors that are not standardized */
+  protected double [] m_SparseScales;
     
   /** The number of attributes in the model */
   protected int m_NumPredictors;
@@ -403,6 +420,9 @@ public class Logistic extends Classifier
      * @return the value of the objective function 
      */
     protected double objectiveFunction(double[] x){
+      if (m_SparseValues != null)
+	return sparseObjectiveFunction(x);
+
       double nll = 0; // -LogLikelihood
       int dim = m_NumPredictors+1; // Number of variables per class
 	    
@@ -445,6 +465,9 @@ public class Logistic extends Classifier
      * @return the gradient vector 
      */
     protected double[] evaluateGradient(double[] x){
+      if (m_SparseValues != null)
+	return sparseEvaluateGradient(x);
+
       double[] grad = new double[x.length];
       int dim = m_NumPredictors+1; // Number of variables per class
 	    
@@ -492,6 +515,140 @@ public class Logistic extends Classifier
 	    
       return grad;
     }
+
+    /**
+     * Computes the standardized linear predictors of an instance of the
+     * sparse data: the standardization is folded into the scaled
+     * coefficients, so that only the non-zero values are visited.
+     *
+     * @param i the index of the instance
+     * @param scaled the coefficients multiplied with the scales
+     * @param shift the intercepts minus the contributions of the means
+     * @param exp the array for the linear predictors
+     */
+    private void sparsePredictors(int i, double[] scaled, double[] shift, 
+				  double[] exp){
+      int dim = m_NumPredictors+1;
+      for(int offset=0; offset<m_NumClasses-1; offset++)
+	exp[offset] = shift[offset] 
+	  + SparseVectorMath.dotProduct(m_SparseIndices[i], m_SparseValues[i],
+					scaled, offset * dim);
+    }
+
+    /**
+     * Multiplies the coefficients with the scales of the standardization
+     * and computes the intercepts minus the contributions of the means.
+     *
+     * @param x the current values of variables
+     * @param scaled the array for the scaled coefficients
+     * @param shift the array for the shifted intercepts
+     */
+    private void scaleCoefficients(double[] x, double[] scaled, 
+				   double[] shift){
+      int dim = m_NumPredictors+1;
+      for(int offset=0; offset<m_NumClasses-1; offset++){
+	int index = offset * dim;
+	shift[offset] = x[index];
+	for(int j=1; j<dim; j++){
+	  scaled[index + j] = x[index + j] * m_SparseScales[j];
+	  shift[offset] -= scaled[index + j] * m_SparseMeans[j];
+	}
+      }
+    }
+
+    /** 
+     * Evaluate objective function on sparse data
+     * @param x the current values of variables
+     * @return the value of the objective function 
+     */
+    private double sparseObjectiveFunction(double[] x){
+      double nll = 0; // -LogLikelihood
+      int dim = m_NumPredictors+1; // Number of variables per class
+      double[] scaled = new double[x.length];
+      double[] shift = new double[m_NumClasses-1];
+      double[] exp = new double[m_NumClasses-1];
+      scaleCoefficients(x, scaled, shift);
+	    
+      for(int i=0; i<cls.length; i++){ // ith instance
+	sparsePredictors(i, scaled, shift, exp);
+	double max = exp[Utils.maxIndex(exp)];
+	double denom = Math.exp(-max);
+	double num;
+	if (cls[i] == m_NumClasses - 1) { // Class of this instance
+	  num = -max;
+	} else {
+	  num = exp[cls[i]] - max;
+	}
+	for(int offset=0; offset<m_NumClasses-1; offset++){
+	  denom += Math.exp(exp[offset] - max);
+	}
+		
+	nll -= weights[i]*(num - Math.log(denom)); // Weighted NLL
+      }
+	    
+      // Ridge: note that intercepts NOT included
+      for(int offset=0; offset<m_NumClasses-1; offset++){
+	for(int r=1; r<dim; r++)
+	  nll += m_Ridge*x[offset*dim+r]*x[offset*dim+r];
+      }
+	    
+      return nll;
+    }
+
+    /** 
+     * Evaluate Jacobian vector on sparse data. The gradient with respect to
+     * a standardized predictor is the scale times the sum of the per-instance
+     * terms times the raw values minus the mean times the sum of the terms,
+     * so the raw values are accumulated sparsely.
+     * @param x the current values of variables
+     * @return the gradient vector 
+     */
+    private double[] sparseEvaluateGradient(double[] x){
+      double[] grad = new double[x.length];
+      int dim = m_NumPredictors+1; // Number of variables per class
+      double[] scaled = new double[x.length];
+      double[] shift = new double[m_NumClasses-1];
+      double[] num = new double[m_NumClasses-1];
+      double[] sumTerms = new double[m_NumClasses-1];
+      scaleCoefficients(x, scaled, shift);
+	    
+      for(int i=0; i<cls.length; i++){ // ith instance
+	sparsePredictors(i, scaled, shift, num);
+
+	double max = num[Utils.maxIndex(num)];
+	double denom = Math.exp(-max); // Denominator of [-log(1+sum(exp))]'
+	for(int offset=0; offset<m_NumClasses-1; offset++){
+	  num[offset] = Math.exp(num[offset] - max);
+	  denom += num[offset];
+	}
+	Utils.normalize(num, denom);
+		
+	for(int offset=0; offset<m_NumClasses-1; offset++){ // Which part of x
+	  double term = weights[i] * num[offset];
+	  if (cls[i] == offset)
+	    term -= weights[i];
+	  sumTerms[offset] += term;
+	  SparseVectorMath.axpy(term, m_SparseIndices[i], m_SparseValues[i],
+				grad, offset * dim);
+	}
+      }
+
+      for(int offset=0; offset<m_NumClasses-1; offset++){
+	int index = offset * dim;
+	grad[index] = sumTerms[offset];
+	for(int r=1; r<dim; r++)
+	  grad[index + r] = m_SparseScales[r] 
+	    * (grad[index + r] - m_SparseMeans[r] * sumTerms[offset]);
+      }
+	    
+      // Ridge: note that intercepts NOT included
+      for(int offset=0; offset<m_NumClasses-1; offset++){
+	for(int r=1; r<dim; r++)
+	  grad[offset*dim+r] += 2*m_Ridge*x[offset*dim+r];
+      }
+	    
+      return grad;
+    }
     
     /**
      * Returns the revision string.
@@ -566,7 +723,18 @@ public class Logistic extends Classifier
     int nR = m_NumPredictors = train.numAttributes() - 1;
     int nC = train.numInstances();
 	
-    m_Data = new double[nC][nR + 1];               // Data values
+    // Sparse data stays sparse: it is standardized in the objective
+    // function instead of in the data matrix
+    boolean sparse = (nC > 0);
+    for (int i = 0; i < nC && sparse; i++)
+      sparse = (train.instance(i) instanceof SparseInstance);
+    if (sparse) {
+      m_Data = null;
+      m_SparseIndices = new int[nC][];
+      m_SparseValues = new double[nC][];
+    } else {
+      m_Data = new double[nC][nR + 1];             // Data values
+    }
     int [] Y  = new int[nC];                       // Class labels
     double [] xMean= new double[nR + 1];           // Attribute means
     double [] xSD  = new double[nR + 1];           // Attribute stddev's
@@ -586,15 +754,38 @@ public class Logistic extends Classifier
       weights[i] = current.weight();     // Dealing with weights
       totWeights += weights[i];
 	    
-      m_Data[i][0] = 1;
-      int j = 1;
-      for (int k = 0; k <= nR; k++) {
-	if (k != m_ClassIndex) {
-	  double x = current.value(k);
-	  m_Data[i][j] = x;
-	  xMean[j] += weights[i]*x;
-	  xSD[j] += weights[i]*x*x;
-	  j++;
+      if (sparse) {
+	int n = 0;
+	for (int p = 0; p < current.numValues(); p++) {
+	  if ((current.index(p) != m_ClassIndex) && (current.valueSparse(p) != 0))
+	    n++;
+	}
+	m_SparseIndices[i] = new int[n];
+	m_SparseValues[i] = new double[n];
+	n = 0;
+	for (int p = 0; p < current.numValues(); p++) {
+	  int k = current.index(p);
+	  double x = current.valueSparse(p);
+	  if ((k != m_ClassIndex) && (x != 0)) {
+	    int j = (k < m_ClassIndex) ? k + 1 : k;
+	    m_SparseIndices[i][n] = j;
+	    m_SparseValues[i][n] = x;
+	    xMean[j] += weights[i]*x;
+	    xSD[j] += weights[i]*x*x;
+	    n++;
+	  }
+	}
+      } else {
+	m_Data[i][0] = 1;
+	int j = 1;
+	for (int k = 0; k <= nR; k++) {
+	  if (k != m_ClassIndex) {
+	    double x = current.value(k);
+	    m_Data[i][j] = x;
+	    xMean[j] += weights[i]*x;
+	    xSD[j] += weights[i]*x*x;
+	    j++;
+	  }
 	}
       }
 	    
@@ -628,10 +819,23 @@ public class Logistic extends Classifier
     }
 	
     // Normalise input data 
-    for (int i = 0; i < nC; i++) {
+    if (sparse) {
+      m_SparseMeans = new double[nR + 1];
+      m_SparseScales = new double[nR + 1];
       for (int j = 0; j <= nR; j++) {
 	if (xSD[j] != 0) {
-	  m_Data[i][j] = (m_Data[i][j] - xMean[j]) / xSD[j];
+	  m_SparseMeans[j] = xMean[j];
+	  m_SparseScales[j] = 1 / xSD[j];
+	} else {
+	  m_SparseScales[j] = 1;
+	}
+      }
+    } else {
+      for (int i = 0; i < nC; i++) {
+	for (int j = 0; j <= nR; j++) {
+	  if (xSD[j] != 0) {
+	    m_Data[i][j] = (m_Data[i][j] - xMean[j]) / xSD[j];
+	  }
 	}
       }
     }
@@ -683,6 +887,10 @@ public class Logistic extends Classifier
 
     // Don't need data matrix anymore
     m_Data = null;
+    m_SparseIndices = null;
+    m_SparseValues = null;
+    m_SparseMeans = null;
+    m_SparseScales = null;
 	    
     // Convert coefficients back to non-normalized attribute units
     for(int i=0; i < nK; i++){
@@ -713,6 +921,12 @@ public class Logistic extends Classifier
     instance = m_AttFilter.output();
     m_NominalToBinary.input(instance);
     instance = m_NominalToBinary.output();
+
+    if (instance instanceof SparseInstance) {
+      double[] distribution = new double[m_NumClasses];
+      evaluateProbability(instance, new double[m_NumClasses], distribution);
+      return distribution;
+    }
 	
     // Extract the predictor columns into an array
     double [] instDat = new double [m_NumPredictors + 1];
@@ -728,6 +942,43 @@ public class Logistic extends Classifier
     return distribution;
   }
 
+  /**
+   * Computes the distributions for all instances of the given set
+   *
+   * @param data the instances for which the distributions are computed
+   * @param dists the array to store the distributions in
+   * @throws Exception if the distributions can't be computed successfully
+   */
+  public void distributionsForInstances(Instances data, double[][] dists) 
+    throws Exception {
+
+    double [] instDat = new double [m_NumPredictors + 1];
+    double [] v = new double [m_NumClasses];
+    instDat[0] = 1;
+    for (int i = 0; i < data.numInstances(); i++) {
+      Instance instance = data.instance(i);
+      m_ReplaceMissingValues.input(instance);
+      instance = m_ReplaceMissingValues.output();
+      m_AttFilter.input(instance);
+      instance = m_AttFilter.output();
+      m_NominalToBinary.input(instance);
+      instance = m_NominalToBinary.output();
+
+      if (instance instanceof SparseInstance) {
+	evaluateProbability(instance, v, distributionRow(dists, i, m_NumClasses));
+	continue;
+      }
+
+      int j = 1;
+      for (int k = 0; k <= m_NumPredictors; k++) {
+	if (k != m_ClassIndex) {
+	  instDat[j++] = instance.value(k);
+	}
+      }
+      evaluateProbability(instDat, v, distributionRow(dists, i, m_NumClasses));
+    }
+  }
+
   /**
    * Compute the posterior distribution using optimized parameter values
    * and the testing instance.
@@ -738,13 +989,66 @@ public class Logistic extends Classifier
     double[] prob = new double[m_NumClasses],
       v = new double[m_NumClasses];
 
+    evaluateProbability(data, v, prob);
+    return prob;
+  }
+
+  /**
+   * Compute the posterior distribution using optimized parameter values
+   * and the testing instance, into the given array.
+   * @param data the testing instance
+   * @param v work array for the log-posterior, of length m_NumClasses
+   * @param prob the array to store the posterior probability distribution in
+   */ 
+  private void evaluateProbability(double[] data, double[] v, double[] prob){
+
     // Log-posterior before normalizing
     for(int j = 0; j < m_NumClasses-1; j++){
+      v[j] = 0;
       for(int k = 0; k <= m_NumPredictors; k++){
 	v[j] += m_Par[k][j] * data[k];
       }
     }
     v[m_NumClasses-1] = 0;
+
+    normalizePosterior(v, prob);
+  } 
+
+  /**
+   * Compute the posterior distribution using optimized parameter values
+   * and the non-zero values of a sparse testing instance.
+   * @param instance the testing instance
+   * @param v work array for the log-posterior, of length m_NumClasses
+   * @param prob the array to store the posterior probability distribution in
+   */ 
+  private void evaluateProbability(Instance instance, double[] v, 
+				   double[] prob){
+
+    // Log-posterior before normalizing
+    for(int j = 0; j < m_NumClasses-1; j++){
+      v[j] = m_Par[0][j];
+    }
+    for(int p = 0; p < instance.numValues(); p++){
+      int k = instance.index(p);
+      if (k != m_ClassIndex) {
+	double[] par = m_Par[(k < m_ClassIndex) ? k + 1 : k];
+	double x = instance.valueSparse(p);
+	for(int j = 0; j < m_NumClasses-1; j++){
+	  v[j] += par[j] * x;
+	}
+      }
+    }
+    v[m_NumClasses-1] = 0;
+
+    normalizePosterior(v, prob);
+  } 
+
+  /**
+   * Turns the log-posterior into the posterior probability distribution.
+   * @param v the log-posterior
+   * @param prob the array to store the posterior probability distribution in
+   */ 
+  private void normalizePosterior(double[] v, double[] prob){
 	
     // Do so to avoid scaling problems
     for(int m=0; m < m_NumClasses; m++){
@@ -753,8 +1057,6 @@ public class Logistic extends Classifier
 	sum += Math.exp(v[n] - v[m]);
       prob[m] = 1 / (sum + Math.exp(-v[m]));
     }
-	
-    return prob;
   } 
 
   /**
@@ -52,8 +52,15 @@ import weka.filters.unsupervised.attribute.Standardize;
 
 import java.io.Serializable;
 import java.util.Enumeration;
+import java.util.LinkedList;
 import java.util.Random;
 import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 /**
  <!-- globalinfo-start -->
@@ -155,6 +162,10 @@ import java.util.Vector;
  * <pre> -W &lt;double&gt;
  *  The random number seed. (default 1)</pre>
  * 
+ * <pre> -num-slots &lt;num&gt;
+ *  Number of execution slots for training the pairwise
+ *  classifiers. (default 1 - i.e. no parallelism)</pre>
+ * 
  * <pre> -K &lt;classname and parameters&gt;
  *  The Kernel to use.
  *  (default: weka.classifiers.functions.supportVector.PolyKernel)</pre>
@@ -172,10 +183,15 @@ import java.util.Vector;
  *  (default: checks on)</pre>
  * 
  * <pre> -C &lt;num&gt;
- *  The size of the cache (a prime number), 0 for full cache and 
- *  -1 to turn it off.
+ *  0 for full cache, -1 to turn it off and any positive
+ *  value for a row cache. The value only selects the mode,
+ *  the size of the row cache is given with -M.
  *  (default: 250007)</pre>
  * 
+ * <pre> -M &lt;num&gt;
+ *  The memory budget of the row cache in megabytes.
+ *  (default: 40)</pre>
+ * 
  * <pre> -E &lt;num&gt;
  *  The Exponent to use.
  *  (default: 1.0)</pre>
@@ -1192,6 +1208,9 @@ public class SMO
   /** The random number seed  */
   protected int m_randomSeed = 1;
 
+  /** The number of threads to use for training the pairwise classifiers */
+  protected int m_executionSlots = 1;
+
   /** the kernel to use */
   protected Kernel m_kernel = new PolyKernel();
   
@@ -1332,26 +1351,79 @@ public class SMO
       subsets[i].compactify();
     }
 
-    // Build the binary classifiers
+    // Build the binary classifiers. The training sets are shuffled in the
+    // same order as without threads, so that the classifiers are the same.
     Random rand = new Random(m_randomSeed);
     m_classifiers = new BinarySMO[insts.numClasses()][insts.numClasses()];
-    for (int i = 0; i < insts.numClasses(); i++) {
-      for (int j = i + 1; j < insts.numClasses(); j++) {
-	m_classifiers[i][j] = new BinarySMO();
-	m_classifiers[i][j].setKernel(Kernel.makeCopy(getKernel()));
-	Instances data = new Instances(insts, insts.numInstances());
-	for (int k = 0; k < subsets[i].numInstances(); k++) {
-	  data.add(subsets[i].instance(k));
-	}
-	for (int k = 0; k < subsets[j].numInstances(); k++) {
-	  data.add(subsets[j].instance(k));
+    ThreadPoolExecutor executorPool = null;
+    if ((m_executionSlots > 1) && (insts.numClasses() > 2)) {
+      executorPool = new ThreadPoolExecutor(m_executionSlots,
+	  m_executionSlots, 120, TimeUnit.SECONDS,
+	  new LinkedBlockingQueue<Runnable>());
+    }
+    // at most maxPending pairwise training sets are held by queued tasks
+    int maxPending = 2 * m_executionSlots;
+    LinkedList<Future<Object>> pending = new LinkedList<Future<Object>>();
+    try {
+      for (int i = 0; i < insts.numClasses(); i++) {
+	for (int j = i + 1; j < insts.numClasses(); j++) {
+	  m_classifiers[i][j] = new BinarySMO();
+	  m_classifiers[i][j].setKernel(Kernel.makeCopy(getKernel()));
+	  Instances data = new Instances(insts, insts.numInstances());
+	  for (int k = 0; k < subsets[i].numInstances(); k++) {
+	    data.add(subsets[i].instance(k));
+	  }
+	  for (int k = 0; k < subsets[j].numInstances(); k++) {
+	    data.add(subsets[j].instance(k));
+	  }
+	  data.compactify();
+	  data.randomize(rand);
+	  if (executorPool == null) {
+	    m_classifiers[i][j].buildClassifier(data, i, j, 
+						m_fitLogisticModels,
+						m_numFolds, m_randomSeed);
+	  } else {
+	    final BinarySMO smo = m_classifiers[i][j];
+	    final Instances train = data;
+	    final int cl1 = i;
+	    final int cl2 = j;
+	    if (pending.size() >= maxPending) {
+	      waitFor(pending.removeFirst());
+	    }
+	    pending.addLast(executorPool.submit(new Callable<Object>() {
+	      public Object call() throws Exception {
+		smo.buildClassifier(train, cl1, cl2, m_fitLogisticModels,
+				    m_numFolds, m_randomSeed);
+		return null;
+	      }
+	    }));
+	  }
 	}
-	data.compactify();
-	data.randomize(rand);
-	m_classifiers[i][j].buildClassifier(data, i, j, 
-					    m_fitLogisticModels,
-					    m_numFolds, m_randomSeed);
       }
+      while (!pending.isEmpty()) {
+	waitFor(pending.removeFirst());
+      }
+    } finally {
+      if (executorPool != null) {
+	executorPool.shutdown();
+      }
+    }
+  }
+
+  /**
+   * Waits for the given task to finish.
+   * 
+   * @param future the task to wait for
+   * @throws Exception if the task failed
+   */
+  protected static void waitFor(Future<Object> future) throws Exception {
+    try {
+      future.get();
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof Exception) {
+	throw (Exception) e.getCause();
+      }
+      throw e;
     }
   }
 
@@ -1363,25 +1435,89 @@ public class SMO
    */
   public double[] distributionForInstance(Instance inst) throws Exception {
 
-    // Filter instance
-    if (!m_checksTurnedOff) {
-      m_Missing.input(inst);
-      m_Missing.batchFinished();
-      inst = m_Missing.output();
+    Instance[] insts = filterInstances(new Instance[]{inst});
+    return distributionForFilteredInstance(insts[0]);
+  }
+
+  /**
+   * Estimates class probabilities for all instances of the given set. The
+   * instances are passed through each filter in one go.
+   * 
+   * @param data the instances to compute the probabilities for
+   * @param dists the array to store the probabilities in
+   * @throws Exception in case of an error
+   */
+  public void distributionsForInstances(Instances data, double[][] dists) 
+    throws Exception {
+
+    Instance[] insts = new Instance[data.numInstances()];
+    for (int k = 0; k < insts.length; k++) {
+      insts[k] = data.instance(k);
+    }
+    insts = filterInstances(insts);
+    for (int k = 0; k < insts.length; k++) {
+      double[] dist = distributionForFilteredInstance(insts[k]);
+      System.arraycopy(dist, 0, distributionRow(dists, k, dist.length), 
+		       0, dist.length);
     }
+  }
 
+  /**
+   * Passes the given instances through the filters that have been set up
+   * on the training data.
+   * 
+   * @param insts the instances to filter
+   * @return the filtered instances
+   * @throws Exception in case of an error
+   */
+  private Instance[] filterInstances(Instance[] insts) throws Exception {
+
+    if (!m_checksTurnedOff) {
+      insts = filterInstances(m_Missing, insts);
+    }
     if (m_NominalToBinary != null) {
-      m_NominalToBinary.input(inst);
-      m_NominalToBinary.batchFinished();
-      inst = m_NominalToBinary.output();
+      insts = filterInstances(m_NominalToBinary, insts);
     }
-    
     if (m_Filter != null) {
-      m_Filter.input(inst);
-      m_Filter.batchFinished();
-      inst = m_Filter.output();
+      insts = filterInstances(m_Filter, insts);
     }
-    
+    return insts;
+  }
+
+  /**
+   * Passes the given instances through the given filter, which has 
+   * already been used on the training data.
+   * 
+   * @param filter the filter
+   * @param insts the instances to filter
+   * @return the filtered instances
+   * @throws Exception in case of an error
+   */
+  private Instance[] filterInstances(Filter filter, Instance[] insts) 
+    throws Exception {
+
+    for (int k = 0; k < insts.length; k++) {
+      filter.input(insts[k]);
+    }
+    filter.batchFinished();
+    Instance[] result = new Instance[insts.length];
+    for (int k = 0; k < insts.length; k++) {
+      result[k] = filter.output();
+    }
+    return result;
+  }
+
+  /**
+   * Estimates class probabilities for an instance that has already been
+   * passed through the filters.
+   * 
+   * @param inst the filtered instance
+   * @return the class probabilities
+   * @throws Exception in case of an error
+   */
+  private double[] distributionForFilteredInstance(Instance inst) 
+    throws Exception {
+
     if (!m_fitLogisticModels) {
       double[] result = new double[inst.numClasses()];
       for (int i = 0; i < inst.numClasses(); i++) {
@@ -1624,6 +1760,11 @@ public class SMO
 	"\tThe random number seed. " +
 	"(default 1)",
 	"W", 1, "-W <double>"));
+
+    result.addElement(new Option(
+	"\tNumber of execution slots for training the pairwise\n"
+	+ "\tclassifiers. (default 1 - i.e. no parallelism)",
+	"num-slots", 1, "-num-slots <num>"));
     
     result.addElement(new Option(
 	"\tThe Kernel to use.\n"
@@ -1683,6 +1824,10 @@ public class SMO
    * <pre> -W &lt;double&gt;
    *  The random number seed. (default 1)</pre>
    * 
+   * <pre> -num-slots &lt;num&gt;
+   *  Number of execution slots for training the pairwise
+   *  classifiers. (default 1 - i.e. no parallelism)</pre>
+   * 
    * <pre> -K &lt;classname and parameters&gt;
    *  The Kernel to use.
    *  (default: weka.classifiers.functions.supportVector.PolyKernel)</pre>
@@ -1700,10 +1845,15 @@ public class SMO
    *  (default: checks on)</pre>
    * 
    * <pre> -C &lt;num&gt;
-   *  The size of the cache (a prime number), 0 for full cache and 
-   *  -1 to turn it off.
+   *  0 for full cache, -1 to turn it off and any positive
+   *  value for a row cache. The value only selects the mode,
+   *  the size of the row cache is given with -M.
    *  (default: 250007)</pre>
    * 
+   * <pre> -M &lt;num&gt;
+   *  The memory budget of the row cache in megabytes.
+   *  (default: 40)</pre>
+   * 
    * <pre> -E &lt;num&gt;
    *  The Exponent to use.
    *  (default: 1.0)</pre>
@@ -1761,6 +1911,12 @@ public class SMO
     else
       setRandomSeed(1);
 
+    tmpStr = Utils.getOption("num-slots", options);
+    if (tmpStr.length() != 0)
+      setNumExecutionSlots(Integer.parseInt(tmpStr));
+    else
+      setNumExecutionSlots(1);
+
     tmpStr     = Utils.getOption('K', options);
     tmpOptions = Utils.splitOptions(tmpStr);
     if (tmpOptions.length != 0) {
@@ -1811,6 +1967,11 @@ public class SMO
     result.add("-W");
     result.add("" + getRandomSeed());
 
+    if (getNumExecutionSlots() > 1) {
+      result.add("-num-slots");
+      result.add("" + getNumExecutionSlots());
+    }
+
     result.add("-K");
     result.add("" + getKernel().getClass().getName() + " " + Utils.joinOptions(getKernel().getOptions()));
     
@@ -2081,6 +2242,41 @@ public class SMO
     
     m_randomSeed = newrandomSeed;
   }
+
+  /**
+   * Returns the tip text for this property
+   * 
+   * @return tip text for this property suitable for
+   * displaying in the explorer/experimenter gui
+   */
+  public String numExecutionSlotsTipText() {
+    return "The number of execution slots (threads) to use for "
+      + "training the pairwise classifiers of a multi-class problem.";
+  }
+
+  /**
+   * Sets the number of execution slots (threads) to use for training the
+   * pairwise classifiers.
+   * 
+   * @param slots the number of slots to use
+   * @throws Exception if the number of slots is smaller than 1
+   */
+  public void setNumExecutionSlots(int slots) throws Exception {
+    if (slots <= 0) {
+      throw new Exception("Number of execution slots must be > 0");
+    }
+    m_executionSlots = slots;
+  }
+
+  /**
+   * Gets the number of execution slots (threads) to use for training the
+   * pairwise classifiers.
+   * 
+   * @return the number of slots to use
+   */
+  public int getNumExecutionSlots() {
+    return m_executionSlots;
+  }
   
   /**
    * Prints out the classifier.
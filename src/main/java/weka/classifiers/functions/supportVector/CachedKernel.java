@@ -25,15 +25,18 @@ package weka.classifiers.functions.supportVector;
 import weka.core.Instance;
 import weka.core.Instances;
 import weka.core.Option;
+import weka.core.SparseVectorMath;
 import weka.core.Utils;
 
+import java.util.Arrays;
 import java.util.Enumeration;
 import java.util.Vector;
 
 /**
- * Base class for RBFKernel and PolyKernel that implements a simple LRU.
- * (least-recently-used) cache if the cache size is set to a value > 0.
- * Otherwise it uses a full cache.
+ * Base class for RBFKernel and PolyKernel that implements a row-based LRU
+ * (least-recently-used) cache with a memory budget if the cache size is set
+ * to a value > 0. Otherwise it uses a full cache. The cache can be shared by
+ * several threads.
  * 
  * @author Eibe Frank (eibe@cs.waikato.ac.nz)
  * @author Shane Legg (shane@intelligenesis.net) (sparse vector code)
@@ -55,12 +58,43 @@ public abstract class CachedKernel
   /** Counts the number of kernel cache hits. */
   protected int m_cacheHits;
 
-  /** The size of the cache (a prime number) */
+  /** Counts the number of kernel cache misses. */
+  protected int m_cacheMisses;
+
+  /** The cache mode: 0 for full cache, -1 for none, any positive value
+   * for the row cache */
   protected int m_cacheSize = 250007;
 
-  /** Kernel cache */
-  protected double[] m_storage;
-  protected long[] m_keys;
+  /** The memory budget of the row cache in megabytes */
+  protected double m_cacheMemory = 40;
+
+  /** The cached rows of the kernel matrix, null for rows not in the cache.
+   * Entries not evaluated yet are NaN. */
+  protected double[][] m_rows;
+
+  /** The diagonal of the kernel matrix, NaN for entries not evaluated yet.
+   * It is kept apart from the rows, so that evaluating it does not evict
+   * them. */
+  protected double[] m_diagonal;
+
+  /** The previous (more recently used) row of each cached row, -1 for
+   * none */
+  protected int[] m_prevRow;
+
+  /** The next (less recently used) row of each cached row, -1 for none */
+  protected int[] m_nextRow;
+
+  /** The most recently used row, -1 if the cache is empty */
+  protected int m_firstRow = -1;
+
+  /** The least recently used row, -1 if the cache is empty */
+  protected int m_lastRow = -1;
+
+  /** The number of rows in the cache */
+  protected int m_numRows;
+
+  /** The maximum number of rows that fit into the memory budget */
+  protected int m_maxRows;
 
   /** The kernel matrix if full cache is used (i.e. size is set to 0) */
   protected double[][] m_kernelMatrix;
@@ -68,9 +102,6 @@ public abstract class CachedKernel
   /** The number of instance in the dataset */
   protected int m_numInsts;
 
-  /** number of cache slots in an entry */
-  protected int m_cacheSlots = 4;
-
   /**
    * default constructor - does nothing.
    */
@@ -79,8 +110,8 @@ public abstract class CachedKernel
   }
   
   /**
-   * Initializes the kernel cache. The actual size of the cache in bytes is
-   * (64 * cacheSize).
+   * Initializes the kernel cache. The size of the row cache is set with 
+   * setCacheMemory.
    * 
    * @param data	the data to use
    * @param cacheSize	the cache size
@@ -110,11 +141,17 @@ public abstract class CachedKernel
       result.addElement(en.nextElement());
 
     result.addElement(new Option(
-	"\tThe size of the cache (a prime number), 0 for full cache and \n"
-	+ "\t-1 to turn it off.\n"
+	"\t0 for full cache, -1 to turn it off and any positive\n"
+	+ "\tvalue for a row cache. The value only selects the mode,\n"
+	+ "\tthe size of the row cache is given with -M.\n"
 	+ "\t(default: 250007)",
 	"C", 1, "-C <num>"));
 
+    result.addElement(new Option(
+	"\tThe memory budget of the row cache in megabytes.\n"
+	+ "\t(default: 40)",
+	"M", 1, "-M <num>"));
+
     return result.elements();
   }
 
@@ -133,6 +170,12 @@ public abstract class CachedKernel
     else
       setCacheSize(250007);
     
+    tmpStr = Utils.getOption('M', options);
+    if (tmpStr.length() != 0)
+      setCacheMemory(Double.parseDouble(tmpStr));
+    else
+      setCacheMemory(40);
+    
     super.setOptions(options);
   }
 
@@ -154,6 +197,11 @@ public abstract class CachedKernel
     result.add("-C");
     result.add("" + getCacheSize());
 
+    if (getCacheMemory() != 40) {
+      result.add("-M");
+      result.add("" + getCacheMemory());
+    }
+
     return (String[]) result.toArray(new String[result.size()]);	  
   }
 
@@ -171,7 +219,11 @@ public abstract class CachedKernel
 
   /**
    * Implements the abstract function of Kernel using the cache. This method
-   * uses the evaluate() method to do the actual dot product.
+   * uses the evaluate() method to do the actual dot product. The entries are
+   * cached in rows of the kernel matrix, a row being allocated for id1 when
+   * neither the row of id1 nor the one of id2 holds the entry. The kernel
+   * itself is evaluated outside the lock of the cache, so that several
+   * threads can evaluate at the same time.
    *
    * @param id1 	the index of the first instance in the dataset
    * @param id2 	the index of the second instance in the dataset
@@ -181,16 +233,20 @@ public abstract class CachedKernel
    */
   public double eval(int id1, int id2, Instance inst1) throws Exception {
 		
-    double result = 0;
-    long key = -1;
-    int location = -1;
+    double result;
 
     // we can only cache if we know the indexes and caching is not 
     // disbled (m_cacheSize == -1)
-    if ( (id1 >= 0) && (m_cacheSize != -1) ) {
+    if ( (id1 < 0) || (m_cacheSize == -1) ) {
+      synchronized (this) {
+	m_kernelEvals++;
+      }
+      return evaluate(id1, id2, inst1);
+    }
 
-      // Use full cache?
-      if (m_cacheSize == 0) {
+    // Use full cache?
+    if (m_cacheSize == 0) {
+      synchronized (this) {
 	if (m_kernelMatrix == null) {
 	  m_kernelMatrix = new double[m_data.numInstances()][];
 	  for(int i = 0; i < m_data.numInstances(); i++) {
@@ -202,58 +258,141 @@ public abstract class CachedKernel
 	  }
 	} 
 	m_cacheHits++;
-	result = (id1 > id2) ? m_kernelMatrix[id1][id2] : m_kernelMatrix[id2][id1];
-	return result;
       }
+      return (id1 > id2) ? m_kernelMatrix[id1][id2] : m_kernelMatrix[id2][id1];
+    }
 
-      // Use LRU cache
-      if (id1 > id2) {
-	key = (id1 + ((long) id2 * m_numInsts));
-      } else {
-	key = (id2 + ((long) id1 * m_numInsts));
+    // Use LRU row cache
+    synchronized (this) {
+      if (m_rows == null)
+	initCache();
+      if ((id1 == id2) && !Double.isNaN(m_diagonal[id1])) {
+	m_cacheHits++;
+	return m_diagonal[id1];
       }
-      location = (int) (key % m_cacheSize) * m_cacheSlots;
-      int loc = location;
-      for (int i = 0; i < m_cacheSlots; i++) {
-	long thiskey = m_keys[loc];
-	if (thiskey == 0)
-	  break; // empty slot, so break out of loop early
-	if (thiskey == (key + 1)) {
-	  m_cacheHits++;
-	  // move entry to front of cache (LRU) by swapping
-	  // only if it's not already at the front of cache
-	  if (i > 0) {
-	    double tmps = m_storage[loc];
-	    m_storage[loc] = m_storage[location];
-	    m_keys[loc] = m_keys[location];
-	    m_storage[location] = tmps;
-	    m_keys[location] = thiskey;
-	    return tmps;
-	  } else
-	    return m_storage[loc];
-	}
-	loc++;
+      double[] row = m_rows[id1];
+      if ((row != null) && !Double.isNaN(row[id2])) {
+	m_cacheHits++;
+	touchRow(id1);
+	return row[id2];
       }
+      row = m_rows[id2];
+      if ((row != null) && !Double.isNaN(row[id1])) {
+	m_cacheHits++;
+	touchRow(id2);
+	return row[id1];
+      }
+      m_kernelEvals++;
+      m_cacheMisses++;
     }
 
     result = evaluate(id1, id2, inst1);
 
-    m_kernelEvals++;
-
     // store result in cache
-    if ( (key != -1) && (m_cacheSize != -1) ) {
-      // move all cache slots forward one array index
-      // to make room for the new entry
-      System.arraycopy(m_keys, location, m_keys, location + 1,
-		       m_cacheSlots - 1);
-      System.arraycopy(m_storage, location, m_storage, location + 1,
-		       m_cacheSlots - 1);
-      m_storage[location] = result;
-      m_keys[location] = (key + 1);
+    synchronized (this) {
+      if (m_rows == null)
+	initCache();
+      if (id1 == id2) {
+	m_diagonal[id1] = result;
+	return result;
+      }
+      double[] row = m_rows[id1];
+      if (row == null)
+	row = addRow(id1);
+      else
+	touchRow(id1);
+      row[id2] = result;
+      if (m_rows[id2] != null)
+	m_rows[id2][id1] = result;
     }
     return result;
   }
 
+  /**
+   * Allocates the (empty) row cache, with as many rows as fit into the 
+   * memory budget, but at least two.
+   */
+  protected void initCache() {
+    m_rows     = new double[m_numInsts][];
+    m_diagonal = new double[m_numInsts];
+    Arrays.fill(m_diagonal, Double.NaN);
+    m_prevRow  = new int[m_numInsts];
+    m_nextRow  = new int[m_numInsts];
+    m_firstRow = -1;
+    m_lastRow  = -1;
+    m_numRows  = 0;
+    double rows = m_cacheMemory * 1024 * 1024 / (8.0 * Math.max(1, m_numInsts));
+    m_maxRows  = (int) Math.max(2, Math.min(m_numInsts, rows));
+  }
+
+  /**
+   * Removes a cached row from the LRU list.
+   * 
+   * @param id		the index of the row
+   */
+  protected void unlinkRow(int id) {
+    if (m_prevRow[id] >= 0)
+      m_nextRow[m_prevRow[id]] = m_nextRow[id];
+    else
+      m_firstRow = m_nextRow[id];
+    if (m_nextRow[id] >= 0)
+      m_prevRow[m_nextRow[id]] = m_prevRow[id];
+    else
+      m_lastRow = m_prevRow[id];
+  }
+
+  /**
+   * Puts a cached row at the front of the LRU list.
+   * 
+   * @param id		the index of the row
+   */
+  protected void linkRow(int id) {
+    m_prevRow[id] = -1;
+    m_nextRow[id] = m_firstRow;
+    if (m_firstRow >= 0)
+      m_prevRow[m_firstRow] = id;
+    else
+      m_lastRow = id;
+    m_firstRow = id;
+  }
+
+  /**
+   * Marks a cached row as the most recently used one.
+   * 
+   * @param id		the index of the row
+   */
+  protected void touchRow(int id) {
+    if (m_firstRow != id) {
+      unlinkRow(id);
+      linkRow(id);
+    }
+  }
+
+  /**
+   * Adds an empty row to the cache, evicting the least recently used row if
+   * the cache is full.
+   * 
+   * @param id		the index of the row
+   * @return		the row
+   */
+  protected double[] addRow(int id) {
+    double[] row;
+    if (m_numRows >= m_maxRows) {
+      int victim = m_lastRow;
+      unlinkRow(victim);
+      row = m_rows[victim];
+      m_rows[victim] = null;
+    }
+    else {
+      row = new double[m_numInsts];
+      m_numRows++;
+    }
+    Arrays.fill(row, Double.NaN);
+    m_rows[id] = row;
+    linkRow(id);
+    return row;
+  }
+
   /**
    * Returns the number of time Eval has been called.
    * 
@@ -272,12 +411,34 @@ public abstract class CachedKernel
     return m_cacheHits;
   }
 
+  /**
+   * Returns the number of cache misses on dot products, i.e., the number of
+   * evaluations that could have been cached but weren't.
+   * 
+   * @return 		the number of cache misses.
+   */
+  public int numCacheMisses() {
+    return m_cacheMisses;
+  }
+
   /**
    * Frees the cache used by the kernel.
    */
   public void clean() {
-    m_storage = null;
-    m_keys = null;
+    clearCache();
+  }
+
+  /**
+   * Frees the row cache and the full kernel matrix.
+   */
+  protected synchronized void clearCache() {
+    m_rows = null;
+    m_diagonal = null;
+    m_prevRow = null;
+    m_nextRow = null;
+    m_firstRow = -1;
+    m_lastRow = -1;
+    m_numRows = 0;
     m_kernelMatrix = null;
   }
 
@@ -292,34 +453,15 @@ public abstract class CachedKernel
   protected final double dotProd(Instance inst1, Instance inst2)
     throws Exception {
 
-    double result = 0;
-
     // we can do a fast dot product
-    int n1 = inst1.numValues();
-    int n2 = inst2.numValues();
-    int classIndex = m_data.classIndex();
-    for (int p1 = 0, p2 = 0; p1 < n1 && p2 < n2;) {
-      int ind1 = inst1.index(p1);
-      int ind2 = inst2.index(p2);
-      if (ind1 == ind2) {
-	if (ind1 != classIndex) {
-	  result += inst1.valueSparse(p1) * inst2.valueSparse(p2);
-	}
-	p1++;
-	p2++;
-      } else if (ind1 > ind2) {
-	p2++;
-      } else {
-	p1++;
-      }
-    }
-    return (result);
+    return SparseVectorMath.dotProduct(inst1, inst2, m_data.classIndex());
   }
 
   /**
-   * Sets the size of the cache to use (a prime number)
+   * Sets the cache mode: 0 for full cache, -1 for none and any positive
+   * value for a row cache, whose size is set with setCacheMemory.
    * 
-   * @param value	the size of the cache
+   * @param value	the cache mode
    */
   public void setCacheSize(int value) {
     if (value >= -1) {
@@ -333,9 +475,9 @@ public abstract class CachedKernel
   }
   
   /**
-   * Gets the size of the cache
+   * Gets the cache mode
    * 
-   * @return 		the cache size
+   * @return 		the cache mode
    */
   public int getCacheSize() {
     return m_cacheSize;
@@ -348,7 +490,43 @@ public abstract class CachedKernel
    * 			displaying in the explorer/experimenter gui
    */
   public String cacheSizeTipText() {
-    return "The size of the cache (a prime number), 0 for full cache and -1 to turn it off.";
+    return "0 for full cache, -1 to turn it off and any positive value for a row cache; "
+      + "the value only selects the mode, the size of the row cache is given by cacheMemory.";
+  }
+
+  /**
+   * Sets the memory budget of the row cache in megabytes.
+   * 
+   * @param value	the memory budget
+   */
+  public void setCacheMemory(double value) {
+    if (value > 0) {
+      m_cacheMemory = value;
+      clean();
+    }
+    else {
+      System.out.println(
+	  "Cache memory must be positive (provided: " + value + ")!");
+    }
+  }
+  
+  /**
+   * Gets the memory budget of the row cache in megabytes.
+   * 
+   * @return 		the memory budget
+   */
+  public double getCacheMemory() {
+    return m_cacheMemory;
+  }
+
+  /**
+   * Returns the tip text for this property
+   * 
+   * @return 		tip text for this property suitable for
+   * 			displaying in the explorer/experimenter gui
+   */
+  public String cacheMemoryTipText() {
+    return "The memory budget of the row cache in megabytes.";
   }
 
   /**
@@ -359,25 +537,21 @@ public abstract class CachedKernel
   protected void initVars(Instances data) {
     super.initVars(data);
     
-    m_kernelEvals = 0;
-    m_cacheHits   = 0;
-    m_numInsts    = m_data.numInstances();
+    m_kernelEvals  = 0;
+    m_cacheHits    = 0;
+    m_cacheMisses  = 0;
+    m_numInsts     = m_data.numInstances();
 
+    clearCache();
     if (getCacheSize() > 0) {
       // Use LRU cache
-      m_storage = new double[m_cacheSize * m_cacheSlots];
-      m_keys    = new long[m_cacheSize * m_cacheSlots];
+      initCache();
     } 
-    else {
-      m_storage      = null;
-      m_keys         = null;
-      m_kernelMatrix = null;
-    }
   }
   
   /**
    * builds the kernel with the given data. Initializes the kernel cache. 
-   * The actual size of the cache in bytes is (64 * cacheSize).
+   * The size of the row cache is set with setCacheMemory.
    * 
    * @param data	the data to base the kernel on
    * @throws Exception	if something goes wrong
@@ -152,10 +152,15 @@ import java.util.Vector;
  *  (default: checks on)</pre>
  * 
  * <pre> -C &lt;num&gt;
- *  The size of the cache (a prime number), 0 for full cache and 
- *  -1 to turn it off.
+ *  0 for full cache, -1 to turn it off and any positive
+ *  value for a row cache. The value only selects the mode,
+ *  the size of the row cache is given with -M.
  *  (default: 250007)</pre>
  * 
+ * <pre> -M &lt;num&gt;
+ *  The memory budget of the row cache in megabytes.
+ *  (default: 40)</pre>
+ * 
  * <pre> -G &lt;num&gt;
  *  The Gamma parameter.
  *  (default: 0.01)</pre>
@@ -276,10 +281,15 @@ public class CheckKernel
    *  (default: checks on)</pre>
    * 
    * <pre> -C &lt;num&gt;
-   *  The size of the cache (a prime number), 0 for full cache and 
-   *  -1 to turn it off.
+   *  0 for full cache, -1 to turn it off and any positive
+   *  value for a row cache. The value only selects the mode,
+   *  the size of the row cache is given with -M.
    *  (default: 250007)</pre>
    * 
+   * <pre> -M &lt;num&gt;
+   *  The memory budget of the row cache in megabytes.
+   *  (default: 40)</pre>
+   * 
    * <pre> -G &lt;num&gt;
    *  The Gamma parameter.
    *  (default: 0.01)</pre>
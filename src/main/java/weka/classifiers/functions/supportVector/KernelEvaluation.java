@@ -268,6 +268,9 @@ public class KernelEvaluation
     }
     m_Result.append("# Evaluations: " + m_NumEvals + "\n");
     m_Result.append("# Cache hits : " + m_NumCacheHits + "\n");
+    if (kernel instanceof CachedKernel) {
+      m_Result.append("# Cache misses: " + ((CachedKernel) kernel).numCacheMisses() + "\n");
+    }
     m_Result.append("Elapsed time : " + (((double) (endTime - startTime)) / 1000) + "s\n");
     
     return m_Result.toString();
@@ -45,10 +45,15 @@ import weka.core.RevisionUtils;
  *  (default: checks on)</pre>
  * 
  * <pre> -C &lt;num&gt;
- *  The size of the cache (a prime number), 0 for full cache and 
- *  -1 to turn it off.
+ *  0 for full cache, -1 to turn it off and any positive
+ *  value for a row cache. The value only selects the mode,
+ *  the size of the row cache is given with -M.
  *  (default: 250007)</pre>
  * 
+ * <pre> -M &lt;num&gt;
+ *  The memory budget of the row cache in megabytes.
+ *  (default: 40)</pre>
+ * 
  * <pre> -E &lt;num&gt;
  *  The Exponent to use.
  *  (default: 1.0)</pre>
@@ -81,7 +86,8 @@ public class NormalizedPolyKernel
    * Creates a new <code>NormalizedPolyKernel</code> instance.
    *
    * @param dataset	the training dataset used.
-   * @param cacheSize	the size of the cache (a prime number)
+   * @param cacheSize	0 for full cache, -1 for none, any positive value
+   * 			for a row cache
    * @param exponent	the exponent to use
    * @param lowerOrder	whether to use lower-order terms
    * @throws Exception	if something goes wrong
@@ -118,7 +124,7 @@ public class NormalizedPolyKernel
   public double eval(int id1, int id2, Instance inst1) 
     throws Exception {
 
-    double div = Math.sqrt(super.eval(id1, id1, inst1) * ((m_keys != null)
+    double div = Math.sqrt(super.eval(id1, id1, inst1) * ((m_rows != null)
                            ? super.eval(id2, id2, m_data.instance(id2))
                            : super.eval(-1, -1, m_data.instance(id2))));
 
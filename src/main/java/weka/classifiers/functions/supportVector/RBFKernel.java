@@ -29,6 +29,7 @@ import weka.core.Instance;
 import weka.core.Instances;
 import weka.core.Option;
 import weka.core.RevisionUtils;
+import weka.core.SparseVectorMath;
 import weka.core.Utils;
 
 import java.util.Enumeration;
@@ -52,10 +53,15 @@ import java.util.Vector;
  *  (default: checks on)</pre>
  * 
  * <pre> -C &lt;num&gt;
- *  The size of the cache (a prime number), 0 for full cache and 
- *  -1 to turn it off.
+ *  0 for full cache, -1 to turn it off and any positive
+ *  value for a row cache. The value only selects the mode,
+ *  the size of the row cache is given with -M.
  *  (default: 250007)</pre>
  * 
+ * <pre> -M &lt;num&gt;
+ *  The memory budget of the row cache in megabytes.
+ *  (default: 40)</pre>
+ * 
  * <pre> -G &lt;num&gt;
  *  The Gamma parameter.
  *  (default: 0.01)</pre>
@@ -155,10 +161,15 @@ public class RBFKernel
    *  (default: checks on)</pre>
    * 
    * <pre> -C &lt;num&gt;
-   *  The size of the cache (a prime number), 0 for full cache and 
-   *  -1 to turn it off.
+   *  0 for full cache, -1 to turn it off and any positive
+   *  value for a row cache. The value only selects the mode,
+   *  the size of the row cache is given with -M.
    *  (default: 250007)</pre>
    * 
+   * <pre> -M &lt;num&gt;
+   *  The memory budget of the row cache in megabytes.
+   *  (default: 40)</pre>
+   * 
    * <pre> -G &lt;num&gt;
    *  The Gamma parameter.
    *  (default: 0.01)</pre>
@@ -286,7 +297,7 @@ public class RBFKernel
   
   /**
    * builds the kernel with the given data. Initializes the kernel cache. 
-   * The actual size of the cache in bytes is (64 * cacheSize).
+   * The size of the row cache is set with setCacheMemory.
    * 
    * @param data	the data to base the kernel on
    * @throws Exception	if something goes wrong
@@ -299,7 +310,8 @@ public class RBFKernel
     initVars(data);
     
     for (int i = 0; i < data.numInstances(); i++)
-      m_kernelPrecalc[i] = dotProd(data.instance(i), data.instance(i));
+      m_kernelPrecalc[i] = SparseVectorMath.squaredNorm(data.instance(i),
+                                                        data.classIndex());
   }
   
   /**
@@ -564,6 +564,25 @@ public class IBk
       //throw new Exception("No training instances!");
       return m_defaultModel.distributionForInstance(instance);
     }
+    updateModel();
+
+    m_NNSearch.addInstanceInfo(instance);
+
+    Instances neighbours = m_NNSearch.kNearestNeighbours(instance, m_kNN);
+    double [] distances = m_NNSearch.getDistances();
+    double [] distribution = makeDistribution( neighbours, distances );
+
+    return distribution;
+  }
+
+  /**
+   * Applies the window size to the training instances and selects k by
+   * cross-validation, if required, before instances are classified.
+   *
+   * @throws Exception if the neighbour search can't be rebuilt
+   */
+  protected void updateModel() throws Exception {
+
     if ((m_WindowSize > 0) && (m_Train.numInstances() > m_WindowSize)) {
       m_kNNValid = false;
       boolean deletedInstance=false;
@@ -579,14 +598,34 @@ public class IBk
     if (!m_kNNValid && (m_CrossValidate) && (m_kNNUpper >= 1)) {
       crossValidate();
     }
+  }
 
-    m_NNSearch.addInstanceInfo(instance);
-
-    Instances neighbours = m_NNSearch.kNearestNeighbours(instance, m_kNN);
-    double [] distances = m_NNSearch.getDistances();
-    double [] distribution = makeDistribution( neighbours, distances );
+  /**
+   * Calculates the class membership probabilities for all instances of
+   * the given set. The window and the cross-validation for k are dealt
+   * with once for the whole set.
+   *
+   * @param data the instances to be classified
+   * @param dists the array to store the distributions in
+   * @throws Exception if an error occurred during the prediction
+   */
+  public void distributionsForInstances(Instances data, double[][] dists) 
+    throws Exception {
 
-    return distribution;
+    if ((data.numInstances() == 0) || (m_Train.numInstances() == 0)) {
+      super.distributionsForInstances(data, dists);
+      return;
+    }
+    updateModel();
+    for (int i = 0; i < data.numInstances(); i++) {
+      Instance instance = data.instance(i);
+      m_NNSearch.addInstanceInfo(instance);
+
+      Instances neighbours = m_NNSearch.kNearestNeighbours(instance, m_kNN);
+      double [] distances = m_NNSearch.getDistances();
+      makeDistribution(neighbours, distances, 
+                       distributionRow(dists, i, m_NumClasses));
+    }
   }
 
   /**
@@ -852,8 +891,24 @@ public class IBk
   protected double [] makeDistribution(Instances neighbours, double[] distances)
     throws Exception {
 
-    double total = 0, weight;
     double [] distribution = new double [m_NumClasses];
+    makeDistribution(neighbours, distances, distribution);
+    return distribution;
+  }
+
+  /**
+   * Turn the list of nearest neighbors into a probability distribution,
+   * stored in the given array.
+   *
+   * @param neighbours the list of nearest neighboring instances
+   * @param distances the distances of the neighbors
+   * @param distribution the array to store the distribution in, all zero
+   * @throws Exception if computation goes wrong or has no class attribute
+   */
+  protected void makeDistribution(Instances neighbours, double[] distances,
+                                  double[] distribution) throws Exception {
+
+    double total = 0, weight;
     
     // Set up a correction to the estimator
     if (m_ClassType == Attribute.NOMINAL) {
@@ -899,7 +954,6 @@ public class IBk
     if (total > 0) {
       Utils.normalize(distribution, total);
     }
-    return distribution;
   }
 
   /**
@@ -929,14 +983,35 @@ public class IBk
       Instance instance;
       Instances neighbours;
       double[] origDistances, convertedDistances;
+
+      // find the neighbours of all training instances at once, if possible
+      int[][] bulkIndices = null;
+      double[][] bulkDistances = null;
+      if (m_NNSearch.supportsBulkQueries()) {
+	bulkIndices = new int[m_Train.numInstances()][];
+	bulkDistances = new double[m_Train.numInstances()][];
+	m_NNSearch.kNearestNeighbours(m_Train, m_kNN, 
+	                              bulkIndices, bulkDistances);
+      }
+
       for(int i = 0; i < m_Train.numInstances(); i++) {
 	if (m_Debug && (i % 50 == 0)) {
 	  System.err.print("Cross validating "
 			   + i + "/" + m_Train.numInstances() + "\r");
 	}
 	instance = m_Train.instance(i);
-	neighbours = m_NNSearch.kNearestNeighbours(instance, m_kNN);
-        origDistances = m_NNSearch.getDistances();
+	if (bulkIndices != null) {
+	  neighbours = new Instances(m_Train, bulkIndices[i].length);
+	  for (int n = 0; n < bulkIndices[i].length; n++)
+	    neighbours.add(m_Train.instance(bulkIndices[i][n]));
+	  origDistances = bulkDistances[i];
+	  bulkIndices[i] = null;
+	  bulkDistances[i] = null;
+	}
+	else {
+	  neighbours = m_NNSearch.kNearestNeighbours(instance, m_kNN);
+	  origDistances = m_NNSearch.getDistances();
+	}
         
 	for(int j = m_kNNUpper - 1; j >= 0; j--) {
 	  // Update the performance stats
@@ -25,8 +25,12 @@ package weka.classifiers.meta;
 import java.util.Enumeration;
 import java.util.Random;
 import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
 
-import weka.classifiers.RandomizableIteratedSingleClassifierEnhancer;
+import weka.classifiers.Classifier;
+import weka.classifiers.RandomizableParallelIteratedSingleClassifierEnhancer;
 import weka.core.AdditionalMeasureProducer;
 import weka.core.Instance;
 import weka.core.Instances;
@@ -89,6 +93,12 @@ import weka.core.WeightedInstancesHandler;
  * </pre>
  * 
  * <pre>
+ * -num-slots &lt;num&gt;
+ *  Number of execution slots.
+ *  (default 1 - i.e. no parallelism)
+ * </pre>
+ * 
+ * <pre>
  * -I &lt;num&gt;
  *  Number of iterations.
  *  (default 10)
@@ -151,7 +161,7 @@ import weka.core.WeightedInstancesHandler;
  * @author Richard Kirkby (rkirkby@cs.waikato.ac.nz)
  * @version $Revision: 11572 $
  */
-public class Bagging extends RandomizableIteratedSingleClassifierEnhancer
+public class Bagging extends RandomizableParallelIteratedSingleClassifierEnhancer
     implements WeightedInstancesHandler, AdditionalMeasureProducer,
     TechnicalInformationHandler {
 
@@ -167,6 +177,18 @@ public class Bagging extends RandomizableIteratedSingleClassifierEnhancer
   /** The out of bag error that has been calculated */
   protected double m_OutOfBagError;
 
+  /** The training data, while the bags are drawn */
+  protected transient Instances m_data;
+
+  /** The random number generator for the bags */
+  protected transient Random m_random;
+
+  /** The number of instances in each bag */
+  protected transient int m_bagSize;
+
+  /** Which instances are in each bag, if the out of bag error is calculated */
+  protected transient boolean[][] m_inBag;
+
   /**
    * Constructor.
    */
@@ -271,6 +293,12 @@ public class Bagging extends RandomizableIteratedSingleClassifierEnhancer
    * </pre>
    * 
    * <pre>
+   * -num-slots &lt;num&gt;
+   *  Number of execution slots.
+   *  (default 1 - i.e. no parallelism)
+   * </pre>
+   * 
+   * <pre>
    * -I &lt;num&gt;
    *  Number of iterations.
    *  (default 10)
@@ -497,36 +525,22 @@ public class Bagging extends RandomizableIteratedSingleClassifierEnhancer
           + "out-of-bag error is to be calculated!");
     }
 
-    int bagSize = (int) (data.numInstances() * (m_BagSizePercent / 100.0));
-    Random random = new Random(m_Seed);
+    m_data = data;
+    m_bagSize = (int) (data.numInstances() * (m_BagSizePercent / 100.0));
+    m_random = new Random(m_Seed);
 
     boolean[][] inBag = null;
-    if (m_CalcOutOfBag)
+    if (m_CalcOutOfBag) {
       inBag = new boolean[m_Classifiers.length][];
-
-    for (int j = 0; j < m_Classifiers.length; j++) {
-      Instances bagData = null;
-
-      // create the in-bag dataset
-      if (m_CalcOutOfBag) {
-        inBag[j] = new boolean[data.numInstances()];
-        // bagData = resampleWithWeights(data, random, inBag[j]);
-        bagData = data.resampleWithWeights(random, inBag[j]);
-      } else {
-        bagData = data.resampleWithWeights(random);
-        if (bagSize < data.numInstances()) {
-          bagData.randomize(random);
-          Instances newBagData = new Instances(bagData, 0, bagSize);
-          bagData = newBagData;
-        }
-      }
-
-      if (m_Classifier instanceof Randomizable) {
-        ((Randomizable) m_Classifiers[j]).setSeed(random.nextInt());
-      }
-
-      // build the classifier
-      m_Classifiers[j].buildClassifier(bagData);
+    }
+    m_inBag = inBag;
+
+    try {
+      buildClassifiers();
+    } finally {
+      m_data = null;
+      m_random = null;
+      m_inBag = null;
     }
 
     // calc OOB error?
@@ -534,39 +548,20 @@ public class Bagging extends RandomizableIteratedSingleClassifierEnhancer
       double outOfBagCount = 0.0;
       double errorSum = 0.0;
       boolean numeric = data.classAttribute().isNumeric();
+      double[][] allVotes = outOfBagVotes(data, inBag);
 
       for (int i = 0; i < data.numInstances(); i++) {
         double vote;
-        double[] votes;
-        if (numeric)
-          votes = new double[1];
-        else
-          votes = new double[data.numClasses()];
-
-        // determine predictions for instance
-        int voteCount = 0;
-        for (int j = 0; j < m_Classifiers.length; j++) {
-          if (inBag[j][i])
-            continue;
-
-          voteCount++;
-          // double pred = m_Classifiers[j].classifyInstance(data.instance(i));
-          if (numeric) {
-            // votes[0] += pred;
-            votes[0] += m_Classifiers[j].classifyInstance(data.instance(i));
-          } else {
-            // votes[(int) pred]++;
-            double[] newProbs = m_Classifiers[j].distributionForInstance(data
-                .instance(i));
-            // average the probability estimates
-            for (int k = 0; k < newProbs.length; k++) {
-              votes[k] += newProbs[k];
-            }
-          }
-        }
+        double[] votes = allVotes[i];
 
         // "vote"
         if (numeric) {
+          int voteCount = 0;
+          for (int j = 0; j < m_Classifiers.length; j++) {
+            if (!inBag[j][i]) {
+              voteCount++;
+            }
+          }
           vote = votes[0];
           if (voteCount > 0) {
             vote /= voteCount; // average
@@ -596,6 +591,127 @@ public class Bagging extends RandomizableIteratedSingleClassifierEnhancer
     }
   }
 
+  /**
+   * Returns a training set for the given member of the ensemble, drawn from
+   * the training data in the order of the members.
+   * 
+   * @param iteration the index of the member
+   * @return the bag for the member
+   * @throws Exception if the bag can't be generated successfully
+   */
+  @Override
+  protected Instances getTrainingSet(int iteration) throws Exception {
+
+    Instances bagData = null;
+
+    // create the in-bag dataset
+    if (m_CalcOutOfBag) {
+      m_inBag[iteration] = new boolean[m_data.numInstances()];
+      bagData = m_data.resampleWithWeights(m_random, m_inBag[iteration]);
+    } else {
+      bagData = m_data.resampleWithWeights(m_random);
+      if (m_bagSize < m_data.numInstances()) {
+        bagData.randomize(m_random);
+        Instances newBagData = new Instances(bagData, 0, m_bagSize);
+        bagData = newBagData;
+      }
+    }
+
+    if (m_Classifier instanceof Randomizable) {
+      ((Randomizable) m_Classifiers[iteration]).setSeed(m_random.nextInt());
+    }
+
+    return bagData;
+  }
+
+  /**
+   * Sums the predictions of the members of the ensemble for the training
+   * instances that are not in their bags. With more than one execution
+   * slot, each thread sums the predictions of a range of members and the
+   * sums are added up in the order of the ranges, so that each member is
+   * only used by one thread.
+   * 
+   * @param data the training data
+   * @param inBag which instances are in each bag
+   * @return the summed probabilities (or predicted values) per instance
+   * @throws Exception if the predictions can't be computed
+   */
+  protected double[][] outOfBagVotes(final Instances data,
+      final boolean[][] inBag) throws Exception {
+
+    int numSlots = Math.min(m_numExecutionSlots, m_Classifiers.length);
+    if (numSlots <= 1) {
+      return outOfBagVotes(data, inBag, 0, m_Classifiers.length);
+    }
+
+    ThreadPoolExecutor executorPool = newExecutorPool();
+    try {
+      Future<double[][]>[] results = new Future[numSlots];
+      for (int t = 0; t < numSlots; t++) {
+        final int from = t * m_Classifiers.length / numSlots;
+        final int to = (t + 1) * m_Classifiers.length / numSlots;
+        results[t] = executorPool.submit(new Callable<double[][]>() {
+          public double[][] call() throws Exception {
+            return outOfBagVotes(data, inBag, from, to);
+          }
+        });
+      }
+
+      double[][] votes = waitFor(results[0]);
+      for (int t = 1; t < numSlots; t++) {
+        double[][] partial = waitFor(results[t]);
+        for (int i = 0; i < votes.length; i++) {
+          for (int k = 0; k < votes[i].length; k++) {
+            votes[i][k] += partial[i][k];
+          }
+        }
+      }
+      return votes;
+    } finally {
+      executorPool.shutdownNow();
+    }
+  }
+
+  /**
+   * Sums the predictions of the given range of members for the training
+   * instances that are not in their bags.
+   * 
+   * @param data the training data
+   * @param inBag which instances are in each bag
+   * @param from the first member
+   * @param to the member after the last one
+   * @return the summed probabilities (or predicted values) per instance
+   * @throws Exception if the predictions can't be computed
+   */
+  protected double[][] outOfBagVotes(Instances data, boolean[][] inBag,
+      int from, int to) throws Exception {
+
+    boolean numeric = data.classAttribute().isNumeric();
+    double[][] votes = new double[data.numInstances()][numeric ? 1 : data
+        .numClasses()];
+
+    for (int j = from; j < to; j++) {
+      Classifier classifier = m_Classifiers[j];
+      for (int i = 0; i < data.numInstances(); i++) {
+        if (inBag[j][i])
+          continue;
+
+        if (numeric) {
+          votes[i][0] += classifier.classifyInstance(data.instance(i));
+        } else {
+          double[] newProbs = classifier.distributionForInstance(data
+              .instance(i));
+          // average the probability estimates
+          for (int k = 0; k < newProbs.length; k++) {
+            votes[i][k] += newProbs[k];
+          }
+        }
+      }
+    }
+
+    return votes;
+  }
+
   /**
    * Calculates the class membership probabilities for the given test instance.
    * 
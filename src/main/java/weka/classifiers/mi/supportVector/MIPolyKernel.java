@@ -48,10 +48,15 @@ import weka.core.Capabilities.Capability;
  *  (default: checks on)</pre>
  * 
  * <pre> -C &lt;num&gt;
- *  The size of the cache (a prime number), 0 for full cache and 
- *  -1 to turn it off.
+ *  0 for full cache, -1 to turn it off and any positive
+ *  value for a row cache. The value only selects the mode,
+ *  the size of the row cache is given with -M.
  *  (default: 250007)</pre>
  * 
+ * <pre> -M &lt;num&gt;
+ *  The memory budget of the row cache in megabytes.
+ *  (default: 40)</pre>
+ * 
  * <pre> -E &lt;num&gt;
  *  The Exponent to use.
  *  (default: 1.0)</pre>
@@ -86,7 +91,8 @@ public class MIPolyKernel
    * Creates a new <code>MIPolyKernel</code> instance.
    * 
    * @param data	the training dataset used.
-   * @param cacheSize	the size of the cache (a prime number)
+   * @param cacheSize	0 for full cache, -1 for none, any positive value
+   * 			for a row cache
    * @param exponent	the exponent to use
    * @param lowerOrder	whether to use lower-order terms
    * @throws Exception	if something goes wrong
@@ -180,9 +186,7 @@ public class MIPolyKernel
    * Frees the cache used by the kernel.
    */
   public void clean() {
-    m_storage = null;
-    m_keys = null;
-    m_kernelMatrix = null;
+    clearCache();
   }
   
   /**
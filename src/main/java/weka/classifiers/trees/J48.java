@@ -28,6 +28,7 @@ import weka.classifiers.trees.j48.BinC45ModelSelection;
 import weka.classifiers.trees.j48.C45ModelSelection;
 import weka.classifiers.trees.j48.C45PruneableClassifierTree;
 import weka.classifiers.trees.j48.ClassifierTree;
+import weka.classifiers.trees.j48.CompiledTree;
 import weka.classifiers.trees.j48.ModelSelection;
 import weka.classifiers.trees.j48.PruneableClassifierTree;
 import weka.core.AdditionalMeasureProducer;
@@ -157,6 +158,9 @@ public class J48
   /** Random number seed for reduced-error pruning. */
   private int m_Seed = 1;
 
+  /** The tree compiled for batch classification, created when needed. */
+  private transient CompiledTree m_compiled;
+
   /**
    * Returns a string describing classifier
    * @return a description suitable for
@@ -223,6 +227,7 @@ public class J48
 
     ModelSelection modSelection;	 
 
+    m_compiled = null;
     if (m_binarySplits)
       modSelection = new BinC45ModelSelection(m_minNumObj, instances);
     else
@@ -266,6 +271,48 @@ public class J48
     return m_root.distributionForInstance(instance, m_useLaplace);
   }
 
+  /**
+   * Returns class probabilities for all instances of the given set, using
+   * the compiled tree unless probabilities are smoothed.
+   *
+   * @param data the instances to calculate the class probabilities for
+   * @param dists the array to store the class probabilities in
+   * @throws Exception if distributions can't be computed successfully
+   */
+  public void distributionsForInstances(Instances data, double[][] dists)
+       throws Exception {
+
+    if (m_useLaplace) {
+      super.distributionsForInstances(data, dists);
+      return;
+    }
+    if (m_compiled == null) {
+      m_compiled = m_root.compile();
+    }
+
+    double[] row = new double[data.numAttributes()];
+    for (int i = 0; i < data.numInstances(); i++) {
+      Instance instance = data.instance(i);
+      for (int j = 0; j < row.length; j++) {
+	row[j] = instance.value(j);
+      }
+      m_compiled.distribution(row, 
+			      distributionRow(dists, i, m_compiled.numClasses()));
+    }
+  }
+
+  /**
+   * Flattens the tree into primitive arrays for fast classification. The
+   * compiled tree predicts the same classes as classifyInstance().
+   *
+   * @return the compiled tree
+   * @throws Exception if the tree can't be compiled
+   */
+  public CompiledTree compile() throws Exception {
+
+    return m_root.compile();
+  }
+
   /**
    *  Returns the type of graph this classifier
    *  represents.
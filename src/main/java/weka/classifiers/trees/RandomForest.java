@@ -96,6 +96,18 @@ import weka.core.WeightedInstancesHandler;
  * </pre>
  * 
  * <pre>
+ * -num-slots &lt;num&gt;
+ *  Number of execution slots.
+ *  (default 1 - i.e. no parallelism)
+ * </pre>
+ * 
+ * <pre>
+ * -tree-slots &lt;num&gt;
+ *  Number of execution slots for growing each tree.
+ *  (default 1 - i.e. no parallelism)
+ * </pre>
+ * 
+ * <pre>
  * -D
  *  If set, classifier is run in debug mode and
  *  may output additional info to the console
@@ -134,6 +146,12 @@ public class RandomForest extends Classifier implements OptionHandler,
   /** The maximum depth of the trees (0 = unlimited) */
   protected int m_MaxDepth = 0;
 
+  /** The number of threads used to build the forest */
+  protected int m_numExecutionSlots = 1;
+
+  /** The number of threads used to grow each tree */
+  protected int m_numTreeExecutionSlots = 1;
+
   /**
    * Returns a string describing classifier
    * 
@@ -287,6 +305,69 @@ public class RandomForest extends Classifier implements OptionHandler,
     m_MaxDepth = value;
   }
 
+  /**
+   * Returns the tip text for this property
+   * 
+   * @return tip text for this property suitable for displaying in the
+   *         explorer/experimenter gui
+   */
+  public String numExecutionSlotsTipText() {
+    return "The number of execution slots (threads) to use for "
+        + "constructing the forest.";
+  }
+
+  /**
+   * Set the number of execution slots (threads) to use for building the
+   * trees and computing the out of bag error.
+   * 
+   * @param numSlots the number of slots to use.
+   */
+  public void setNumExecutionSlots(int numSlots) {
+    m_numExecutionSlots = numSlots;
+  }
+
+  /**
+   * Get the number of execution slots (threads) to use for building the
+   * trees and computing the out of bag error.
+   * 
+   * @return the number of slots to use
+   */
+  public int getNumExecutionSlots() {
+    return m_numExecutionSlots;
+  }
+
+  /**
+   * Returns the tip text for this property
+   * 
+   * @return tip text for this property suitable for displaying in the
+   *         explorer/experimenter gui
+   */
+  public String numTreeExecutionSlotsTipText() {
+    return "The number of execution slots (threads) to use for growing each "
+        + "tree, on top of the slots for constructing the forest. Useful when "
+        + "the forest has fewer trees than there are cores (see RandomTree).";
+  }
+
+  /**
+   * Set the number of execution slots (threads) to use for growing each
+   * tree.
+   * 
+   * @param numSlots the number of slots to use.
+   */
+  public void setNumTreeExecutionSlots(int numSlots) {
+    m_numTreeExecutionSlots = numSlots;
+  }
+
+  /**
+   * Get the number of execution slots (threads) to use for growing each
+   * tree.
+   * 
+   * @return the number of slots to use
+   */
+  public int getNumTreeExecutionSlots() {
+    return m_numTreeExecutionSlots;
+  }
+
   /**
    * Gets the out of bag error that was calculated as the classifier was built.
    * 
@@ -353,6 +434,15 @@ public class RandomForest extends Classifier implements OptionHandler,
         "\tThe maximum depth of the trees, 0 for unlimited.\n"
             + "\t(default 0)", "depth", 1, "-depth <num>"));
 
+    newVector.addElement(new Option("\tNumber of execution slots.\n"
+        + "\t(default 1 - i.e. no parallelism)", "num-slots", 1,
+        "-num-slots <num>"));
+
+    newVector.addElement(new Option(
+        "\tNumber of execution slots for growing each tree.\n"
+            + "\t(default 1 - i.e. no parallelism)", "tree-slots", 1,
+        "-tree-slots <num>"));
+
     Enumeration enu = super.listOptions();
     while (enu.hasMoreElements()) {
       newVector.addElement(enu.nextElement());
@@ -388,6 +478,16 @@ public class RandomForest extends Classifier implements OptionHandler,
       result.add("" + getMaxDepth());
     }
 
+    if (getNumExecutionSlots() > 1) {
+      result.add("-num-slots");
+      result.add("" + getNumExecutionSlots());
+    }
+
+    if (getNumTreeExecutionSlots() > 1) {
+      result.add("-tree-slots");
+      result.add("" + getNumTreeExecutionSlots());
+    }
+
     options = super.getOptions();
     for (i = 0; i < options.length; i++)
       result.add(options[i]);
@@ -426,6 +526,18 @@ public class RandomForest extends Classifier implements OptionHandler,
    * </pre>
    * 
    * <pre>
+   * -num-slots &lt;num&gt;
+   *  Number of execution slots.
+   *  (default 1 - i.e. no parallelism)
+   * </pre>
+   * 
+   * <pre>
+   * -tree-slots &lt;num&gt;
+   *  Number of execution slots for growing each tree.
+   *  (default 1 - i.e. no parallelism)
+   * </pre>
+   * 
+   * <pre>
    * -D
    *  If set, classifier is run in debug mode and
    *  may output additional info to the console
@@ -468,6 +580,20 @@ public class RandomForest extends Classifier implements OptionHandler,
       setMaxDepth(0);
     }
 
+    tmpStr = Utils.getOption("num-slots", options);
+    if (tmpStr.length() != 0) {
+      setNumExecutionSlots(Integer.parseInt(tmpStr));
+    } else {
+      setNumExecutionSlots(1);
+    }
+
+    tmpStr = Utils.getOption("tree-slots", options);
+    if (tmpStr.length() != 0) {
+      setNumTreeExecutionSlots(Integer.parseInt(tmpStr));
+    } else {
+      setNumTreeExecutionSlots(1);
+    }
+
     super.setOptions(options);
 
     Utils.checkForRemainingOptions(options);
@@ -508,12 +634,14 @@ public class RandomForest extends Classifier implements OptionHandler,
       m_KValue = (int) Utils.log2(data.numAttributes() - 1) + 1;
     rTree.setKValue(m_KValue);
     rTree.setMaxDepth(getMaxDepth());
+    rTree.setNumExecutionSlots(m_numTreeExecutionSlots);
 
     // set up the bagger and build the forest
     m_bagger.setClassifier(rTree);
     m_bagger.setSeed(m_randomSeed);
     m_bagger.setNumIterations(m_numTrees);
     m_bagger.setCalcOutOfBag(true);
+    m_bagger.setNumExecutionSlots(m_numExecutionSlots);
     m_bagger.buildClassifier(data);
   }
 
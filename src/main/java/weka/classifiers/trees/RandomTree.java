@@ -22,11 +22,19 @@
 package weka.classifiers.trees;
 
 import java.io.Serializable;
+import java.util.ArrayList;
 import java.util.Enumeration;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.Queue;
 import java.util.Random;
 import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import weka.classifiers.Classifier;
 import weka.core.Attribute;
@@ -90,6 +98,12 @@ import weka.core.WeightedInstancesHandler;
  * </pre>
  * 
  * <pre>
+ * -num-slots &lt;num&gt;
+ *  Number of execution slots.
+ *  (default 1 - i.e. no parallelism)
+ * </pre>
+ * 
+ * <pre>
  * -D
  *  If set, classifier is run in debug mode and
  *  may output additional info to the console
@@ -134,6 +148,15 @@ public class RandomTree extends Classifier implements OptionHandler,
   /** a ZeroR model in case no model can be built from the data */
   protected Classifier m_zeroR;
 
+  /** The number of threads used to grow the tree */
+  protected int m_numExecutionSlots = 1;
+
+  /** The minimum number of instances for growing a subtree in another thread */
+  protected static final int MIN_INSTANCES_PER_TASK = 1000;
+
+  /** The threads growing the subtrees while the tree is built */
+  protected transient ThreadPoolExecutor m_executorPool = null;
+
   /**
    * Returns a string describing classifier
    * 
@@ -329,6 +352,40 @@ public class RandomTree extends Classifier implements OptionHandler,
     m_MaxDepth = value;
   }
 
+  /**
+   * Returns the tip text for this property
+   * 
+   * @return tip text for this property suitable for displaying in the
+   *         explorer/experimenter gui
+   */
+  public String numExecutionSlotsTipText() {
+    return "The number of execution slots (threads) to use for "
+        + "growing the tree. With more than one slot, each subtree chooses "
+        + "its attributes with its own random number generator, so the tree "
+        + "differs from the one grown with a single slot, but not between "
+        + "different numbers of slots.";
+  }
+
+  /**
+   * Set the number of execution slots (threads) to use for growing the
+   * tree.
+   * 
+   * @param numSlots the number of slots to use.
+   */
+  public void setNumExecutionSlots(int numSlots) {
+    m_numExecutionSlots = numSlots;
+  }
+
+  /**
+   * Get the number of execution slots (threads) to use for growing the
+   * tree.
+   * 
+   * @return the number of slots to use
+   */
+  public int getNumExecutionSlots() {
+    return m_numExecutionSlots;
+  }
+
   /**
    * Lists the command-line options for this classifier.
    * 
@@ -361,6 +418,10 @@ public class RandomTree extends Classifier implements OptionHandler,
     newVector.addElement(new Option("\tAllow unclassified instances.", "U", 0,
         "-U"));
 
+    newVector.addElement(new Option("\tNumber of execution slots.\n"
+        + "\t(default 1 - i.e. no parallelism)", "num-slots", 1,
+        "-num-slots <num>"));
+
     Enumeration enu = super.listOptions();
     while (enu.hasMoreElements()) {
       newVector.addElement(enu.nextElement());
@@ -405,6 +466,11 @@ public class RandomTree extends Classifier implements OptionHandler,
       result.add("-U");
     }
 
+    if (getNumExecutionSlots() > 1) {
+      result.add("-num-slots");
+      result.add("" + getNumExecutionSlots());
+    }
+
     options = super.getOptions();
     for (i = 0; i < options.length; i++)
       result.add(options[i]);
@@ -454,6 +520,12 @@ public class RandomTree extends Classifier implements OptionHandler,
    * </pre>
    * 
    * <pre>
+   * -num-slots &lt;num&gt;
+   *  Number of execution slots.
+   *  (default 1 - i.e. no parallelism)
+   * </pre>
+   * 
+   * <pre>
    * -D
    *  If set, classifier is run in debug mode and
    *  may output additional info to the console
@@ -504,6 +576,13 @@ public class RandomTree extends Classifier implements OptionHandler,
 
     setAllowUnclassifiedInstances(Utils.getFlag('U', options));
 
+    tmpStr = Utils.getOption("num-slots", options);
+    if (tmpStr.length() != 0) {
+      setNumExecutionSlots(Integer.parseInt(tmpStr));
+    } else {
+      setNumExecutionSlots(1);
+    }
+
     super.setOptions(options);
 
     Utils.checkForRemainingOptions(options);
@@ -595,10 +674,31 @@ public class RandomTree extends Classifier implements OptionHandler,
       classProbs[(int) inst.classValue()] += inst.weight();
     }
 
+    // Sort the instances once, the subtrees keep their order
+    int[][][] sortedIndices = new int[1][][];
+    double[][][] weights = new double[1][][];
+    sortInstances(train, sortedIndices, weights);
+
     // Build tree
     m_Tree = new Tree();
     m_Info = new Instances(data, 0);
-    m_Tree.buildTree(train, classProbs, attIndicesWindow, rand, 0);
+    if (m_numExecutionSlots > 1) {
+      // Subtrees are only handed to idle threads, a thread waiting for its
+      // subtrees can't hold up the others
+      m_executorPool = new ThreadPoolExecutor(m_numExecutionSlots - 1,
+          m_numExecutionSlots - 1, 120, TimeUnit.SECONDS,
+          new SynchronousQueue<Runnable>(),
+          new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+    try {
+      m_Tree.buildTree(sortedIndices, weights, train, classProbs,
+          attIndicesWindow, rand, 0, new int[train.numInstances()]);
+    } finally {
+      if (m_executorPool != null) {
+        m_executorPool.shutdownNow();
+        m_executorPool = null;
+      }
+    }
 
     // Backfit if required
     if (backfit != null) {
@@ -606,6 +706,89 @@ public class RandomTree extends Classifier implements OptionHandler,
     }
   }
 
+  /**
+   * Sorts the training instances on each numeric attribute, with the
+   * instances that have a missing value last, so that the nodes of the
+   * tree don't have to sort them again. The indices of the instances in the
+   * order of the data are stored at the class index, they are used for the
+   * nominal attributes.
+   * 
+   * @param data the training data
+   * @param sortedIndices receives the indices of the instances per attribute
+   * @param weights receives the weights of the instances in the same order
+   */
+  protected void sortInstances(Instances data, int[][][] sortedIndices,
+      double[][][] weights) {
+
+    sortedIndices[0] = new int[data.numAttributes()][];
+    weights[0] = new double[data.numAttributes()][];
+
+    int[] indices = new int[data.numInstances()];
+    double[] instWeights = new double[data.numInstances()];
+    for (int i = 0; i < indices.length; i++) {
+      indices[i] = i;
+      instWeights[i] = data.instance(i).weight();
+    }
+    sortedIndices[0][data.classIndex()] = indices;
+    weights[0][data.classIndex()] = instWeights;
+
+    for (int j = 0; j < data.numAttributes(); j++) {
+      if ((j == data.classIndex()) || !data.attribute(j).isNumeric()) {
+        continue;
+      }
+
+      // Sort the instances with a value, then append the others
+      int numValues = 0;
+      for (int i = 0; i < data.numInstances(); i++) {
+        if (!data.instance(i).isMissing(j)) {
+          numValues++;
+        }
+      }
+      double[] vals = new double[numValues];
+      int[] withValue = new int[numValues];
+      int[] sorted = new int[data.numInstances()];
+      int numMissing = 0;
+      numValues = 0;
+      for (int i = 0; i < data.numInstances(); i++) {
+        if (data.instance(i).isMissing(j)) {
+          sorted[vals.length + numMissing++] = i;
+        } else {
+          vals[numValues] = data.instance(i).value(j);
+          withValue[numValues++] = i;
+        }
+      }
+      int[] sortOrder = Utils.sortWithNoMissingValues(vals);
+      for (int i = 0; i < sortOrder.length; i++) {
+        sorted[i] = withValue[sortOrder[i]];
+      }
+
+      sortedIndices[0][j] = sorted;
+      weights[0][j] = new double[sorted.length];
+      for (int i = 0; i < sorted.length; i++) {
+        weights[0][j][i] = instWeights[sorted[i]];
+      }
+    }
+  }
+
+  /**
+   * Waits for the given task to finish, passing on the exception the task
+   * threw, if any.
+   * 
+   * @param future the task
+   * @throws Exception if the task failed
+   */
+  protected static void waitFor(Future<?> future) throws Exception {
+
+    try {
+      future.get();
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof Exception) {
+        throw (Exception) e.getCause();
+      }
+      throw e;
+    }
+  }
+
   /**
    * Computes class distribution of an instance using the tree.
    * 
@@ -1082,21 +1265,29 @@ public class RandomTree extends Classifier implements OptionHandler,
     /**
      * Recursively generates a tree.
      * 
-     * @param data the data to work with
+     * @param sortedIndices the indices of the instances at the node, per
+     *          attribute (see sortInstances())
+     * @param weights the weights of the instances, in the same order
+     * @param data the training data
      * @param classProbs the class distribution
      * @param attIndicesWindow the attribute window to choose attributes from
      * @param random random number generator for choosing random attributes
      * @param depth the current depth
+     * @param subsets space for splitting the instances, one entry per
+     *          training instance
      * @throws Exception if generation fails
      */
-    protected void buildTree(Instances data, double[] classProbs,
-        int[] attIndicesWindow, Random random, int depth) throws Exception {
+    protected void buildTree(int[][][] sortedIndices, double[][][] weights,
+        Instances data, double[] classProbs, int[] attIndicesWindow,
+        Random random, int depth, int[] subsets) throws Exception {
 
       // Make leaf if there are no training instances
-      if (data.numInstances() == 0) {
+      if (sortedIndices[0][data.classIndex()].length == 0) {
         m_Attribute = -1;
         m_ClassDistribution = null;
         m_Prop = null;
+        sortedIndices[0] = null;
+        weights[0] = null;
         return;
       }
 
@@ -1111,6 +1302,8 @@ public class RandomTree extends Classifier implements OptionHandler,
         // Make leaf
         m_Attribute = -1;
         m_Prop = null;
+        sortedIndices[0] = null;
+        weights[0] = null;
         return;
       }
 
@@ -1141,7 +1334,8 @@ public class RandomTree extends Classifier implements OptionHandler,
         attIndicesWindow[windowSize - 1] = attIndex;
         windowSize--;
 
-        double currSplit = distribution(props, dists, attIndex, data);
+        double currSplit = distribution(props, dists, attIndex,
+            sortedIndices[0], weights[0], data);
         double currVal = gain(dists[0], priorVal(dists[0]));
 
         if (Utils.gr(currVal, 0))
@@ -1162,21 +1356,30 @@ public class RandomTree extends Classifier implements OptionHandler,
       // Any useful split found?
       if (Utils.gr(val, 0)) {
 
-        // Build subtrees
+        // Split data
         m_SplitPoint = split;
         m_Prop = bestProps;
-        Instances[] subsets = splitData(data);
+        int[][][][] subsetIndices = new int[bestDists.length][1][][];
+        double[][][][] subsetWeights = new double[bestDists.length][1][][];
+        splitData(subsetIndices, subsetWeights, sortedIndices[0], weights[0],
+            data, subsets);
+
+        // Release memory
+        sortedIndices[0] = null;
+        weights[0] = null;
+
+        // Build subtrees
         m_Successors = new Tree[bestDists.length];
         for (int i = 0; i < bestDists.length; i++) {
           m_Successors[i] = new Tree();
-          m_Successors[i].buildTree(subsets[i], bestDists[i], attIndicesWindow,
-              random, depth + 1);
         }
+        buildSuccessors(subsetIndices, subsetWeights, data, bestDists,
+            attIndicesWindow, random, depth + 1, subsets);
 
         // If all successors are non-empty, we don't need to store the class
         // distribution
         boolean emptySuccessor = false;
-        for (int i = 0; i < subsets.length; i++) {
+        for (int i = 0; i < m_Successors.length; i++) {
           if (m_Successors[i].m_ClassDistribution == null) {
             emptySuccessor = true;
             break;
@@ -1189,6 +1392,72 @@ public class RandomTree extends Classifier implements OptionHandler,
 
         // Make leaf
         m_Attribute = -1;
+        sortedIndices[0] = null;
+        weights[0] = null;
+      }
+    }
+
+    /**
+     * Builds the subtrees of this node. With more than one execution slot,
+     * subtrees with enough instances are grown by idle threads, if there
+     * are any, and every subtree gets its own random number generator, so
+     * that the tree does not depend on which thread grows which subtree.
+     * 
+     * @param subsetIndices the indices of the instances of each subtree
+     * @param subsetWeights the weights of the instances of each subtree
+     * @param data the training data
+     * @param dists the class distribution of each subtree
+     * @param attIndicesWindow the attribute window to choose attributes from
+     * @param random random number generator for choosing random attributes
+     * @param depth the depth of the subtrees
+     * @param subsets space for splitting the instances, one entry per
+     *          training instance
+     * @throws Exception if generation fails
+     */
+    protected void buildSuccessors(final int[][][][] subsetIndices,
+        final double[][][][] subsetWeights, final Instances data,
+        final double[][] dists, int[] attIndicesWindow, Random random,
+        final int depth, int[] subsets) throws Exception {
+
+      if (m_executorPool == null) {
+        for (int i = 0; i < m_Successors.length; i++) {
+          m_Successors[i].buildTree(subsetIndices[i], subsetWeights[i], data,
+              dists[i], attIndicesWindow, random, depth, subsets);
+        }
+        return;
+      }
+
+      long[] seeds = new long[m_Successors.length];
+      for (int i = 0; i < seeds.length; i++) {
+        seeds[i] = random.nextLong();
+      }
+
+      List<Future<Object>> pending = new ArrayList<Future<Object>>();
+      for (int i = 0; i < m_Successors.length; i++) {
+        final Tree successor = m_Successors[i];
+        final int index = i;
+        final int[] window = attIndicesWindow.clone();
+        final Random successorRandom = new Random(seeds[i]);
+
+        // The last subtree is always grown by this thread, another thread
+        // needs its own space for splitting the instances
+        if ((i < m_Successors.length - 1)
+            && (subsetIndices[i][0][data.classIndex()].length >= MIN_INSTANCES_PER_TASK)) {
+          pending.add(m_executorPool.submit(new Callable<Object>() {
+            public Object call() throws Exception {
+              successor.buildTree(subsetIndices[index], subsetWeights[index],
+                  data, dists[index], window, successorRandom, depth,
+                  new int[data.numInstances()]);
+              return null;
+            }
+          }));
+        } else {
+          successor.buildTree(subsetIndices[i], subsetWeights[i], data,
+              dists[i], window, successorRandom, depth, subsets);
+        }
+      }
+      for (Future<Object> future : pending) {
+        waitFor(future);
       }
     }
 
@@ -1276,58 +1545,169 @@ public class RandomTree extends Classifier implements OptionHandler,
       return subsets;
     }
 
+    /**
+     * Returns the subset an instance with a non-missing value for the split
+     * attribute belongs to.
+     * 
+     * @param inst the instance
+     * @param data the training data
+     * @return the index of the subset
+     */
+    protected int subset(Instance inst, Instances data) {
+
+      // Do we have a nominal attribute?
+      if (data.attribute(m_Attribute).isNominal()) {
+        return (int) inst.value(m_Attribute);
+      }
+
+      // Do we have a numeric attribute?
+      if (data.attribute(m_Attribute).isNumeric()) {
+        return (inst.value(m_Attribute) < m_SplitPoint) ? 0 : 1;
+      }
+
+      // Else throw an exception
+      throw new IllegalArgumentException("Unknown attribute type");
+    }
+
+    /**
+     * Splits the instances at this node into subsets based on the given
+     * split. The instances keep their order, so the subsets are still
+     * sorted on the numeric attributes.
+     * 
+     * @param subsetIndices receives the indices of the instances of each
+     *          subset
+     * @param subsetWeights receives the weights of the instances of each
+     *          subset
+     * @param sortedIndices the indices of the instances at this node
+     * @param weights the weights of the instances at this node
+     * @param data the training data
+     * @param subsets receives the subset of each instance at this node, -1
+     *          for a missing value, indexed like the training data
+     * @throws Exception if something goes wrong
+     */
+    protected void splitData(int[][][][] subsetIndices,
+        double[][][][] subsetWeights, int[][] sortedIndices,
+        double[][] weights, Instances data, int[] subsets) throws Exception {
+
+      // Find the subset of each instance and count the instances in each
+      // subset
+      int[] indices = sortedIndices[data.classIndex()];
+      int[] num = new int[m_Prop.length];
+      for (int j = 0; j < indices.length; j++) {
+        Instance inst = data.instance(indices[j]);
+        if (inst.isMissing(m_Attribute)) {
+          subsets[indices[j]] = -1;
+          for (int k = 0; k < m_Prop.length; k++) {
+            if (m_Prop[k] > 0) {
+              num[k]++;
+            }
+          }
+        } else {
+          subsets[indices[j]] = subset(inst, data);
+          num[subsets[indices[j]]]++;
+        }
+      }
+
+      // Allocate the arrays of the subsets
+      for (int k = 0; k < m_Prop.length; k++) {
+        subsetIndices[k][0] = new int[sortedIndices.length][];
+        subsetWeights[k][0] = new double[sortedIndices.length][];
+      }
+
+      // Go through the data in the order of each attribute
+      int[] pos = new int[m_Prop.length];
+      for (int i = 0; i < sortedIndices.length; i++) {
+        if (sortedIndices[i] == null) {
+          continue;
+        }
+        for (int k = 0; k < m_Prop.length; k++) {
+          subsetIndices[k][0][i] = new int[num[k]];
+          subsetWeights[k][0][i] = new double[num[k]];
+          pos[k] = 0;
+        }
+        for (int j = 0; j < sortedIndices[i].length; j++) {
+          int k = subsets[sortedIndices[i][j]];
+
+          // Does the instance have a missing value?
+          if (k == -1) {
+
+            // Split instance up
+            for (k = 0; k < m_Prop.length; k++) {
+              if (m_Prop[k] > 0) {
+                subsetIndices[k][0][i][pos[k]] = sortedIndices[i][j];
+                subsetWeights[k][0][i][pos[k]] = m_Prop[k] * weights[i][j];
+                pos[k]++;
+              }
+            }
+          } else {
+            subsetIndices[k][0][i][pos[k]] = sortedIndices[i][j];
+            subsetWeights[k][0][i][pos[k]] = weights[i][j];
+            pos[k]++;
+          }
+        }
+      }
+    }
+
     /**
      * Computes class distribution for an attribute.
      * 
      * @param props
      * @param dists
      * @param att the attribute index
-     * @param data the data to work with
+     * @param sortedIndices the indices of the instances at this node
+     * @param weights the weights of the instances at this node
+     * @param data the training data
      * @throws Exception if something goes wrong
      */
     protected double distribution(double[][] props, double[][][] dists,
-        int att, Instances data) throws Exception {
+        int att, int[][] sortedIndices, double[][] weights, Instances data)
+        throws Exception {
 
       double splitPoint = Double.NaN;
       Attribute attribute = data.attribute(att);
       double[][] dist = null;
-      int indexOfFirstMissingValue = data.numInstances();
+      int[] indices;
+      double[] instWeights;
+      int indexOfFirstMissingValue;
 
       if (attribute.isNominal()) {
 
         // For nominal attributes
+        indices = sortedIndices[data.classIndex()];
+        instWeights = weights[data.classIndex()];
+        indexOfFirstMissingValue = indices.length;
         dist = new double[attribute.numValues()][data.numClasses()];
-        for (int i = 0; i < data.numInstances(); i++) {
-          Instance inst = data.instance(i);
+        for (int i = 0; i < indices.length; i++) {
+          Instance inst = data.instance(indices[i]);
           if (inst.isMissing(att)) {
 
             // Skip missing values at this stage
-            if (indexOfFirstMissingValue == data.numInstances()) {
+            if (indexOfFirstMissingValue == indices.length) {
               indexOfFirstMissingValue = i;
             }
             continue;
           }
-          dist[(int) inst.value(att)][(int) inst.classValue()] += inst.weight();
+          dist[(int) inst.value(att)][(int) inst.classValue()] += instWeights[i];
         }
       } else {
 
-        // For numeric attributes
+        // For numeric attributes, the instances are sorted already
+        indices = sortedIndices[att];
+        instWeights = weights[att];
+        indexOfFirstMissingValue = indices.length;
         double[][] currDist = new double[2][data.numClasses()];
         dist = new double[2][data.numClasses()];
 
-        // Sort data
-        data.sort(att);
-
         // Move all instances into second subset
-        for (int j = 0; j < data.numInstances(); j++) {
-          Instance inst = data.instance(j);
+        for (int j = 0; j < indices.length; j++) {
+          Instance inst = data.instance(indices[j]);
           if (inst.isMissing(att)) {
 
             // Can stop as soon as we hit a missing value
             indexOfFirstMissingValue = j;
             break;
           }
-          currDist[1][(int) inst.classValue()] += inst.weight();
+          currDist[1][(int) inst.classValue()] += instWeights[j];
         }
 
         // Value before splitting
@@ -1339,10 +1719,10 @@ public class RandomTree extends Classifier implements OptionHandler,
         }
 
         // Try all possible split points
-        double currSplit = data.instance(0).value(att);
+        double currSplit = data.instance(indices[0]).value(att);
         double currVal, bestVal = -Double.MAX_VALUE;
         for (int i = 0; i < indexOfFirstMissingValue; i++) {
-          Instance inst = data.instance(i);
+          Instance inst = data.instance(indices[i]);
 
           // Can we place a sensible split point here?
           if (inst.value(att) > currSplit) {
@@ -1373,8 +1753,8 @@ public class RandomTree extends Classifier implements OptionHandler,
           }
 
           // Shift over the weight
-          currDist[0][(int) inst.classValue()] += inst.weight();
-          currDist[1][(int) inst.classValue()] -= inst.weight();
+          currDist[0][(int) inst.classValue()] += instWeights[i];
+          currDist[1][(int) inst.classValue()] -= instWeights[i];
         }
       }
 
@@ -1392,21 +1772,21 @@ public class RandomTree extends Classifier implements OptionHandler,
       }
 
       // Distribute weights for instances with missing values
-      for (int i = indexOfFirstMissingValue; i < data.numInstances(); i++) {
-        Instance inst = data.instance(i);
+      for (int i = indexOfFirstMissingValue; i < indices.length; i++) {
+        Instance inst = data.instance(indices[i]);
         if (attribute.isNominal()) {
 
           // Need to check if attribute value is missing
           if (inst.isMissing(att)) {
             for (int j = 0; j < dist.length; j++) {
-              dist[j][(int) inst.classValue()] += props[0][j] * inst.weight();
+              dist[j][(int) inst.classValue()] += props[0][j] * instWeights[i];
             }
           }
         } else {
 
           // Can be sure that value is missing, so no test required
           for (int j = 0; j < dist.length; j++) {
-            dist[j][(int) inst.classValue()] += props[0][j] * inst.weight();
+            dist[j][(int) inst.classValue()] += props[0][j] * instWeights[i];
           }
         }
       }
@@ -111,6 +111,15 @@ public class BinC45Split
 
     return m_attIndex;
   }
+
+  /**
+   * Returns the split point (numeric attribute) or the split value
+   * (binary split on a nominal attribute).
+   */
+  public final double splitPoint() {
+
+    return m_splitPoint;
+  }
   
   /**
    * Returns (C4.5-type) gain ratio for the generated split.
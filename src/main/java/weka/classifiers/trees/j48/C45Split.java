@@ -123,6 +123,14 @@ public class C45Split
     return m_attIndex;
   }
 
+  /**
+   * Returns the split point (numeric attributes only).
+   */
+  public final double splitPoint() {
+
+    return m_splitPoint;
+  }
+
   /**
    * Gets class probability for instance.
    *
@@ -236,6 +236,84 @@ public class ClassifierTree
     return (double)maxIndex;
   }
 
+  /**
+   * Flattens the tree into primitive arrays for fast classification.
+   * The leaves hold the class probabilities without Laplace correction,
+   * as used by classifyInstance().
+   *
+   * @return the compiled tree
+   * @throws Exception if the tree contains a split model that can't
+   * be compiled
+   */
+  public CompiledTree compile() throws Exception {
+
+    CompiledTree.Builder builder = 
+      new CompiledTree.Builder(m_train.numClasses());
+
+    compile(builder, 0, m_train);
+    return builder.build();
+  }
+
+  /**
+   * Stores this node as the given node of the compiled tree.
+   */
+  private void compile(CompiledTree.Builder builder, int node, 
+		       Instances header) throws Exception {
+
+    double[] dist = new double[header.numClasses()];
+
+    if (m_isLeaf) {
+      for (int j = 0; j < dist.length; j++) {
+	dist[j] = localModel().classProb(j, null, -1);
+      }
+      builder.setLeaf(node, dist);
+      return;
+    }
+
+    int attIndex;
+    int test;
+    double value = 0;
+    if (localModel() instanceof C45Split) {
+      attIndex = ((C45Split)localModel()).attIndex();
+      if (header.attribute(attIndex).isNumeric()) {
+	test = CompiledTree.NUMERIC;
+	value = ((C45Split)localModel()).splitPoint();
+      } else {
+	test = CompiledTree.NOMINAL;
+      }
+    } else if (localModel() instanceof BinC45Split) {
+      attIndex = ((BinC45Split)localModel()).attIndex();
+      test = header.attribute(attIndex).isNumeric() ? 
+	CompiledTree.NUMERIC : CompiledTree.BINARY_NOMINAL;
+      value = ((BinC45Split)localModel()).splitPoint();
+    } else {
+      throw new Exception("Can't compile split model " 
+			  + localModel().getClass().getName());
+    }
+
+    // Empty sons are skipped for missing values, and replaced by
+    // the distribution of their subset otherwise.
+    Distribution distribution = localModel().distribution();
+    double[] missingWeights = new double[m_sons.length];
+    for (int i = 0; i < m_sons.length; i++) {
+      if (!son(i).m_isEmpty) {
+	missingWeights[i] = distribution.perBag(i) / distribution.total();
+      }
+    }
+
+    int first = builder.setSplit(node, attIndex, test, value, missingWeights);
+    for (int i = 0; i < m_sons.length; i++) {
+      if (son(i).m_isEmpty) {
+	for (int j = 0; j < dist.length; j++) {
+	  dist[j] = localModel().classProb(j, null, i);
+	}
+	builder.setLeaf(first + i, dist);
+      } else {
+	son(i).compile(builder, first + i, header);
+      }
+    }
+  }
+
   /**
    * Cleanup in order to save memory.
    * 
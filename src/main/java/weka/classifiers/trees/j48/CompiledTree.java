@@ -0,0 +1,426 @@
+/*
+ *    This program is free software; you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation; either version 2 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program; if not, write to the Free Software
+ *    Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+/*
+ *    CompiledTree.java
+ *
+ */
+
+package weka.classifiers.trees.j48;
+
+import weka.core.Instance;
+import weka.core.RevisionHandler;
+import weka.core.RevisionUtils;
+import weka.core.Utils;
+
+import java.io.Serializable;
+
+/**
+ * A C4.5-type decision tree flattened into parallel primitive arrays, for
+ * fast classification. Rows are given as arrays of attribute values, laid
+ * out like Instance.toDoubleArray(), with missing values encoded as
+ * Instance.missingValue(). <p/>
+ *
+ * The compiled tree gives the same predictions as the tree it was compiled
+ * from: instances with a missing value for a split attribute are passed
+ * down all branches with the weights of the split, and the class with the
+ * highest probability is chosen as in ClassifierTree.classifyInstance().
+ * Classifying a row that does not need that allocates nothing.
+ *
+ * @version $Revision: 1.1 $
+ */
+public class CompiledTree
+  implements Serializable, RevisionHandler {
+
+  /** for serialization */
+  private static final long serialVersionUID = -3260378926325711340L;
+
+  /** Test of a numeric attribute: value &lt;= split point goes to the first child. */
+  public static final int NUMERIC = 0;
+
+  /** Test of a nominal attribute with one child per value. */
+  public static final int NOMINAL = 1;
+
+  /** Test of a nominal attribute: the split value goes to the first child. */
+  public static final int BINARY_NOMINAL = 2;
+
+  /** The number of classes. */
+  private final int m_numClasses;
+
+  /** Attribute tested at each node, -1 for leaves. */
+  private final int[] m_attribute;
+
+  /** Type of the test at each node. */
+  private final int[] m_test;
+
+  /** Split point or split value at each node. */
+  private final double[] m_value;
+
+  /** First child of each node, or offset of the distribution for leaves. */
+  private final int[] m_child;
+
+  /** Number of children of each node. */
+  private final int[] m_numChildren;
+
+  /** Weight of each node if the attribute of its parent is missing. */
+  private final double[] m_missingWeight;
+
+  /** Predicted class at each leaf. */
+  private final int[] m_leafClass;
+
+  /** Class distributions of the leaves. */
+  private final double[] m_distributions;
+
+  /**
+   * Creates the tree from the arrays of the builder.
+   */
+  private CompiledTree(Builder builder) {
+
+    int numNodes = builder.m_numNodes;
+
+    m_numClasses = builder.m_numClasses;
+    m_attribute = new int[numNodes];
+    m_test = new int[numNodes];
+    m_value = new double[numNodes];
+    m_child = new int[numNodes];
+    m_numChildren = new int[numNodes];
+    m_missingWeight = new double[numNodes];
+    m_leafClass = new int[numNodes];
+    System.arraycopy(builder.m_attribute, 0, m_attribute, 0, numNodes);
+    System.arraycopy(builder.m_test, 0, m_test, 0, numNodes);
+    System.arraycopy(builder.m_value, 0, m_value, 0, numNodes);
+    System.arraycopy(builder.m_child, 0, m_child, 0, numNodes);
+    System.arraycopy(builder.m_numChildren, 0, m_numChildren, 0, numNodes);
+    System.arraycopy(builder.m_missingWeight, 0, m_missingWeight, 0, numNodes);
+    m_distributions = new double[builder.m_numDistributions];
+    System.arraycopy(builder.m_distributions, 0, m_distributions, 0,
+		     m_distributions.length);
+
+    for (int i = 0; i < numNodes; i++) {
+      if (m_attribute[i] < 0) {
+	m_leafClass[i] = maxIndex(m_distributions, m_child[i]);
+      }
+    }
+  }
+
+  /**
+   * Returns the index of the class with the highest probability, using
+   * the same comparison as ClassifierTree.classifyInstance().
+   */
+  private int maxIndex(double[] dist, int offset) {
+
+    double maxProb = -1;
+    int maxIndex = 0;
+
+    for (int j = 0; j < m_numClasses; j++) {
+      if (Utils.gr(dist[offset + j], maxProb)) {
+	maxIndex = j;
+	maxProb = dist[offset + j];
+      }
+    }
+    return maxIndex;
+  }
+
+  /**
+   * Returns the child of the given node the given value leads to.
+   */
+  private int child(int node, double value) {
+
+    switch (m_test[node]) {
+    case NUMERIC:
+      return m_child[node] + (Utils.smOrEq(value, m_value[node]) ? 0 : 1);
+    case NOMINAL:
+      return m_child[node] + (int) value;
+    default:
+      return m_child[node] + (((int) m_value[node] == (int) value) ? 0 : 1);
+    }
+  }
+
+  /**
+   * Adds the weighted class distribution of the given row below the given
+   * node to the given array.
+   */
+  private void addDistribution(int node, double[] row, double weight,
+			       double[] dist) {
+
+    while (m_attribute[node] >= 0) {
+      double value = row[m_attribute[node]];
+      if (Instance.isMissingValue(value)) {
+	int first = m_child[node];
+	for (int i = first; i < first + m_numChildren[node]; i++) {
+	  if (m_missingWeight[i] > 0) {
+	    addDistribution(i, row, m_missingWeight[i] * weight, dist);
+	  }
+	}
+	return;
+      }
+      node = child(node, value);
+    }
+
+    int offset = m_child[node];
+    for (int j = 0; j < m_numClasses; j++) {
+      dist[j] += weight * m_distributions[offset + j];
+    }
+  }
+
+  /**
+   * Returns the number of classes.
+   *
+   * @return the number of classes
+   */
+  public int numClasses() {
+
+    return m_numClasses;
+  }
+
+  /**
+   * Returns the number of nodes.
+   *
+   * @return the number of nodes
+   */
+  public int numNodes() {
+
+    return m_attribute.length;
+  }
+
+  /**
+   * Computes the class distribution for the given row.
+   *
+   * @param row the attribute values
+   * @param dist the array to store the distribution in, of length
+   * numClasses()
+   */
+  public void distribution(double[] row, double[] dist) {
+
+    for (int j = 0; j < m_numClasses; j++) {
+      dist[j] = 0;
+    }
+    addDistribution(0, row, 1, dist);
+  }
+
+  /**
+   * Predicts the class of the given row. If a missing value has to be
+   * passed down more than one branch, the given array is used to collect
+   * the class distribution.
+   *
+   * @param row the attribute values
+   * @param dist an array of length numClasses(), or null to allocate one
+   * when needed
+   * @return the index of the predicted class
+   */
+  public int predict(double[] row, double[] dist) {
+
+    int node = 0;
+    while (m_attribute[node] >= 0) {
+      double value = row[m_attribute[node]];
+      if (Instance.isMissingValue(value)) {
+	if (dist == null) {
+	  dist = new double[m_numClasses];
+	}
+	distribution(row, dist);
+	return maxIndex(dist, 0);
+      }
+      node = child(node, value);
+    }
+    return m_leafClass[node];
+  }
+
+  /**
+   * Predicts the class of the given row.
+   *
+   * @param row the attribute values
+   * @return the index of the predicted class
+   */
+  public int predict(double[] row) {
+
+    return predict(row, null);
+  }
+
+  /**
+   * Predicts the classes of the given rows.
+   *
+   * @param rows the attribute values, per row
+   * @param out the array to store the indices of the predicted classes in
+   */
+  public void predict(double[][] rows, int[] out) {
+
+    double[] dist = new double[m_numClasses];
+    for (int i = 0; i < rows.length; i++) {
+      out[i] = predict(rows[i], dist);
+    }
+  }
+
+  /**
+   * Returns the revision string.
+   *
+   * @return		the revision
+   */
+  public String getRevision() {
+    return RevisionUtils.extract("$Revision: 1.1 $");
+  }
+
+  /**
+   * Collects the nodes of a tree before it is compiled. The children of a
+   * node are stored next to each other; they are reserved when the node is
+   * set, and set afterwards.
+   */
+  public static class Builder {
+
+    /** The number of classes. */
+    private final int m_numClasses;
+
+    /** The number of nodes so far. */
+    private int m_numNodes;
+
+    /** Attribute tested at each node, -1 for leaves. */
+    private int[] m_attribute = new int[16];
+
+    /** Type of the test at each node. */
+    private int[] m_test = new int[16];
+
+    /** Split point or split value at each node. */
+    private double[] m_value = new double[16];
+
+    /** First child of each node, or offset of the distribution for leaves. */
+    private int[] m_child = new int[16];
+
+    /** Number of children of each node. */
+    private int[] m_numChildren = new int[16];
+
+    /** Weight of each node if the attribute of its parent is missing. */
+    private double[] m_missingWeight = new double[16];
+
+    /** The number of distribution values so far. */
+    private int m_numDistributions;
+
+    /** Class distributions of the leaves. */
+    private double[] m_distributions = new double[16];
+
+    /**
+     * Creates a builder, with the root reserved as node 0.
+     *
+     * @param numClasses the number of classes
+     */
+    public Builder(int numClasses) {
+
+      m_numClasses = numClasses;
+      reserve(1);
+    }
+
+    /**
+     * Reserves the given number of consecutive nodes.
+     *
+     * @return the first of the nodes
+     */
+    private int reserve(int num) {
+
+      int first = m_numNodes;
+
+      m_numNodes += num;
+      if (m_numNodes > m_attribute.length) {
+	int size = Math.max(2 * m_attribute.length, m_numNodes);
+	m_attribute = grow(m_attribute, size);
+	m_test = grow(m_test, size);
+	m_value = grow(m_value, size);
+	m_child = grow(m_child, size);
+	m_numChildren = grow(m_numChildren, size);
+	m_missingWeight = grow(m_missingWeight, size);
+      }
+      for (int i = first; i < m_numNodes; i++) {
+	m_attribute[i] = -1;
+      }
+      return first;
+    }
+
+    /**
+     * Returns a copy of the given array with the given length.
+     */
+    private static int[] grow(int[] array, int length) {
+
+      int[] result = new int[length];
+      System.arraycopy(array, 0, result, 0, array.length);
+      return result;
+    }
+
+    /**
+     * Returns a copy of the given array with the given length.
+     */
+    private static double[] grow(double[] array, int length) {
+
+      double[] result = new double[length];
+      System.arraycopy(array, 0, result, 0, array.length);
+      return result;
+    }
+
+    /**
+     * Makes the given node a leaf.
+     *
+     * @param node the node
+     * @param dist the probability of each class at the leaf
+     */
+    public void setLeaf(int node, double[] dist) {
+
+      if (m_numDistributions + m_numClasses > m_distributions.length) {
+	m_distributions = grow(m_distributions,
+			       Math.max(2 * m_distributions.length,
+					m_numDistributions + m_numClasses));
+      }
+      System.arraycopy(dist, 0, m_distributions, m_numDistributions,
+		       m_numClasses);
+      m_attribute[node] = -1;
+      m_child[node] = m_numDistributions;
+      m_numChildren[node] = 0;
+      m_numDistributions += m_numClasses;
+    }
+
+    /**
+     * Makes the given node a split and reserves its children.
+     *
+     * @param node the node
+     * @param attIndex the attribute tested
+     * @param test the type of test, NUMERIC, NOMINAL or BINARY_NOMINAL
+     * @param value the split point or split value, if any
+     * @param missingWeights the weight of each child if the attribute is
+     * missing; 0 for children that must be skipped
+     * @return the first child; the others follow it
+     */
+    public int setSplit(int node, int attIndex, int test, double value,
+			double[] missingWeights) {
+
+      int first = reserve(missingWeights.length);
+
+      m_attribute[node] = attIndex;
+      m_test[node] = test;
+      m_value[node] = value;
+      m_child[node] = first;
+      m_numChildren[node] = missingWeights.length;
+      for (int i = 0; i < missingWeights.length; i++) {
+	m_missingWeight[first + i] = missingWeights[i];
+      }
+      return first;
+    }
+
+    /**
+     * Creates the compiled tree.
+     *
+     * @return the compiled tree
+     */
+    public CompiledTree build() {
+
+      return new CompiledTree(this);
+    }
+  }
+}
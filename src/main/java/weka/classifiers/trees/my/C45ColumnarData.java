@@ -0,0 +1,238 @@
+package weka.classifiers.trees.my;
+
+import weka.core.Instance;
+import weka.core.Instances;
+
+import java.util.Arrays;
+
+/**
+ * Read-only columnar view of a set of instances: the values of each
+ * attribute are held in one array, next to arrays with the weights and the
+ * class values, so that the tree can be grown on rows of these arrays
+ * instead of on Instance objects.
+ *
+ * The numeric attributes can also be quantized into a limited number of
+ * bins of roughly equal frequency. Values that are equal always end up in
+ * the same bin, and each bin is described by the largest value in it.
+ */
+public class C45ColumnarData {
+
+    /** The instances this view was created from */
+    private final Instances data;
+
+    /** Values per attribute, per row; null for the class attribute */
+    private final double[][] columns;
+
+    /** Weight per row */
+    private final double[] weights;
+
+    /** Class value per row */
+    private final int[] classes;
+
+    /** Bin per row, per numeric attribute (-1 if missing); null if not binned */
+    private int[][] bins;
+
+    /** Largest value in each bin, per numeric attribute; null if not binned */
+    private double[][] binMaxima;
+
+    /** Smallest value in each bin, per numeric attribute; null if not binned */
+    private double[][] binMinima;
+
+    /**
+     * Creates the view of the given instances.
+     *
+     * @param data the instances, without missing class values
+     */
+    public C45ColumnarData(Instances data) {
+        int numInstances = data.numInstances();
+
+        this.data = data;
+        columns = new double[data.numAttributes()][];
+        for (int att = 0; att < data.numAttributes(); att++) {
+            if (att != data.classIndex()) {
+                columns[att] = new double[numInstances];
+            }
+        }
+        weights = new double[numInstances];
+        classes = new int[numInstances];
+
+        for (int row = 0; row < numInstances; row++) {
+            Instance instance = data.instance(row);
+            for (int att = 0; att < columns.length; att++) {
+                if (columns[att] != null) {
+                    columns[att][row] = instance.value(att);
+                }
+            }
+            weights[row] = instance.weight();
+            classes[row] = (int) instance.classValue();
+        }
+    }
+
+    /**
+     * Creates the view of the given instances, quantizing the values of each
+     * numeric attribute into at most the given number of bins.
+     *
+     * @param data the instances, without missing class values
+     * @param maxBins the maximum number of bins per attribute
+     */
+    public C45ColumnarData(Instances data, int maxBins) {
+        this(data);
+
+        bins = new int[columns.length][];
+        binMaxima = new double[columns.length][];
+        binMinima = new double[columns.length][];
+        for (int att = 0; att < columns.length; att++) {
+            if (columns[att] != null && data.attribute(att).isNumeric()) {
+                quantize(att, maxBins);
+            }
+        }
+    }
+
+    /**
+     * Quantizes the given attribute into bins of roughly equal frequency.
+     */
+    private void quantize(int att, int maxBins) {
+        double[] column = columns[att];
+
+        double[] known = new double[column.length];
+        int numKnown = 0;
+        for (double value : column) {
+            if (!Instance.isMissingValue(value)) {
+                known[numKnown++] = value;
+            }
+        }
+        Arrays.sort(known, 0, numKnown);
+
+        int numDistinct = 0;
+        for (int i = 0; i < numKnown; i++) {
+            if ((i == numKnown - 1) || (known[i] < known[i + 1])) {
+                numDistinct++;
+            }
+        }
+
+        // Give each distinct value its own bin if there are few enough of
+        // them; otherwise close a bin at the end of a run of equal values,
+        // once it holds its share of the values.
+        double[] maxima = new double[Math.min(numDistinct, maxBins)];
+        double[] minima = new double[maxima.length];
+        int numBins = 0;
+        int first = 0;
+        for (int i = 0; i < numKnown; i++) {
+            boolean lastOfRun = (i == numKnown - 1) || (known[i] < known[i + 1]);
+            if (lastOfRun && ((numDistinct <= maxBins) || ((numBins == maxBins - 1) ?
+                    (i == numKnown - 1) : ((long) (i + 1) * maxBins >= (long) (numBins + 1) * numKnown)))) {
+                minima[numBins] = known[first];
+                maxima[numBins++] = known[i];
+                first = i + 1;
+            }
+        }
+        binMaxima[att] = new double[numBins];
+        System.arraycopy(maxima, 0, binMaxima[att], 0, numBins);
+        binMinima[att] = new double[numBins];
+        System.arraycopy(minima, 0, binMinima[att], 0, numBins);
+
+        bins[att] = new int[column.length];
+        for (int row = 0; row < column.length; row++) {
+            if (Instance.isMissingValue(column[row])) {
+                bins[att][row] = -1;
+            } else {
+                int bin = Arrays.binarySearch(binMaxima[att], column[row]);
+                bins[att][row] = (bin >= 0) ? bin : -bin - 1;
+            }
+        }
+    }
+
+    /**
+     * Returns true if the numeric attributes are quantized.
+     */
+    public final boolean isBinned() {
+        return bins != null;
+    }
+
+    /**
+     * Returns the number of bins of the given numeric attribute.
+     */
+    public final int numBins(int att) {
+        return binMaxima[att].length;
+    }
+
+    /**
+     * Returns the bins of the given numeric attribute, per row (-1 if the
+     * value is missing). The array must not be modified.
+     */
+    public final int[] bins(int att) {
+        return bins[att];
+    }
+
+    /**
+     * Returns the largest value in the given bin of the given attribute.
+     */
+    public final double binMaximum(int att, int bin) {
+        return binMaxima[att][bin];
+    }
+
+    /**
+     * Returns the smallest value in the given bin of the given attribute.
+     */
+    public final double binMinimum(int att, int bin) {
+        return binMinima[att][bin];
+    }
+
+    /**
+     * Returns the instances this view was created from (used for the
+     * header information).
+     */
+    public final Instances getData() {
+        return data;
+    }
+
+    /**
+     * Returns the number of rows.
+     */
+    public final int numInstances() {
+        return weights.length;
+    }
+
+    /**
+     * Returns the values of the given attribute, per row. The array must
+     * not be modified.
+     */
+    public final double[] column(int att) {
+        return columns[att];
+    }
+
+    /**
+     * Returns the value of the given attribute in the given row.
+     */
+    public final double value(int row, int att) {
+        return columns[att][row];
+    }
+
+    /**
+     * Returns true if the given attribute is missing in the given row.
+     */
+    public final boolean isMissing(int row, int att) {
+        return Instance.isMissingValue(columns[att][row]);
+    }
+
+    /**
+     * Returns the weight of the given row.
+     */
+    public final double weight(int row) {
+        return weights[row];
+    }
+
+    /**
+     * Returns the class value of the given row.
+     */
+    public final int classValue(int row) {
+        return classes[row];
+    }
+
+    /**
+     * Returns the instance of the given row.
+     */
+    public final Instance instance(int row) {
+        return data.instance(row);
+    }
+}
@@ -109,6 +109,23 @@ public class C45Distribution implements Cloneable, Serializable, RevisionHandler
         }
     }
 
+    /**
+     * Creates a distribution with only one bag according
+     * to the instances at the given node.
+     */
+    public C45Distribution(C45SortedIndices source) {
+        instancePerClassPerBag = new double[1][0];
+        weightPerBag = new double[1];
+        totalWeight = 0;
+        weightPerClass = new double[source.getData().numClasses()];
+        instancePerClassPerBag[0] = new double[source.getData().numClasses()];
+
+        int[] members = source.members();
+        for (int i = source.start(); i < source.end(); i++) {
+            add(0, source.classValue(members[i]), source.weight(members[i]));
+        }
+    }
+
     /**
      * Creates a distribution according to given instances and
      * split model.
@@ -240,6 +257,16 @@ public class C45Distribution implements Cloneable, Serializable, RevisionHandler
         totalWeight += weight;
     }
 
+    /**
+     * Adds the given weight of the given class to given bag.
+     */
+    public final void add(int bagIndex, int classIndex, double weight) {
+        instancePerClassPerBag[bagIndex][classIndex] += weight;
+        weightPerBag[bagIndex] += weight;
+        weightPerClass[classIndex] += weight;
+        totalWeight += weight;
+    }
+
     /**
      * Subtracts given instance from given bag.
      *
@@ -310,6 +337,41 @@ public class C45Distribution implements Cloneable, Serializable, RevisionHandler
         }
     }
 
+    /**
+     * Adds all instances at the given node with unknown values for given
+     * attribute, weighted according to frequency of instances in each bag.
+     */
+    public final void addInstWithUnknown(C45SortedIndices source, int attIndex) {
+
+        double[] probs = new double[weightPerBag.length];
+        for (int j = 0; j < weightPerBag.length; j++) {
+            if (Utils.eq(totalWeight, 0)) {
+                probs[j] = 1.0 / probs.length;
+            } else {
+                probs[j] = weightPerBag[j] / totalWeight;
+            }
+        }
+
+        int[] members = source.members();
+        for (int i = source.start(); i < source.end(); i++) {
+            int id = members[i];
+
+            if (source.isMissing(id, attIndex)) {
+                // handle missing value
+                int classIndex = source.classValue(id);
+
+                double weight = source.weight(id);
+                weightPerClass[classIndex] += weight;
+                totalWeight += weight;
+                for (int j = 0; j < weightPerBag.length; j++) {
+                    double newWeight = probs[j] * weight;
+                    instancePerClassPerBag[j][classIndex] += newWeight;
+                    weightPerBag[j] += newWeight;
+                }
+            }
+        }
+    }
+
     /**
      * Adds all instances in given range to given bag.
      *
@@ -651,6 +713,30 @@ public class C45Distribution implements Cloneable, Serializable, RevisionHandler
         weightPerBag[to] += weight;
     }
 
+    /**
+     * Shifts the given weight of the given class from one bag to another one.
+     */
+    public final void shift(int from, int to, int classIndex, double weight) {
+        instancePerClassPerBag[from][classIndex] -= weight;
+        instancePerClassPerBag[to][classIndex] += weight;
+        weightPerBag[from] -= weight;
+        weightPerBag[to] += weight;
+    }
+
+    /**
+     * Shifts the given counts per class from one bag to another one.
+     */
+    public final void shift(int from, int to, double[] counts) {
+        double sum = Utils.sum(counts);
+
+        for (int i = 0; i < counts.length; i++) {
+            instancePerClassPerBag[from][i] -= counts[i];
+            instancePerClassPerBag[to][i] += counts[i];
+        }
+        weightPerBag[from] -= sum;
+        weightPerBag[to] += sum;
+    }
+
     /**
      * Shifts all instances in given range from one bag to another one.
      *
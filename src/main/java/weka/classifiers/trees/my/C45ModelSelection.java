@@ -4,7 +4,12 @@ import weka.core.Attribute;
 import weka.core.Instances;
 import weka.core.Utils;
 
+import java.util.Arrays;
 import java.util.Enumeration;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 /**
  * Created by Alvin Natawiguna on 9/29/2015.
@@ -16,6 +21,12 @@ public class C45ModelSelection {
     /** All the training data */
     private Instances trainData; //
 
+    /** Known values of the numeric attributes in all the training data, sorted */
+    private double[][] sortedValues;
+
+    /** Pool used to evaluate the candidate splits, null for serial evaluation */
+    private transient ExecutorService executorPool;
+
     /**
      * Initializes the split selection method with the given parameters.
      *
@@ -34,12 +45,48 @@ public class C45ModelSelection {
      */
     public void cleanup() {
         trainData = null;
+        sortedValues = null;
+    }
+
+    /**
+     * Sets the pool used to evaluate the candidate splits of a node
+     * concurrently. Passing null evaluates them one after another.
+     *
+     * @param pool the pool to use, or null
+     */
+    public void setExecutorPool(ExecutorService pool) {
+        executorPool = pool;
+    }
+
+    /**
+     * Returns the pool used to evaluate the candidate splits.
+     *
+     * @return the pool, or null if the splits are evaluated serially
+     */
+    public ExecutorService getExecutorPool() {
+        return executorPool;
     }
 
     /**
      * Selects C4.5-type split for the given dataset.
      */
     public final C45SplitModel selectModel(Instances data){
+        return chooseModel(data, null);
+    }
+
+    /**
+     * Selects C4.5-type split for the given node of the presorted data.
+     */
+    public final C45SplitModel selectModel(C45SortedIndices data) {
+        return chooseModel(data.getData(), data);
+    }
+
+    /**
+     * Selects C4.5-type split either for the given dataset or, if the
+     * presorted data is given, for the node of it (in which case the
+     * dataset only provides the header information).
+     */
+    private C45SplitModel chooseModel(Instances data, C45SortedIndices sortedData) {
         C45SplitModel bestModel = null;
 
         double averageInfoGain = 0;
@@ -50,7 +97,8 @@ public class C45ModelSelection {
 
             // Check if all Instances belong to one class or if not
             // enough Instances to split.
-            C45Distribution checkDistribution = new C45Distribution(data);
+            C45Distribution checkDistribution = (sortedData == null) ?
+                    new C45Distribution(data) : new C45Distribution(sortedData);
             C45NoSplitModel noSplitModel = new C45NoSplitModel(checkDistribution);
 
             if (Utils.sm(checkDistribution.total(), 2 * minObjectsInInterval) ||
@@ -74,8 +122,7 @@ public class C45ModelSelection {
                 }
             }
 
-            C45SplitModel []currentModel = new C45SplitModel[data.numAttributes()];
-            double sumOfWeights = data.sumOfWeights();
+            C45SplitModel []currentModel = buildModels(data, sortedData);
 
             // For each attribute.
             for (int i = 0; i < data.numAttributes(); i++){
@@ -83,10 +130,6 @@ public class C45ModelSelection {
                 // Apart from class attribute.
                 if (i != (data).classIndex()) {
 
-                    // Get models for current attribute.
-                    currentModel[i] = new C45SplitModel(i, minObjectsInInterval, sumOfWeights);
-                    currentModel[i].buildClassifier(data);
-
                     // Check if useful split for current attribute
                     // exists and check for enumerated attributes with
                     // a lot of values.
@@ -137,14 +180,24 @@ public class C45ModelSelection {
             // attribute to the distribution for the model, so that
             // the complete distribution is stored with the model.
             assert bestModel != null;
-            bestModel.getDistribution().addInstWithUnknown(data, bestModel.getAttributeIndex());
+            if (sortedData == null) {
+                bestModel.getDistribution().addInstWithUnknown(data, bestModel.getAttributeIndex());
+            } else {
+                bestModel.getDistribution().addInstWithUnknown(sortedData, bestModel.getAttributeIndex());
+            }
 
             // Set the split point analogue to C45 if attribute numeric.
             if (trainData != null) {
-                bestModel.setSplitPoint(trainData);
+                if (sortedData == null) {
+                    bestModel.setSplitPoint(trainData);
+                } else if (data.attribute(bestModel.getAttributeIndex()).isNumeric()) {
+                    bestModel.setSplitPoint(sortedValues(bestModel.getAttributeIndex()));
+                }
             }
 
             return bestModel;
+        } catch (ExecutionException e) {
+            e.getCause().printStackTrace();
         } catch (Exception e) {
             e.printStackTrace();
         }
@@ -152,6 +205,113 @@ public class C45ModelSelection {
         return null;
     }
 
+    /**
+     * Returns the known values of the given numeric attribute in all the
+     * training data, in ascending order.
+     */
+    private double[] sortedValues(int attIndex) {
+        if (sortedValues == null) {
+            sortedValues = new double[trainData.numAttributes()][];
+        }
+
+        if (sortedValues[attIndex] == null) {
+            double[] values = new double[trainData.numInstances()];
+            int numKnown = 0;
+            for (int i = 0; i < trainData.numInstances(); i++) {
+                if (!trainData.instance(i).isMissing(attIndex)) {
+                    values[numKnown++] = trainData.instance(i).value(attIndex);
+                }
+            }
+
+            double[] known = new double[numKnown];
+            System.arraycopy(values, 0, known, 0, numKnown);
+            Arrays.sort(known);
+            sortedValues[attIndex] = known;
+        }
+
+        return sortedValues[attIndex];
+    }
+
+    /**
+     * Builds one split model per attribute (apart from the class attribute),
+     * either serially or on the executor pool. The models are returned in
+     * attribute order, so the choice of the best split does not depend on
+     * the order in which they were built.
+     *
+     * @param data the data to evaluate the splits on, or the header of the
+     * presorted data
+     * @param sortedData the node of the presorted data, or null
+     * @return the models, indexed by attribute; null for the class attribute
+     * @throws Exception if a model can't be built
+     */
+    private C45SplitModel[] buildModels(final Instances data, final C45SortedIndices sortedData)
+            throws Exception {
+        C45SplitModel []models = new C45SplitModel[data.numAttributes()];
+        final double sumOfWeights = (sortedData == null) ? data.sumOfWeights() : sortedData.sumOfWeights();
+
+        if (executorPool == null) {
+            for (int i = 0; i < data.numAttributes(); i++) {
+                if (i != data.classIndex()) {
+                    models[i] = buildModel(data, sortedData, i, sumOfWeights);
+                }
+            }
+        } else {
+            Future<?> []futures = new Future<?>[data.numAttributes()];
+            for (int i = 0; i < data.numAttributes(); i++) {
+                if (i != data.classIndex()) {
+                    final int attIndex = i;
+                    futures[i] = executorPool.submit(new Callable<C45SplitModel>() {
+                        public C45SplitModel call() throws Exception {
+                            // finding a numeric split point sorts the instances,
+                            // so concurrent evaluations each need their own copy
+                            Instances evalData = data;
+                            if ((sortedData == null) && data.attribute(attIndex).isNumeric()) {
+                                evalData = new Instances(data);
+                            }
+                            return buildModel(evalData, sortedData, attIndex, sumOfWeights);
+                        }
+                    });
+                }
+            }
+
+            for (int i = 0; i < futures.length; i++) {
+                if (futures[i] != null) {
+                    models[i] = (C45SplitModel) futures[i].get();
+                }
+            }
+        }
+
+        return models;
+    }
+
+    /**
+     * Builds the split model for one attribute. Finding the split point of a
+     * numeric attribute sorts the given instances in place, as it always
+     * has; when the models are built concurrently the caller passes a copy.
+     * Presorted data is only read.
+     *
+     * @param data the data to evaluate the split on, or the header of the
+     * presorted data
+     * @param sortedData the node of the presorted data, or null
+     * @param attIndex the index of the attribute to split on
+     * @param sumOfWeights the sum of the weights of the data
+     * @return the split model
+     * @throws Exception if the model can't be built
+     */
+    private C45SplitModel buildModel(Instances data, C45SortedIndices sortedData, int attIndex,
+                                     double sumOfWeights) throws Exception {
+        C45SplitModel model = new C45SplitModel(attIndex, minObjectsInInterval, sumOfWeights);
+
+        if (sortedData != null) {
+            model.buildClassifier(sortedData);
+            return model;
+        }
+
+        model.buildClassifier(data);
+
+        return model;
+    }
+
     /**
      * Selects C4.5-type split for the given dataset.
      */
@@ -0,0 +1,544 @@
+package weka.classifiers.trees.my;
+
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.core.Utils;
+
+/**
+ * Presorted view of the training data at a node of the tree.
+ *
+ * The data is read from a columnar view. Each numeric attribute is sorted
+ * once, at the root, into an array of instance ids. A node owns the range
+ * [start, end) of these arrays and of the member array; splitting a node
+ * partitions its ranges stably, in place, so the children inherit sorted
+ * ranges without sorting again. Only when instances with a missing value
+ * are passed down to all subsets (and so appear in more than one child) do
+ * the children get arrays of their own.
+ *
+ * If the columnar view is binned, the numeric attributes are not sorted.
+ * Instead, each node holds a histogram of the class weights per bin of each
+ * numeric attribute. When a node is split, the histograms are computed for
+ * all subsets but the largest one, whose histograms are obtained by
+ * subtracting the others from the histograms of the node.
+ */
+public class C45SortedIndices {
+
+    /** The training data */
+    private final C45ColumnarData data;
+
+    /** Row in the training data, per instance id */
+    private final int[] rows;
+
+    /** Weight of the instance at this node, per instance id */
+    private final double[] weights;
+
+    /** Instance ids in the order of the training data */
+    private final int[] members;
+
+    /** Instance ids sorted by value, per numeric attribute; null otherwise */
+    private final int[][] sorted;
+
+    /** Work array for partitioning, indexed like the arrays above */
+    private final int[] buffer;
+
+    /** Subset of the split, per instance id; work array for partitioning */
+    private final int[] subsets;
+
+    /** First position of this node in the arrays */
+    private final int start;
+
+    /** Position after the last one of this node in the arrays */
+    private final int end;
+
+    /**
+     * Position after the last instance with a known value, per numeric
+     * attribute; instances with missing values are sorted last.
+     */
+    private final int[] knownEnd;
+
+    /**
+     * Weight per class per bin, per numeric attribute, if the data is
+     * binned; released once the node is split.
+     */
+    private double[][][] histograms;
+
+    /** Number of instances per bin, per numeric attribute, if binned */
+    private int[][] binCounts;
+
+    /**
+     * Sorts the given training data.
+     *
+     * @param data the training data
+     */
+    public C45SortedIndices(C45ColumnarData data) {
+        int numInstances = data.numInstances();
+        Instances header = data.getData();
+
+        this.data = data;
+        rows = new int[numInstances];
+        weights = new double[numInstances];
+        members = new int[numInstances];
+        for (int i = 0; i < numInstances; i++) {
+            rows[i] = i;
+            weights[i] = data.weight(i);
+            members[i] = i;
+        }
+
+        start = 0;
+        end = numInstances;
+        sorted = new int[header.numAttributes()][];
+        knownEnd = new int[header.numAttributes()];
+        if (!data.isBinned()) {
+            for (int att = 0; att < header.numAttributes(); att++) {
+                if (att != header.classIndex() && header.attribute(att).isNumeric()) {
+                    sorted[att] = sort(att);
+                }
+            }
+        }
+
+        buffer = new int[numInstances];
+        subsets = new int[numInstances];
+
+        if (data.isBinned()) {
+            computeHistograms();
+        }
+    }
+
+    /**
+     * Creates a node sharing the arrays of its parent.
+     */
+    private C45SortedIndices(C45SortedIndices parent, int start, int end, int[] knownEnd) {
+        data = parent.data;
+        rows = parent.rows;
+        weights = parent.weights;
+        members = parent.members;
+        sorted = parent.sorted;
+        buffer = parent.buffer;
+        subsets = parent.subsets;
+
+        this.start = start;
+        this.end = end;
+        this.knownEnd = knownEnd;
+    }
+
+    /**
+     * Creates a node with new arrays for the given number of instances.
+     */
+    private C45SortedIndices(C45ColumnarData data, int numInstances) {
+        this.data = data;
+        rows = new int[numInstances];
+        weights = new double[numInstances];
+        members = new int[numInstances];
+        sorted = new int[data.getData().numAttributes()][];
+        buffer = new int[numInstances];
+        subsets = new int[numInstances];
+
+        start = 0;
+        end = numInstances;
+        knownEnd = new int[sorted.length];
+    }
+
+    /**
+     * Sorts the ids of the instances by the value of the given attribute,
+     * putting instances with missing values last.
+     */
+    private int[] sort(int att) {
+        int numKnown = 0;
+        for (int i = 0; i < members.length; i++) {
+            if (!data.isMissing(i, att)) {
+                numKnown++;
+            }
+        }
+
+        double[] values = new double[numKnown];
+        int[] ids = new int[members.length];
+        int known = 0;
+        int missing = numKnown;
+        for (int i = 0; i < members.length; i++) {
+            if (data.isMissing(i, att)) {
+                ids[missing++] = i;
+            } else {
+                values[known] = data.value(i, att);
+                ids[known++] = i;
+            }
+        }
+
+        int[] order = Utils.stableSort(values);
+        int[] result = new int[members.length];
+        for (int i = 0; i < numKnown; i++) {
+            result[i] = ids[order[i]];
+        }
+        System.arraycopy(ids, numKnown, result, numKnown, members.length - numKnown);
+        knownEnd[att] = numKnown;
+
+        return result;
+    }
+
+    /**
+     * Computes the histograms of the numeric attributes at this node.
+     */
+    private void computeHistograms() {
+        int numClasses = getData().numClasses();
+
+        histograms = new double[sorted.length][][];
+        binCounts = new int[sorted.length][];
+        for (int att = 0; att < sorted.length; att++) {
+            int[] bins = (att != getData().classIndex()) ? data.bins(att) : null;
+            if (bins != null) {
+                double[][] histogram = new double[data.numBins(att)][numClasses];
+                int[] counts = new int[data.numBins(att)];
+                for (int i = start; i < end; i++) {
+                    int id = members[i];
+                    int bin = bins[rows[id]];
+                    if (bin >= 0) {
+                        histogram[bin][data.classValue(rows[id])] += weights[id];
+                        counts[bin]++;
+                    }
+                }
+                histograms[att] = histogram;
+                binCounts[att] = counts;
+            }
+        }
+    }
+
+    /**
+     * Sets the histograms of this node to the ones of its parent minus the
+     * ones of its siblings. The arrays of the parent are reused.
+     */
+    private void subtractHistograms(C45SortedIndices parent, C45SortedIndices[] siblings) {
+        histograms = new double[sorted.length][][];
+        binCounts = new int[sorted.length][];
+        for (int att = 0; att < sorted.length; att++) {
+            if (parent.histograms[att] != null) {
+                double[][] histogram = parent.histograms[att];
+                int[] counts = parent.binCounts[att];
+                for (C45SortedIndices sibling : siblings) {
+                    if (sibling != this) {
+                        for (int bin = 0; bin < histogram.length; bin++) {
+                            for (int k = 0; k < histogram[bin].length; k++) {
+                                histogram[bin][k] -= sibling.histograms[att][bin][k];
+                            }
+                            counts[bin] -= sibling.binCounts[att][bin];
+                        }
+                    }
+                }
+                histograms[att] = histogram;
+                binCounts[att] = counts;
+            }
+        }
+    }
+
+    /**
+     * Returns true if the numeric attributes are binned rather than sorted.
+     */
+    public final boolean isBinned() {
+        return data.isBinned();
+    }
+
+    /**
+     * Returns the weight per class per bin of the given numeric attribute.
+     */
+    public final double[][] histogram(int att) {
+        return histograms[att];
+    }
+
+    /**
+     * Returns the number of instances per bin of the given numeric attribute.
+     */
+    public final int[] binCounts(int att) {
+        return binCounts[att];
+    }
+
+    /**
+     * Returns the largest value in the given bin of the given attribute.
+     */
+    public final double binMaximum(int att, int bin) {
+        return data.binMaximum(att, bin);
+    }
+
+    /**
+     * Returns the smallest value in the given bin of the given attribute.
+     */
+    public final double binMinimum(int att, int bin) {
+        return data.binMinimum(att, bin);
+    }
+
+    /**
+     * Returns the training data (used for the header information).
+     */
+    public final Instances getData() {
+        return data.getData();
+    }
+
+    /**
+     * Returns the first position of this node.
+     */
+    public final int start() {
+        return start;
+    }
+
+    /**
+     * Returns the position after the last one of this node.
+     */
+    public final int end() {
+        return end;
+    }
+
+    /**
+     * Returns the number of instances at this node.
+     */
+    public final int numInstances() {
+        return end - start;
+    }
+
+    /**
+     * Returns the instance ids of this node in the order of the training
+     * data, for the positions [start(), end()).
+     */
+    public final int[] members() {
+        return members;
+    }
+
+    /**
+     * Returns the instance ids sorted by the given numeric attribute, for the
+     * positions [start(), end()). Instances with a known value come first.
+     */
+    public final int[] sorted(int att) {
+        return sorted[att];
+    }
+
+    /**
+     * Returns the position after the last instance with a known value of the
+     * given numeric attribute.
+     */
+    public final int knownEnd(int att) {
+        return knownEnd[att];
+    }
+
+    /**
+     * Returns the given instance.
+     */
+    public final Instance instance(int id) {
+        return data.instance(rows[id]);
+    }
+
+    /**
+     * Returns the value of the given attribute for the given instance.
+     */
+    public final double value(int id, int att) {
+        return data.value(rows[id], att);
+    }
+
+    /**
+     * Returns true if the given attribute is missing for the given instance.
+     */
+    public final boolean isMissing(int id, int att) {
+        return data.isMissing(rows[id], att);
+    }
+
+    /**
+     * Returns the class value of the given instance.
+     */
+    public final int classValue(int id) {
+        return data.classValue(rows[id]);
+    }
+
+    /**
+     * Returns the weight of the given instance at this node.
+     */
+    public final double weight(int id) {
+        return weights[id];
+    }
+
+    /**
+     * Returns the sum of the weights of the instances at this node.
+     */
+    public final double sumOfWeights() {
+        double sum = 0;
+
+        for (int i = start; i < end; i++) {
+            sum += weights[members[i]];
+        }
+
+        return sum;
+    }
+
+    /**
+     * Copies the instances at this node, with their weights at this node,
+     * into a new set of instances.
+     */
+    public final Instances toInstances() {
+        Instances result = new Instances(data.getData(), numInstances());
+
+        for (int i = start; i < end; i++) {
+            int id = members[i];
+            result.add(instance(id));
+            result.lastInstance().setWeight(weights[id]);
+        }
+
+        return result;
+    }
+
+    /**
+     * Splits the node into the subsets of the given model.
+     *
+     * @param model the split model
+     * @return the nodes for the subsets
+     * @throws Exception if something goes wrong
+     */
+    public final C45SortedIndices[] split(C45SplitModel model) throws Exception {
+        int numSubsets = model.getNumberOfSubsets();
+        int[] counts = new int[numSubsets];
+        boolean replicate = false;
+
+        for (int i = start; i < end; i++) {
+            int id = members[i];
+            int subset = model.getSubsetIndex(this, id);
+            subsets[id] = subset;
+            if (subset > -1) {
+                counts[subset]++;
+            } else {
+                replicate = true;
+            }
+        }
+
+        if (replicate) {
+            C45SortedIndices[] result = splitWithReplication(model);
+            if (isBinned()) {
+                for (C45SortedIndices child : result) {
+                    child.computeHistograms();
+                }
+                histograms = null;
+                binCounts = null;
+            }
+            return result;
+        }
+
+        int[] offsets = new int[numSubsets];
+        offsets[0] = start;
+        for (int j = 1; j < numSubsets; j++) {
+            offsets[j] = offsets[j - 1] + counts[j - 1];
+        }
+
+        int[][] childKnownEnd = new int[numSubsets][knownEnd.length];
+        partition(members, start, end, offsets);
+        for (int att = 0; att < sorted.length; att++) {
+            if (sorted[att] != null) {
+                for (int i = start; i < knownEnd[att]; i++) {
+                    childKnownEnd[subsets[sorted[att][i]]][att]++;
+                }
+                for (int j = 0; j < numSubsets; j++) {
+                    childKnownEnd[j][att] += offsets[j];
+                }
+                partition(sorted[att], start, end, offsets);
+            }
+        }
+
+        C45SortedIndices[] result = new C45SortedIndices[numSubsets];
+        for (int j = 0; j < numSubsets; j++) {
+            result[j] = new C45SortedIndices(this, offsets[j], offsets[j] + counts[j], childKnownEnd[j]);
+        }
+
+        if (isBinned()) {
+            int largest = 0;
+            for (int j = 1; j < numSubsets; j++) {
+                if (counts[j] > counts[largest]) {
+                    largest = j;
+                }
+            }
+            for (int j = 0; j < numSubsets; j++) {
+                if (j != largest) {
+                    result[j].computeHistograms();
+                }
+            }
+            result[largest].subtractHistograms(this, result);
+            histograms = null;
+            binCounts = null;
+        }
+
+        return result;
+    }
+
+    /**
+     * Stably partitions the given range of ids by their subsets.
+     */
+    private void partition(int[] ids, int from, int to, int[] offsets) {
+        int[] next = offsets.clone();
+
+        for (int i = from; i < to; i++) {
+            buffer[next[subsets[ids[i]]]++] = ids[i];
+        }
+        System.arraycopy(buffer, from, ids, from, to - from);
+    }
+
+    /**
+     * Splits the node if some instances go to more than one subset. The
+     * subsets of the instances must already be stored.
+     */
+    private C45SortedIndices[] splitWithReplication(C45SplitModel model) {
+        int numSubsets = model.getNumberOfSubsets();
+        C45SortedIndices[] result = new C45SortedIndices[numSubsets];
+
+        // Weights of the instances that go to all subsets.
+        C45Distribution distribution = model.getDistribution();
+        double[] subsetWeights = new double[numSubsets];
+        for (int j = 0; j < numSubsets; j++) {
+            subsetWeights[j] = distribution.perBag(j) / distribution.total();
+        }
+
+        for (int j = 0; j < numSubsets; j++) {
+            boolean withMissing = Utils.gr(subsetWeights[j], 0);
+
+            // Count the instances of the subset.
+            int count = 0;
+            for (int i = start; i < end; i++) {
+                int subset = subsets[members[i]];
+                if (subset == j || (subset == -1 && withMissing)) {
+                    count++;
+                }
+            }
+
+            // Copy them, numbering them anew in the order of the data. The
+            // buffer maps the old ids to the new ones (plus one).
+            C45SortedIndices child = new C45SortedIndices(data, count);
+            int k = 0;
+            for (int i = start; i < end; i++) {
+                int id = members[i];
+                if (subsets[id] == j || (subsets[id] == -1 && withMissing)) {
+                    child.rows[k] = rows[id];
+                    child.weights[k] = (subsets[id] == j) ? weights[id] : subsetWeights[j] * weights[id];
+                    child.members[k] = k;
+                    k++;
+                    buffer[id] = k;
+                } else {
+                    buffer[id] = 0;
+                }
+            }
+
+            // Map the sorted arrays to the new ids.
+            for (int att = 0; att < sorted.length; att++) {
+                if (sorted[att] != null) {
+                    int[] childSorted = new int[count];
+                    int n = 0;
+                    for (int i = start; i < end; i++) {
+                        if (i == knownEnd[att]) {
+                            child.knownEnd[att] = n;
+                        }
+                        int newId = buffer[sorted[att][i]];
+                        if (newId > 0) {
+                            childSorted[n++] = newId - 1;
+                        }
+                    }
+                    if (knownEnd[att] == end) {
+                        child.knownEnd[att] = n;
+                    }
+                    child.sorted[att] = childSorted;
+                }
+            }
+
+            result[j] = child;
+        }
+
+        return result;
+    }
+}
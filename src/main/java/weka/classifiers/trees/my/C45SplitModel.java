@@ -99,6 +99,14 @@ public class C45SplitModel {
         return attributeIndex;
     }
 
+    /**
+     * Returns the split point of a numeric attribute.
+     * @return double
+     */
+    public final double getSplitPoint() {
+        return splitPoint;
+    }
+
     /**
      * Creates a C4.5-type split on the given data. Assumes that none of
      * the class values is missing.
@@ -126,6 +134,36 @@ public class C45SplitModel {
         }
     }
 
+    /**
+     * Creates a C4.5-type split on the instances at the given node of the
+     * presorted data. Assumes that none of the class values is missing.
+     *
+     * @exception Exception if something goes wrong
+     */
+    public void buildClassifier(C45SortedIndices trainInstances) throws Exception {
+        // Initialize the remaining instance variables.
+        numSubsets = 0;
+        splitPoint = Double.MAX_VALUE;
+        infoGain = 0;
+        gainRatio = 0;
+
+        // Different treatment for enumerated and numeric
+        // attributes.
+        if (trainInstances.getData().attribute(attributeIndex).isNominal()) {
+            complexityIndex = trainInstances.getData().attribute(attributeIndex).numValues();
+            index = complexityIndex;
+            handleEnumeratedAttribute(trainInstances);
+        }else{
+            complexityIndex = 2;
+            index = 0;
+            if (trainInstances.isBinned()) {
+                handleBinnedAttribute(trainInstances);
+            } else {
+                handleNumericAttribute(trainInstances);
+            }
+        }
+    }
+
     private void handleEnumeratedAttribute(Instances trainInstances) throws Exception {
         distribution = new C45Distribution(complexityIndex, trainInstances.numClasses());
 
@@ -246,6 +284,229 @@ public class C45SplitModel {
         gainRatio = gainRatioSplitCritValue(distribution, sumOfWeights, infoGain);
     }
 
+    private void handleEnumeratedAttribute(C45SortedIndices trainInstances) {
+        distribution = new C45Distribution(complexityIndex, trainInstances.getData().numClasses());
+
+        // Only Instances with known values are relevant.
+        int[] members = trainInstances.members();
+        for (int i = trainInstances.start(); i < trainInstances.end(); i++) {
+            int id = members[i];
+            if (!trainInstances.isMissing(id, attributeIndex)) {
+                distribution.add((int) trainInstances.value(id, attributeIndex),
+                        trainInstances.classValue(id), trainInstances.weight(id));
+            }
+        }
+
+        // Check if minimum number of Instances in at least two
+        // subsets.
+        if (distribution.check(minimumNumberOfObjects)) {
+            numSubsets = complexityIndex;
+            infoGain = infoGainSplitCritValue(distribution, sumOfWeights);
+            gainRatio = gainRatioSplitCritValue(distribution, sumOfWeights, infoGain);
+        }
+    }
+
+    /**
+     * Creates split on numeric attribute, using the order of the instances
+     * sorted at the root instead of sorting them again.
+     */
+    private void handleNumericAttribute(C45SortedIndices trainInstances) {
+        int[] sorted = trainInstances.sorted(attributeIndex);
+        int first = trainInstances.start();
+        int firstMiss = trainInstances.knownEnd(attributeIndex);
+        int numClasses = trainInstances.getData().numClasses();
+        int next = first + 1;
+        int last = first;
+        int splitIndex = -1;
+
+        // Current attribute is a numeric attribute.
+        distribution = new C45Distribution(2, numClasses);
+
+        // Only Instances with known values are relevant; they
+        // are sorted before the ones with missing values.
+        for (int i = first; i < firstMiss; i++) {
+            distribution.add(1, trainInstances.classValue(sorted[i]), trainInstances.weight(sorted[i]));
+        }
+
+        // Compute minimum number of Instances required in each
+        // subset.
+        double minSplit = 0.1 * (distribution.total()) / ((double) numClasses);
+        if (Utils.smOrEq(minSplit, minimumNumberOfObjects)) {
+            minSplit = minimumNumberOfObjects;
+        } else if (Utils.gr(minSplit, 25)) {
+            // need to limit the minimum number of instances per subset
+            minSplit = 25;
+        }
+
+        // Enough Instances with known values?
+        if (Utils.sm((double) (firstMiss - first), 2 * minSplit)) {
+            return;
+        }
+
+        // Compute values of criteria for all possible split
+        // indices.
+        // use 1e-5 as minimum value
+        double defaultEntropy = oldEntropy(distribution);
+        double previous = trainInstances.value(sorted[first], attributeIndex);
+        while (next < firstMiss) {
+            double current = trainInstances.value(sorted[next], attributeIndex);
+            if (previous + 1e-5 < current) {
+
+                // Move class values for all Instances up to next
+                // possible split point.
+                for (int i = last; i < next; i++) {
+                    distribution.shift(1, 0, trainInstances.classValue(sorted[i]), trainInstances.weight(sorted[i]));
+                }
+
+                // Check if enough Instances in each subset and compute
+                // values for criteria.
+                if (Utils.grOrEq(distribution.perBag(0), minSplit) && Utils.grOrEq(distribution.perBag(1), minSplit)) {
+                    double currentInfoGain = infoGainSplitCritValue(distribution, sumOfWeights, defaultEntropy);
+                    if (Utils.gr(currentInfoGain, infoGain)) {
+                        infoGain = currentInfoGain;
+                        splitIndex = next - 1;
+                    }
+                    index++;
+                }
+                last = next;
+            }
+            previous = current;
+            next++;
+        }
+
+        // Was there any useful split?
+        if (index == 0)
+            return;
+
+        // Compute modified information gain for best split.
+        infoGain -= (Utils.log2(index) / sumOfWeights);
+        if (Utils.smOrEq(infoGain, 0))
+            return;
+
+        // Set instance variables' values to values for
+        // best split.
+        numSubsets = 2;
+        double below = trainInstances.value(sorted[splitIndex], attributeIndex);
+        double above = trainInstances.value(sorted[splitIndex + 1], attributeIndex);
+        splitPoint = (above + below) / 2;
+
+        // In case we have a numerical precision problem we need to choose the
+        // smaller value
+        if (splitPoint == above) {
+            splitPoint = below;
+        }
+
+        // Restore distribution for best split.
+        distribution = new C45Distribution(2, numClasses);
+        for (int i = first; i < firstMiss; i++) {
+            distribution.add((i <= splitIndex) ? 0 : 1, trainInstances.classValue(sorted[i]),
+                    trainInstances.weight(sorted[i]));
+        }
+
+        // Compute modified gain ratio for best split.
+        gainRatio = gainRatioSplitCritValue(distribution, sumOfWeights, infoGain);
+    }
+
+    /**
+     * Creates split on binned numeric attribute, considering only the
+     * boundaries between bins as split points.
+     */
+    private void handleBinnedAttribute(C45SortedIndices trainInstances) {
+        double[][] histogram = trainInstances.histogram(attributeIndex);
+        int[] binCounts = trainInstances.binCounts(attributeIndex);
+        int numClasses = trainInstances.getData().numClasses();
+        int splitBin = -1;
+
+        // Current attribute is a numeric attribute.
+        distribution = new C45Distribution(2, numClasses);
+
+        // Only Instances with known values are relevant.
+        int numKnown = 0;
+        int lastBin = -1;
+        for (int bin = 0; bin < histogram.length; bin++) {
+            if (binCounts[bin] > 0) {
+                distribution.add(1, histogram[bin]);
+                numKnown += binCounts[bin];
+                lastBin = bin;
+            }
+        }
+
+        // Compute minimum number of Instances required in each
+        // subset.
+        double minSplit = 0.1 * (distribution.total()) / ((double) numClasses);
+        if (Utils.smOrEq(minSplit, minimumNumberOfObjects)) {
+            minSplit = minimumNumberOfObjects;
+        } else if (Utils.gr(minSplit, 25)) {
+            // need to limit the minimum number of instances per subset
+            minSplit = 25;
+        }
+
+        // Enough Instances with known values?
+        if (Utils.sm((double) numKnown, 2 * minSplit)) {
+            return;
+        }
+
+        // Compute values of criteria for the boundaries after all
+        // non-empty bins but the last one.
+        double defaultEntropy = oldEntropy(distribution);
+        for (int bin = 0; bin < lastBin; bin++) {
+            if (binCounts[bin] > 0) {
+
+                // Move class values of the bin.
+                distribution.shift(1, 0, histogram[bin]);
+
+                // Check if enough Instances in each subset and compute
+                // values for criteria.
+                if (Utils.grOrEq(distribution.perBag(0), minSplit) && Utils.grOrEq(distribution.perBag(1), minSplit)) {
+                    double currentInfoGain = infoGainSplitCritValue(distribution, sumOfWeights, defaultEntropy);
+                    if (Utils.gr(currentInfoGain, infoGain)) {
+                        infoGain = currentInfoGain;
+                        splitBin = bin;
+                    }
+                    index++;
+                }
+            }
+        }
+
+        // Was there any useful split?
+        if (index == 0)
+            return;
+
+        // Compute modified information gain for best split.
+        infoGain -= (Utils.log2(index) / sumOfWeights);
+        if (Utils.smOrEq(infoGain, 0))
+            return;
+
+        // Set instance variables' values to values for
+        // best split, halfway between the bin and the next
+        // non-empty one as for exact splits.
+        numSubsets = 2;
+        int nextBin = splitBin + 1;
+        while (binCounts[nextBin] == 0) {
+            nextBin++;
+        }
+        double below = trainInstances.binMaximum(attributeIndex, splitBin);
+        double above = trainInstances.binMinimum(attributeIndex, nextBin);
+        splitPoint = (above + below) / 2;
+
+        // In case we have a numerical precision problem we need to choose the
+        // smaller value
+        if (splitPoint == above) {
+            splitPoint = below;
+        }
+
+        // Restore distribution for best split.
+        distribution = new C45Distribution(2, numClasses);
+        for (int bin = 0; bin <= lastBin; bin++) {
+            if (binCounts[bin] > 0) {
+                distribution.add((bin <= splitBin) ? 0 : 1, histogram[bin]);
+            }
+        }
+
+        // Compute modified gain ratio for best split.
+        gainRatio = gainRatioSplitCritValue(distribution, sumOfWeights, infoGain);
+    }
+
     /**
      * This method computes the information gain in the same way
      * C4.5 does.
@@ -408,6 +669,26 @@ public class C45SplitModel {
         }
     }
 
+    /**
+     * Returns index of subset the given instance of the presorted data is
+     * assigned to. Returns -1 if it is assigned to more than one subset.
+     */
+    public final int getSubsetIndex(C45SortedIndices data, int id) {
+        if (data.isMissing(id, attributeIndex)) {
+            return -1;
+        } else {
+            if (data.getData().attribute(attributeIndex).isNominal()) {
+                return (int) data.value(id, attributeIndex);
+            } else {
+                if (Utils.smOrEq(data.value(id, attributeIndex), splitPoint)) {
+                    return 0;
+                } else {
+                    return 1;
+                }
+            }
+        }
+    }
+
     /**
      * Returns weights if instance is assigned to more than one subset.
      * Returns null if instance is only assigned to one subset.
@@ -453,6 +734,30 @@ public class C45SplitModel {
         }
     }
 
+    /**
+     * Sets split point to greatest value smaller or equal to old split
+     * point, looking it up in the sorted values of the training data.
+     *
+     * @param sortedValues the known values of the attribute in all the
+     * training data, in ascending order
+     */
+    public final void setSplitPoint(double[] sortedValues) {
+        if (numSubsets > 1) {
+            int first = 0;
+            int last = sortedValues.length;
+            while (first < last) {
+                int middle = (first + last) >>> 1;
+                if (Utils.smOrEq(sortedValues[middle], splitPoint)) {
+                    first = middle + 1;
+                } else {
+                    last = middle;
+                }
+            }
+
+            splitPoint = (first > 0) ? sortedValues[first - 1] : -Double.MAX_VALUE;
+        }
+    }
+
     /**
      * Help method for computing the split entropy.
      */
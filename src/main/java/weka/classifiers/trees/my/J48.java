@@ -1,8 +1,13 @@
 package weka.classifiers.trees.my;
 
 import weka.classifiers.Classifier;
+import weka.classifiers.trees.j48.CompiledTree;
 import weka.core.*;
 
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
 /**
  * Created by Alvin Natawiguna on 9/28/2015.
  *
@@ -54,6 +59,12 @@ public class J48 extends Classifier {
      */
     protected Instances trainInstance;
 
+    /**
+     * Training instances as a node of the presorted data, copied into
+     * trainInstance only when they are needed
+     */
+    protected transient C45SortedIndices trainIndices;
+
     /**
      * Instances for pruning
      */
@@ -64,6 +75,26 @@ public class J48 extends Classifier {
      */
     protected int id;
 
+    /**
+     * Number of threads used to evaluate the candidate splits at a node
+     */
+    protected int numExecutionSlots = 1;
+
+    /**
+     * True if the numeric attributes are sorted once at the root
+     */
+    protected boolean presort = false;
+
+    /**
+     * Maximum number of bins per numeric attribute, 0 for exact splits
+     */
+    protected int maxBins = 0;
+
+    /**
+     * The tree compiled for batch classification, created when needed
+     */
+    protected transient CompiledTree compiledTree;
+
     public J48() {
         super();
     }
@@ -72,6 +103,67 @@ public class J48 extends Classifier {
         modelSelection = model;
     }
 
+    /**
+     * Sets the number of threads used to evaluate the candidate splits
+     * at each node. The tree is the same for any number of threads.
+     *
+     * @param slots the number of threads, 1 for serial evaluation
+     */
+    public void setNumExecutionSlots(int slots) {
+        numExecutionSlots = slots;
+    }
+
+    /**
+     * Returns the number of threads used to evaluate the candidate splits.
+     *
+     * @return the number of threads
+     */
+    public int getNumExecutionSlots() {
+        return numExecutionSlots;
+    }
+
+    /**
+     * Sets whether the numeric attributes are sorted once at the root,
+     * instead of at every node. The sorted orders are partitioned among the
+     * children of each split, and the tree is grown on a columnar copy of
+     * the data rather than on copies of the instances.
+     *
+     * @param presort true to presort the data
+     */
+    public void setPresort(boolean presort) {
+        this.presort = presort;
+    }
+
+    /**
+     * Returns whether the numeric attributes are sorted once at the root.
+     *
+     * @return true if the data is presorted
+     */
+    public boolean getPresort() {
+        return presort;
+    }
+
+    /**
+     * Sets the maximum number of bins the values of each numeric attribute
+     * are quantized into. Split points are then only searched between bins,
+     * using histograms of the class weights per bin. Use 0 (the default) to
+     * search all split points.
+     *
+     * @param maxBins the maximum number of bins, e.g. 256, or 0
+     */
+    public void setMaxBins(int maxBins) {
+        this.maxBins = maxBins;
+    }
+
+    /**
+     * Returns the maximum number of bins per numeric attribute.
+     *
+     * @return the maximum number of bins, 0 if splits are exact
+     */
+    public int getMaxBins() {
+        return maxBins;
+    }
+
     public Capabilities getCapabilities() {
         Capabilities capabilities = new Capabilities(this);
         capabilities.disableAll();
@@ -102,11 +194,33 @@ public class J48 extends Classifier {
             modelSelection = new C45ModelSelection(2, data);
         }
 
+        compiledTree = null;
+
         // remove instances with missing class
         data = new Instances(data);
         data.deleteWithMissingClass();
 
-        buildTree(data, raiseSubtree || !cleanup);
+        ThreadPoolExecutor executorPool = null;
+        if (numExecutionSlots > 1) {
+            executorPool = new ThreadPoolExecutor(numExecutionSlots, numExecutionSlots, 120,
+                    TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>());
+        }
+
+        modelSelection.setExecutorPool(executorPool);
+        try {
+            if (maxBins > 0) {
+                buildTree(new C45SortedIndices(new C45ColumnarData(data, maxBins)), raiseSubtree || !cleanup);
+            } else if (presort) {
+                buildTree(new C45SortedIndices(new C45ColumnarData(data)), raiseSubtree || !cleanup);
+            } else {
+                buildTree(data, raiseSubtree || !cleanup);
+            }
+        } finally {
+            modelSelection.setExecutorPool(null);
+            if (executorPool != null) {
+                executorPool.shutdown();
+            }
+        }
         collapse();
         if (prune) {
             prune();
@@ -158,7 +272,7 @@ public class J48 extends Classifier {
 
             if (raiseSubtree) {
                 errorsLargestBranch = children[indexOfLargestBranch]
-                        .getEstimatedErrorsForBranch(trainInstance);
+                        .getEstimatedErrorsForBranch(getTrainInstances());
             } else {
                 errorsLargestBranch = Double.MAX_VALUE;
             }
@@ -192,7 +306,7 @@ public class J48 extends Classifier {
                 localModel = largestBranch.localModel;
                 leaf = largestBranch.leaf;
 
-                newDistribution(trainInstance);
+                newDistribution(getTrainInstances());
                 prune();
             }
         }
@@ -238,6 +352,46 @@ public class J48 extends Classifier {
         }
     }
 
+    /**
+     * Builds the tree structure from presorted data.
+     *
+     * @param data the node of the presorted data for which the tree
+     * structure is to be generated.
+     * @param keepData is training data to be kept?
+     * @throws Exception if something goes wrong
+     */
+    public void buildTree(C45SortedIndices data, boolean keepData) throws Exception {
+        if (keepData) {
+            trainIndices = data;
+        }
+
+        // initialize remaining attributes
+        test = null;
+        leaf = false;
+        empty = false;
+        children = null;
+        localModel = modelSelection.selectModel(data);
+
+        assert localModel != null;
+        if (localModel.getNumberOfSubsets() > 1) {
+            C45SortedIndices []localInstances = data.split(localModel);
+            data = null;
+
+            children = new J48[localModel.getNumberOfSubsets()];
+            for (int i = 0; i < children.length; i++) {
+                children[i] = getNewTree(localInstances[i]);
+                localInstances[i] = null;
+            }
+        } else {
+            leaf = true;
+            if (Utils.eq(data.sumOfWeights(), 0)) {
+                empty = true;
+            }
+
+            data = null;
+        }
+    }
+
     /**
      * Builds the tree structure with hold out set
      *
@@ -303,6 +457,91 @@ public class J48 extends Classifier {
         return (double)maxIndex;
     }
 
+    /**
+     * Flattens the tree into primitive arrays for fast classification. The
+     * compiled tree predicts the same classes as classifyInstance().
+     *
+     * @return the compiled tree
+     * @throws Exception if the tree has not been built
+     */
+    public CompiledTree compile() throws Exception {
+        Instances header = (trainInstance != null || trainIndices == null) ?
+                trainInstance : trainIndices.getData();
+        if (header == null) {
+            throw new Exception("Tree has not been built");
+        }
+
+        CompiledTree.Builder builder = new CompiledTree.Builder(header.numClasses());
+        compile(builder, 0, header);
+
+        return builder.build();
+    }
+
+    /**
+     * Stores this node as the given node of the compiled tree.
+     */
+    private void compile(CompiledTree.Builder builder, int node, Instances header) throws Exception {
+        double[] dist = new double[header.numClasses()];
+
+        if (leaf) {
+            for (int j = 0; j < dist.length; j++) {
+                dist[j] = localModel.classProbability(j, null, -1);
+            }
+            builder.setLeaf(node, dist);
+            return;
+        }
+
+        int attIndex = localModel.getAttributeIndex();
+        int test = header.attribute(attIndex).isNominal() ? CompiledTree.NOMINAL : CompiledTree.NUMERIC;
+
+        // empty children are skipped for missing values
+        C45Distribution distribution = localModel.getDistribution();
+        double[] missingWeights = new double[children.length];
+        for (int i = 0; i < children.length; i++) {
+            if (!children[i].empty) {
+                missingWeights[i] = distribution.perBag(i) / distribution.total();
+            }
+        }
+
+        int first = builder.setSplit(node, attIndex, test, localModel.getSplitPoint(), missingWeights);
+        for (int i = 0; i < children.length; i++) {
+            if (children[i].empty) {
+                for (int j = 0; j < dist.length; j++) {
+                    dist[j] = localModel.classProbability(j, null, i);
+                }
+                builder.setLeaf(first + i, dist);
+            } else {
+                children[i].compile(builder, first + i, header);
+            }
+        }
+    }
+
+    /**
+     * Classifies all instances of the given set with the compiled tree. The
+     * distributions give probability 1 to the class chosen by
+     * classifyInstance().
+     *
+     * @param data the instances to classify
+     * @param dists the array to store the distributions in
+     * @throws Exception if something goes wrong
+     */
+    @Override
+    public void distributionsForInstances(Instances data, double[][] dists) throws Exception {
+        if (compiledTree == null) {
+            compiledTree = compile();
+        }
+
+        double[] row = new double[data.numAttributes()];
+        double[] buffer = new double[compiledTree.numClasses()];
+        for (int i = 0; i < data.numInstances(); i++) {
+            Instance instance = data.instance(i);
+            for (int j = 0; j < row.length; j++) {
+                row[j] = instance.value(j);
+            }
+            distributionRow(dists, i, buffer.length)[compiledTree.predict(row, buffer)] = 1;
+        }
+    }
+
     /**
      * Cleanup in order to save memory.
      *
@@ -310,6 +549,7 @@ public class J48 extends Classifier {
      */
     public final void cleanup(Instances justHeaderInfo) {
         trainInstance = justHeaderInfo;
+        trainIndices = null;
         test = null;
         if (!leaf) {
             for (J48 child : children) {
@@ -392,6 +632,20 @@ public class J48 extends Classifier {
         return tree;
     }
 
+    /**
+     * Returns a newly created tree.
+     *
+     * @param data the node of the presorted training data
+     * @return the generated tree
+     * @throws Exception if something goes wrong
+     */
+    protected J48 getNewTree(C45SortedIndices data) throws Exception {
+        J48 tree = new J48(modelSelection);
+        tree.buildTree(data, false);
+
+        return tree;
+    }
+
     /**
      * Returns a newly created tree.
      *
@@ -429,7 +683,7 @@ public class J48 extends Classifier {
             if (treeIndex == -1) {
                 double[] weights = localModel.weights(instance);
                 for (int i = 0; i < children.length; i++) {
-                    if (children[i].empty) {
+                    if (!children[i].empty) {
                         prob += children[i].getInstanceLaplaceProbability(classIndex, instance,
                                 weights[i] * weight);
                     }
@@ -466,7 +720,7 @@ public class J48 extends Classifier {
             if (treeIndex == -1) {
                 double[] weights = localModel.weights(instance);
                 for (int i = 0; i < children.length; i++) {
-                    if (children[i].empty) {
+                    if (!children[i].empty) {
                         prob += children[i].getInstanceProbability(classIndex, instance,
                                 weights[i] * weight);
                     }
@@ -483,6 +737,21 @@ public class J48 extends Classifier {
         return prob;
     }
 
+    /**
+     * Returns the training instances kept at this node, copying them from
+     * the presorted data if necessary.
+     *
+     * @return the training instances
+     */
+    private Instances getTrainInstances() {
+        if (trainInstance == null && trainIndices != null) {
+            trainInstance = trainIndices.toInstances();
+            trainIndices = null;
+        }
+
+        return trainInstance;
+    }
+
     /**
      * Computes estimated errors for tree.
      *
@@ -81,7 +81,8 @@ import java.util.Vector;
  *  minPoints (default = 6)</pre>
  * 
  * <pre> -I &lt;String&gt;
- *  index (database) used for DBSCAN (default = weka.clusterers.forOPTICSAndDBScan.Databases.SequentialDatabase)</pre>
+ *  index (database) used for DBSCAN (default = weka.clusterers.forOPTICSAndDBScan.Databases.SequentialDatabase)
+ *  weka.clusterers.forOPTICSAndDBScan.Databases.KDTreeDatabase answers the queries with a KD-tree</pre>
  * 
  * <pre> -D &lt;String&gt;
  *  distance-type (default = weka.clusterers.forOPTICSAndDBScan.DataObjects.EuclideanDataObject)</pre>
@@ -318,7 +319,8 @@ public class DBSCAN
                         1,
                         "-M <int>"));
         vector.addElement(
-                new Option("\tindex (database) used for DBSCAN (default = weka.clusterers.forOPTICSAndDBScan.Databases.SequentialDatabase)",
+                new Option("\tindex (database) used for DBSCAN (default = weka.clusterers.forOPTICSAndDBScan.Databases.SequentialDatabase)\n"
+                        + "\tweka.clusterers.forOPTICSAndDBScan.Databases.KDTreeDatabase answers the queries with a KD-tree",
                         "I",
                         1,
                         "-I <String>"));
@@ -345,7 +347,8 @@ public class DBSCAN
      *  minPoints (default = 6)</pre>
      * 
      * <pre> -I &lt;String&gt;
-     *  index (database) used for DBSCAN (default = weka.clusterers.forOPTICSAndDBScan.Databases.SequentialDatabase)</pre>
+     *  index (database) used for DBSCAN (default = weka.clusterers.forOPTICSAndDBScan.Databases.SequentialDatabase)
+     *  weka.clusterers.forOPTICSAndDBScan.Databases.KDTreeDatabase answers the queries with a KD-tree</pre>
      * 
      * <pre> -D &lt;String&gt;
      *  distance-type (default = weka.clusterers.forOPTICSAndDBScan.DataObjects.EuclideanDataObject)</pre>
@@ -549,7 +552,8 @@ public class DBSCAN
      * displaying in the explorer/experimenter gui
      */
     public String database_TypeTipText() {
-        return "used database";
+        return "used database; the SequentialDatabase compares each query with all "
+          + "DataObjects, the KDTreeDatabase uses a KD-tree on the numeric attributes";
     }
 
     /**
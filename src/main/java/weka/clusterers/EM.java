@@ -27,6 +27,8 @@ import weka.core.Instance;
 import weka.core.Attribute;
 import weka.core.Instances;
 import weka.core.Option;
+import weka.core.ParallelRanges;
+import weka.core.RangeTask;
 import weka.core.RevisionUtils;
 import weka.core.Utils;
 import weka.core.WeightedInstancesHandler;
@@ -35,8 +37,16 @@ import weka.estimators.Estimator;
 import weka.filters.unsupervised.attribute.ReplaceMissingValues;
 
 import java.util.Enumeration;
+import java.util.LinkedList;
+import java.util.List;
 import java.util.Random;
 import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 /**
  <!-- globalinfo-start -->
@@ -78,6 +88,10 @@ import java.util.Vector;
  *  Display model in old format (good when there are many clusters)
  * </pre>
  * 
+ * <pre> -num-slots &lt;num&gt;
+ *  Number of execution slots.
+ *  (default 1 - i.e. no parallelism)</pre>
+ * 
  * <pre> -S &lt;num&gt;
  *  Random number seed.
  *  (default 100)</pre>
@@ -156,6 +170,12 @@ public class EM
   /** display model output in old-style format */
   private boolean m_displayModelInOldFormat;
 
+  /** the number of threads for the cross-validation and the E and M steps */
+  protected int m_executionSlots = 1;
+
+  /** the thread pool used while building the clusterer */
+  protected transient ThreadPoolExecutor m_executorPool;
+
   /**
    * Returns a string describing this clusterer
    * @return a description of the evaluator suitable for
@@ -214,6 +234,11 @@ public class EM
                          + "many clusters)\n",
                          "O", 0, "-O"));
 
+    result.addElement(new Option(
+	"\tNumber of execution slots.\n"
+	+ "\t(default 1 - i.e. no parallelism)",
+	"num-slots", 1, "-num-slots <num>"));
+
     Enumeration en = super.listOptions();
     while (en.hasMoreElements())
       result.addElement(en.nextElement());
@@ -248,6 +273,10 @@ public class EM
    *  Display model in old format (good when there are many clusters)
    * </pre>
    * 
+   * <pre> -num-slots &lt;num&gt;
+   *  Number of execution slots.
+   *  (default 1 - i.e. no parallelism)</pre>
+   * 
    * <pre> -S &lt;num&gt;
    *  Random number seed.
    *  (default 100)</pre>
@@ -278,6 +307,11 @@ public class EM
     }
 
     setDisplayModelInOldFormat(Utils.getFlag('O', options));
+
+    optionString = Utils.getOption("num-slots", options);
+    if (optionString.length() != 0) {
+      setNumExecutionSlots(Integer.parseInt(optionString));
+    }
     
     super.setOptions(options);
   }
@@ -456,6 +490,41 @@ public class EM
   }
 
 
+  /**
+   * Returns the tip text for this property
+   * @return tip text for this property suitable for
+   * displaying in the explorer/experimenter gui
+   */
+  public String numExecutionSlotsTipText() {
+    return "The number of execution slots (threads) to use for "
+      + "cross-validating the number of clusters and for the E and M steps.";
+  }
+
+  /**
+   * Set the number of execution slots (threads) to use for
+   * cross-validating the number of clusters and for the E and M steps.
+   *
+   * @param slots the number of slots to use
+   * @throws Exception if the number of slots is smaller than 1
+   */
+  public void setNumExecutionSlots (int slots)
+    throws Exception {
+    if (slots < 1) {
+      throw  new Exception("Number of execution slots must be > 0");
+    }
+    m_executionSlots = slots;
+  }
+
+  /**
+   * Get the number of execution slots (threads) to use for
+   * cross-validating the number of clusters and for the E and M steps.
+   *
+   * @return the number of slots to use
+   */
+  public int getNumExecutionSlots () {
+    return  m_executionSlots;
+  }
+
   /**
    * Gets the current settings of EM.
    *
@@ -477,6 +546,10 @@ public class EM
     if (m_displayModelInOldFormat) {
       result.add("-O");
     }
+    if (getNumExecutionSlots() > 1) {
+      result.add("-num-slots");
+      result.add("" + getNumExecutionSlots());
+    }
 
     options = super.getOptions();
     for (i = 0; i < options.length; i++)
@@ -643,36 +716,118 @@ public class EM
 
 
   /**
-   * The M step of the EM algorithm.
-   * @param inst the training instances
-   * @throws Exception if something goes wrong
+   * The weighted sums of the M step for a range of the instances.
    */
-  private void M (Instances inst)
-    throws Exception {
-
-    int i, j, l;
+  private class Sums {
+
+    /** the discrete estimators for each cluster */
+    protected Estimator[][] m_model;
+
+    /** the weighted sums, sums of squares and weights of the numeric
+	attributes for each cluster */
+    protected double[][][] m_modelNormal;
+
+    /**
+     * Adds to the given estimators and sums.
+     *
+     * @param model the discrete estimators
+     * @param modelNormal the sums for the numeric attributes
+     */
+    public Sums(Estimator[][] model, double[][][] modelNormal) {
+      m_model = model;
+      m_modelNormal = modelNormal;
+    }
 
-    new_estimators();
-    estimate_priors(inst);
+    /**
+     * Creates empty estimators and sums.
+     *
+     * @param inst the structure of the instances
+     * @param numClusters the number of clusters
+     */
+    public Sums(Instances inst, int numClusters) {
+      m_model = new DiscreteEstimator[numClusters][inst.numAttributes()];
+      m_modelNormal = new double[numClusters][inst.numAttributes()][3];
+      for (int i = 0; i < numClusters; i++) {
+	for (int j = 0; j < inst.numAttributes(); j++) {
+	  if (inst.attribute(j).isNominal()) {
+	    m_model[i][j] = 
+	      new DiscreteEstimator(inst.attribute(j).numValues(), false);
+	  }
+	}
+      }
+    }
 
-    for (i = 0; i < m_num_clusters; i++) {
-      for (j = 0; j < m_num_attribs; j++) {
-        for (l = 0; l < inst.numInstances(); l++) {
-	  Instance in = inst.instance(l);
+    /**
+     * Adds an instance, weighted by its cluster membership probabilities.
+     *
+     * @param in the instance
+     * @param weights the cluster membership probabilities
+     */
+    public void add(Instance in, double[] weights) {
+      for (int i = 0; i < m_model.length; i++) {
+	for (int j = 0; j < m_model[i].length; j++) {
           if (!in.isMissing(j)) {
-            if (inst.attribute(j).isNominal()) {
+            if (m_model[i][j] != null) {
               m_model[i][j].addValue(in.value(j), 
-				     in.weight() * m_weights[l][i]);
+				     in.weight() * weights[i]);
             }
             else {
               m_modelNormal[i][j][0] += (in.value(j) * in.weight() *
-					 m_weights[l][i]);
-              m_modelNormal[i][j][2] += in.weight() * m_weights[l][i];
+					 weights[i]);
+              m_modelNormal[i][j][2] += in.weight() * weights[i];
               m_modelNormal[i][j][1] += (in.value(j) * 
-					 in.value(j) * in.weight() * m_weights[l][i]);
+					 in.value(j) * in.weight() * weights[i]);
             }
           }
-        }
+	}
+      }
+    }
+  }
+
+  /**
+   * The M step of the EM algorithm.
+   * @param inst the training instances
+   * @throws Exception if something goes wrong
+   */
+  private void M (final Instances inst)
+    throws Exception {
+
+    int i, j, l;
+
+    new_estimators();
+    estimate_priors(inst);
+
+    // the first range of instances is added to the model itself, the
+    // other ranges to their own estimators, which are added to the
+    // model in order afterwards
+    List<Sums> ranges = ParallelRanges.processRanges(m_executorPool,
+      m_executionSlots, inst.numInstances(), 
+      new RangeTask<Sums>() {
+	public Sums process(int from, int to) {
+	  Sums sums = (from == 0) 
+	    ? new Sums(m_model, m_modelNormal) 
+	    : new Sums(inst, m_num_clusters);
+	  for (int l = from; l < to; l++) {
+	    sums.add(inst.instance(l), m_weights[l]);
+	  }
+	  return sums;
+	}
+      });
+    for (l = 1; l < ranges.size(); l++) {
+      Sums sums = ranges.get(l);
+      for (i = 0; i < m_num_clusters; i++) {
+	for (j = 0; j < m_num_attribs; j++) {
+	  if (inst.attribute(j).isNominal()) {
+	    for (int k = 0; k < inst.attribute(j).numValues(); k++) {
+	      m_model[i][j].addValue(k, 
+	        ((DiscreteEstimator) sums.m_model[i][j]).getCount(k));
+	    }
+	  } else {
+	    m_modelNormal[i][j][0] += sums.m_modelNormal[i][j][0];
+	    m_modelNormal[i][j][1] += sums.m_modelNormal[i][j][1];
+	    m_modelNormal[i][j][2] += sums.m_modelNormal[i][j][2];
+	  }
+	}
       }
     }
     
@@ -734,21 +889,51 @@ public class EM
    * @return the average log likelihood
    * @throws Exception if computation fails
    */
-  private double E (Instances inst, boolean change_weights)
+  private double E (final Instances inst, final boolean change_weights)
     throws Exception {
 
     double loglk = 0.0, sOW = 0.0;
 
-    for (int l = 0; l < inst.numInstances(); l++) {
+    // the instances have no missing values, so they are not filtered
+    final double[] logPriors = new double[m_num_clusters];
+    for (int i = 0; i < m_num_clusters; i++) {
+      if (!(m_priors[i] > 0) && (inst.numInstances() > 0)) {
+	throw new IllegalArgumentException("Cluster empty!");
+      }
+      logPriors[i] = Math.log(m_priors[i]);
+    }
 
-      Instance in = inst.instance(l);
+    List<double[]> ranges = ParallelRanges.processRanges(m_executorPool,
+      m_executionSlots, inst.numInstances(), 
+      new RangeTask<double[]>() {
+	public double[] process(int from, int to) {
+	  double[] result = new double[2];
+	  for (int l = from; l < to; l++) {
+	    Instance in = inst.instance(l);
+
+	    double[] a = logDensityPerCluster(in);
+	    for (int i = 0; i < a.length; i++) {
+	      a[i] += logPriors[i];
+	    }
+	    double max = a[Utils.maxIndex(a)];
+	    double sum = 0.0;
+	    for (int i = 0; i < a.length; i++) {
+	      sum += Math.exp(a[i] - max);
+	    }
 
-      loglk += in.weight() * logDensityForInstance(in);
-      sOW += in.weight();
+	    result[0] += in.weight() * (max + Math.log(sum));
+	    result[1] += in.weight();
 
-      if (change_weights) {
-	m_weights[l] = distributionForInstance(in);
-      }
+	    if (change_weights) {
+	      m_weights[l] = Utils.logs2probs(a);
+	    }
+	  }
+	  return result;
+	}
+      });
+    for (int r = 0; r < ranges.size(); r++) {
+      loglk += ranges.get(r)[0];
+      sOW += ranges.get(r)[1];
     }
     
     // reestimate priors
@@ -781,6 +966,7 @@ public class EM
     m_num_clusters = -1;
     m_initialNumClusters = -1;
     m_verbose = false;
+    m_executionSlots = 1;
   }
 
   /**
@@ -1071,88 +1257,130 @@ public class EM
   }
 
 
+  /**
+   * Fits a copy of this clusterer with the given number of clusters to the
+   * training fold and returns the log likelihood of the test fold.
+   *
+   * @param numClusters the number of clusters
+   * @param cvTrain the training fold
+   * @param cvTest the test fold
+   * @return the log likelihood, or null if fitting or testing failed
+   * @throws Exception if the estimators could not be initialized
+   */
+  private Double CVFold (int numClusters, Instances cvTrain, Instances cvTest)
+    throws Exception {
+    EM fold = new EM();
+    fold.m_minStdDev = m_minStdDev;
+    fold.m_minStdDevPerAtt = m_minStdDevPerAtt;
+    fold.m_max_iterations = m_max_iterations;
+    fold.m_Seed = m_Seed;
+    fold.m_theInstances = m_theInstances;
+    fold.m_num_instances = m_num_instances;
+    fold.m_num_attribs = m_num_attribs;
+    fold.m_minValues = m_minValues;
+    fold.m_maxValues = m_maxValues;
+    fold.m_replaceMissing = m_replaceMissing;
+
+    fold.m_rr = new Random(getSeed());
+    for (int z=0; z<10; z++) fold.m_rr.nextDouble();
+    fold.m_num_clusters = numClusters;
+    fold.EM_Init(cvTrain);
+    try {
+      fold.iterate(cvTrain, false);
+    } catch (Exception ex) {
+      // catch any problems - i.e. empty clusters occuring
+      ex.printStackTrace();
+      return null;
+    }
+    try {
+      return new Double(fold.E(cvTest, false));
+    } catch (Exception ex) {
+      // catch any problems - i.e. empty clusters occuring
+      ex.printStackTrace();
+      return null;
+    }
+  }
+
   /**
    * estimate the number of clusters by cross validation on the training
-   * data.
+   * data. The folds are fitted on the thread pool, if there is one, in the
+   * order in which they are generated: all folds for one number of
+   * clusters, then all folds for the next number of clusters, before it is
+   * known whether the next number is needed. At most two folds per slot are
+   * kept waiting. The results are used in the same order, so the number of
+   * clusters doesn't depend on the number of slots.
    *
    * @throws Exception if something goes wrong
    */
   private void CVClusters ()
     throws Exception {
     double CVLogLikely = -Double.MAX_VALUE;
-    double templl, tll;
-    boolean CVincreased = true;
-    m_num_clusters = 1;
-    int num_clusters = m_num_clusters;
+    double templl = 0.0;
+    int num_clusters = 1;
     int i;
-    Random cvr;
-    Instances trainCopy;
+    Random cvr = null;
+    Instances trainCopy = null;
     int numFolds = (m_theInstances.numInstances() < 10) 
       ? m_theInstances.numInstances() 
       : 10;
 
-    boolean ok = true;
-    int seed = getSeed();
-    int restartCount = 0;
-    CLUSTER_SEARCH: while (CVincreased) {
-      // theInstances.stratify(10);
-        
-      CVincreased = false;
-      cvr = new Random(getSeed());
-      trainCopy = new Instances(m_theInstances);
-      trainCopy.randomize(cvr);
-      templl = 0.0;
-      for (i = 0; i < numFolds; i++) {
-	Instances cvTrain = trainCopy.trainCV(numFolds, i, cvr);
-	if (num_clusters > cvTrain.numInstances()) {
-	  break CLUSTER_SEARCH;
-	}
-	Instances cvTest = trainCopy.testCV(numFolds, i);
-	m_rr = new Random(seed);
-        for (int z=0; z<10; z++) m_rr.nextDouble();
-	m_num_clusters = num_clusters;
-	EM_Init(cvTrain);
-	try {
-	  iterate(cvTrain, false);
-	} catch (Exception ex) {
-	  // catch any problems - i.e. empty clusters occuring
-	  ex.printStackTrace();
-          //          System.err.println("Restarting after CV training failure ("+num_clusters+" clusters");
-          seed++;
-          restartCount++;
-          ok = false;
-          if (restartCount > 5) {
-            break CLUSTER_SEARCH;
-          }
-	  break;
-	}
-        try {
-          tll = E(cvTest, false);
-        } catch (Exception ex) {
-          // catch any problems - i.e. empty clusters occuring
-          //          ex.printStackTrace();
-          ex.printStackTrace();
-          //          System.err.println("Restarting after CV testing failure ("+num_clusters+" clusters");
-          //          throw new Exception(ex); 
-          seed++;
-          restartCount++;
-          ok = false;
-          if (restartCount > 5) {
-            break CLUSTER_SEARCH;
-          }
-          break;
-        }
+    // the next fold to generate
+    int nextClusters = 1;
+    int nextFold = 0;
+    boolean generate = true;
+    int maxPending = (m_executorPool == null) ? 1 : 2 * m_executionSlots;
+    LinkedList<Future<Double>> pending = new LinkedList<Future<Double>>();
+
+    try {
+      CLUSTER_SEARCH: while (true) {
+	templl = 0.0;
+	for (i = 0; i < numFolds; i++) {
+	  while (generate && (pending.size() < maxPending)) {
+	    if (nextFold == 0) {
+	      cvr = new Random(getSeed());
+	      trainCopy = new Instances(m_theInstances);
+	      trainCopy.randomize(cvr);
+	    }
+	    final Instances cvTrain = trainCopy.trainCV(numFolds, nextFold, cvr);
+	    if (nextClusters > cvTrain.numInstances()) {
+	      generate = false;
+	      break;
+	    }
+	    final Instances cvTest = trainCopy.testCV(numFolds, nextFold);
+	    final int clusters = nextClusters;
+	    FutureTask<Double> fold = new FutureTask<Double>(
+	      new Callable<Double>() {
+		public Double call() throws Exception {
+		  return CVFold(clusters, cvTrain, cvTest);
+		}
+	      });
+	    if (m_executorPool == null) {
+	      fold.run();
+	    } else {
+	      m_executorPool.execute(fold);
+	    }
+	    pending.addLast(fold);
+	    if (++nextFold == numFolds) {
+	      nextFold = 0;
+	      nextClusters++;
+	    }
+	  }
+	  if (pending.isEmpty()) {
+	    // too few instances for this number of clusters
+	    break CLUSTER_SEARCH;
+	  }
 
-	if (m_verbose) {
-	  System.out.println("# clust: " + num_clusters + " Fold: " + i 
-			     + " Loglikely: " + tll);
+	  Double tll = ParallelRanges.waitFor(pending.removeFirst());
+	  if (tll == null) {
+	    break CLUSTER_SEARCH;
+	  }
+	  if (m_verbose) {
+	    System.out.println("# clust: " + num_clusters + " Fold: " + i 
+			       + " Loglikely: " + tll);
+	  }
+	  templl += tll.doubleValue();
 	}
-	templl += tll;
-      }
 
-      if (ok) {
-        restartCount = 0;
-        seed = getSeed();
         templl /= (double)numFolds;
         
         if (m_verbose) {
@@ -1167,9 +1395,15 @@ public class EM
         
         if (templl > CVLogLikely) {
           CVLogLikely = templl;
-          CVincreased = true;
           num_clusters++;
-        }
+        } else {
+	  break;
+	}
+      }
+    } finally {
+      // the folds of numbers of clusters that aren't needed
+      for (Future<Double> fold : pending) {
+	fold.cancel(true);
       }
     }
 
@@ -1268,7 +1502,20 @@ public class EM
       updateMinMax(m_theInstances.instance(i));
     }
 
-    doEM();
+    if (m_executionSlots > 1) {
+      m_executorPool = new ThreadPoolExecutor(m_executionSlots, 
+					      m_executionSlots, 
+					      120, TimeUnit.SECONDS, 
+					      new LinkedBlockingQueue<Runnable>());
+    }
+    try {
+      doEM();
+    } finally {
+      if (m_executorPool != null) {
+	m_executorPool.shutdownNow();
+	m_executorPool = null;
+      }
+    }
     
     // save memory
     m_theInstances = new Instances(m_theInstances,0);
@@ -1297,12 +1544,24 @@ public class EM
    */
   public double[] logDensityPerClusterForInstance(Instance inst) throws Exception {
 
+    m_replaceMissing.input(inst);
+    inst = m_replaceMissing.output();
+
+    return logDensityPerCluster(inst);
+  }
+
+  /**
+   * Computes the log of the conditional density (per cluster) for an
+   * instance that has been through the filter.
+   * 
+   * @param inst the instance to compute the density for
+   * @return an array containing the estimated densities
+   */
+  private double[] logDensityPerCluster(Instance inst) {
+
     int i, j;
     double logprob;
     double[] wghts = new double[m_num_clusters];
-    
-    m_replaceMissing.input(inst);
-    inst = m_replaceMissing.output();
 
     for (i = 0; i < m_num_clusters; i++) {
       //      System.err.println("Cluster : "+i);
@@ -24,6 +24,7 @@ package weka.clusterers;
 import java.io.Serializable;
 import java.text.DecimalFormat;
 import java.text.NumberFormat;
+import java.util.Arrays;
 import java.util.Comparator;
 import java.util.Enumeration;
 import java.util.Locale;
@@ -80,6 +81,11 @@ import weka.core.Capabilities.Capability;
 * \If set, distance is interpreted as branch length, otherwise it is node height.
 * </pre>
 * 
+* <pre> -M
+* If set, single, complete, average and Ward link use the memory efficient
+* SLINK and nearest neighbour chain algorithms (Ward on squared distances).
+* </pre>
+* 
 *<!-- options-end -->
 *
 * 
@@ -96,6 +102,9 @@ public class HierarchicalClusterer extends AbstractClusterer implements OptionHa
   /** Whether the distance represent node height (if false) or branch length (if true). */
   protected boolean m_bDistanceIsBranchLength = false;
 
+  /** Whether to use the memory efficient algorithms for single, complete, average and Ward link. */
+  protected boolean m_bMemoryEfficient = false;
+
   /** training data **/
   Instances m_instances;
 
@@ -278,6 +287,10 @@ public class HierarchicalClusterer extends AbstractClusterer implements OptionHa
     Node [] clusterNodes = new Node[nInstances];
     if (m_nLinkType == NEIGHBOR_JOINING) {
       neighborJoining(nClusters, nClusterID, clusterNodes);
+    } else if (m_bMemoryEfficient && m_nLinkType == SINGLE) {
+      doSLINKClustering(nClusterID, clusterNodes);
+    } else if (m_bMemoryEfficient && (m_nLinkType == COMPLETE || m_nLinkType == AVERAGE || m_nLinkType == WARD)) {
+      doNNChainClustering(nClusterID, clusterNodes);
     } else {
       doLinkClustering(nClusters, nClusterID, clusterNodes);
     }
@@ -519,6 +532,240 @@ public class HierarchicalClusterer extends AbstractClusterer implements OptionHa
     }
   } // doLinkClustering
 
+  /** Perform single link clustering with the SLINK algorithm (Sibson 1973).
+   * This takes O(n^2) time, but only O(n) memory, since the distances are
+   * calculated on the fly instead of being stored in a matrix.
+   * @param nClusterID 
+   * @param clusterNodes 
+   */
+  void doSLINKClustering(Vector<Integer>[] nClusterID, Node [] clusterNodes) {
+    int n = m_instances.numInstances();
+    if (m_bDebug) {
+      System.err.println("SLINK: distances calculated on the fly, "
+          + (20L * n / 1024) + " KB for the pointer representation");
+    }
+    // pointer representation: instance i is merged with pi[i] at height lambda[i]
+    int [] pi = new int[n];
+    double [] lambda = new double[n];
+    double [] fM = new double[n];
+    for (int i = 0; i < n; i++) {
+      pi[i] = i;
+      lambda[i] = Double.POSITIVE_INFINITY;
+      Instance instance = m_instances.instance(i);
+      for (int j = 0; j < i; j++) {
+        fM[j] = m_DistanceFunction.distance(m_instances.instance(j), instance);
+      }
+      for (int j = 0; j < i; j++) {
+        if (lambda[j] >= fM[j]) {
+          fM[pi[j]] = Math.min(fM[pi[j]], lambda[j]);
+          lambda[j] = fM[j];
+          pi[j] = i;
+        } else {
+          fM[pi[j]] = Math.min(fM[pi[j]], fM[j]);
+        }
+      }
+      for (int j = 0; j < i; j++) {
+        if (lambda[j] >= lambda[pi[j]]) {
+          pi[j] = i;
+        }
+      }
+      printProgress("SLINK: added", i + 1, n);
+    }
+
+    int [] iCluster1 = new int[n - 1];
+    int [] iCluster2 = new int[n - 1];
+    double [] fHeight = new double[n - 1];
+    for (int i = 0; i < n - 1; i++) {
+      iCluster1[i] = i;
+      iCluster2[i] = pi[i];
+      fHeight[i] = lambda[i];
+    }
+    replayMerges(iCluster1, iCluster2, fHeight, nClusterID, clusterNodes);
+  } // doSLINKClustering
+
+  /** Perform complete, average or Ward link clustering with the nearest neighbour
+   * chain algorithm, which takes O(n^2) time. The distances between clusters are
+   * kept in a condensed upper triangular matrix of n(n-1)/2 doubles and are
+   * updated with the Lance-Williams formulas. For Ward link the matrix holds
+   * squared distances and the height of a merge is the square root of the
+   * Lance-Williams distance, i.e., the distance between two instances for two
+   * singletons.
+   * @param nClusterID 
+   * @param clusterNodes 
+   * @throws Exception if there are too many instances for the matrix
+   */
+  void doNNChainClustering(Vector<Integer>[] nClusterID, Node [] clusterNodes) throws Exception {
+    int n = m_instances.numInstances();
+    long nEntries = (long) n * (n - 1) / 2;
+    if (nEntries > Integer.MAX_VALUE - 8) {
+      throw new Exception("Too many instances (" + n + ") for the condensed distance matrix, "
+          + "use single link, which does not need a matrix.");
+    }
+    if (m_bDebug) {
+      System.err.println("Nearest neighbour chain: condensed distance matrix of " + nEntries
+          + " entries, " + (nEntries * 8 / (1024 * 1024)) + " MB");
+    }
+    double [] fDistance = new double[(int) nEntries];
+    for (int i = 0; i < n; i++) {
+      Instance instance = m_instances.instance(i);
+      int iOffset = condensedIndex(n, i, i + 1);
+      for (int j = i + 1; j < n; j++) {
+        double fDist = m_DistanceFunction.distance(instance, m_instances.instance(j));
+        fDistance[iOffset + j - i - 1] = (m_nLinkType == WARD) ? fDist * fDist : fDist;
+      }
+      printProgress("Nearest neighbour chain: distances of", i + 1, n);
+    }
+
+    boolean [] bActive = new boolean[n];
+    Arrays.fill(bActive, true);
+    int [] nSize = new int[n];
+    Arrays.fill(nSize, 1);
+    int [] nChain = new int[n];
+    int nChainLength = 0;
+    int iFirstActive = 0;
+    int [] iCluster1 = new int[n - 1];
+    int [] iCluster2 = new int[n - 1];
+    double [] fHeight = new double[n - 1];
+    double [] fLastHeight = new double[n];
+    for (int nMerges = 0; nMerges < n - 1; ) {
+      if (nChainLength == 0) {
+        while (!bActive[iFirstActive]) {
+          iFirstActive++;
+        }
+        nChain[nChainLength++] = iFirstActive;
+      }
+      // find the nearest neighbour of the top of the chain, preferring its
+      // predecessor on ties so that reciprocal nearest neighbours are found
+      int iTop = nChain[nChainLength - 1];
+      int iPrev = (nChainLength > 1) ? nChain[nChainLength - 2] : -1;
+      int iNearest = iPrev;
+      double fMinDistance = (iPrev >= 0) ? fDistance[condensedIndex(n, iTop, iPrev)] : Double.POSITIVE_INFINITY;
+      for (int k = 0; k < n; k++) {
+        if (k != iTop && bActive[k]) {
+          double fDist = fDistance[condensedIndex(n, iTop, k)];
+          if (fDist < fMinDistance || iNearest < 0) {
+            fMinDistance = fDist;
+            iNearest = k;
+          }
+        }
+      }
+      if (iNearest != iPrev) {
+        nChain[nChainLength++] = iNearest;
+        continue;
+      }
+
+      // merge the reciprocal nearest neighbours into the lower index
+      nChainLength -= 2;
+      int i1 = Math.min(iTop, iPrev);
+      int i2 = Math.max(iTop, iPrev);
+      int n1 = nSize[i1];
+      int n2 = nSize[i2];
+      for (int k = 0; k < n; k++) {
+        if (k != i1 && k != i2 && bActive[k]) {
+          int iIndex1 = condensedIndex(n, k, i1);
+          double fDist1 = fDistance[iIndex1];
+          double fDist2 = fDistance[condensedIndex(n, k, i2)];
+          switch (m_nLinkType) {
+          case COMPLETE:
+            fDistance[iIndex1] = Math.max(fDist1, fDist2);
+            break;
+          case AVERAGE:
+            fDistance[iIndex1] = (n1 * fDist1 + n2 * fDist2) / (n1 + n2);
+            break;
+          case WARD:
+            int nk = nSize[k];
+            fDistance[iIndex1] = ((n1 + nk) * fDist1 + (n2 + nk) * fDist2 - nk * fMinDistance) / (n1 + n2 + nk);
+            break;
+          }
+        }
+      }
+      bActive[i2] = false;
+      nSize[i1] = n1 + n2;
+      iCluster1[nMerges] = i1;
+      iCluster2[nMerges] = i2;
+      // keep the heights monotone, which rounding in the Lance-Williams updates
+      // may violate, so that sorting them keeps clusters before their merges
+      double fMergeHeight = (m_nLinkType == WARD) ? Math.sqrt(fMinDistance) : fMinDistance;
+      fMergeHeight = Math.max(fMergeHeight, Math.max(fLastHeight[i1], fLastHeight[i2]));
+      fLastHeight[i1] = fMergeHeight;
+      fHeight[nMerges] = fMergeHeight;
+      nMerges++;
+      printProgress("Nearest neighbour chain: merged", nMerges, n - 1);
+    }
+    replayMerges(iCluster1, iCluster2, fHeight, nClusterID, clusterNodes);
+  } // doNNChainClustering
+
+  /** returns the position of the distance between i and j in a condensed
+   * upper triangular n x n matrix **/
+  int condensedIndex(int n, int i, int j) {
+    if (i > j) {
+      int h = i; i = j; j = h;
+    }
+    return (int) ((long) i * (2 * n - i - 1) / 2) + j - i - 1;
+  } // condensedIndex
+
+  /** prints progress in debug mode, about every tenth of the work **/
+  void printProgress(String sTask, int nDone, int nTotal) {
+    if (m_bDebug && (nDone == nTotal || nDone % Math.max(1, nTotal / 10) == 0)) {
+      System.err.println(sTask + " " + nDone + " of " + nTotal);
+    }
+  } // printProgress
+
+  /** Builds the hierarchy from a list of merges in arbitrary order by replaying
+   * them in the order of their heights, until the desired number of clusters is
+   * reached. A merge is given by an instance of each of the two clusters. The
+   * heights must be monotone, i.e., no lower than those of the merges that formed
+   * these clusters, and on equal heights these merges must come first in the list.
+   * @param iCluster1 an instance of the first cluster of each merge
+   * @param iCluster2 an instance of the second cluster of each merge
+   * @param fHeight the height of each merge
+   * @param nClusterID 
+   * @param clusterNodes 
+   */
+  void replayMerges(int [] iCluster1, int [] iCluster2, final double [] fHeight, Vector<Integer>[] nClusterID, Node [] clusterNodes) {
+    int n = m_instances.numInstances();
+    // union-find over the instances, the root knows the slot of its cluster,
+    // which is its lowest instance like in the other algorithms
+    int [] iParent = new int[n];
+    int [] iSlot = new int[n];
+    for (int i = 0; i < n; i++) {
+      iParent[i] = i;
+      iSlot[i] = i;
+    }
+    Integer [] order = new Integer[fHeight.length];
+    for (int i = 0; i < order.length; i++) {
+      order[i] = i;
+    }
+    Arrays.sort(order, new Comparator<Integer>() {
+      public int compare(Integer o1, Integer o2) {
+        return Double.compare(fHeight[o1], fHeight[o2]);
+      }
+    });
+
+    for (int m = 0; m < order.length && n - m > m_nNumClusters; m++) {
+      int i = order[m];
+      int r1 = find(iParent, iCluster1[i]);
+      int r2 = find(iParent, iCluster2[i]);
+      merge(iSlot[r1], iSlot[r2], fHeight[i], fHeight[i], nClusterID, clusterNodes);
+      iParent[r2] = r1;
+      iSlot[r1] = Math.min(iSlot[r1], iSlot[r2]);
+    }
+  } // replayMerges
+
+  /** returns the root of i in a union-find forest, compressing the path **/
+  int find(int [] iParent, int i) {
+    int iRoot = i;
+    while (iParent[iRoot] != iRoot) {
+      iRoot = iParent[iRoot];
+    }
+    while (iParent[i] != iRoot) {
+      int iNext = iParent[i];
+      iParent[i] = iRoot;
+      i = iNext;
+    }
+    return iRoot;
+  } // find
+
   void merge(int iMin1, int iMin2, double fDist1, double fDist2, Vector<Integer>[] nClusterID, Node [] clusterNodes) {
     if (m_bDebug) {
       System.err.println("Merging " + iMin1 + " " + iMin2 + " " + fDist1 + " " + fDist2);
@@ -819,7 +1066,7 @@ public class HierarchicalClusterer extends AbstractClusterer implements OptionHa
    */
   public Enumeration listOptions() {
 
-    Vector newVector = new Vector(8);
+    Vector newVector = new Vector(9);
     newVector.addElement(new Option(
         "\tIf set, classifier is run in debug mode and\n"
         + "\tmay output additional info to the console",
@@ -843,6 +1090,11 @@ public class HierarchicalClusterer extends AbstractClusterer implements OptionHa
         "\tDistance function to use.\n"
         + "\t(default: weka.core.EuclideanDistance)",
         "A", 1,"-A <classname and options>"));
+    newVector.addElement(new Option(
+        "\tIf set, single, complete, average and Ward link use the memory\n"
+        + "\tefficient SLINK and nearest neighbour chain algorithms\n"
+        + "\t(Ward on squared distances).",
+        "M", 0, "-M"));
     return newVector.elements();
   }
 
@@ -871,6 +1123,7 @@ public class HierarchicalClusterer extends AbstractClusterer implements OptionHa
 
     setDebug(Utils.getFlag('D', options));
     setDistanceIsBranchLength(Utils.getFlag('B', options));
+    setMemoryEfficient(Utils.getFlag('M', options));
 
     String sLinkType = Utils.getOption('L', options);
 
@@ -911,7 +1164,7 @@ public class HierarchicalClusterer extends AbstractClusterer implements OptionHa
    */
   public String [] getOptions() {
 
-    String [] options = new String [14];
+    String [] options = new String [15];
     int current = 0;
 
     options[current++] = "-N";
@@ -937,6 +1190,9 @@ public class HierarchicalClusterer extends AbstractClusterer implements OptionHa
     if (getDistanceIsBranchLength()) {
       options[current++] = "-B";
     }
+    if (getMemoryEfficient()) {
+      options[current++] = "-M";
+    }
 
     options[current++] = "-A";
     options[current++] = (m_DistanceFunction.getClass().getName() + " " +
@@ -1004,6 +1260,18 @@ public class HierarchicalClusterer extends AbstractClusterer implements OptionHa
 
   public void setDistanceIsBranchLength(boolean bDistanceIsHeight) {m_bDistanceIsBranchLength = bDistanceIsHeight;}
 
+  public boolean getMemoryEfficient() {return m_bMemoryEfficient;}
+
+  public void setMemoryEfficient(boolean bMemoryEfficient) {m_bMemoryEfficient = bMemoryEfficient;}
+
+  public String memoryEfficientTipText() {
+    return "If set to true, single link clustering uses the SLINK algorithm, which needs " +
+    "no distance matrix, and complete, average and Ward link use the nearest neighbour " +
+    "chain algorithm with a condensed matrix of n(n-1)/2 distances, instead of a full " +
+    "matrix and a priority queue of all pairs. Ward link then uses the classic Ward " +
+    "criterion on squared distances. The other link types are not affected.";
+  }
+
   public String distanceIsBranchLengthTipText() {
     return "If set to false, the distance between clusters is interpreted " +
     "as the height of the node linking the clusters. This is appropriate for " +
@@ -93,7 +93,8 @@ import java.util.Vector;
  *  minPoints (default = 6)</pre>
  * 
  * <pre> -I &lt;String&gt;
- *  index (database) used for OPTICS (default = weka.clusterers.forOPTICSAndDBScan.Databases.SequentialDatabase)</pre>
+ *  index (database) used for OPTICS (default = weka.clusterers.forOPTICSAndDBScan.Databases.SequentialDatabase)
+ *  weka.clusterers.forOPTICSAndDBScan.Databases.KDTreeDatabase answers the queries with a KD-tree</pre>
  * 
  * <pre> -D &lt;String&gt;
  *  distance-type (default = weka.clusterers.forOPTICSAndDBScan.DataObjects.EuclideanDataObject)</pre>
@@ -415,7 +416,8 @@ public class OPTICS
         
         vector.addElement(
             new Option(
-        	"\tindex (database) used for OPTICS (default = weka.clusterers.forOPTICSAndDBScan.Databases.SequentialDatabase)",
+        	"\tindex (database) used for OPTICS (default = weka.clusterers.forOPTICSAndDBScan.Databases.SequentialDatabase)\n"
+        	+ "\tweka.clusterers.forOPTICSAndDBScan.Databases.KDTreeDatabase answers the queries with a KD-tree",
         	"I", 1, "-I <String>"));
         
         vector.addElement(
@@ -460,7 +462,8 @@ public class OPTICS
      *  minPoints (default = 6)</pre>
      * 
      * <pre> -I &lt;String&gt;
-     *  index (database) used for OPTICS (default = weka.clusterers.forOPTICSAndDBScan.Databases.SequentialDatabase)</pre>
+     *  index (database) used for OPTICS (default = weka.clusterers.forOPTICSAndDBScan.Databases.SequentialDatabase)
+     *  weka.clusterers.forOPTICSAndDBScan.Databases.KDTreeDatabase answers the queries with a KD-tree</pre>
      * 
      * <pre> -D &lt;String&gt;
      *  distance-type (default = weka.clusterers.forOPTICSAndDBScan.DataObjects.EuclideanDataObject)</pre>
@@ -769,7 +772,8 @@ public class OPTICS
      * displaying in the explorer/experimenter gui
      */
     public String database_TypeTipText() {
-        return "used database";
+        return "used database; the SequentialDatabase compares each query with all "
+          + "DataObjects, the KDTreeDatabase uses a KD-tree on the numeric attributes";
     }
 
     /**
@@ -23,8 +23,12 @@ package weka.clusterers;
 
 import java.util.Enumeration;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Random;
 import java.util.Vector;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import weka.classifiers.rules.DecisionTableHashKey;
 import weka.core.Attribute;
@@ -36,6 +40,8 @@ import weka.core.Instance;
 import weka.core.Instances;
 import weka.core.ManhattanDistance;
 import weka.core.Option;
+import weka.core.ParallelRanges;
+import weka.core.RangeTask;
 import weka.core.RevisionUtils;
 import weka.core.Utils;
 import weka.core.WeightedInstancesHandler;
@@ -88,6 +94,24 @@ import weka.filters.unsupervised.attribute.ReplaceMissingValues;
  *  Preserve order of instances.
  * </pre>
  * 
+ * <pre>
+ * -num-slots &lt;num&gt;
+ *  Number of execution slots.
+ *  (default 1 - i.e. no parallelism)
+ * </pre>
+ * 
+ * <pre>
+ * -fast
+ *  Skip distance computations using bounds on the distances.
+ *  Has no effect on data with missing values.
+ * </pre>
+ * 
+ * <pre>
+ * -mini-batch &lt;num&gt;
+ *  Size of the random samples for mini-batch k-means.
+ *  (default 0 - i.e. batch k-means)
+ * </pre>
+ * 
  * 
  * <!-- options-end -->
  * 
@@ -183,6 +207,28 @@ public class SimpleKMeans extends RandomizableClusterer implements
    */
   protected int[] m_Assignments = null;
 
+  /**
+   * The number of threads to use for assigning instances and computing the
+   * centroids
+   */
+  protected int m_executionSlots = 1;
+
+  /**
+   * Whether to skip distance computations using bounds on the distances
+   */
+  protected boolean m_FastDistanceCalc = false;
+
+  /**
+   * The size of the random samples for mini-batch k-means, 0 for batch
+   * k-means
+   */
+  protected int m_MiniBatchSize = 0;
+
+  /**
+   * The thread pool used while building the clusterer
+   */
+  protected transient ThreadPoolExecutor m_executorPool;
+
   /**
    * the default constructor
    */
@@ -238,6 +284,12 @@ public class SimpleKMeans extends RandomizableClusterer implements
     // can clusterer handle the data?
     getCapabilities().testWithFail(data);
 
+    if ((m_MiniBatchSize > 0)
+      && !(m_DistanceFunction instanceof EuclideanDistance)) {
+      throw new Exception(
+        "Mini-batch k-means is only available with the Euclidean distance.");
+    }
+
     m_Iterations = 0;
 
     m_ReplaceMissingFilter = new ReplaceMissingValues();
@@ -320,68 +372,136 @@ public class SimpleKMeans extends RandomizableClusterer implements
     boolean converged = false;
     int emptyClusterCount;
     Instances[] tempI = new Instances[m_NumClusters];
-    m_squaredErrors = new double[m_NumClusters];
     m_ClusterNominalCounts = new int[m_NumClusters][instances.numAttributes()][0];
     m_ClusterMissingCounts = new int[m_NumClusters][instances.numAttributes()];
-    while (!converged) {
-      emptyClusterCount = 0;
-      m_Iterations++;
-      converged = true;
-      for (i = 0; i < instances.numInstances(); i++) {
-        Instance toCluster = instances.instance(i);
-        int newC = clusterProcessedInstance(toCluster, true);
-        if (newC != clusterAssignments[i]) {
-          converged = false;
-        }
-        clusterAssignments[i] = newC;
-      }
 
-      // update centroids
-      m_ClusterCentroids = new Instances(instances, m_NumClusters);
-      for (i = 0; i < m_NumClusters; i++) {
-        tempI[i] = new Instances(instances, 0);
-      }
-      for (i = 0; i < instances.numInstances(); i++) {
-        tempI[clusterAssignments[i]].add(instances.instance(i));
+    // the means are computed from sums, the medians from the members
+    boolean meansFromSums = m_DistanceFunction instanceof EuclideanDistance;
+    Bounds bounds = null;
+    if (m_FastDistanceCalc && !hasMissingValues(instances)) {
+      bounds = new Bounds(instances.numInstances());
+    }
+    Instances assignedCentroids = null;
+    int[] sizes = null;
+
+    if ((m_executionSlots > 1) && (instances.numInstances() > 0)) {
+      // let the distance function compute the ranges before it is shared
+      m_DistanceFunction.distance(instances.instance(0),
+        instances.instance(0));
+      m_executorPool = new ThreadPoolExecutor(m_executionSlots,
+        m_executionSlots, 120, TimeUnit.SECONDS,
+        new LinkedBlockingQueue<Runnable>());
+    }
+    try {
+      int maxIterations = m_MaxIterations;
+      if ((m_MiniBatchSize > 0) && (instances.numInstances() > 0)) {
+        miniBatch(instances, RandomO);
+        // a final pass over all the instances
+        maxIterations = m_Iterations + 1;
       }
-      for (i = 0; i < m_NumClusters; i++) {
-        if (tempI[i].numInstances() == 0) {
-          // empty cluster
-          emptyClusterCount++;
+
+      while (!converged) {
+        emptyClusterCount = 0;
+        m_Iterations++;
+        assignedCentroids = m_ClusterCentroids;
+        converged = !assignInstances(instances, clusterAssignments, bounds);
+
+        // update centroids
+        m_ClusterCentroids = new Instances(instances, m_NumClusters);
+        if (meansFromSums) {
+          sizes = computeMeans(instances, clusterAssignments);
         } else {
-          moveCentroid(i, tempI[i], true);
+          for (i = 0; i < m_NumClusters; i++) {
+            tempI[i] = new Instances(instances, 0);
+          }
+          for (i = 0; i < instances.numInstances(); i++) {
+            tempI[clusterAssignments[i]].add(instances.instance(i));
+          }
+          sizes = new int[m_NumClusters];
+          for (i = 0; i < m_NumClusters; i++) {
+            sizes[i] = tempI[i].numInstances();
+            if (sizes[i] > 0) {
+              moveCentroid(i, tempI[i], true);
+            }
+          }
+        }
+        for (i = 0; i < m_NumClusters; i++) {
+          if (sizes[i] == 0) {
+            // empty cluster
+            emptyClusterCount++;
+          }
         }
-      }
 
-      if (m_Iterations == m_MaxIterations) {
-        converged = true;
-      }
+        if (m_Iterations >= maxIterations) {
+          converged = true;
+        }
+
+        if (bounds != null) {
+          bounds.update(assignedCentroids, m_ClusterCentroids,
+            emptyClusterCount == 0);
+        }
 
-      if (emptyClusterCount > 0) {
-        m_NumClusters -= emptyClusterCount;
-        if (converged) {
-          Instances[] t = new Instances[m_NumClusters];
-          int index = 0;
-          for (int k = 0; k < tempI.length; k++) {
-            if (tempI[k].numInstances() > 0) {
-              t[index] = tempI[k];
-
-              for (i = 0; i < tempI[k].numAttributes(); i++) {
-                m_ClusterNominalCounts[index][i] = m_ClusterNominalCounts[k][i];
+        if (emptyClusterCount > 0) {
+          m_NumClusters -= emptyClusterCount;
+          if (converged) {
+            Instances[] t = new Instances[m_NumClusters];
+            int index = 0;
+            for (int k = 0; k < tempI.length; k++) {
+              if (sizes[k] > 0) {
+                t[index] = tempI[k];
+
+                for (i = 0; i < instances.numAttributes(); i++) {
+                  m_ClusterNominalCounts[index][i] = m_ClusterNominalCounts[k][i];
+                }
+                index++;
               }
-              index++;
             }
+            tempI = t;
+          } else {
+            tempI = new Instances[m_NumClusters];
           }
-          tempI = t;
-        } else {
-          tempI = new Instances[m_NumClusters];
+        }
+
+        if (!converged) {
+          m_ClusterNominalCounts = new int[m_NumClusters][instances
+            .numAttributes()][0];
         }
       }
+    } finally {
+      if (m_executorPool != null) {
+        m_executorPool.shutdown();
+        m_executorPool = null;
+      }
+    }
 
-      if (!converged) {
-        m_squaredErrors = new double[m_NumClusters];
-        m_ClusterNominalCounts = new int[m_NumClusters][instances
-          .numAttributes()][0];
+    // the errors with respect to the centroids of the last assignment
+    m_squaredErrors = new double[assignedCentroids.numInstances()];
+    for (i = 0; i < instances.numInstances(); i++) {
+      double dist = m_DistanceFunction.distance(instances.instance(i),
+        assignedCentroids.instance(clusterAssignments[i]));
+      if (m_DistanceFunction instanceof EuclideanDistance) {
+        // Euclidean distance to Squared Euclidean distance
+        dist *= dist;
+      }
+      m_squaredErrors[clusterAssignments[i]] += dist;
+    }
+
+    if (meansFromSums) {
+      // collect the members, leaving out the empty clusters
+      int[] index = new int[sizes.length];
+      int next = 0;
+      for (i = 0; i < sizes.length; i++) {
+        index[i] = next;
+        if (sizes[i] > 0) {
+          next++;
+        }
+      }
+      tempI = new Instances[m_NumClusters];
+      for (i = 0; i < m_NumClusters; i++) {
+        tempI[i] = new Instances(instances, 0);
+      }
+      for (i = 0; i < instances.numInstances(); i++) {
+        tempI[index[clusterAssignments[i]]].add(instances.instance(i));
       }
     }
 
@@ -510,6 +630,442 @@ public class SimpleKMeans extends RandomizableClusterer implements
     return bestCluster;
   }
 
+  /**
+   * Checks whether any of the given instances has a missing value.
+   * 
+   * @param instances the instances to check
+   * @return true if a value is missing
+   */
+  protected static boolean hasMissingValues(Instances instances) {
+    for (int i = 0; i < instances.numInstances(); i++) {
+      if (instances.instance(i).hasMissingValue()) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Bounds on the distances between the instances and the centroids, used
+   * to skip distance computations as in Hamerly's k-means (G. Hamerly:
+   * Making k-means even faster, SDM 2010). For each instance, an upper bound
+   * on the distance to its centroid and a lower bound on the distance to all
+   * other centroids are kept. An instance keeps its centroid without
+   * computing any distances if the upper bound is smaller than the lower
+   * bound or than half the distance between its centroid and the closest
+   * other centroid. The comparisons are strict, so that the instances are
+   * assigned to the same centroids as with all distances computed. This
+   * relies on the triangle inequality, so the bounds are only used for data
+   * without missing values.
+   */
+  protected class Bounds {
+
+    /** the upper bounds on the distances to the assigned centroids */
+    protected double[] m_Upper;
+
+    /** the lower bounds on the distances to the other centroids */
+    protected double[] m_Lower;
+
+    /** half the distance from each centroid to the closest other centroid */
+    protected double[] m_Separation;
+
+    /** the distances the centroids moved in the last update */
+    protected double[] m_Movement;
+
+    /** the centroid that moved the most */
+    protected int m_MaxMoved;
+
+    /** the largest movement */
+    protected double m_MaxMovement;
+
+    /** the second largest movement */
+    protected double m_SecondMovement;
+
+    /** whether the bounds hold for the current centroids */
+    protected boolean m_Valid = false;
+
+    /**
+     * Creates bounds for the given number of instances.
+     * 
+     * @param numInstances the number of instances
+     */
+    public Bounds(int numInstances) {
+      m_Upper = new double[numInstances];
+      m_Lower = new double[numInstances];
+    }
+
+    /**
+     * Computes the distances between the current centroids. Called before
+     * each assignment of the instances.
+     */
+    public void computeSeparation() {
+      m_Separation = new double[m_NumClusters];
+      for (int a = 0; a < m_NumClusters; a++) {
+        m_Separation[a] = Double.POSITIVE_INFINITY;
+      }
+      for (int a = 0; a < m_NumClusters; a++) {
+        for (int b = a + 1; b < m_NumClusters; b++) {
+          double half = m_DistanceFunction.distance(
+            m_ClusterCentroids.instance(a), m_ClusterCentroids.instance(b)) / 2;
+          if (half < m_Separation[a]) {
+            m_Separation[a] = half;
+          }
+          if (half < m_Separation[b]) {
+            m_Separation[b] = half;
+          }
+        }
+      }
+    }
+
+    /**
+     * Records how far the centroids moved. If clusters were removed, the
+     * bounds no longer hold, and are recomputed in the next assignment.
+     * 
+     * @param oldCentroids the centroids the instances were assigned to
+     * @param newCentroids the updated centroids
+     * @param sameClusters true if no cluster was removed
+     */
+    public void update(Instances oldCentroids, Instances newCentroids,
+      boolean sameClusters) {
+      m_Valid = sameClusters;
+      if (!m_Valid) {
+        return;
+      }
+      m_Movement = new double[newCentroids.numInstances()];
+      m_MaxMoved = -1;
+      m_MaxMovement = m_SecondMovement = 0;
+      for (int j = 0; j < m_Movement.length; j++) {
+        m_Movement[j] = m_DistanceFunction.distance(oldCentroids.instance(j),
+          newCentroids.instance(j));
+        if (m_Movement[j] > m_MaxMovement) {
+          m_SecondMovement = m_MaxMovement;
+          m_MaxMovement = m_Movement[j];
+          m_MaxMoved = j;
+        } else if (m_Movement[j] > m_SecondMovement) {
+          m_SecondMovement = m_Movement[j];
+        }
+      }
+    }
+
+    /**
+     * Assigns an instance to the closest centroid, computing distances only
+     * where the bounds don't decide.
+     * 
+     * @param instance the instance
+     * @param index the index of the instance
+     * @param current the cluster the instance is assigned to
+     * @return the closest cluster
+     */
+    public int assign(Instance instance, int index, int current) {
+      if (m_Valid) {
+        m_Upper[index] += m_Movement[current];
+        m_Lower[index] -= (current == m_MaxMoved) ? m_SecondMovement
+          : m_MaxMovement;
+        double bound = Math.max(m_Separation[current], m_Lower[index]);
+        if (m_Upper[index] < bound) {
+          return current;
+        }
+        m_Upper[index] = m_DistanceFunction.distance(instance,
+          m_ClusterCentroids.instance(current));
+        if (m_Upper[index] < bound) {
+          return current;
+        }
+      }
+
+      double minDist = Integer.MAX_VALUE;
+      double secondDist = Double.POSITIVE_INFINITY;
+      int bestCluster = 0;
+      for (int i = 0; i < m_NumClusters; i++) {
+        double dist = m_DistanceFunction.distance(instance,
+          m_ClusterCentroids.instance(i));
+        if (dist < minDist) {
+          secondDist = minDist;
+          minDist = dist;
+          bestCluster = i;
+        } else if (dist < secondDist) {
+          secondDist = dist;
+        }
+      }
+      m_Upper[index] = (minDist < Integer.MAX_VALUE) ? minDist
+        : Double.POSITIVE_INFINITY;
+      m_Lower[index] = secondDist;
+      return bestCluster;
+    }
+  }
+
+  /**
+   * Assigns each instance to the closest centroid, in parallel if there are
+   * several execution slots.
+   * 
+   * @param instances the instances to assign
+   * @param assignments the current assignments, updated in place
+   * @param bounds the bounds to skip distance computations with, or null
+   * @return true if an assignment changed
+   * @throws Exception if the instances could not be assigned
+   */
+  protected boolean assignInstances(final Instances instances,
+    final int[] assignments, final Bounds bounds) throws Exception {
+    if (bounds != null) {
+      bounds.computeSeparation();
+    }
+    List<Boolean> changed = ParallelRanges.processRanges(m_executorPool,
+      m_executionSlots, instances.numInstances(),
+      new RangeTask<Boolean>() {
+        public Boolean process(int from, int to) {
+          boolean result = false;
+          for (int i = from; i < to; i++) {
+            Instance toCluster = instances.instance(i);
+            int newC = (bounds == null) ? clusterProcessedInstance(toCluster,
+              false) : bounds.assign(toCluster, i, assignments[i]);
+            if (newC != assignments[i]) {
+              result = true;
+            }
+            assignments[i] = newC;
+          }
+          return Boolean.valueOf(result);
+        }
+      });
+    return changed.contains(Boolean.TRUE);
+  }
+
+  /**
+   * Sums of the values of the instances in each cluster, from which the
+   * means, the modes and the cluster info are computed in one pass over the
+   * data. Each thread sums a range of the instances, and the sums of the
+   * ranges are added up in order.
+   */
+  protected static class ClusterSums {
+
+    /** the number of instances in each cluster */
+    protected int[] m_Sizes;
+
+    /** the weighted sums of the numeric values */
+    protected double[][] m_Sums;
+
+    /** the sums of the weights of the non-missing numeric values */
+    protected double[][] m_Weights;
+
+    /** the weighted counts of the nominal values, as in meanOrMode() */
+    protected int[][][] m_WeightedCounts;
+
+    /** the counts of the nominal values */
+    protected int[][][] m_Counts;
+
+    /** the counts of the missing values */
+    protected int[][] m_MissingCounts;
+
+    /** which attributes are numeric */
+    protected boolean[] m_IsNumeric;
+
+    /**
+     * Creates empty sums.
+     * 
+     * @param data the structure of the data
+     * @param numClusters the number of clusters
+     */
+    public ClusterSums(Instances data, int numClusters) {
+      int numAtts = data.numAttributes();
+      m_Sizes = new int[numClusters];
+      m_Sums = new double[numClusters][numAtts];
+      m_Weights = new double[numClusters][numAtts];
+      m_WeightedCounts = new int[numClusters][numAtts][];
+      m_Counts = new int[numClusters][numAtts][];
+      m_MissingCounts = new int[numClusters][numAtts];
+      m_IsNumeric = new boolean[numAtts];
+      for (int j = 0; j < numAtts; j++) {
+        m_IsNumeric[j] = data.attribute(j).isNumeric();
+        if (data.attribute(j).isNominal()) {
+          for (int c = 0; c < numClusters; c++) {
+            m_WeightedCounts[c][j] = new int[data.attribute(j).numValues()];
+            m_Counts[c][j] = new int[data.attribute(j).numValues()];
+          }
+        }
+      }
+    }
+
+    /**
+     * Adds an instance to a cluster.
+     * 
+     * @param instance the instance
+     * @param cluster the cluster
+     */
+    public void add(Instance instance, int cluster) {
+      m_Sizes[cluster]++;
+      for (int j = 0; j < m_Sums[cluster].length; j++) {
+        if (instance.isMissing(j)) {
+          m_MissingCounts[cluster][j]++;
+        } else if (m_Counts[cluster][j] != null) {
+          int value = (int) instance.value(j);
+          m_WeightedCounts[cluster][j][value] += instance.weight();
+          m_Counts[cluster][j][value]++;
+        } else if (m_IsNumeric[j]) {
+          m_Weights[cluster][j] += instance.weight();
+          m_Sums[cluster][j] += instance.weight() * instance.value(j);
+        }
+      }
+    }
+
+    /**
+     * Adds the sums of another range of instances.
+     * 
+     * @param other the sums to add
+     */
+    public void add(ClusterSums other) {
+      for (int c = 0; c < m_Sizes.length; c++) {
+        m_Sizes[c] += other.m_Sizes[c];
+        for (int j = 0; j < m_Sums[c].length; j++) {
+          m_Sums[c][j] += other.m_Sums[c][j];
+          m_Weights[c][j] += other.m_Weights[c][j];
+          m_MissingCounts[c][j] += other.m_MissingCounts[c][j];
+          if (m_Counts[c][j] != null) {
+            for (int v = 0; v < m_Counts[c][j].length; v++) {
+              m_WeightedCounts[c][j][v] += other.m_WeightedCounts[c][j][v];
+              m_Counts[c][j][v] += other.m_Counts[c][j][v];
+            }
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Computes the centroids as the means (modes for nominal attributes) of
+   * the clusters and updates the cluster info, like moveCentroid() does for
+   * each non-empty cluster, but without copying the instances of the
+   * clusters.
+   * 
+   * @param instances the instances
+   * @param assignments the clusters of the instances
+   * @return the number of instances in each cluster
+   * @throws Exception if the centroids could not be computed
+   */
+  protected int[] computeMeans(final Instances instances,
+    final int[] assignments) throws Exception {
+    final int numClusters = m_NumClusters;
+    List<ClusterSums> ranges = ParallelRanges.processRanges(m_executorPool,
+      m_executionSlots, instances.numInstances(),
+      new RangeTask<ClusterSums>() {
+        public ClusterSums process(int from, int to) {
+          ClusterSums sums = new ClusterSums(instances, numClusters);
+          for (int i = from; i < to; i++) {
+            sums.add(instances.instance(i), assignments[i]);
+          }
+          return sums;
+        }
+      });
+    ClusterSums sums = ranges.get(0);
+    for (int r = 1; r < ranges.size(); r++) {
+      sums.add(ranges.get(r));
+    }
+
+    for (int c = 0; c < numClusters; c++) {
+      if (sums.m_Sizes[c] == 0) {
+        continue;
+      }
+      double[] vals = new double[instances.numAttributes()];
+      for (int j = 0; j < instances.numAttributes(); j++) {
+        m_ClusterMissingCounts[c][j] = sums.m_MissingCounts[c][j];
+        m_ClusterNominalCounts[c][j] = sums.m_Counts[c][j];
+        if (instances.attribute(j).isNominal()) {
+          vals[j] = Utils.maxIndex(sums.m_WeightedCounts[c][j]);
+          if (m_ClusterMissingCounts[c][j] > m_ClusterNominalCounts[c][j][Utils
+            .maxIndex(m_ClusterNominalCounts[c][j])]) {
+            vals[j] = Instance.missingValue(); // mark mode as missing
+          }
+        } else {
+          if (instances.attribute(j).isNumeric()
+            && (sums.m_Weights[c][j] > 0)) {
+            vals[j] = sums.m_Sums[c][j] / sums.m_Weights[c][j];
+          }
+          if (m_ClusterMissingCounts[c][j] == sums.m_Sizes[c]) {
+            vals[j] = Instance.missingValue(); // mark mean as missing
+          }
+        }
+      }
+      m_ClusterCentroids.add(new Instance(1.0, vals));
+    }
+    return sums.m_Sizes;
+  }
+
+  /**
+   * Moves the initial centroids with mini-batch k-means (D. Sculley:
+   * Web-scale k-means clustering, WWW 2010). In each of the maximum number of
+   * iterations, a random sample of the instances is drawn with replacement
+   * and assigned to the closest centroids, and each centroid is moved
+   * towards its instances with a per-centroid learning rate that decreases
+   * with the weight of the instances it has seen. The values of nominal
+   * attributes are the modes of the values seen.
+   * 
+   * @param instances the instances
+   * @param random the random number generator for drawing the samples
+   * @throws Exception if the centroids could not be moved
+   */
+  protected void miniBatch(final Instances instances, Random random)
+    throws Exception {
+    int numAtts = instances.numAttributes();
+    double[][] centroids = new double[m_NumClusters][];
+    double[][] seen = new double[m_NumClusters][numAtts];
+    double[][][] counts = new double[m_NumClusters][numAtts][];
+    for (int c = 0; c < m_NumClusters; c++) {
+      centroids[c] = m_ClusterCentroids.instance(c).toDoubleArray();
+      for (int j = 0; j < numAtts; j++) {
+        if (instances.attribute(j).isNominal()) {
+          counts[c][j] = new double[instances.attribute(j).numValues()];
+        }
+      }
+    }
+
+    final int[] batch = new int[m_MiniBatchSize];
+    final int[] closest = new int[m_MiniBatchSize];
+    for (int iteration = 0; iteration < m_MaxIterations; iteration++) {
+      m_Iterations++;
+      for (int b = 0; b < batch.length; b++) {
+        batch[b] = random.nextInt(instances.numInstances());
+      }
+      ParallelRanges.processRanges(m_executorPool, m_executionSlots,
+        batch.length, new RangeTask<Object>() {
+        public Object process(int from, int to) {
+          for (int b = from; b < to; b++) {
+            closest[b] = clusterProcessedInstance(
+              instances.instance(batch[b]), false);
+          }
+          return null;
+        }
+      });
+
+      for (int b = 0; b < batch.length; b++) {
+        Instance inst = instances.instance(batch[b]);
+        int c = closest[b];
+        double weight = inst.weight();
+        if (weight <= 0) {
+          continue;
+        }
+        for (int j = 0; j < numAtts; j++) {
+          if (inst.isMissing(j)) {
+            continue;
+          }
+          if (counts[c][j] != null) {
+            counts[c][j][(int) inst.value(j)] += weight;
+            centroids[c][j] = Utils.maxIndex(counts[c][j]);
+          } else {
+            seen[c][j] += weight;
+            if (seen[c][j] == weight) {
+              centroids[c][j] = inst.value(j);
+            } else {
+              centroids[c][j] += weight / seen[c][j]
+                * (inst.value(j) - centroids[c][j]);
+            }
+          }
+        }
+      }
+
+      m_ClusterCentroids = new Instances(instances, m_NumClusters);
+      for (int c = 0; c < m_NumClusters; c++) {
+        m_ClusterCentroids.add(new Instance(1.0, centroids[c].clone()));
+      }
+    }
+  }
+
   /**
    * Classifies a given instance.
    * 
@@ -569,6 +1125,19 @@ public class SimpleKMeans extends RandomizableClusterer implements
     result.addElement(new Option("\tPreserve order of instances.\n", "O", 0,
       "-O"));
 
+    result.addElement(new Option("\tNumber of execution slots.\n"
+      + "\t(default 1 - i.e. no parallelism)", "num-slots", 1,
+      "-num-slots <num>"));
+
+    result.addElement(new Option(
+      "\tSkip distance computations using bounds on the distances.\n"
+        + "\tHas no effect on data with missing values.", "fast", 0, "-fast"));
+
+    result.addElement(new Option(
+      "\tSize of the random samples for mini-batch k-means.\n"
+        + "\t(default 0 - i.e. batch k-means)", "mini-batch", 1,
+      "-mini-batch <num>"));
+
     Enumeration en = super.listOptions();
     while (en.hasMoreElements()) {
       result.addElement(en.nextElement());
@@ -764,6 +1333,108 @@ public class SimpleKMeans extends RandomizableClusterer implements
     return m_PreserveOrder;
   }
 
+  /**
+   * Returns the tip text for this property
+   * 
+   * @return tip text for this property suitable for displaying in the
+   *         explorer/experimenter gui
+   */
+  public String numExecutionSlotsTipText() {
+    return "The number of execution slots (threads) to use for "
+      + "assigning the instances and computing the centroids.";
+  }
+
+  /**
+   * Sets the number of execution slots (threads) to use for assigning the
+   * instances and computing the centroids.
+   * 
+   * @param slots the number of slots to use
+   * @throws Exception if the number of slots is smaller than 1
+   */
+  public void setNumExecutionSlots(int slots) throws Exception {
+    if (slots <= 0) {
+      throw new Exception("Number of execution slots must be > 0");
+    }
+    m_executionSlots = slots;
+  }
+
+  /**
+   * Gets the number of execution slots (threads) to use for assigning the
+   * instances and computing the centroids.
+   * 
+   * @return the number of slots to use
+   */
+  public int getNumExecutionSlots() {
+    return m_executionSlots;
+  }
+
+  /**
+   * Returns the tip text for this property
+   * 
+   * @return tip text for this property suitable for displaying in the
+   *         explorer/experimenter gui
+   */
+  public String fastDistanceCalcTipText() {
+    return "Uses bounds on the distances to skip distance computations "
+      + "(Hamerly's algorithm). The clusters are the same as without. "
+      + "Has no effect on data with missing values.";
+  }
+
+  /**
+   * Sets whether to skip distance computations using bounds on the
+   * distances
+   * 
+   * @param value true if distance computations are to be skipped
+   */
+  public void setFastDistanceCalc(boolean value) {
+    m_FastDistanceCalc = value;
+  }
+
+  /**
+   * Gets whether distance computations are skipped using bounds on the
+   * distances
+   * 
+   * @return true if distance computations are skipped
+   */
+  public boolean getFastDistanceCalc() {
+    return m_FastDistanceCalc;
+  }
+
+  /**
+   * Returns the tip text for this property
+   * 
+   * @return tip text for this property suitable for displaying in the
+   *         explorer/experimenter gui
+   */
+  public String miniBatchSizeTipText() {
+    return "The size of the random samples for mini-batch k-means, which "
+      + "moves the centroids with one sample per iteration, followed by "
+      + "a single pass over all the instances. 0 means batch k-means. "
+      + "Only available with the Euclidean distance.";
+  }
+
+  /**
+   * Sets the size of the random samples for mini-batch k-means
+   * 
+   * @param size the size of the samples, 0 for batch k-means
+   * @throws Exception if the size is negative
+   */
+  public void setMiniBatchSize(int size) throws Exception {
+    if (size < 0) {
+      throw new Exception("Mini-batch size must be >= 0");
+    }
+    m_MiniBatchSize = size;
+  }
+
+  /**
+   * Gets the size of the random samples for mini-batch k-means
+   * 
+   * @return the size of the samples, 0 for batch k-means
+   */
+  public int getMiniBatchSize() {
+    return m_MiniBatchSize;
+  }
+
   /**
    * Parses a given list of options.
    * <p/>
@@ -809,6 +1480,24 @@ public class SimpleKMeans extends RandomizableClusterer implements
    *  Preserve order of instances.
    * </pre>
    * 
+   * <pre>
+   * -num-slots &lt;num&gt;
+   *  Number of execution slots.
+   *  (default 1 - i.e. no parallelism)
+   * </pre>
+   * 
+   * <pre>
+   * -fast
+   *  Skip distance computations using bounds on the distances.
+   *  Has no effect on data with missing values.
+   * </pre>
+   * 
+   * <pre>
+   * -mini-batch &lt;num&gt;
+   *  Size of the random samples for mini-batch k-means.
+   *  (default 0 - i.e. batch k-means)
+   * </pre>
+   * 
    * <!-- options-end -->
    * 
    * @param options the list of options as an array of strings
@@ -848,6 +1537,22 @@ public class SimpleKMeans extends RandomizableClusterer implements
 
     m_PreserveOrder = Utils.getFlag("O", options);
 
+    optionString = Utils.getOption("num-slots", options);
+    if (optionString.length() != 0) {
+      setNumExecutionSlots(Integer.parseInt(optionString));
+    } else {
+      setNumExecutionSlots(1);
+    }
+
+    m_FastDistanceCalc = Utils.getFlag("fast", options);
+
+    optionString = Utils.getOption("mini-batch", options);
+    if (optionString.length() != 0) {
+      setMiniBatchSize(Integer.parseInt(optionString));
+    } else {
+      setMiniBatchSize(0);
+    }
+
     super.setOptions(options);
   }
 
@@ -886,6 +1591,20 @@ public class SimpleKMeans extends RandomizableClusterer implements
       result.add("-O");
     }
 
+    if (getNumExecutionSlots() > 1) {
+      result.add("-num-slots");
+      result.add("" + getNumExecutionSlots());
+    }
+
+    if (m_FastDistanceCalc) {
+      result.add("-fast");
+    }
+
+    if (m_MiniBatchSize > 0) {
+      result.add("-mini-batch");
+      result.add("" + getMiniBatchSize());
+    }
+
     options = super.getOptions();
     for (i = 0; i < options.length; i++) {
       result.add(options[i]);
@@ -0,0 +1,725 @@
+/*
+ *    This program is free software; you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation; either version 2 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program; if not, write to the Free Software
+ *    Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+/*
+ *    KDTreeDatabase.java
+ *
+ */
+
+package weka.clusterers.forOPTICSAndDBScan.Databases;
+
+import weka.clusterers.forOPTICSAndDBScan.DataObjects.DataObject;
+import weka.clusterers.forOPTICSAndDBScan.DataObjects.EuclideanDataObject;
+import weka.clusterers.forOPTICSAndDBScan.DataObjects.ManhattanDataObject;
+import weka.clusterers.forOPTICSAndDBScan.Utils.EpsilonRange_ListElement;
+import weka.clusterers.forOPTICSAndDBScan.Utils.PriorityQueue;
+import weka.clusterers.forOPTICSAndDBScan.Utils.PriorityQueueElement;
+import weka.core.Attribute;
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.core.RevisionHandler;
+import weka.core.RevisionUtils;
+import weka.core.Utils;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.TreeMap;
+
+/**
+ * <p>
+ * KDTreeDatabase.java <br/>
+ * Database that answers epsilon range queries and k-next-neighbour queries
+ * with a KD-tree over the normalized values of the numeric attributes,
+ * instead of comparing the query with every DataObject like the
+ * SequentialDatabase does. The tree is stored in primitive arrays and is
+ * built on the first query after the DataObjects have been inserted. <br/>
+ * A subtree is skipped if the distance of the query to its bounding box is
+ * already larger than epsilon (or the current k-th neighbour). This distance
+ * is a lower bound of the distances of EuclideanDataObjects and
+ * ManhattanDataObjects, so the answers are the same as those of the
+ * SequentialDatabase, in the same order; for other types of DataObjects
+ * all DataObjects are compared with the query. <br/>
+ * </p>
+ *
+ * @version $Revision: 1.1 $
+ */
+public class KDTreeDatabase
+    implements Database, Serializable, RevisionHandler {
+
+    /** for serialization */
+    private static final long serialVersionUID = -6209528497151236421L;
+
+    /**
+     * The maximum number of DataObjects in a leaf of the tree
+     */
+    private static final int MAX_LEAF_SIZE = 16;
+
+    /**
+     * Internal, sorted Treemap for storing all the DataObjects
+     */
+    private TreeMap treeMap;
+
+    /**
+     * Holds the original instances delivered from WEKA
+     */
+    private Instances instances;
+
+    /**
+     * Holds the minimum value for each attribute
+     */
+    private double[] attributeMinValues;
+
+    /**
+     * Holds the maximum value for each attribute
+     */
+    private double[] attributeMaxValues;
+
+    /**
+     * The DataObjects in the order of the treeMap, null if the index has
+     * to be (re-)built
+     */
+    private transient DataObject[] dataObjects;
+
+    /**
+     * 2 if the bound of the Euclidean distance is used, 1 for the Manhattan
+     * distance, 0 if the DataObjects are compared sequentially
+     */
+    private transient int power;
+
+    /**
+     * The indices of the indexed (numeric) attributes
+     */
+    private transient int[] dims;
+
+    /**
+     * The normalized values of the indexed attributes, in the order of the
+     * leaves: coords[i * dims.length + d]
+     */
+    private transient double[] coords;
+
+    /**
+     * The positions (in dataObjects) of the DataObjects in the order of the
+     * leaves
+     */
+    private transient int[] index;
+
+    /**
+     * The number of DataObjects in the tree, the others (with missing values)
+     * are at the end of index and are always compared with the query
+     */
+    private transient int numIndexed;
+
+    /**
+     * The first and the last+1 position in index of the DataObjects of a node
+     */
+    private transient int[] nodeStart, nodeEnd;
+
+    /**
+     * The children of a node, -1 for a leaf
+     */
+    private transient int[] nodeLeft, nodeRight;
+
+    /**
+     * The bounding boxes of the nodes: nodeMin[node * dims.length + d]
+     */
+    private transient double[] nodeMin, nodeMax;
+
+    /**
+     * The number of nodes
+     */
+    private transient int numNodes;
+
+    /**
+     * The normalized values of the current query
+     */
+    private transient double[] query;
+
+    /**
+     * The positions of the DataObjects found by the current query
+     */
+    private transient int[] found;
+
+    /**
+     * The number of DataObjects found by the current query
+     */
+    private transient int numFound;
+
+    /**
+     * The distances of the found DataObjects, indexed by position
+     */
+    private transient double[] distances;
+
+    // *****************************************************************************************************************
+    // constructors
+    // *****************************************************************************************************************
+
+    /**
+     * Constructs a new KD-tree database and holds the original instances
+     * @param instances
+     */
+    public KDTreeDatabase(Instances instances) {
+        this.instances = instances;
+        treeMap = new TreeMap();
+    }
+
+    // *****************************************************************************************************************
+    // methods
+    // *****************************************************************************************************************
+
+    /**
+     * Select a dataObject from the database
+     * @param key The key that is associated with the dataObject
+     * @return dataObject
+     */
+    public DataObject getDataObject(String key) {
+        return (DataObject) treeMap.get(key);
+    }
+
+    /**
+     * Sets the minimum and maximum values for each attribute in different arrays
+     * by walking through every DataObject of the database
+     */
+    public void setMinMaxValues() {
+        attributeMinValues = new double[getInstances().numAttributes()];
+        attributeMaxValues = new double[getInstances().numAttributes()];
+
+        //Init
+        for (int i = 0; i < getInstances().numAttributes(); i++) {
+            attributeMinValues[i] = attributeMaxValues[i] = Double.NaN;
+        }
+
+        Iterator iterator = dataObjectIterator();
+        while (iterator.hasNext()) {
+            DataObject dataObject = (DataObject) iterator.next();
+            for (int j = 0; j < getInstances().numAttributes(); j++) {
+                if (Double.isNaN(attributeMinValues[j])) {
+                    attributeMinValues[j] = dataObject.getInstance().value(j);
+                    attributeMaxValues[j] = dataObject.getInstance().value(j);
+                } else {
+                    if (dataObject.getInstance().value(j) < attributeMinValues[j])
+                        attributeMinValues[j] = dataObject.getInstance().value(j);
+                    if (dataObject.getInstance().value(j) > attributeMaxValues[j])
+                        attributeMaxValues[j] = dataObject.getInstance().value(j);
+                }
+            }
+        }
+        dataObjects = null;
+    }
+
+    /**
+     * Returns the array of minimum-values for each attribute
+     * @return attributeMinValues
+     */
+    public double[] getAttributeMinValues() {
+        return attributeMinValues;
+    }
+
+    /**
+     * Returns the array of maximum-values for each attribute
+     * @return attributeMaxValues
+     */
+    public double[] getAttributeMaxValues() {
+        return attributeMaxValues;
+    }
+
+    /**
+     * Normalizes a value of an attribute in the same way as the DataObjects do.
+     * @param x the value
+     * @param i the index of the attribute
+     * @return the normalized value
+     */
+    private double norm(double x, int i) {
+        if (Double.isNaN(attributeMinValues[i])
+                || Utils.eq(attributeMaxValues[i], attributeMinValues[i])) {
+            return 0;
+        } else {
+            return (x - attributeMinValues[i]) / (attributeMaxValues[i] - attributeMinValues[i]);
+        }
+    }
+
+    /**
+     * Builds the KD-tree over the DataObjects currently in the database.
+     */
+    private void buildIndex() {
+        int n = treeMap.size();
+        dataObjects = new DataObject[n];
+        Iterator iterator = dataObjectIterator();
+        for (int i = 0; i < n; i++) {
+            dataObjects[i] = (DataObject) iterator.next();
+        }
+        found = new int[n];
+        distances = new double[n];
+
+        power = 0;
+        if (n > 0 && attributeMinValues != null) {
+            if (dataObjects[0] instanceof EuclideanDataObject) power = 2;
+            else if (dataObjects[0] instanceof ManhattanDataObject) power = 1;
+        }
+        int numDims = 0;
+        int[] numeric = new int[getInstances().numAttributes()];
+        for (int j = 0; j < numeric.length; j++) {
+            if (getInstances().attribute(j).type() == Attribute.NUMERIC) numeric[numDims++] = j;
+        }
+        if (power == 0 || numDims == 0) {
+            power = 0;
+            return;
+        }
+        dims = new int[numDims];
+        System.arraycopy(numeric, 0, dims, 0, numDims);
+
+        // DataObjects with missing values in the indexed attributes go to the end
+        index = new int[n];
+        double[] values = new double[n * numDims];
+        int first = 0;
+        int last = n;
+        for (int i = 0; i < n; i++) {
+            Instance instance = dataObjects[i].getInstance();
+            boolean missing = false;
+            for (int d = 0; d < numDims && !missing; d++) {
+                missing = instance.isMissing(dims[d]);
+            }
+            if (missing) {
+                index[--last] = i;
+            } else {
+                for (int d = 0; d < numDims; d++) {
+                    values[i * numDims + d] = norm(instance.value(dims[d]), dims[d]);
+                }
+                index[first++] = i;
+            }
+        }
+        numIndexed = first;
+
+        int maxNodes = 2 * (2 * numIndexed / MAX_LEAF_SIZE + 1);
+        nodeStart = new int[maxNodes];
+        nodeEnd = new int[maxNodes];
+        nodeLeft = new int[maxNodes];
+        nodeRight = new int[maxNodes];
+        nodeMin = new double[maxNodes * numDims];
+        nodeMax = new double[maxNodes * numDims];
+        numNodes = 0;
+        makeNode(values, 0, numIndexed);
+
+        // store the values in the order of the leaves
+        coords = new double[numIndexed * numDims];
+        for (int i = 0; i < numIndexed; i++) {
+            System.arraycopy(values, index[i] * numDims, coords, i * numDims, numDims);
+        }
+        query = new double[numDims];
+    }
+
+    /**
+     * Creates the node for the given range of the index and its subtree.
+     * @param values the normalized values, indexed by position
+     * @param start the first position in index
+     * @param end the last+1 position in index
+     * @return the number of the node
+     */
+    private int makeNode(double[] values, int start, int end) {
+        int numDims = dims.length;
+        int node = numNodes++;
+        nodeStart[node] = start;
+        nodeEnd[node] = end;
+        nodeLeft[node] = nodeRight[node] = -1;
+
+        int widest = 0;
+        double widestRange = -1;
+        for (int d = 0; d < numDims; d++) {
+            double min = Double.POSITIVE_INFINITY;
+            double max = Double.NEGATIVE_INFINITY;
+            for (int i = start; i < end; i++) {
+                double value = values[index[i] * numDims + d];
+                if (value < min) min = value;
+                if (value > max) max = value;
+            }
+            nodeMin[node * numDims + d] = min;
+            nodeMax[node * numDims + d] = max;
+            if (max - min > widestRange) {
+                widestRange = max - min;
+                widest = d;
+            }
+        }
+
+        if (end - start > MAX_LEAF_SIZE && widestRange > 0) {
+            int middle = (start + end) / 2;
+            select(values, start, end - 1, middle, widest);
+            nodeLeft[node] = makeNode(values, start, middle);
+            nodeRight[node] = makeNode(values, middle, end);
+        }
+        return node;
+    }
+
+    /**
+     * Rearranges index[left..right] such that the k-th position holds the
+     * DataObject with the k-th smallest value in the given dimension, with
+     * smaller or equal values before and larger or equal values after it.
+     * @param values the normalized values, indexed by position
+     * @param left the first position
+     * @param right the last position
+     * @param k the position to select
+     * @param d the dimension
+     */
+    private void select(double[] values, int left, int right, int k, int d) {
+        int numDims = dims.length;
+        while (left < right) {
+            double pivot = values[index[(left + right) / 2] * numDims + d];
+            int i = left;
+            int j = right;
+            while (i <= j) {
+                while (values[index[i] * numDims + d] < pivot) i++;
+                while (values[index[j] * numDims + d] > pivot) j--;
+                if (i <= j) {
+                    int help = index[i];
+                    index[i] = index[j];
+                    index[j] = help;
+                    i++;
+                    j--;
+                }
+            }
+            if (k <= j) right = j;
+            else if (k >= i) left = i;
+            else return;
+        }
+    }
+
+    /**
+     * Returns a lower bound of the distance of the current query to the
+     * DataObjects within the bounding box of a node.
+     * @param node the node
+     * @return the lower bound
+     */
+    private double boxBound(int node) {
+        int numDims = dims.length;
+        int offset = node * numDims;
+        double sum = 0;
+        for (int d = 0; d < numDims; d++) {
+            double gap = nodeMin[offset + d] - query[d];
+            if (gap < 0) {
+                gap = query[d] - nodeMax[offset + d];
+                if (gap < 0) continue;
+            }
+            sum += (power == 2) ? gap * gap : gap;
+        }
+        return (power == 2) ? Math.sqrt(sum) : sum;
+    }
+
+    /**
+     * Returns a lower bound of the distance of the current query to the
+     * DataObject at the given position in the order of the leaves.
+     * @param i the position in the order of the leaves
+     * @return the lower bound
+     */
+    private double pointBound(int i) {
+        int numDims = dims.length;
+        int offset = i * numDims;
+        double sum = 0;
+        for (int d = 0; d < numDims; d++) {
+            double diff = Math.abs(query[d] - coords[offset + d]);
+            sum += (power == 2) ? diff * diff : diff;
+        }
+        return (power == 2) ? Math.sqrt(sum) : sum;
+    }
+
+    /**
+     * Prepares the index (if necessary) and the values of the query.
+     * @param queryDataObject the query
+     * @return true if the tree can be used for this query
+     */
+    private boolean startQuery(DataObject queryDataObject) {
+        if (dataObjects == null) buildIndex();
+        numFound = 0;
+        if (power == 0) return false;
+
+        Instance instance = queryDataObject.getInstance();
+        for (int d = 0; d < dims.length; d++) {
+            if (instance.isMissing(dims[d])) return false;
+            query[d] = norm(instance.value(dims[d]), dims[d]);
+        }
+        return true;
+    }
+
+    /**
+     * Compares the query with a DataObject and remembers it if it is within
+     * epsilon.
+     * @param queryDataObject the query
+     * @param position the position of the DataObject
+     * @param epsilon the range of the query
+     * @param inclusive whether DataObjects at distance epsilon are within range
+     */
+    private void test(DataObject queryDataObject, int position, double epsilon, boolean inclusive) {
+        double distance = queryDataObject.distance(dataObjects[position]);
+        if (distance < epsilon || (inclusive && distance == epsilon)) {
+            found[numFound++] = position;
+            distances[position] = distance;
+        }
+    }
+
+    /**
+     * Collects the DataObjects within epsilon of the query in the subtree of
+     * a node.
+     * @param queryDataObject the query
+     * @param node the node
+     * @param epsilon the range of the query
+     * @param inclusive whether DataObjects at distance epsilon are within range
+     */
+    private void rangeSearch(DataObject queryDataObject, int node, double epsilon, boolean inclusive) {
+        if (boxBound(node) > epsilon) return;
+
+        if (nodeLeft[node] == -1) {
+            for (int i = nodeStart[node]; i < nodeEnd[node]; i++) {
+                if (pointBound(i) <= epsilon) test(queryDataObject, index[i], epsilon, inclusive);
+            }
+        } else {
+            rangeSearch(queryDataObject, nodeLeft[node], epsilon, inclusive);
+            rangeSearch(queryDataObject, nodeRight[node], epsilon, inclusive);
+        }
+    }
+
+    /**
+     * Collects the positions of all DataObjects within epsilon of the query,
+     * in ascending order, into found.
+     * @param queryDataObject the query
+     * @param epsilon the range of the query
+     * @param inclusive whether DataObjects at distance epsilon are within range
+     */
+    private void rangeQuery(DataObject queryDataObject, double epsilon, boolean inclusive) {
+        if (startQuery(queryDataObject)) {
+            if (numIndexed > 0) rangeSearch(queryDataObject, 0, epsilon, inclusive);
+            for (int i = numIndexed; i < index.length; i++) {
+                test(queryDataObject, index[i], epsilon, inclusive);
+            }
+            Arrays.sort(found, 0, numFound);
+        } else {
+            for (int i = 0; i < dataObjects.length; i++) {
+                test(queryDataObject, i, epsilon, inclusive);
+            }
+        }
+    }
+
+    /**
+     * Performs an epsilon range query for this dataObject
+     * @param epsilon Specifies the range for the query
+     * @param queryDataObject The dataObject that is used as query-object for epsilon range query
+     * @return List with all the DataObjects that are within the specified range
+     */
+    public List epsilonRangeQuery(double epsilon, DataObject queryDataObject) {
+        rangeQuery(queryDataObject, epsilon, false);
+
+        ArrayList epsilonRange_List = new ArrayList(numFound);
+        for (int i = 0; i < numFound; i++) {
+            epsilonRange_List.add(dataObjects[found[i]]);
+        }
+        return epsilonRange_List;
+    }
+
+    /**
+     * Offers a DataObject to the queue of the k next neighbours.
+     * @param priorityQueue the queue
+     * @param k number of next neighbours
+     * @param distance the distance of the DataObject to the query
+     * @param dataObject the DataObject
+     */
+    private void offer(PriorityQueue priorityQueue, int k, double distance, DataObject dataObject) {
+        if (priorityQueue.size() < k) {
+            priorityQueue.add(distance, dataObject);
+        } else {
+            if (distance < priorityQueue.getPriority(0)) {
+                priorityQueue.next(); //removes the highest distance
+                priorityQueue.add(distance, dataObject);
+            }
+        }
+    }
+
+    /**
+     * Collects the k next neighbours of the query in the subtree of a node,
+     * nearer children first.
+     * @param queryDataObject the query
+     * @param node the node
+     * @param k number of next neighbours
+     * @param priorityQueue the queue of the next neighbours
+     */
+    private void nearestSearch(DataObject queryDataObject, int node, int k, PriorityQueue priorityQueue) {
+        if (nodeLeft[node] == -1) {
+            for (int i = nodeStart[node]; i < nodeEnd[node]; i++) {
+                if (priorityQueue.size() == k && pointBound(i) >= priorityQueue.getPriority(0)) continue;
+                DataObject dataObject = dataObjects[index[i]];
+                offer(priorityQueue, k, queryDataObject.distance(dataObject), dataObject);
+            }
+        } else {
+            double leftBound = boxBound(nodeLeft[node]);
+            double rightBound = boxBound(nodeRight[node]);
+            int near = (leftBound <= rightBound) ? nodeLeft[node] : nodeRight[node];
+            int far = (near == nodeLeft[node]) ? nodeRight[node] : nodeLeft[node];
+            double farBound = Math.max(leftBound, rightBound);
+
+            nearestSearch(queryDataObject, near, k, priorityQueue);
+            if (priorityQueue.size() < k || farBound < priorityQueue.getPriority(0)) {
+                nearestSearch(queryDataObject, far, k, priorityQueue);
+            }
+        }
+    }
+
+    /**
+     * Emits the k next-neighbours and performs an epsilon-range-query at the parallel.
+     * The returned list contains two elements:
+     * At index=0 --> list with all k next-neighbours;
+     * At index=1 --> list with all dataObjects within epsilon;
+     * @param k number of next neighbours
+     * @param epsilon Specifies the range for the query
+     * @param dataObject the start object
+     * @return list with the k-next neighbours (PriorityQueueElements) and a list
+     *         with candidates from the epsilon-range-query (EpsilonRange_ListElements)
+     */
+    public List k_nextNeighbourQuery(int k, double epsilon, DataObject dataObject) {
+        List return_List = new ArrayList();
+        List nextNeighbours_List = new ArrayList();
+        List epsilonRange_List = new ArrayList();
+
+        PriorityQueue priorityQueue = new PriorityQueue();
+
+        rangeQuery(dataObject, epsilon, true);
+        for (int i = 0; i < numFound; i++) {
+            DataObject next_dataObject = dataObjects[found[i]];
+            double dist = distances[found[i]];
+            epsilonRange_List.add(new EpsilonRange_ListElement(dist, next_dataObject));
+            offer(priorityQueue, k, dist, next_dataObject);
+        }
+
+        // the neighbours outside of epsilon are only needed if there are
+        // fewer than k DataObjects within epsilon
+        if (numFound < k && k > 0) {
+            priorityQueue = new PriorityQueue();
+            if (startQuery(dataObject)) {
+                if (numIndexed > 0) nearestSearch(dataObject, 0, k, priorityQueue);
+                for (int i = numIndexed; i < index.length; i++) {
+                    DataObject next_dataObject = dataObjects[index[i]];
+                    offer(priorityQueue, k, dataObject.distance(next_dataObject), next_dataObject);
+                }
+            } else {
+                for (int i = 0; i < dataObjects.length; i++) {
+                    offer(priorityQueue, k, dataObject.distance(dataObjects[i]), dataObjects[i]);
+                }
+            }
+        }
+
+        while (priorityQueue.hasNext()) {
+            nextNeighbours_List.add(0, priorityQueue.next());
+        }
+
+        return_List.add(nextNeighbours_List);
+        return_List.add(epsilonRange_List);
+        return return_List;
+    }
+
+    /**
+     * Calculates the coreDistance for the specified DataObject.
+     * The returned list contains three elements:
+     * At index=0 --> list with all k next-neighbours;
+     * At index=1 --> list with all dataObjects within epsilon;
+     * At index=2 --> coreDistance as Double-value
+     * @param minPoints minPoints-many neighbours within epsilon must be found to have a non-undefined coreDistance
+     * @param epsilon Specifies the range for the query
+     * @param dataObject Calculate coreDistance for this dataObject
+     * @return list with the k-next neighbours (PriorityQueueElements) and a list
+     *         with candidates from the epsilon-range-query (EpsilonRange_ListElements) and
+     *         the double-value for the calculated coreDistance
+     */
+    public List coreDistance(int minPoints, double epsilon, DataObject dataObject) {
+        List list = k_nextNeighbourQuery(minPoints, epsilon, dataObject);
+
+        if (((List) list.get(1)).size() < minPoints) {
+            list.add(new Double(DataObject.UNDEFINED));
+            return list;
+        } else {
+            List nextNeighbours_List = (List) list.get(0);
+            PriorityQueueElement priorityQueueElement =
+                    (PriorityQueueElement) nextNeighbours_List.get(nextNeighbours_List.size() - 1);
+            if (priorityQueueElement.getPriority() <= epsilon) {
+                list.add(new Double(priorityQueueElement.getPriority()));
+                return list;
+            } else {
+                list.add(new Double(DataObject.UNDEFINED));
+                return list;
+            }
+        }
+    }
+
+    /**
+     * Returns the size of the database (the number of dataObjects in the database)
+     * @return size
+     */
+    public int size() {
+        return treeMap.size();
+    }
+
+    /**
+     * Returns an iterator over all the keys
+     * @return iterator
+     */
+    public Iterator keyIterator() {
+        return treeMap.keySet().iterator();
+    }
+
+    /**
+     * Returns an iterator over all the dataObjects in the database
+     * @return iterator
+     */
+    public Iterator dataObjectIterator() {
+        return treeMap.values().iterator();
+    }
+
+    /**
+     * Tests if the database contains the dataObject_Query
+     * @param dataObject_Query The query-object
+     * @return true if the database contains dataObject_Query, else false
+     */
+    public boolean contains(DataObject dataObject_Query) {
+        Iterator iterator = dataObjectIterator();
+        while (iterator.hasNext()) {
+            DataObject dataObject = (DataObject) iterator.next();
+            if (dataObject.equals(dataObject_Query)) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Inserts a new dataObject into the database
+     * @param dataObject
+     */
+    public void insert(DataObject dataObject) {
+        treeMap.put(dataObject.getKey(), dataObject);
+        dataObjects = null;
+    }
+
+    /**
+     * Returns the original instances delivered from WEKA
+     * @return instances
+     */
+    public Instances getInstances() {
+        return instances;
+    }
+
+    /**
+     * Returns the revision string.
+     *
+     * @return		the revision
+     */
+    public String getRevision() {
+      return RevisionUtils.extract("$Revision: 1.1 $");
+    }
+}
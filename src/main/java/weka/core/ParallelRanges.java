@@ -0,0 +1,107 @@
+/*
+ *    This program is free software; you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation; either version 2 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program; if not, write to the Free Software
+ *    Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+/*
+ *    ParallelRanges.java
+ *
+ */
+
+package weka.core;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Helper methods for processing consecutive ranges of indices with a
+ * thread pool.
+ *
+ * @version $Revision: 1.1 $
+ * @see RangeTask
+ */
+public class ParallelRanges
+  implements RevisionHandler {
+
+  /**
+   * Splits the indices 0 to n - 1 into at most the given number of
+   * consecutive ranges and processes the ranges in parallel. Without a
+   * thread pool, the calling thread processes all indices as a single
+   * range.
+   *
+   * @param executor the thread pool to use, null for the calling thread
+   * @param numRanges the number of ranges, e.g., the number of threads
+   * @param n the number of indices
+   * @param task the work to do on a range
+   * @return the results for the ranges, in the order of the ranges
+   * @throws Exception if a range could not be processed
+   */
+  public static <T> List<T> processRanges(ExecutorService executor,
+    int numRanges, int n, final RangeTask<T> task) throws Exception {
+
+    List<T> results = new ArrayList<T>();
+    numRanges = Math.min(numRanges, n);
+    if ((executor == null) || (numRanges < 2)) {
+      results.add(task.process(0, n));
+      return results;
+    }
+
+    List<Future<T>> futures = new ArrayList<Future<T>>();
+    for (int r = 0; r < numRanges; r++) {
+      final int from = (int) ((long) n * r / numRanges);
+      final int to = (int) ((long) n * (r + 1) / numRanges);
+      futures.add(executor.submit(new Callable<T>() {
+	public T call() throws Exception {
+	  return task.process(from, to);
+	}
+      }));
+    }
+    for (Future<T> future : futures) {
+      results.add(waitFor(future));
+    }
+    return results;
+  }
+
+  /**
+   * Waits for the given task to finish and returns its result, passing on
+   * the exception the task threw, if any.
+   *
+   * @param future the task
+   * @return the result of the task
+   * @throws Exception if the task failed
+   */
+  public static <T> T waitFor(Future<T> future) throws Exception {
+    try {
+      return future.get();
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof Exception) {
+	throw (Exception) e.getCause();
+      }
+      throw e;
+    }
+  }
+
+  /**
+   * Returns the revision string.
+   *
+   * @return		the revision
+   */
+  public String getRevision() {
+    return RevisionUtils.extract("$Revision: 1.1 $");
+  }
+}
@@ -0,0 +1,42 @@
+/*
+ *    This program is free software; you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation; either version 2 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program; if not, write to the Free Software
+ *    Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+/*
+ *    RangeTask.java
+ *
+ */
+
+package weka.core;
+
+/**
+ * Work done by one thread on a range of indices, e.g., of the instances of
+ * a dataset. Used with ParallelRanges.
+ *
+ * @version $Revision: 1.1 $
+ * @see ParallelRanges
+ */
+public interface RangeTask<T> {
+
+  /**
+   * Processes the elements in the given range.
+   *
+   * @param from the index of the first element of the range
+   * @param to the index after the last element of the range
+   * @return the result for the range
+   * @throws Exception if the range could not be processed
+   */
+  T process(int from, int to) throws Exception;
+}
@@ -0,0 +1,219 @@
+/*
+ *    This program is free software; you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation; either version 2 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program; if not, write to the Free Software
+ *    Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+/*
+ *    SparseVectorMath.java
+ *
+ */
+
+package weka.core;
+
+/**
+ * Vector operations that only look at the non-zero values of sparse
+ * vectors. A sparse vector is either an instance (of which only the stored
+ * values are visited, so that SparseInstances are never densified) or a pair
+ * of arrays with the indices, in ascending order, and the values of the
+ * non-zeros. Dense vectors are plain double arrays.
+ *
+ * @version $Revision: 1.1 $
+ */
+public class SparseVectorMath
+  implements RevisionHandler {
+
+  /**
+   * Computes the dot product of two instances, skipping the given
+   * attribute (usually the class), with a merge-join of their stored values.
+   *
+   * @param first	the first instance
+   * @param second	the second instance
+   * @param skipIndex	the index of the attribute to skip, -1 for none
+   * @return		the dot product
+   */
+  public static double dotProduct(Instance first, Instance second,
+      int skipIndex) {
+
+    double result = 0;
+    int n1 = first.numValues();
+    int n2 = second.numValues();
+    for (int p1 = 0, p2 = 0; p1 < n1 && p2 < n2;) {
+      int ind1 = first.index(p1);
+      int ind2 = second.index(p2);
+      if (ind1 == ind2) {
+	if (ind1 != skipIndex) {
+	  result += first.valueSparse(p1) * second.valueSparse(p2);
+	}
+	p1++;
+	p2++;
+      } else if (ind1 > ind2) {
+	p2++;
+      } else {
+	p1++;
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Computes the dot product of an instance and a dense vector indexed by
+   * attribute, skipping the given attribute.
+   *
+   * @param inst	the instance
+   * @param dense	the dense vector
+   * @param skipIndex	the index of the attribute to skip, -1 for none
+   * @return		the dot product
+   */
+  public static double dotProduct(Instance inst, double[] dense,
+      int skipIndex) {
+
+    double result = 0;
+    int n = inst.numValues();
+    for (int p = 0; p < n; p++) {
+      int index = inst.index(p);
+      if (index != skipIndex) {
+	result += inst.valueSparse(p) * dense[index];
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Computes the squared norm of an instance, skipping the given attribute.
+   *
+   * @param inst	the instance
+   * @param skipIndex	the index of the attribute to skip, -1 for none
+   * @return		the squared norm
+   */
+  public static double squaredNorm(Instance inst, int skipIndex) {
+    double result = 0;
+    int n = inst.numValues();
+    for (int p = 0; p < n; p++) {
+      if (inst.index(p) != skipIndex) {
+	double value = inst.valueSparse(p);
+	result += value * value;
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Adds a multiple of an instance to a dense vector indexed by attribute,
+   * skipping the given attribute: dense += alpha * inst.
+   *
+   * @param alpha	the factor
+   * @param inst	the instance
+   * @param dense	the dense vector, which is updated
+   * @param skipIndex	the index of the attribute to skip, -1 for none
+   */
+  public static void axpy(double alpha, Instance inst, double[] dense,
+      int skipIndex) {
+
+    int n = inst.numValues();
+    for (int p = 0; p < n; p++) {
+      int index = inst.index(p);
+      if (index != skipIndex) {
+	dense[index] += alpha * inst.valueSparse(p);
+      }
+    }
+  }
+
+  /**
+   * Computes the dot product of two sparse vectors with a merge-join.
+   *
+   * @param indices1	the indices of the first vector, ascending
+   * @param values1	the values of the first vector
+   * @param indices2	the indices of the second vector, ascending
+   * @param values2	the values of the second vector
+   * @return		the dot product
+   */
+  public static double dotProduct(int[] indices1, double[] values1,
+      int[] indices2, double[] values2) {
+
+    double result = 0;
+    int n1 = indices1.length;
+    int n2 = indices2.length;
+    for (int p1 = 0, p2 = 0; p1 < n1 && p2 < n2;) {
+      if (indices1[p1] == indices2[p2]) {
+	result += values1[p1++] * values2[p2++];
+      } else if (indices1[p1] > indices2[p2]) {
+	p2++;
+      } else {
+	p1++;
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Computes the dot product of a sparse vector and a block of a dense
+   * vector, i.e., the sum of values[p] * dense[offset + indices[p]].
+   *
+   * @param indices	the indices of the sparse vector
+   * @param values	the values of the sparse vector
+   * @param dense	the dense vector
+   * @param offset	the position of index 0 in the dense vector
+   * @return		the dot product
+   */
+  public static double dotProduct(int[] indices, double[] values,
+      double[] dense, int offset) {
+
+    double result = 0;
+    for (int p = 0; p < indices.length; p++) {
+      result += values[p] * dense[offset + indices[p]];
+    }
+    return result;
+  }
+
+  /**
+   * Computes the squared norm of a sparse vector.
+   *
+   * @param values	the values of the sparse vector
+   * @return		the squared norm
+   */
+  public static double squaredNorm(double[] values) {
+    double result = 0;
+    for (int p = 0; p < values.length; p++) {
+      result += values[p] * values[p];
+    }
+    return result;
+  }
+
+  /**
+   * Adds a multiple of a sparse vector to a block of a dense vector:
+   * dense[offset + indices[p]] += alpha * values[p].
+   *
+   * @param alpha	the factor
+   * @param indices	the indices of the sparse vector
+   * @param values	the values of the sparse vector
+   * @param dense	the dense vector, which is updated
+   * @param offset	the position of index 0 in the dense vector
+   */
+  public static void axpy(double alpha, int[] indices, double[] values,
+      double[] dense, int offset) {
+
+    for (int p = 0; p < indices.length; p++) {
+      dense[offset + indices[p]] += alpha * values[p];
+    }
+  }
+
+  /**
+   * Returns the revision string.
+   *
+   * @return		the revision
+   */
+  public String getRevision() {
+    return RevisionUtils.extract("$Revision: 1.1 $");
+  }
+}
@@ -69,9 +69,18 @@ public class ArffLoader
   /** The reader for the source file. */
   protected transient Reader m_sourceReader = null;
 
+  /** The stream for the source file. */
+  protected transient InputStream m_sourceStream = null;
+
   /** The parser for the ARFF file */
   protected transient ArffReader m_ArffReader = null;
 
+  /** The parser for the ARFF file if the fast reader is used */
+  protected transient FastArffReader m_FastArffReader = null;
+
+  /** whether to parse the data with the FastArffReader */
+  protected boolean m_UseFastReader = false;
+
   /**
    * Reads data from an ARFF file, either in incremental or batch mode.
    * <p/>
@@ -870,6 +879,36 @@ public class ArffLoader
       + "format. ";
   }
 
+  /**
+   * Returns the tip text for this property
+   * 
+   * @return tip text for this property suitable for displaying in the
+   *         explorer/experimenter gui
+   */
+  public String useFastReaderTipText() {
+    return "Whether to parse the data directly on the bytes of the source "
+      + "instead of with a StreamTokenizer, which is faster for large files.";
+  }
+
+  /**
+   * Sets whether to parse the data with the FastArffReader. Takes effect
+   * the next time the structure is determined.
+   * 
+   * @param value true if the FastArffReader is used
+   */
+  public void setUseFastReader(boolean value) {
+    m_UseFastReader = value;
+  }
+
+  /**
+   * Gets whether the data is parsed with the FastArffReader.
+   * 
+   * @return true if the FastArffReader is used
+   */
+  public boolean getUseFastReader() {
+    return m_UseFastReader;
+  }
+
   /**
    * Get the file extension used for arff files
    * 
@@ -909,6 +948,7 @@ public class ArffLoader
   public void reset() throws IOException {
     m_structure = null;
     m_ArffReader = null;
+    m_FastArffReader = null;
     setRetrieval(NONE);
 
     if (m_File != null && !(new File(m_File).isDirectory())) {
@@ -993,6 +1033,7 @@ public class ArffLoader
     m_File = (new File(System.getProperty("user.dir"))).getAbsolutePath();
     m_URL = "http://";
 
+    m_sourceStream = in;
     m_sourceReader = new BufferedReader(new InputStreamReader(in));
   }
 
@@ -1011,8 +1052,13 @@ public class ArffLoader
         throw new IOException("No source has been specified");
       }
       try {
-        m_ArffReader = new ArffReader(m_sourceReader, 1);
-        m_structure = m_ArffReader.getStructure();
+        if (m_UseFastReader) {
+          m_FastArffReader = new FastArffReader(m_sourceStream, 1);
+          m_structure = m_FastArffReader.getStructure();
+        } else {
+          m_ArffReader = new ArffReader(m_sourceReader, 1);
+          m_structure = m_ArffReader.getStructure();
+        }
       } catch (Exception ex) {
         throw new IOException("Unable to determine structure as arff (Reason: "
           + ex.toString() + ").");
@@ -1050,7 +1096,7 @@ public class ArffLoader
       // Read all instances
       Instance inst;
       insts = new Instances(m_structure, 0);
-      while ((inst = m_ArffReader.readInstance(m_structure)) != null) {
+      while ((inst = readInstance(m_structure)) != null) {
         insts.add(inst);
       }
 
@@ -1065,6 +1111,22 @@ public class ArffLoader
     return insts;
   }
 
+  /**
+   * Reads the next instance with the parser the structure was determined
+   * with.
+   * 
+   * @param structure the dataset header information, will get updated in case
+   *          of string or relational attributes
+   * @return the next instance, or null if there are no more instances
+   * @throws IOException if there is an error during parsing
+   */
+  protected Instance readInstance(Instances structure) throws IOException {
+    if (m_FastArffReader != null) {
+      return m_FastArffReader.readInstance(structure);
+    }
+    return m_ArffReader.readInstance(structure);
+  }
+
   /**
    * Read the data set incrementally---get the next instance in the data set or
    * returns null if there are no more instances to get. If the structure hasn't
@@ -1090,7 +1152,7 @@ public class ArffLoader
 
     Instance current = null;
     if (m_sourceReader != null) {
-      current = m_ArffReader.readInstance(m_structure);
+      current = readInstance(m_structure);
     }
 
     if ((m_sourceReader != null) && (current == null)) {
@@ -1098,6 +1160,7 @@ public class ArffLoader
         // close the stream
         m_sourceReader.close();
         m_sourceReader = null;
+        m_sourceStream = null;
         // reset();
       } catch (Exception ex) {
         ex.printStackTrace();
@@ -0,0 +1,460 @@
+/*
+ *    This program is free software; you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation; either version 2 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program; if not, write to the Free Software
+ *    Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+/*
+ *    ColumnarInstancesLoader.java
+ *
+ */
+
+package weka.core.converters;
+
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.core.RevisionHandler;
+import weka.core.RevisionUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ <!-- globalinfo-start -->
+ * Reads a source that is in the binary columnar format written by the
+ * ColumnarInstancesSaver. Files are memory-mapped, so that only the header
+ * is read when the source is set, and the values of an instance are read
+ * when the instance is requested.
+ * <p/>
+ <!-- globalinfo-end -->
+ *
+ * @version $Revision: 1.1 $
+ * @see Loader
+ * @see ColumnarInstancesSaver
+ */
+public class ColumnarInstancesLoader
+  extends AbstractFileLoader
+  implements BatchConverter, IncrementalConverter {
+
+  /** for serialization */
+  static final long serialVersionUID = -6385638264517482913L;
+
+  /** the file extension */
+  public static String FILE_EXTENSION =
+    ColumnarInstancesSaver.FILE_EXTENSION;
+
+  /** The reader for the source. */
+  protected transient ColumnarReader m_ColumnarReader = null;
+
+  /** The current index position for incremental reading */
+  protected int m_IncrementalIndex = 0;
+
+  /**
+   * Gives access to the instances of a file in the columnar format. The
+   * columns of a file are memory-mapped in segments of at most 1 GB, those
+   * of other streams are read into memory. Random access to single values,
+   * instances and ranges of columns is safe from several threads.
+   * <p/>
+   *
+   * Typical code for scanning a column:
+   *
+   * <pre>
+   * ColumnarReader reader =
+   *   new ColumnarReader(new FileInputStream(&quot;/some/where/file.bci&quot;));
+   * double[] values = new double[10000];
+   * for (int i = 0; i &lt; reader.numInstances(); i += values.length) {
+   *   int count = Math.min(values.length, reader.numInstances() - i);
+   *   reader.readColumn(0, i, values, 0, count);
+   *   ...
+   * }
+   * </pre>
+   *
+   * @version $Revision: 1.1 $
+   */
+  public static class ColumnarReader
+    implements RevisionHandler {
+
+    /** the number of doubles in a segment, as a power of two */
+    protected static final int SEGMENT_BITS = 27;
+
+    /** the number of doubles in a segment */
+    protected static final int SEGMENT_SIZE = 1 << SEGMENT_BITS;
+
+    /** the header of the data */
+    protected Instances m_Structure;
+
+    /** the number of instances */
+    protected int m_NumInstances;
+
+    /** the columns followed by the weights, in segments */
+    protected DoubleBuffer[] m_Segments;
+
+    /**
+     * Reads the header from the stream and maps the columns if the stream
+     * is a file, or reads them otherwise. The stream is closed afterwards.
+     *
+     * @param in the stream positioned at the start of the columnar data
+     * @throws IOException if the data can't be read
+     */
+    public ColumnarReader(InputStream in) throws IOException {
+      try {
+        DataInputStream data = new DataInputStream(in);
+
+        byte[] bytes = new byte[ColumnarInstancesSaver.PREAMBLE_SIZE];
+        data.readFully(bytes);
+        ByteBuffer preamble = ByteBuffer.wrap(bytes);
+        preamble.order(ByteOrder.LITTLE_ENDIAN);
+        if (preamble.getInt() != ColumnarInstancesSaver.MAGIC) {
+          throw new IOException("Not a columnar instances file");
+        }
+        int version = preamble.getInt();
+        if (version != ColumnarInstancesSaver.VERSION) {
+          throw new IOException("Unsupported version " + version
+            + " of columnar instances file");
+        }
+        int headerLength = preamble.getInt();
+        int numAttributes = preamble.getInt();
+        long numInstances = preamble.getLong();
+        if ((numInstances < 0) || (numInstances > Integer.MAX_VALUE)) {
+          throw new IOException("Invalid number of instances: "
+            + numInstances);
+        }
+        m_NumInstances = (int) numInstances;
+
+        bytes = new byte[headerLength];
+        data.readFully(bytes);
+        ObjectInputStream oi =
+          new ObjectInputStream(new ByteArrayInputStream(bytes));
+        try {
+          m_Structure = (Instances) oi.readObject();
+        } catch (ClassNotFoundException ex) {
+          throw new IOException("Could not deserialize header from this "
+            + "source.");
+        }
+        if (m_Structure.numAttributes() != numAttributes) {
+          throw new IOException("Header does not match number of attributes");
+        }
+        data.readFully(new byte[ColumnarInstancesSaver.padding(headerLength)]);
+
+        long numValues = (long) (numAttributes + 1) * m_NumInstances;
+        m_Segments =
+          new DoubleBuffer[(int) ((numValues + SEGMENT_SIZE - 1) / SEGMENT_SIZE)];
+        if (in instanceof FileInputStream) {
+          FileChannel channel = ((FileInputStream) in).getChannel();
+          long position = channel.position();
+          if (channel.size() - position < 8 * numValues) {
+            throw new IOException("Columnar instances file is truncated");
+          }
+          for (int i = 0; i < m_Segments.length; i++) {
+            long size = Math.min(SEGMENT_SIZE, numValues - (long) i * SEGMENT_SIZE);
+            m_Segments[i] =
+              channel.map(FileChannel.MapMode.READ_ONLY,
+                position + 8L * i * SEGMENT_SIZE, 8 * size)
+                .order(ByteOrder.LITTLE_ENDIAN).asDoubleBuffer();
+          }
+        } else {
+          for (int i = 0; i < m_Segments.length; i++) {
+            long size = Math.min(SEGMENT_SIZE, numValues - (long) i * SEGMENT_SIZE);
+            bytes = new byte[(int) (8 * size)];
+            data.readFully(bytes);
+            m_Segments[i] =
+              ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN)
+                .asDoubleBuffer();
+          }
+        }
+      } finally {
+        in.close();
+      }
+    }
+
+    /**
+     * Returns the value at the given position of the columns.
+     *
+     * @param position the index of the value, counted over the columns
+     * @return the value
+     */
+    protected final double get(long position) {
+      return m_Segments[(int) (position >>> SEGMENT_BITS)]
+        .get((int) (position & (SEGMENT_SIZE - 1)));
+    }
+
+    /**
+     * Returns the header of the data.
+     *
+     * @return the header, without instances
+     */
+    public Instances getStructure() {
+      return new Instances(m_Structure, 0);
+    }
+
+    /**
+     * Returns the number of instances.
+     *
+     * @return the number of instances
+     */
+    public int numInstances() {
+      return m_NumInstances;
+    }
+
+    /**
+     * Returns the internal value of the given attribute of the given
+     * instance.
+     *
+     * @param index the index of the instance
+     * @param att the index of the attribute
+     * @return the value
+     */
+    public double value(int index, int att) {
+      return get((long) att * m_NumInstances + index);
+    }
+
+    /**
+     * Returns the weight of the given instance.
+     *
+     * @param index the index of the instance
+     * @return the weight
+     */
+    public double weight(int index) {
+      return value(index, m_Structure.numAttributes());
+    }
+
+    /**
+     * Reads consecutive values of the given attribute into an array.
+     *
+     * @param att the index of the attribute
+     * @param from the index of the first instance
+     * @param values the array to store the values in
+     * @param offset the position in the array of the first value
+     * @param count the number of values
+     */
+    public void readColumn(int att, int from, double[] values, int offset,
+      int count) {
+      long position = (long) att * m_NumInstances + from;
+      while (count > 0) {
+        DoubleBuffer segment =
+          m_Segments[(int) (position >>> SEGMENT_BITS)].duplicate();
+        int start = (int) (position & (SEGMENT_SIZE - 1));
+        int length = Math.min(count, segment.limit() - start);
+        segment.position(start);
+        segment.get(values, offset, length);
+        position += length;
+        offset += length;
+        count -= length;
+      }
+    }
+
+    /**
+     * Creates the given instance from the columns.
+     *
+     * @param index the index of the instance
+     * @param dataset the dataset the instance gets access to
+     * @return the instance
+     */
+    public Instance instance(int index, Instances dataset) {
+      int numAttributes = m_Structure.numAttributes();
+      double[] values = new double[numAttributes];
+      for (int att = 0; att < numAttributes; att++) {
+        values[att] = value(index, att);
+      }
+      Instance inst = new Instance(weight(index), values);
+      inst.setDataset(dataset);
+
+      return inst;
+    }
+
+    /**
+     * Returns the revision string.
+     *
+     * @return the revision
+     */
+    public String getRevision() {
+      return RevisionUtils.extract("$Revision: 1.1 $");
+    }
+  }
+
+  /**
+   * Returns a string describing this object
+   *
+   * @return a description of the classifier suitable for
+   * displaying in the explorer/experimenter gui
+   */
+  public String globalInfo() {
+    return "Reads a source that is in the binary columnar format written by "
+      + "the ColumnarInstancesSaver. Files are memory-mapped, so that only "
+      + "the header is read when the source is set, and the values of an "
+      + "instance are read when the instance is requested.";
+  }
+
+  /**
+   * Resets the Loader ready to read the data set again. The source stays
+   * mapped.
+   */
+  public void reset() {
+
+    m_structure = null;
+    m_IncrementalIndex = 0;
+    setRetrieval(NONE);
+  }
+
+  /**
+   * Get the file extension used for columnar files
+   *
+   * @return the file extension
+   */
+  public String getFileExtension() {
+    return FILE_EXTENSION;
+  }
+
+  /**
+   * Gets all the file extensions used for this type of file
+   *
+   * @return the file extensions
+   */
+  public String[] getFileExtensions() {
+    return new String[]{getFileExtension()};
+  }
+
+  /**
+   * Returns a description of the file type.
+   *
+   * @return a short file description
+   */
+  public String getFileDescription() {
+    return "Binary columnar instances";
+  }
+
+  /**
+   * Resets the Loader object and sets the source of the data set to be
+   * the supplied InputStream. A file stream is memory-mapped, other streams
+   * are read into memory.
+   *
+   * @param in the source InputStream.
+   * @throws IOException if there is a problem with IO
+   */
+  public void setSource(InputStream in) throws IOException {
+
+    m_ColumnarReader = new ColumnarReader(in);
+    reset();
+  }
+
+  /**
+   * Returns the reader for the source, which gives random access to the
+   * instances.
+   *
+   * @return the reader
+   * @throws IOException if no source has been specified
+   */
+  public ColumnarReader getColumnarReader() throws IOException {
+
+    if (m_ColumnarReader == null) {
+      throw new IOException("No source has been specified");
+    }
+
+    return m_ColumnarReader;
+  }
+
+  /**
+   * Determines and returns (if possible) the structure (internally the
+   * header) of the data set as an empty set of instances.
+   *
+   * @return the structure of the data set as an empty set of Instances
+   * @throws IOException if an error occurs
+   */
+  public Instances getStructure() throws IOException {
+
+    if (m_structure == null) {
+      m_structure = getColumnarReader().getStructure();
+    }
+
+    return new Instances(m_structure, 0);
+  }
+
+  /**
+   * Return the full data set. If the structure hasn't yet been determined
+   * by a call to getStructure then method should do so before processing
+   * the rest of the data set.
+   *
+   * @return the structure of the data set as an empty set of Instances
+   * @throws IOException if there is no source or parsing fails
+   */
+  public Instances getDataSet() throws IOException {
+
+    ColumnarReader reader = getColumnarReader();
+    if (getRetrieval() == INCREMENTAL) {
+      throw new IOException(
+        "Cannot mix getting Instances in both incremental and batch modes");
+    }
+    setRetrieval(BATCH);
+
+    Instances result = new Instances(getStructure(), reader.numInstances());
+    for (int i = 0; i < reader.numInstances(); i++) {
+      result.add(reader.instance(i, result));
+    }
+
+    return result;
+  }
+
+  /**
+   * Read the data set incrementally---get the next instance in the data
+   * set or returns null if there are no
+   * more instances to get. If the structure hasn't yet been
+   * determined by a call to getStructure then method should do so before
+   * returning the next instance in the data set.
+   *
+   * @param structure the dataset header information
+   * @return the next instance in the data set as an Instance object or null
+   * if there are no more instances to be read
+   * @throws IOException if there is an error during parsing
+   */
+  public Instance getNextInstance(Instances structure) throws IOException {
+
+    ColumnarReader reader = getColumnarReader();
+    if (getRetrieval() == BATCH) {
+      throw new IOException(
+        "Cannot mix getting Instances in both incremental and batch modes");
+    }
+    setRetrieval(INCREMENTAL);
+
+    if (m_IncrementalIndex == reader.numInstances()) {
+      return null;
+    }
+
+    return reader.instance(m_IncrementalIndex++, structure);
+  }
+
+  /**
+   * Returns the revision string.
+   *
+   * @return		the revision
+   */
+  public String getRevision() {
+    return RevisionUtils.extract("$Revision: 1.1 $");
+  }
+
+  /**
+   * Main method.
+   *
+   * @param args should contain the name of an input file.
+   */
+  public static void main(String[] args) {
+    runFileLoader(new ColumnarInstancesLoader(), args);
+  }
+}
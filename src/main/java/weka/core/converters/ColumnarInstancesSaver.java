@@ -0,0 +1,270 @@
+/*
+ *    This program is free software; you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation; either version 2 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program; if not, write to the Free Software
+ *    Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+/*
+ *    ColumnarInstancesSaver.java
+ *
+ */
+
+package weka.core.converters;
+
+import weka.core.Capabilities;
+import weka.core.Instances;
+import weka.core.RevisionUtils;
+import weka.core.Capabilities.Capability;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ <!-- globalinfo-start -->
+ * Writes the instances to a binary columnar file with extension bci, which
+ * can be memory-mapped by the ColumnarInstancesLoader.
+ * <p/>
+ <!-- globalinfo-end -->
+ *
+ <!-- options-start -->
+ * Valid options are: <p/>
+ *
+ * <pre> -i &lt;the input file&gt;
+ * The input file</pre>
+ *
+ * <pre> -o &lt;the output file&gt;
+ * The output file</pre>
+ *
+ <!-- options-end -->
+ *
+ * The file consists of a fixed-size preamble, the header of the dataset
+ * (serialized without instances, so that it keeps the values of string and
+ * relational attributes), padding to a multiple of eight bytes, and one
+ * block of doubles per attribute holding the internal values of that
+ * attribute for all instances, followed by a block with the weights. All
+ * numbers are little-endian. Sparse instances are stored with all their
+ * values. The preamble is made of: <p/>
+ *
+ * <pre>
+ * bytes 0-3    magic number "WBCI"
+ * bytes 4-7    format version (int)
+ * bytes 8-11   length of the serialized header in bytes (int)
+ * bytes 12-15  number of attributes (int)
+ * bytes 16-23  number of instances (long)
+ * </pre>
+ *
+ * @version $Revision: 1.1 $
+ * @see Saver
+ * @see ColumnarInstancesLoader
+ */
+public class ColumnarInstancesSaver
+  extends AbstractFileSaver
+  implements BatchConverter {
+
+  /** for serialization. */
+  static final long serialVersionUID = 3826372183647263781L;
+
+  /** the file extension */
+  public static String FILE_EXTENSION = ".bci";
+
+  /** the magic number at the start of the file */
+  public static final int MAGIC = ('W' << 24) | ('B' << 16) | ('C' << 8) | 'I';
+
+  /** the version of the format */
+  public static final int VERSION = 1;
+
+  /** the size of the preamble in bytes */
+  public static final int PREAMBLE_SIZE = 24;
+
+  /** the output stream. */
+  protected OutputStream m_output;
+
+  /** Constructor. */
+  public ColumnarInstancesSaver(){
+    resetOptions();
+  }
+
+  /**
+   * Returns a string describing this Saver.
+   *
+   * @return a description of the Saver suitable for
+   * displaying in the explorer/experimenter gui
+   */
+  public String globalInfo() {
+    return "Writes the instances to a binary columnar file with extension "
+      + "bci, which can be memory-mapped by the ColumnarInstancesLoader.";
+  }
+
+  /**
+   * Returns a description of the file type.
+   *
+   * @return a short file description
+   */
+  public String getFileDescription() {
+    return "Binary columnar instances";
+  }
+
+  /**
+   * Resets the Saver.
+   */
+  public void resetOptions() {
+
+    super.resetOptions();
+    setFileExtension(FILE_EXTENSION);
+  }
+
+  /**
+   * Returns the Capabilities of this saver.
+   *
+   * @return            the capabilities of this object
+   * @see               Capabilities
+   */
+  public Capabilities getCapabilities() {
+    Capabilities result = super.getCapabilities();
+
+    // attributes
+    result.enableAllAttributes();
+    result.enable(Capability.MISSING_VALUES);
+
+    // class
+    result.enableAllClasses();
+    result.enable(Capability.MISSING_CLASS_VALUES);
+    result.enable(Capability.NO_CLASS);
+
+    return result;
+  }
+
+  /**
+   * Resets the writer, setting writer and output stream to null.
+   */
+  public void resetWriter() {
+    super.resetWriter();
+
+    m_output = null;
+  }
+
+  /**
+   * Sets the destination output stream.
+   *
+   * @param output the output stream.
+   * @throws IOException throws an IOException if destination cannot be set
+   */
+  public void setDestination(OutputStream output) throws IOException {
+    super.setDestination(output);
+
+    m_output = output;
+  }
+
+  /**
+   * Returns the number of bytes of padding after a header of the given
+   * length, so that the columns start at a multiple of eight bytes.
+   *
+   * @param headerLength the length of the serialized header
+   * @return the number of bytes of padding
+   */
+  public static int padding(int headerLength) {
+    return (8 - (PREAMBLE_SIZE + headerLength) % 8) % 8;
+  }
+
+  /**
+   * Writes the given instances to the given stream in the columnar format.
+   * The stream is not closed.
+   *
+   * @param data the instances to write
+   * @param output the stream to write to
+   * @throws IOException if writing fails
+   */
+  public static void write(Instances data, OutputStream output)
+    throws IOException {
+
+    ByteArrayOutputStream header = new ByteArrayOutputStream();
+    ObjectOutputStream oos = new ObjectOutputStream(header);
+    oos.writeObject(new Instances(data, 0));
+    oos.close();
+
+    ByteBuffer buffer = ByteBuffer.allocate(1 << 16);
+    buffer.order(ByteOrder.LITTLE_ENDIAN);
+    buffer.putInt(MAGIC);
+    buffer.putInt(VERSION);
+    buffer.putInt(header.size());
+    buffer.putInt(data.numAttributes());
+    buffer.putLong(data.numInstances());
+    output.write(buffer.array(), 0, buffer.position());
+    header.writeTo(output);
+    output.write(new byte[padding(header.size())]);
+
+    buffer.clear();
+    for (int att = 0; att <= data.numAttributes(); att++) {
+      for (int i = 0; i < data.numInstances(); i++) {
+        if (buffer.remaining() < 8) {
+          output.write(buffer.array(), 0, buffer.position());
+          buffer.clear();
+        }
+        if (att < data.numAttributes()) {
+          buffer.putDouble(data.instance(i).value(att));
+        } else {
+          buffer.putDouble(data.instance(i).weight());
+        }
+      }
+    }
+    output.write(buffer.array(), 0, buffer.position());
+  }
+
+  /**
+   * Writes a Batch of instances.
+   *
+   * @throws IOException throws IOException if saving in batch mode is not possible
+   */
+  public void writeBatch() throws IOException {
+    if(getRetrieval() == INCREMENTAL)
+      throw new IOException("Batch and incremental saving cannot be mixed.");
+
+    if(getInstances() == null)
+      throw new IOException("No instances to save");
+
+    setRetrieval(BATCH);
+
+    if (m_output == null)
+      throw new IOException("No output for the columnar file.");
+
+    setWriteMode(WRITE);
+    write(getInstances(), m_output);
+    m_output.flush();
+    m_output.close();
+    setWriteMode(WAIT);
+    resetWriter();
+    setWriteMode(CANCEL);
+  }
+
+  /**
+   * Returns the revision string.
+   *
+   * @return		the revision
+   */
+  public String getRevision() {
+    return RevisionUtils.extract("$Revision: 1.1 $");
+  }
+
+  /**
+   * Main method.
+   *
+   * @param args should contain the options of a Saver.
+   */
+  public static void main(String[] args) {
+    runFileSaver(new ColumnarInstancesSaver(), args);
+  }
+}
@@ -677,6 +677,7 @@ public class ConverterUtils
       weka.core.converters.ArffLoader.class.getName() + ","
     + weka.core.converters.C45Loader.class.getName() + ","
     + weka.core.converters.CSVLoader.class.getName() + ","
+    + weka.core.converters.ColumnarInstancesLoader.class.getName() + ","
     + weka.core.converters.DatabaseConverter.class.getName() + ","
     + weka.core.converters.LibSVMLoader.class.getName() + ","
     + weka.core.converters.SerializedInstancesLoader.class.getName() + ","
@@ -689,6 +690,7 @@ public class ConverterUtils
       weka.core.converters.ArffSaver.class.getName() + ","
     + weka.core.converters.C45Saver.class.getName() + ","
     + weka.core.converters.CSVSaver.class.getName() + ","
+    + weka.core.converters.ColumnarInstancesSaver.class.getName() + ","
     + weka.core.converters.DatabaseConverter.class.getName() + ","
     + weka.core.converters.LibSVMSaver.class.getName() + ","
     + weka.core.converters.SerializedInstancesSaver.class.getName() + ","
@@ -0,0 +1,1135 @@
+/*
+ *    This program is free software; you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation; either version 2 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program; if not, write to the Free Software
+ *    Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+/*
+ *    FastArffReader.java
+ *
+ */
+
+package weka.core.converters;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.text.ParseException;
+
+import weka.core.Attribute;
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.core.RevisionHandler;
+import weka.core.RevisionUtils;
+import weka.core.SparseInstance;
+
+/**
+ * Reads data from an ARFF file without a StreamTokenizer, either in
+ * incremental or batch mode. The data section is split into tokens directly
+ * on the bytes of the source, numbers are parsed without creating strings
+ * and nominal values are looked up in a hash table of their encoded bytes.
+ * The header is parsed by ArffLoader.ArffReader, and the instances read are
+ * the same as the ones ArffLoader.ArffReader reads, including sparse
+ * instances and instance weights.
+ * <p/>
+ *
+ * The source is decoded with the platform's default character set, like
+ * ArffLoader does, which has to be a superset of ASCII (e.g., UTF-8 or
+ * ISO-8859-1).
+ * <p/>
+ *
+ * Typical code for batch usage:
+ *
+ * <pre>
+ * InputStream in = new FileInputStream(&quot;/some/where/file.arff&quot;);
+ * FastArffReader arff = new FastArffReader(in);
+ * Instances data = arff.getData();
+ * data.setClassIndex(data.numAttributes() - 1);
+ * </pre>
+ *
+ * Typical code for incremental usage:
+ *
+ * <pre>
+ * InputStream in = new FileInputStream(&quot;/some/where/file.arff&quot;);
+ * FastArffReader arff = new FastArffReader(in, 1000);
+ * Instances data = arff.getStructure();
+ * data.setClassIndex(data.numAttributes() - 1);
+ * Instance inst;
+ * while ((inst = arff.readInstance(data)) != null) {
+ *   data.add(inst);
+ * }
+ * </pre>
+ *
+ * @version $Revision: 1.1 $
+ * @see ArffLoader.ArffReader
+ */
+public class FastArffReader
+  implements RevisionHandler {
+
+  /** token type of the end of the source */
+  protected static final int TT_EOF = -1;
+
+  /** token type of the end of a line */
+  protected static final int TT_EOL = '\n';
+
+  /** token type of a word or a quoted string */
+  protected static final int TT_WORD = -3;
+
+  /** the size of the buffer for reading the source */
+  protected static final int BUFFER_SIZE = 1 << 16;
+
+  /** whether a byte can be part of an unquoted word */
+  protected static final boolean[] WORD_CHARS = new boolean[256];
+
+  /** the powers of ten that are exactly representable as doubles */
+  protected static final double[] POWERS_OF_TEN = new double[23];
+
+  static {
+    for (int c = ' ' + 1; c < 256; c++) {
+      WORD_CHARS[c] = true;
+    }
+    WORD_CHARS[','] = false;
+    WORD_CHARS['%'] = false;
+    WORD_CHARS['\''] = false;
+    WORD_CHARS['"'] = false;
+    WORD_CHARS['{'] = false;
+    WORD_CHARS['}'] = false;
+
+    POWERS_OF_TEN[0] = 1;
+    for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+      POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+    }
+  }
+
+  /** the character set the source is encoded with */
+  protected Charset m_Charset = Charset.defaultCharset();
+
+  /** the stream to read from, null if reading from a buffer */
+  protected InputStream m_Stream;
+
+  /** the buffer to read from, null if reading from a stream */
+  protected ByteBuffer m_Source;
+
+  /** the bytes read from the source but not yet processed */
+  protected byte[] m_Buffer = new byte[BUFFER_SIZE];
+
+  /** the position of the next byte in the buffer */
+  protected int m_Pos;
+
+  /** the number of valid bytes in the buffer */
+  protected int m_Limit;
+
+  /** the type of the current token */
+  protected int m_TokenType;
+
+  /** the bytes of the current word */
+  protected byte[] m_Token = new byte[256];
+
+  /** the number of bytes of the current word */
+  protected int m_TokenLength;
+
+  /** whether the current word was quoted */
+  protected boolean m_Quoted;
+
+  /** the current word as a string, if it contained escape sequences */
+  protected String m_Escaped;
+
+  /** the current line number */
+  protected int m_LineNo;
+
+  /** Buffer of values for sparse instance */
+  protected double[] m_ValueBuffer;
+
+  /** Buffer of indices for sparse instance */
+  protected int[] m_IndicesBuffer;
+
+  /** the header the lookup tables have been built for */
+  protected Instances m_TablesHeader;
+
+  /** the lookup tables of the nominal attributes, null for the others */
+  protected NominalTable[] m_Tables;
+
+  /** the actual data */
+  protected Instances m_Data;
+
+  /**
+   * Reads the data completely from the stream. The data can be accessed via
+   * the <code>getData()</code> method.
+   *
+   * @param in the stream to use
+   * @throws IOException if something goes wrong
+   * @see #getData()
+   */
+  public FastArffReader(InputStream in) throws IOException {
+    m_Stream = in;
+    readAll();
+  }
+
+  /**
+   * Reads only the header and reserves the specified space for instances.
+   * Further instances can be read via <code>readInstance()</code>.
+   *
+   * @param in the stream to use
+   * @param capacity the capacity of the new dataset
+   * @throws IOException if something goes wrong
+   * @throws IllegalArgumentException if capacity is negative
+   * @see #getStructure()
+   * @see #readInstance(Instances)
+   */
+  public FastArffReader(InputStream in, int capacity) throws IOException {
+    if (capacity < 0) {
+      throw new IllegalArgumentException("Capacity has to be positive!");
+    }
+
+    m_Stream = in;
+    readHeader(capacity);
+  }
+
+  /**
+   * Reads the data completely from the remaining bytes of the buffer, which
+   * may be a memory-mapped file. The data can be accessed via the
+   * <code>getData()</code> method.
+   *
+   * @param buffer the buffer to use
+   * @throws IOException if something goes wrong
+   * @see #getData()
+   */
+  public FastArffReader(ByteBuffer buffer) throws IOException {
+    m_Source = buffer;
+    readAll();
+  }
+
+  /**
+   * Reads only the header from the remaining bytes of the buffer, which may
+   * be a memory-mapped file, and reserves the specified space for instances.
+   * Further instances can be read via <code>readInstance()</code>.
+   *
+   * @param buffer the buffer to use
+   * @param capacity the capacity of the new dataset
+   * @throws IOException if something goes wrong
+   * @throws IllegalArgumentException if capacity is negative
+   * @see #getStructure()
+   * @see #readInstance(Instances)
+   */
+  public FastArffReader(ByteBuffer buffer, int capacity) throws IOException {
+    if (capacity < 0) {
+      throw new IllegalArgumentException("Capacity has to be positive!");
+    }
+
+    m_Source = buffer;
+    readHeader(capacity);
+  }
+
+  /**
+   * Reads the header and all the instances.
+   *
+   * @throws IOException if something goes wrong
+   */
+  protected void readAll() throws IOException {
+    readHeader(1000);
+
+    Instance inst;
+    while ((inst = readInstance(m_Data)) != null) {
+      m_Data.add(inst);
+    }
+
+    m_Data.compactify();
+  }
+
+  /**
+   * Refills the buffer from the source.
+   *
+   * @return false if the end of the source has been reached
+   * @throws IOException if reading fails
+   */
+  protected boolean fill() throws IOException {
+    int count;
+
+    if (m_Stream != null) {
+      count = m_Stream.read(m_Buffer, 0, m_Buffer.length);
+    } else {
+      count = Math.min(m_Source.remaining(), m_Buffer.length);
+      m_Source.get(m_Buffer, 0, count);
+    }
+    if (count <= 0) {
+      return false;
+    }
+    m_Pos = 0;
+    m_Limit = count;
+
+    return true;
+  }
+
+  /**
+   * Returns the next byte of the source.
+   *
+   * @return the byte (0-255), or -1 at the end of the source
+   * @throws IOException if reading fails
+   */
+  protected final int read() throws IOException {
+    if ((m_Pos == m_Limit) && !fill()) {
+      return -1;
+    }
+
+    return m_Buffer[m_Pos++] & 0xFF;
+  }
+
+  /**
+   * Puts back the byte that was read last, which must not have been -1.
+   */
+  protected final void unread() {
+    m_Pos--;
+  }
+
+  /**
+   * Appends a byte to the current word.
+   *
+   * @param c the byte
+   */
+  protected final void append(int c) {
+    if (m_TokenLength == m_Token.length) {
+      byte[] token = new byte[2 * m_Token.length];
+      System.arraycopy(m_Token, 0, token, 0, m_TokenLength);
+      m_Token = token;
+    }
+    m_Token[m_TokenLength++] = (byte) c;
+  }
+
+  /**
+   * Reads the header up to and including the <code>@data</code> keyword and
+   * parses it with ArffLoader.ArffReader.
+   *
+   * @param capacity the number of instances to reserve in the data structure
+   * @throws IOException if the information is not read successfully
+   */
+  protected void readHeader(int capacity) throws IOException {
+    ByteArrayOutputStream header = new ByteArrayOutputStream();
+    boolean lineStart = true;
+    int lines = 0;
+    int c;
+
+    while ((c = read()) >= 0) {
+      if ((c == '\n') || (c == '\r')) {
+        header.write(c);
+        if ((c == '\r') && ((c = read()) >= 0)) {
+          if (c == '\n') {
+            header.write(c);
+          } else {
+            unread();
+          }
+        }
+        lines++;
+        lineStart = true;
+      } else if (lineStart && ((c <= ' ') || (c == ','))) {
+        header.write(c);
+      } else if (lineStart && WORD_CHARS[c]) {
+        m_TokenLength = 0;
+        do {
+          append(c);
+          c = read();
+        } while ((c >= 0) && WORD_CHARS[c]);
+        if (c >= 0) {
+          unread();
+        }
+        header.write(m_Token, 0, m_TokenLength);
+        lineStart = false;
+        if (Instances.ARFF_DATA.equalsIgnoreCase(decode())) {
+          break;
+        }
+      } else {
+        header.write(c);
+        lineStart = false;
+      }
+    }
+
+    Instances structure = new ArffLoader.ArffReader(new StringReader(
+      new String(header.toByteArray(), m_Charset)), 1).getStructure();
+    m_Data = new Instances(structure, capacity);
+    m_LineNo = lines + 1;
+    m_ValueBuffer = new double[m_Data.numAttributes()];
+    m_IndicesBuffer = new int[m_Data.numAttributes()];
+  }
+
+  /**
+   * Reads the next token, like the StreamTokenizer of ArffLoader.ArffReader
+   * does.
+   *
+   * @return the type of the token
+   * @throws IOException if reading fails
+   */
+  protected int nextToken() throws IOException {
+    int c;
+
+    m_TokenLength = 0;
+    m_Quoted = false;
+    m_Escaped = null;
+
+    while (true) {
+      c = read();
+      if (c < 0) {
+        return m_TokenType = TT_EOF;
+      }
+      if (c == '\n') {
+        m_LineNo++;
+        return m_TokenType = TT_EOL;
+      }
+      if (c == '\r') {
+        m_LineNo++;
+        if (((c = read()) >= 0) && (c != '\n')) {
+          unread();
+        }
+        return m_TokenType = TT_EOL;
+      }
+      if (c == '%') {
+        do {
+          c = read();
+        } while ((c >= 0) && (c != '\n') && (c != '\r'));
+        if (c >= 0) {
+          unread();
+        }
+      } else if ((c > ' ') && (c != ',')) {
+        break;
+      }
+    }
+
+    if ((c == '{') || (c == '}')) {
+      return m_TokenType = c;
+    }
+
+    if ((c == '\'') || (c == '"')) {
+      readQuoted(c);
+      return m_TokenType = TT_WORD;
+    }
+
+    do {
+      append(c);
+      c = read();
+    } while ((c >= 0) && WORD_CHARS[c]);
+    if (c >= 0) {
+      unread();
+    }
+
+    return m_TokenType = TT_WORD;
+  }
+
+  /**
+   * Reads a quoted string, which ends at the closing quote or at the end of
+   * the line. If it contains escape sequences, they are resolved on the
+   * decoded characters, like StreamTokenizer does, and the result is stored
+   * in m_Escaped.
+   *
+   * @param quote the opening quote
+   * @throws IOException if reading fails
+   */
+  protected void readQuoted(int quote) throws IOException {
+    boolean escaped = false;
+    int c;
+
+    m_Quoted = true;
+    while (((c = read()) >= 0) && (c != quote) && (c != '\n') && (c != '\r')) {
+      if (c == '\\') {
+        escaped = true;
+        append(c);
+        if ((c = read()) < 0) {
+          break;
+        }
+      }
+      append(c);
+    }
+    if ((c == '\n') || (c == '\r')) {
+      unread();
+    }
+
+    if (escaped) {
+      m_Escaped = unescape(decode());
+    }
+  }
+
+  /**
+   * Resolves the escape sequences in a quoted string like StreamTokenizer.
+   *
+   * @param raw the string between the quotes
+   * @return the string with the escape sequences resolved
+   */
+  protected static String unescape(String raw) {
+    StringBuffer result = new StringBuffer(raw.length());
+    int i = 0;
+
+    while (i < raw.length()) {
+      char c = raw.charAt(i++);
+      if ((c != '\\') || (i == raw.length())) {
+        result.append(c);
+        continue;
+      }
+      c = raw.charAt(i++);
+      if ((c >= '0') && (c <= '7')) {
+        char first = c;
+        int value = c - '0';
+        if ((i < raw.length()) && (raw.charAt(i) >= '0')
+          && (raw.charAt(i) <= '7')) {
+          value = (value << 3) + (raw.charAt(i++) - '0');
+          if ((i < raw.length()) && (raw.charAt(i) >= '0')
+            && (raw.charAt(i) <= '7') && (first <= '3')) {
+            value = (value << 3) + (raw.charAt(i++) - '0');
+          }
+        }
+        c = (char) value;
+      } else {
+        switch (c) {
+        case 'a':
+          c = 0x7;
+          break;
+        case 'b':
+          c = '\b';
+          break;
+        case 'f':
+          c = 0xC;
+          break;
+        case 'n':
+          c = '\n';
+          break;
+        case 'r':
+          c = '\r';
+          break;
+        case 't':
+          c = '\t';
+          break;
+        case 'v':
+          c = 0xB;
+          break;
+        }
+      }
+      result.append(c);
+    }
+
+    return result.toString();
+  }
+
+  /**
+   * Returns the current word as a string.
+   *
+   * @return the word
+   */
+  protected String decode() {
+    if (m_Escaped != null) {
+      return m_Escaped;
+    }
+    return new String(m_Token, 0, m_TokenLength, m_Charset);
+  }
+
+  /**
+   * Returns true if the current token is a missing value.
+   *
+   * @return true if the token is an unquoted question mark
+   */
+  protected boolean isMissing() {
+    return (m_TokenType == TT_WORD) && !m_Quoted && (m_TokenLength == 1)
+      && (m_Token[0] == '?');
+  }
+
+  /**
+   * Throws error message with line number and last token read.
+   *
+   * @param msg the error message to be thrown
+   * @throws IOException containing the error message
+   */
+  protected void errorMessage(String msg) throws IOException {
+    String token;
+
+    switch (m_TokenType) {
+    case TT_EOF:
+      token = "EOF";
+      break;
+    case TT_EOL:
+      token = "EOL";
+      break;
+    case TT_WORD:
+      token = decode();
+      break;
+    default:
+      token = "'" + (char) m_TokenType + "'";
+    }
+    throw new IOException(msg + ", read Token[" + token + "], line "
+      + getLineNo());
+  }
+
+  /**
+   * returns the current line number
+   *
+   * @return the current line number
+   */
+  public int getLineNo() {
+    return m_LineNo;
+  }
+
+  /**
+   * Gets next token, skipping empty lines.
+   *
+   * @throws IOException if reading the next token fails
+   */
+  protected void getFirstToken() throws IOException {
+    while (nextToken() == TT_EOL) {
+    }
+  }
+
+  /**
+   * Gets next token, checking for a premature end of line.
+   *
+   * @throws IOException if it finds a premature end of line
+   */
+  protected void getNextToken() throws IOException {
+    if (nextToken() == TT_EOL) {
+      errorMessage("premature end of line");
+    }
+    if (m_TokenType == TT_EOF) {
+      errorMessage("premature end of file");
+    }
+  }
+
+  /**
+   * Gets token and checks if its end of line.
+   *
+   * @param endOfFileOk whether EOF is OK
+   * @throws IOException if it doesn't find an end of line
+   */
+  protected void getLastToken(boolean endOfFileOk) throws IOException {
+    if ((nextToken() != TT_EOL)
+      && ((m_TokenType != TT_EOF) || !endOfFileOk)) {
+      errorMessage("end of line expected");
+    }
+  }
+
+  /**
+   * Gets the value of an instance's weight (if one exists)
+   *
+   * @return the value of the instance's weight, or NaN if no weight has been
+   *         supplied in the file
+   * @throws IOException if the weight is not terminated properly
+   */
+  protected double getInstanceWeight() throws IOException {
+    double weight = Double.NaN;
+    nextToken();
+    if ((m_TokenType == TT_EOL) || (m_TokenType == TT_EOF)) {
+      return weight;
+    }
+    if (m_TokenType == '{') {
+      nextToken();
+      if (m_TokenType != TT_WORD) {
+        return weight;
+      }
+      try {
+        weight = Double.parseDouble(decode());
+      } catch (NumberFormatException e) {
+        // quietly ignore
+        return weight;
+      }
+      // see if we have the closing brace
+      if (nextToken() != '}') {
+        errorMessage("Problem reading instance weight");
+      }
+    }
+    return weight;
+  }
+
+  /**
+   * Parses the current word as a number. Numbers with at most 15 significant
+   * digits and a small exponent are computed from their digits, which gives
+   * the same result as Double.parseDouble(); all other words are passed to
+   * Double.valueOf().
+   *
+   * @return the number
+   * @throws NumberFormatException if the word is not a number
+   */
+  protected double parseNumber() {
+    byte[] token = m_Token;
+    int length = m_TokenLength;
+    int i = 0;
+    boolean negative = false;
+    long mantissa = 0;
+    int digits = 0;
+    int scale = 0;
+    boolean any = false;
+
+    if (m_Escaped != null) {
+      return Double.valueOf(m_Escaped).doubleValue();
+    }
+
+    if ((i < length) && ((token[i] == '-') || (token[i] == '+'))) {
+      negative = (token[i] == '-');
+      i++;
+    }
+    for (; (i < length) && (token[i] >= '0') && (token[i] <= '9'); i++) {
+      if ((mantissa != 0) || (token[i] != '0')) {
+        digits++;
+      }
+      if (digits > 15) {
+        return Double.valueOf(decode()).doubleValue();
+      }
+      mantissa = 10 * mantissa + (token[i] - '0');
+      any = true;
+    }
+    if ((i < length) && (token[i] == '.')) {
+      for (i++; (i < length) && (token[i] >= '0') && (token[i] <= '9'); i++) {
+        if ((mantissa != 0) || (token[i] != '0')) {
+          digits++;
+        }
+        if (digits > 15) {
+          return Double.valueOf(decode()).doubleValue();
+        }
+        mantissa = 10 * mantissa + (token[i] - '0');
+        scale++;
+        any = true;
+      }
+    }
+    int exponent = 0;
+    if (any && (i < length) && ((token[i] == 'e') || (token[i] == 'E'))) {
+      boolean negativeExponent = false;
+      int start;
+      i++;
+      if ((i < length) && ((token[i] == '-') || (token[i] == '+'))) {
+        negativeExponent = (token[i] == '-');
+        i++;
+      }
+      for (start = i; (i < length) && (token[i] >= '0') && (token[i] <= '9')
+        && (i - start < 4); i++) {
+        exponent = 10 * exponent + (token[i] - '0');
+      }
+      if (i == start) {
+        any = false;
+      }
+      if (negativeExponent) {
+        exponent = -exponent;
+      }
+    }
+    if (!any || (i != length)) {
+      return Double.valueOf(decode()).doubleValue();
+    }
+
+    double value = mantissa;
+    exponent -= scale;
+    if (exponent > 0) {
+      if (exponent >= POWERS_OF_TEN.length) {
+        return Double.valueOf(decode()).doubleValue();
+      }
+      value *= POWERS_OF_TEN[exponent];
+    } else if (exponent < 0) {
+      if (-exponent >= POWERS_OF_TEN.length) {
+        return Double.valueOf(decode()).doubleValue();
+      }
+      value /= POWERS_OF_TEN[-exponent];
+    }
+
+    return negative ? -value : value;
+  }
+
+  /**
+   * Parses the current word as a sparse index.
+   *
+   * @return the index
+   * @throws NumberFormatException if the word is not an integer
+   */
+  protected int parseIndex() {
+    int index = 0;
+
+    if ((m_Escaped != null) || (m_TokenLength == 0) || (m_TokenLength > 9)) {
+      return Integer.valueOf(decode()).intValue();
+    }
+    for (int i = 0; i < m_TokenLength; i++) {
+      if ((m_Token[i] < '0') || (m_Token[i] > '9')) {
+        return Integer.valueOf(decode()).intValue();
+      }
+      index = 10 * index + (m_Token[i] - '0');
+    }
+
+    return index;
+  }
+
+  /**
+   * Returns the lookup tables for the nominal attributes of the current
+   * header, building them if necessary.
+   *
+   * @return the tables, null for attributes that are not nominal
+   */
+  protected NominalTable[] getTables() {
+    if (m_TablesHeader != m_Data) {
+      m_Tables = new NominalTable[m_Data.numAttributes()];
+      for (int i = 0; i < m_Tables.length; i++) {
+        if (m_Data.attribute(i).isNominal()) {
+          m_Tables[i] = new NominalTable(m_Data.attribute(i), m_Charset);
+        }
+      }
+      m_TablesHeader = m_Data;
+    }
+
+    return m_Tables;
+  }
+
+  /**
+   * Converts the current word to the internal value of the given attribute.
+   *
+   * @param index the index of the attribute
+   * @param tables the lookup tables of the nominal attributes
+   * @return the internal value
+   * @throws IOException if the word is not a valid value
+   */
+  protected double parseValue(int index, NominalTable[] tables)
+    throws IOException {
+    Attribute att = m_Data.attribute(index);
+    double value = 0;
+
+    switch (att.type()) {
+    case Attribute.NOMINAL:
+      // Check if value appears in header.
+      int valIndex;
+      if (m_Escaped != null) {
+        valIndex = att.indexOfValue(m_Escaped);
+      } else {
+        valIndex = tables[index].indexOf(m_Token, m_TokenLength);
+      }
+      if (valIndex == -1) {
+        errorMessage("nominal value not declared in header");
+      }
+      value = valIndex;
+      break;
+    case Attribute.NUMERIC:
+      // Check if value is really a number.
+      try {
+        value = parseNumber();
+      } catch (NumberFormatException e) {
+        errorMessage("number expected");
+      }
+      break;
+    case Attribute.STRING:
+      value = att.addStringValue(decode());
+      break;
+    case Attribute.DATE:
+      try {
+        value = att.parseDate(decode());
+      } catch (ParseException e) {
+        errorMessage("unparseable date: " + decode());
+      }
+      break;
+    case Attribute.RELATIONAL:
+      try {
+        ArffLoader.ArffReader arff =
+          new ArffLoader.ArffReader(new StringReader(decode()),
+            att.relation(), 0);
+        value = att.addRelation(arff.getData());
+      } catch (Exception e) {
+        throw new IOException(e.toString() + " of line " + getLineNo());
+      }
+      break;
+    default:
+      errorMessage("unknown attribute type in column " + index);
+    }
+
+    return value;
+  }
+
+  /**
+   * Reads a single instance and returns it.
+   *
+   * @param structure the dataset header information, will get updated in case
+   *          of string or relational attributes
+   * @return null if end of file has been reached
+   * @throws IOException if the information is not read successfully
+   */
+  public Instance readInstance(Instances structure) throws IOException {
+    return readInstance(structure, true);
+  }
+
+  /**
+   * Reads a single instance and returns it.
+   *
+   * @param structure the dataset header information, will get updated in case
+   *          of string or relational attributes
+   * @param flag if method should test for carriage return after each instance
+   * @return null if end of file has been reached
+   * @throws IOException if the information is not read successfully
+   */
+  public Instance readInstance(Instances structure, boolean flag)
+    throws IOException {
+    m_Data = structure;
+
+    // Check if any attributes have been declared.
+    if (m_Data.numAttributes() == 0) {
+      errorMessage("no header information available");
+    }
+
+    // Check if end of file reached.
+    getFirstToken();
+    if (m_TokenType == TT_EOF) {
+      return null;
+    }
+
+    // Parse instance
+    if (m_TokenType == '{') {
+      return getInstanceSparse(flag);
+    } else {
+      return getInstanceFull(flag);
+    }
+  }
+
+  /**
+   * Reads the weight of the instance, if requested, and the end of the line.
+   *
+   * @param flag if method should test for carriage return after the instance
+   * @return the weight of the instance
+   * @throws IOException if the weight is not terminated properly
+   */
+  protected double getWeight(boolean flag) throws IOException {
+    double weight = 1.0;
+    if (flag) {
+      // check for an instance weight
+      weight = getInstanceWeight();
+      if (!Double.isNaN(weight)) {
+        getLastToken(true);
+      } else {
+        weight = 1.0;
+      }
+    }
+
+    return weight;
+  }
+
+  /**
+   * Reads a single sparse instance and returns it.
+   *
+   * @param flag if method should test for carriage return after each instance
+   * @return the instance
+   * @throws IOException if the information is not read successfully
+   */
+  protected Instance getInstanceSparse(boolean flag) throws IOException {
+    NominalTable[] tables = getTables();
+    int numValues = 0;
+    int maxIndex = -1;
+
+    // Get values
+    do {
+      // Get index
+      if (nextToken() == TT_EOL) {
+        errorMessage("premature end of line");
+      }
+      if (m_TokenType == TT_EOF) {
+        errorMessage("premature end of file");
+      }
+      if (m_TokenType == '}') {
+        break;
+      }
+
+      // Is index valid?
+      try {
+        if (m_TokenType != TT_WORD) {
+          throw new NumberFormatException();
+        }
+        m_IndicesBuffer[numValues] = parseIndex();
+      } catch (NumberFormatException e) {
+        errorMessage("index number expected");
+      }
+      if (m_IndicesBuffer[numValues] <= maxIndex) {
+        errorMessage("indices have to be ordered");
+      }
+      if ((m_IndicesBuffer[numValues] < 0)
+        || (m_IndicesBuffer[numValues] >= m_Data.numAttributes())) {
+        errorMessage("index out of bounds");
+      }
+      maxIndex = m_IndicesBuffer[numValues];
+
+      // Get value;
+      getNextToken();
+
+      // Check if value is missing.
+      if (isMissing()) {
+        m_ValueBuffer[numValues] = Instance.missingValue();
+      } else {
+        // Check if token is valid.
+        if (m_TokenType != TT_WORD) {
+          errorMessage("not a valid value");
+        }
+        m_ValueBuffer[numValues] =
+          parseValue(m_IndicesBuffer[numValues], tables);
+      }
+      numValues++;
+    } while (true);
+
+    double weight = getWeight(flag);
+
+    // Add instance to dataset
+    double[] tempValues = new double[numValues];
+    int[] tempIndices = new int[numValues];
+    System.arraycopy(m_ValueBuffer, 0, tempValues, 0, numValues);
+    System.arraycopy(m_IndicesBuffer, 0, tempIndices, 0, numValues);
+    Instance inst =
+      new SparseInstance(weight, tempValues, tempIndices,
+        m_Data.numAttributes());
+    inst.setDataset(m_Data);
+
+    return inst;
+  }
+
+  /**
+   * Reads a single instance in full format and returns it.
+   *
+   * @param flag if method should test for carriage return after each instance
+   * @return the instance
+   * @throws IOException if the information is not read successfully
+   */
+  protected Instance getInstanceFull(boolean flag) throws IOException {
+    NominalTable[] tables = getTables();
+    double[] instance = new double[m_Data.numAttributes()];
+
+    // Get values for all attributes.
+    for (int i = 0; i < instance.length; i++) {
+      // Get next token
+      if (i > 0) {
+        getNextToken();
+      }
+
+      // Check if value is missing.
+      if (isMissing()) {
+        instance[i] = Instance.missingValue();
+      } else {
+        // Check if token is valid.
+        if (m_TokenType != TT_WORD) {
+          errorMessage("not a valid value");
+        }
+        instance[i] = parseValue(i, tables);
+      }
+    }
+
+    double weight = getWeight(flag);
+
+    // Add instance to dataset
+    Instance inst = new Instance(weight, instance);
+    inst.setDataset(m_Data);
+
+    return inst;
+  }
+
+  /**
+   * Returns the header format
+   *
+   * @return the header format
+   */
+  public Instances getStructure() {
+    return new Instances(m_Data, 0);
+  }
+
+  /**
+   * Returns the data that was read
+   *
+   * @return the data
+   */
+  public Instances getData() {
+    return m_Data;
+  }
+
+  /**
+   * Returns the revision string.
+   *
+   * @return the revision
+   */
+  public String getRevision() {
+    return RevisionUtils.extract("$Revision: 1.1 $");
+  }
+
+  /**
+   * Open-addressing hash table from the encoded labels of a nominal
+   * attribute to their indices.
+   */
+  protected static class NominalTable {
+
+    /** the encoded labels */
+    protected byte[][] m_Labels;
+
+    /** index of the label in each slot, -1 for empty slots */
+    protected int[] m_Slots;
+
+    /** the mask for the slot numbers */
+    protected int m_Mask;
+
+    /**
+     * Builds the table for the labels of the given attribute.
+     *
+     * @param att the nominal attribute
+     * @param charset the character set of the source
+     */
+    public NominalTable(Attribute att, Charset charset) {
+      int size = 2;
+      while (size < 2 * att.numValues()) {
+        size *= 2;
+      }
+      m_Slots = new int[size];
+      m_Mask = size - 1;
+      for (int i = 0; i < size; i++) {
+        m_Slots[i] = -1;
+      }
+
+      m_Labels = new byte[att.numValues()][];
+      for (int i = 0; i < m_Labels.length; i++) {
+        m_Labels[i] = att.value(i).getBytes(charset);
+        int slot = hash(m_Labels[i], m_Labels[i].length) & m_Mask;
+        while (m_Slots[slot] != -1) {
+          slot = (slot + 1) & m_Mask;
+        }
+        m_Slots[slot] = i;
+      }
+    }
+
+    /**
+     * Computes the hash code of the given bytes.
+     *
+     * @param bytes the array holding the bytes
+     * @param length the number of bytes
+     * @return the hash code
+     */
+    protected static int hash(byte[] bytes, int length) {
+      int h = 0;
+      for (int i = 0; i < length; i++) {
+        h = 31 * h + bytes[i];
+      }
+      return h ^ (h >>> 16);
+    }
+
+    /**
+     * Returns the index of the label with the given bytes.
+     *
+     * @param bytes the array holding the bytes
+     * @param length the number of bytes
+     * @return the index, or -1 if no label matches
+     */
+    public int indexOf(byte[] bytes, int length) {
+      int slot = hash(bytes, length) & m_Mask;
+      int index;
+
+      while ((index = m_Slots[slot]) != -1) {
+        byte[] label = m_Labels[index];
+        if (label.length == length) {
+          int i = 0;
+          while ((i < length) && (label[i] == bytes[i])) {
+            i++;
+          }
+          if (i == length) {
+            return index;
+          }
+        }
+        slot = (slot + 1) & m_Mask;
+      }
+
+      return -1;
+    }
+  }
+}
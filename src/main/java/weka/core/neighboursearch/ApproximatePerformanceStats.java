@@ -0,0 +1,188 @@
+/*
+ *    This program is free software; you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation; either version 2 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program; if not, write to the Free Software
+ *    Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+/*
+ * ApproximatePerformanceStats.java
+ *
+ */
+
+package weka.core.neighboursearch;
+
+import weka.core.RevisionUtils;
+
+import java.util.Enumeration;
+import java.util.Vector;
+
+/**
+ * The class that measures the performance of an approximate nearest
+ * neighbour search algorithm. In addition to the points looked at, it
+ * records the recall of the queries, i.e., the fraction of the true k
+ * nearest neighbours (as found by a linear search) that a query returned.
+ *
+ * @version $Revision: 1.1 $
+ */
+public class ApproximatePerformanceStats
+  extends PerformanceStats {
+
+  /** for serialization. */
+  private static final long serialVersionUID = 3417853622093184107L;
+
+  /** The number of queries whose recall was recorded. */
+  protected int m_NumRecalls;
+
+  /** The min and max recall of a query. */
+  protected double m_MinRecall, m_MaxRecall;
+
+  /** The sum of the recalls of all the queries. */
+  protected double m_SumRecall;
+
+  /** The squared sum of the recalls of all the queries. */
+  protected double m_SumSqRecall;
+
+  /**
+   * Default constructor.
+   */
+  public ApproximatePerformanceStats() {
+    reset();
+  }
+
+  /**
+   * Resets all internal fields/counters.
+   */
+  public void reset() {
+    super.reset();
+    m_NumRecalls = 0;
+    m_SumRecall = m_SumSqRecall = 0;
+    m_MinRecall = Double.POSITIVE_INFINITY;
+    m_MaxRecall = Double.NEGATIVE_INFINITY;
+  }
+
+  /**
+   * Records the recall of a query.
+   *
+   * @param recall	the fraction of the true nearest neighbours that the
+   * 			query returned
+   */
+  public void updateRecall(double recall) {
+    m_NumRecalls++;
+    m_SumRecall += recall;
+    m_SumSqRecall += recall * recall;
+    if (recall < m_MinRecall) m_MinRecall = recall;
+    if (recall > m_MaxRecall) m_MaxRecall = recall;
+  }
+
+  /**
+   * Returns the mean recall of the queries.
+   *
+   * @return The mean recall.
+   */
+  public double getMeanRecall() {
+    return m_SumRecall / m_NumRecalls;
+  }
+
+  /**
+   * Returns the standard deviation of the recall of the queries.
+   *
+   * @return The standard deviation of the recall.
+   */
+  public double getStdDevRecall() {
+    return Math.sqrt((m_SumSqRecall - (m_SumRecall*m_SumRecall)/m_NumRecalls)/(m_NumRecalls-1));
+  }
+
+  /**
+   * Returns the minimum recall of a query.
+   *
+   * @return The minimum recall.
+   */
+  public double getMinRecall() {
+    return m_MinRecall;
+  }
+
+  /**
+   * Returns the maximum recall of a query.
+   *
+   * @return The maximum recall.
+   */
+  public double getMaxRecall() {
+    return m_MaxRecall;
+  }
+
+  /**
+   * Returns an enumeration of the additional measure names.
+   *
+   * @return An enumeration of the measure names.
+   */
+  public Enumeration enumerateMeasures() {
+    Vector newVector = new Vector();
+
+    Enumeration en = super.enumerateMeasures();
+    while(en.hasMoreElements())
+      newVector.addElement(en.nextElement());
+
+    newVector.addElement("measureMean_recall");
+    newVector.addElement("measureStdDev_recall");
+    newVector.addElement("measureMin_recall");
+    newVector.addElement("measureMax_recall");
+
+    return newVector.elements();
+  }
+
+  /**
+   * Returns the value of the named measure.
+   *
+   * @param additionalMeasureName The name of the measure to query for
+   * its value.
+   * @return The value of the named measure.
+   * @throws IllegalArgumentException If the named measure is not
+   * supported.
+   */
+  public double getMeasure(String additionalMeasureName) throws IllegalArgumentException {
+    if (additionalMeasureName.compareToIgnoreCase("measureMean_recall") == 0) {
+      return getMeanRecall();
+    } else if (additionalMeasureName.compareToIgnoreCase("measureStdDev_recall") == 0) {
+      return getStdDevRecall();
+    } else if (additionalMeasureName.compareToIgnoreCase("measureMin_recall") == 0) {
+      return getMinRecall();
+    } else if (additionalMeasureName.compareToIgnoreCase("measureMax_recall") == 0) {
+      return getMaxRecall();
+    } else {
+      return super.getMeasure(additionalMeasureName);
+    }
+  }
+
+  /**
+   * Returns a string representation of the statistics.
+   *
+   * @return The statistics as string.
+   */
+  public String getStats() {
+    StringBuffer buf = new StringBuffer(super.getStats());
+
+    buf.append("Recall:    "+getMinRecall()+", "+getMaxRecall()+
+	       ", -,"+getMeanRecall()+", "+getStdDevRecall()+"\n");
+
+    return buf.toString();
+  }
+
+  /**
+   * Returns the revision string.
+   *
+   * @return		the revision
+   */
+  public String getRevision() {
+    return RevisionUtils.extract("$Revision: 1.1 $");
+  }
+}
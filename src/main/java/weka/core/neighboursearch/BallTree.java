@@ -275,6 +275,31 @@ public class BallTree
     return neighbours;  // <---Check this statement
   }
 
+  /**
+   * Returns whether this search supports bulk queries, which it does.
+   * 
+   * @return		true
+   */
+  public boolean supportsBulkQueries() {
+    return true;
+  }
+
+  /**
+   * Finds the k nearest neighbours of a single query of a bulk query.
+   * 
+   * @param target	the query instance
+   * @param k		the number of neighbours to find
+   * @return		the heap with the neighbours
+   * @throws Exception	if the neighbours could not be found
+   */
+  protected MyHeap kNearestNeighbourHeap(Instance target, int k) 
+    throws Exception {
+    
+    MyHeap heap = new MyHeap(k);
+    nearestNeighbours(heap, m_Root, target, k);
+    return heap;
+  }
+
   /** 
    * Does NN search according to Moore's method. 
    * Should not be used by outside classes. They should instead
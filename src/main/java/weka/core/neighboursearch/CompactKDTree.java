@@ -0,0 +1,1320 @@
+/*
+ *    This program is free software; you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation; either version 2 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program; if not, write to the Free Software
+ *    Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+/*
+ * CompactKDTree.java
+ *
+ */
+
+package weka.core.neighboursearch;
+
+import weka.core.Attribute;
+import weka.core.DistanceFunction;
+import weka.core.EuclideanDistance;
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.core.Option;
+import weka.core.Range;
+import weka.core.RevisionUtils;
+import weka.core.TechnicalInformation;
+import weka.core.TechnicalInformationHandler;
+import weka.core.Utils;
+import weka.core.TechnicalInformation.Field;
+import weka.core.TechnicalInformation.Type;
+
+import java.util.Enumeration;
+import java.util.Vector;
+
+/**
+ <!-- globalinfo-start -->
+ * Class implementing a compact KDTree for nearest neighbour search. The values of the instances are copied into a single array of doubles, in the order of the leaves of the tree, and the nodes are stored in arrays of ints and doubles, so that the tree needs little memory beyond the values themselves. A search allocates no memory apart from its result: the neighbours are kept in a bounded priority queue of primitive arrays and the distance to the cell of a node is updated incrementally.<br/>
+ * The nodes are split at the median of their widest dimension, until they hold at most &lt;maximal-inst-number&gt; (option -L) instances. The distances are the same as those of the EuclideanDistance, which is the only distance function supported. Only numeric and nominal attributes are used, like the EuclideanDistance does.<br/>
+ * Instances added with update() are searched linearly until there are enough of them to rebuild the tree.<br/>
+ * **PLEASE NOTE:** The algorithm can not handle missing values, so it is advisable to run ReplaceMissingValues filter if there are any missing values in the dataset.<br/>
+ * <br/>
+ * For more information see:<br/>
+ * <br/>
+ * Jerome H. Friedman, Jon Luis Bentley, Raphael Ari Finkel (1977). An Algorithm for Finding Best Matches in Logarithmic Expected Time. ACM Transactions on Mathematics Software. 3(3):209-226.<br/>
+ * <br/>
+ * Sunil Arya, David M. Mount: Algorithms for fast vector quantization. In: Proceedings of the Data Compression Conference, 381-390, 1993.
+ * <p/>
+ <!-- globalinfo-end -->
+ *
+ <!-- technical-bibtex-start -->
+ * BibTeX:
+ * <pre>
+ * &#64;article{Friedman1977,
+ *    author = {Jerome H. Friedman and Jon Luis Bentley and Raphael Ari Finkel},
+ *    journal = {ACM Transactions on Mathematics Software},
+ *    month = {September},
+ *    number = {3},
+ *    pages = {209-226},
+ *    title = {An Algorithm for Finding Best Matches in Logarithmic Expected Time},
+ *    volume = {3},
+ *    year = {1977}
+ * }
+ *
+ * &#64;inproceedings{Arya1993,
+ *    author = {Sunil Arya and David M. Mount},
+ *    booktitle = {Proceedings of the Data Compression Conference},
+ *    pages = {381-390},
+ *    title = {Algorithms for fast vector quantization},
+ *    year = {1993}
+ * }
+ * </pre>
+ * <p/>
+ <!-- technical-bibtex-end -->
+ *
+ <!-- options-start -->
+ * Valid options are: <p/>
+ *
+ * <pre> -A &lt;classname and options&gt;
+ *  Distance function to use.
+ *  (default: weka.core.EuclideanDistance)</pre>
+ *
+ * <pre> -P
+ *  Calculate performance statistics.</pre>
+ *
+ * <pre> -num-slots &lt;num&gt;
+ *  Number of execution slots for bulk queries.
+ *  (default 1 - i.e. no parallelism)</pre>
+ *
+ * <pre> -L &lt;num&gt;
+ *  Maximal number of instances in a leaf
+ *  (default: 40).</pre>
+ *
+ <!-- options-end -->
+ *
+ * @version $Revision: 1.1 $
+ */
+public class CompactKDTree
+  extends NearestNeighbourSearch
+  implements TechnicalInformationHandler {
+
+  /** For serialization. */
+  private static final long serialVersionUID = -3182739518266052713L;
+
+  /** The kind of a dimension whose values all normalize to zero. */
+  protected static final int CONSTANT = 0;
+
+  /** The kind of a normalized numeric dimension. */
+  protected static final int NORMALIZED = 1;
+
+  /** The kind of a numeric dimension that isn't normalized. */
+  protected static final int RAW = 2;
+
+  /** The kind of a nominal dimension. */
+  protected static final int NOMINAL = 3;
+
+  /** The euclidean distance function to use. */
+  protected EuclideanDistance m_EuclideanDistance;
+  { // to make sure we have only one object of EuclideanDistance
+    if (m_DistanceFunction instanceof EuclideanDistance)
+      m_EuclideanDistance = (EuclideanDistance) m_DistanceFunction;
+    else
+      m_DistanceFunction = m_EuclideanDistance = new EuclideanDistance();
+  }
+
+  /** The maximal number of instances in a leaf. */
+  protected int m_MaxInstInLeaf = 40;
+
+  /** The distances of the neighbours found by the last query. */
+  protected double[] m_DistanceList;
+
+  /** The attribute index of each dimension. */
+  protected int[] m_Attributes;
+
+  /** Whether each dimension is nominal. */
+  protected boolean[] m_Nominal;
+
+  /** The number of dimensions. */
+  protected int m_NumDims;
+
+  /** The values of the points, value j of point p at p * m_NumDims + j.
+   * The points of the tree come first, in the order of the leaves,
+   * followed by the points added since the tree was built. */
+  protected double[] m_Coords;
+
+  /** The index of the instance of each point. */
+  protected int[] m_Index;
+
+  /** The number of points. */
+  protected int m_NumPoints;
+
+  /** The number of points in the tree, the others are searched linearly. */
+  protected int m_NumTreePoints;
+
+  /** The first point of each node. */
+  protected int[] m_NodeStart;
+
+  /** The point after the last point of each node. */
+  protected int[] m_NodeEnd;
+
+  /** The left child of each node. */
+  protected int[] m_NodeLeft;
+
+  /** The right child of each node. */
+  protected int[] m_NodeRight;
+
+  /** The split dimension of each node, -1 for leaves. */
+  protected int[] m_NodeSplitDim;
+
+  /** The split value of each node: the points of the left child have values
+   * less or equal, the points of the right child greater or equal. */
+  protected double[] m_NodeSplitValue;
+
+  /** Tree stats. */
+  protected int m_NumNodes, m_NumLeaves, m_MaxDepth;
+
+  /** Tree Stats variables. */
+  protected TreePerformanceStats m_TreeStats = null;
+
+  /** The state of the single queries, reused by each query. */
+  protected transient Query m_Query;
+
+  /**
+   * The state of a query: the values of the target and the bounded
+   * priority queue of the neighbours. It is reused for all the queries of
+   * a thread, so that the searches allocate no memory.
+   */
+  protected class Query {
+
+    /** The target. */
+    protected Instance m_Target;
+
+    /** The values of the target. */
+    protected double[] m_Raw = new double[m_NumDims];
+
+    /** The normalized values of the target. */
+    protected double[] m_Norm = new double[m_NumDims];
+
+    /** The kind of each dimension. */
+    protected int[] m_Kind = new int[m_NumDims];
+
+    /** The minimum of each dimension. */
+    protected double[] m_Min = new double[m_NumDims];
+
+    /** The width of each dimension. */
+    protected double[] m_Width = new double[m_NumDims];
+
+    /** The distance of the target to the cell of the current node in each
+     * dimension. */
+    protected double[] m_Off = new double[m_NumDims];
+
+    /** The number of neighbours to find. */
+    protected int m_K;
+
+    /** The points in the max-heap of the k nearest neighbours. */
+    protected int[] m_HeapPoint = new int[0];
+
+    /** The distances in the max-heap of the k nearest neighbours. */
+    protected double[] m_HeapDist = new double[0];
+
+    /** The number of neighbours in the heap. */
+    protected int m_Size;
+
+    /** The points at the same distance as the kth nearest neighbour. */
+    protected int[] m_Ties = new int[10];
+
+    /** The number of points at the same distance as the kth neighbour. */
+    protected int m_NumTies;
+
+    /**
+     * Prepares the query for a new target.
+     *
+     * @param target	the target
+     * @param k		the number of neighbours to find
+     * @throws Exception	if the target has missing values
+     */
+    protected void reset(Instance target, int k) throws Exception {
+      checkMissing(target);
+      double[][] ranges = m_EuclideanDistance.getRanges();
+      boolean normalize = !m_EuclideanDistance.getDontNormalize();
+
+      m_Target = target;
+      for (int j = 0; j < m_NumDims; j++) {
+        int att = m_Attributes[j];
+        m_Raw[j] = target.value(att);
+        m_Min[j] = ranges[att][EuclideanDistance.R_MIN];
+        m_Width[j] = ranges[att][EuclideanDistance.R_WIDTH];
+        if (m_Nominal[j])
+          m_Kind[j] = NOMINAL;
+        else if (!normalize)
+          m_Kind[j] = RAW;
+        else if (Double.isNaN(m_Min[j])
+            || ranges[att][EuclideanDistance.R_MAX] == m_Min[j])
+          m_Kind[j] = CONSTANT;
+        else
+          m_Kind[j] = NORMALIZED;
+        m_Norm[j] = (m_Kind[j] == NORMALIZED)
+          ? (m_Raw[j] - m_Min[j]) / m_Width[j] : m_Raw[j];
+        m_Off[j] = 0;
+      }
+
+      if (m_HeapPoint.length < k) {
+        m_HeapPoint = new int[k];
+        m_HeapDist = new double[k];
+      }
+      m_K = k;
+      m_Size = 0;
+      m_NumTies = 0;
+    }
+
+    /**
+     * Returns the number of neighbours found.
+     *
+     * @return		the number of neighbours
+     */
+    protected int numNeighbours() {
+      return m_Size + m_NumTies;
+    }
+
+    /**
+     * Offers a point at the given distance to the queue.
+     *
+     * @param point	the point
+     * @param dist	the distance of the point to the target
+     */
+    protected void offer(int point, double dist) {
+      if (m_Size < m_K) {
+        // sift up
+        int i = m_Size++;
+        while (i > 0) {
+          int parent = (i - 1) >> 1;
+          if (m_HeapDist[parent] >= dist)
+            break;
+          m_HeapPoint[i] = m_HeapPoint[parent];
+          m_HeapDist[i] = m_HeapDist[parent];
+          i = parent;
+        }
+        m_HeapPoint[i] = point;
+        m_HeapDist[i] = dist;
+      }
+      else if (dist < m_HeapDist[0]) {
+        int kth = m_HeapPoint[0];
+        double kthDist = m_HeapDist[0];
+        replaceTop(point, dist);
+        if (m_HeapDist[0] == kthDist)
+          addTie(kth);
+        else
+          m_NumTies = 0;
+      }
+      else if (dist == m_HeapDist[0]) {
+        addTie(point);
+      }
+    }
+
+    /**
+     * Replaces the farthest neighbour in the heap with the given point.
+     *
+     * @param point	the point
+     * @param dist	the distance of the point to the target
+     */
+    protected void replaceTop(int point, double dist) {
+      // sift down
+      int i = 0;
+      while (true) {
+        int child = 2 * i + 1;
+        if (child >= m_Size)
+          break;
+        if (child + 1 < m_Size && m_HeapDist[child + 1] > m_HeapDist[child])
+          child++;
+        if (m_HeapDist[child] <= dist)
+          break;
+        m_HeapPoint[i] = m_HeapPoint[child];
+        m_HeapDist[i] = m_HeapDist[child];
+        i = child;
+      }
+      m_HeapPoint[i] = point;
+      m_HeapDist[i] = dist;
+    }
+
+    /**
+     * Adds a point at the same distance as the kth nearest neighbour.
+     *
+     * @param point	the point
+     */
+    protected void addTie(int point) {
+      if (m_NumTies == m_Ties.length) {
+        int[] ties = new int[2 * m_Ties.length];
+        System.arraycopy(m_Ties, 0, ties, 0, m_NumTies);
+        m_Ties = ties;
+      }
+      m_Ties[m_NumTies++] = point;
+    }
+
+    /**
+     * Returns the distance beyond which points are of no interest.
+     *
+     * @return		the distance of the kth nearest neighbour, or
+     * 			infinity if there are less than k yet
+     */
+    protected double bound() {
+      return (m_Size < m_K) ? Double.POSITIVE_INFINITY : m_HeapDist[0];
+    }
+
+    /**
+     * Stores the instance indices and the (squared) distances of the
+     * neighbours in the given arrays, nearest first, and empties the queue.
+     *
+     * @param indices	the array for the indices
+     * @param distances	the array for the distances
+     */
+    protected void drainTo(int[] indices, double[] distances) {
+      int i = m_Size + m_NumTies - 1;
+      double kthDist = (m_Size > 0) ? m_HeapDist[0] : 0;
+      while (m_NumTies > 0) {
+        indices[i] = m_Index[m_Ties[--m_NumTies]];
+        distances[i] = kthDist;
+        i--;
+      }
+      while (m_Size > 0) {
+        indices[i] = m_Index[m_HeapPoint[0]];
+        distances[i] = m_HeapDist[0];
+        i--;
+        m_Size--;
+        if (m_Size > 0) {
+          int last = m_HeapPoint[m_Size];
+          double lastDist = m_HeapDist[m_Size];
+          replaceTop(last, lastDist);
+        }
+      }
+      m_Target = null;
+    }
+  }
+
+  /**
+   * Creates a new instance of CompactKDTree.
+   */
+  public CompactKDTree() {
+    super();
+    if (getMeasurePerformance())
+      m_Stats = m_TreeStats = new TreePerformanceStats();
+  }
+
+  /**
+   * Creates a new instance of CompactKDTree.
+   *
+   * @param insts 	the instances to build the tree on
+   */
+  public CompactKDTree(Instances insts) {
+    super(insts);
+    if (getMeasurePerformance())
+      m_Stats = m_TreeStats = new TreePerformanceStats();
+  }
+
+  /**
+   * Returns an instance of a TechnicalInformation object, containing detailed
+   * information about the technical background of this class, e.g., paper
+   * reference or book this class is based on.
+   *
+   * @return		the technical information about this class
+   */
+  public TechnicalInformation getTechnicalInformation() {
+    TechnicalInformation result;
+    TechnicalInformation additional;
+
+    result = new TechnicalInformation(Type.ARTICLE);
+    result.setValue(Field.AUTHOR, "Jerome H. Friedman and Jon Luis Bentley and Raphael Ari Finkel");
+    result.setValue(Field.YEAR, "1977");
+    result.setValue(Field.TITLE, "An Algorithm for Finding Best Matches in Logarithmic Expected Time");
+    result.setValue(Field.JOURNAL, "ACM Transactions on Mathematics Software");
+    result.setValue(Field.PAGES, "209-226");
+    result.setValue(Field.MONTH, "September");
+    result.setValue(Field.VOLUME, "3");
+    result.setValue(Field.NUMBER, "3");
+
+    additional = result.add(Type.INPROCEEDINGS);
+    additional.setValue(Field.AUTHOR, "Sunil Arya and David M. Mount");
+    additional.setValue(Field.YEAR, "1993");
+    additional.setValue(Field.TITLE, "Algorithms for fast vector quantization");
+    additional.setValue(Field.BOOKTITLE, "Proceedings of the Data Compression Conference");
+    additional.setValue(Field.PAGES, "381-390");
+
+    return result;
+  }
+
+  /**
+   * Returns a string describing this nearest neighbour search algorithm.
+   *
+   * @return 		a description of the algorithm for displaying in the
+   *         		explorer/experimenter gui
+   */
+  public String globalInfo() {
+    return
+        "Class implementing a compact KDTree for nearest neighbour search. "
+      + "The values of the instances are copied into a single array of "
+      + "doubles, in the order of the leaves of the tree, and the nodes are "
+      + "stored in arrays of ints and doubles, so that the tree needs little "
+      + "memory beyond the values themselves. A search allocates no memory "
+      + "apart from its result: the neighbours are kept in a bounded "
+      + "priority queue of primitive arrays and the distance to the cell of "
+      + "a node is updated incrementally.\n"
+      + "The nodes are split at the median of their widest dimension, until "
+      + "they hold at most <maximal-inst-number> (option -L) instances. The "
+      + "distances are the same as those of the EuclideanDistance, which is "
+      + "the only distance function supported. Only numeric and nominal "
+      + "attributes are used, like the EuclideanDistance does.\n"
+      + "Instances added with update() are searched linearly until there "
+      + "are enough of them to rebuild the tree.\n"
+      + "**PLEASE NOTE:** The algorithm can not handle missing values, so it "
+      + "is advisable to run ReplaceMissingValues filter if there are any "
+      + "missing values in the dataset.\n\n"
+      + "For more information see:\n\n"
+      + getTechnicalInformation().toString();
+  }
+
+  /**
+   * Builds the tree on the given instances.
+   *
+   * @param instances	the instances to build the tree on
+   * @throws Exception	if the instances have missing values or too many
+   * 			values
+   */
+  protected void buildCompactKDTree(Instances instances) throws Exception {
+    m_EuclideanDistance.setInstances(instances);
+    m_Instances = instances;
+
+    // the dimensions
+    Range range = new Range(m_EuclideanDistance.getAttributeIndices());
+    range.setInvert(m_EuclideanDistance.getInvertSelection());
+    range.setUpper(instances.numAttributes() - 1);
+    int[] attributes = new int[instances.numAttributes()];
+    m_NumDims = 0;
+    for (int i = 0; i < instances.numAttributes(); i++) {
+      int type = instances.attribute(i).type();
+      if (i != instances.classIndex() && range.isInRange(i)
+          && (type == Attribute.NUMERIC || type == Attribute.NOMINAL))
+        attributes[m_NumDims++] = i;
+    }
+    m_Attributes = new int[m_NumDims];
+    m_Nominal = new boolean[m_NumDims];
+    for (int j = 0; j < m_NumDims; j++) {
+      m_Attributes[j] = attributes[j];
+      m_Nominal[j] = instances.attribute(attributes[j]).isNominal();
+    }
+
+    // the values
+    m_NumPoints = 0;
+    m_Coords = null;
+    m_Index = null;
+    ensureCapacity(instances.numInstances());
+    for (int i = 0; i < instances.numInstances(); i++)
+      addPoint(instances.instance(i), i);
+
+    m_Query = null;
+    buildTree();
+  }
+
+  /**
+   * Makes sure that there is room for the values of the given number of
+   * points.
+   *
+   * @param numPoints	the number of points
+   * @throws Exception	if the values don't fit into an array
+   */
+  protected void ensureCapacity(int numPoints) throws Exception {
+    if ((long) numPoints * m_NumDims > Integer.MAX_VALUE - 8)
+      throw new Exception("CompactKDTree can hold at most "
+          + (Integer.MAX_VALUE - 8) + " values, " + numPoints + " instances "
+          + "with " + m_NumDims + " attributes have more.");
+
+    if (m_Index != null && m_Index.length >= numPoints)
+      return;
+    int capacity = numPoints;
+    if (m_Index != null)
+      capacity = (int) Math.min(Math.max((long) numPoints,
+          2L * m_Index.length), (Integer.MAX_VALUE - 8) / Math.max(1, m_NumDims));
+
+    double[] coords = new double[capacity * m_NumDims];
+    int[] index = new int[capacity];
+    if (m_Index != null) {
+      System.arraycopy(m_Coords, 0, coords, 0, m_NumPoints * m_NumDims);
+      System.arraycopy(m_Index, 0, index, 0, m_NumPoints);
+    }
+    m_Coords = coords;
+    m_Index = index;
+  }
+
+  /**
+   * Appends the values of the given instance as a new point. There must
+   * be room for it.
+   *
+   * @param instance	the instance
+   * @param index	the index of the instance
+   * @throws Exception	if the instance has missing values
+   */
+  protected void addPoint(Instance instance, int index) throws Exception {
+    checkMissing(instance);
+    int base = m_NumPoints * m_NumDims;
+    for (int j = 0; j < m_NumDims; j++)
+      m_Coords[base + j] = instance.value(m_Attributes[j]);
+    m_Index[m_NumPoints++] = index;
+  }
+
+  /**
+   * Builds the tree on all the points.
+   *
+   * @throws Exception	if the ranges of the distance function are not
+   * 			available
+   */
+  protected void buildTree() throws Exception {
+    m_NumTreePoints = m_NumPoints;
+    int capacity = 2 * (m_NumPoints / Math.max(1, m_MaxInstInLeaf / 2)) + 1;
+    m_NodeStart = new int[capacity];
+    m_NodeEnd = new int[capacity];
+    m_NodeLeft = new int[capacity];
+    m_NodeRight = new int[capacity];
+    m_NodeSplitDim = new int[capacity];
+    m_NodeSplitValue = new double[capacity];
+    m_NumNodes = m_NumLeaves = m_MaxDepth = 0;
+
+    // the widths used to compare the spreads of the dimensions
+    double[][] ranges = m_EuclideanDistance.getRanges();
+    double[] scale = new double[m_NumDims];
+    for (int j = 0; j < m_NumDims; j++) {
+      double width = ranges[m_Attributes[j]][EuclideanDistance.R_WIDTH];
+      if (m_Nominal[j] || m_EuclideanDistance.getDontNormalize())
+        scale[j] = 1;
+      else if (width > 0)
+        scale[j] = 1 / width;
+      else
+        scale[j] = 0;
+    }
+
+    makeNode(0, m_NumPoints, 0, scale, new double[m_NumDims],
+             new double[m_NumDims]);
+  }
+
+  /**
+   * Makes a node for the given points and splits it recursively.
+   *
+   * @param start	the first point of the node
+   * @param end		the point after the last point of the node
+   * @param depth	the depth of the node
+   * @param scale	the factors that bring the spreads of the dimensions
+   * 			to the scale of the distance
+   * @param min		an array for the minimum values of the node
+   * @param max		an array for the maximum values of the node
+   * @return		the node
+   */
+  protected int makeNode(int start, int end, int depth, double[] scale,
+      double[] min, double[] max) {
+
+    if (m_NumNodes == m_NodeStart.length)
+      growNodes();
+    int node = m_NumNodes++;
+    m_NodeStart[node] = start;
+    m_NodeEnd[node] = end;
+    m_NodeSplitDim[node] = -1;
+    m_MaxDepth = Math.max(m_MaxDepth, depth);
+
+    int dim = -1;
+    if (end - start > m_MaxInstInLeaf)
+      dim = widestDim(start, end, scale, min, max);
+    if (dim < 0) {
+      m_NumLeaves++;
+      return node;
+    }
+
+    int mid = (start + end) >>> 1;
+    select(start, end - 1, mid, dim);
+    m_NodeSplitDim[node] = dim;
+    m_NodeSplitValue[node] = m_Coords[mid * m_NumDims + dim];
+    int left = makeNode(start, mid, depth + 1, scale, min, max);
+    int right = makeNode(mid, end, depth + 1, scale, min, max);
+    m_NodeLeft[node] = left;
+    m_NodeRight[node] = right;
+
+    return node;
+  }
+
+  /**
+   * Doubles the capacity of the node arrays.
+   */
+  protected void growNodes() {
+    int capacity = 2 * m_NodeStart.length;
+    int[] start = new int[capacity];
+    int[] end = new int[capacity];
+    int[] left = new int[capacity];
+    int[] right = new int[capacity];
+    int[] splitDim = new int[capacity];
+    double[] splitValue = new double[capacity];
+    System.arraycopy(m_NodeStart, 0, start, 0, m_NumNodes);
+    System.arraycopy(m_NodeEnd, 0, end, 0, m_NumNodes);
+    System.arraycopy(m_NodeLeft, 0, left, 0, m_NumNodes);
+    System.arraycopy(m_NodeRight, 0, right, 0, m_NumNodes);
+    System.arraycopy(m_NodeSplitDim, 0, splitDim, 0, m_NumNodes);
+    System.arraycopy(m_NodeSplitValue, 0, splitValue, 0, m_NumNodes);
+    m_NodeStart = start;
+    m_NodeEnd = end;
+    m_NodeLeft = left;
+    m_NodeRight = right;
+    m_NodeSplitDim = splitDim;
+    m_NodeSplitValue = splitValue;
+  }
+
+  /**
+   * Returns the dimension in which the given points are spread most widely,
+   * measured in units of the distance.
+   *
+   * @param start	the first point
+   * @param end		the point after the last point
+   * @param scale	the factors that bring the spreads of the dimensions
+   * 			to the scale of the distance
+   * @param min		an array for the minimum values
+   * @param max		an array for the maximum values
+   * @return		the widest dimension, -1 if all points are the same
+   */
+  protected int widestDim(int start, int end, double[] scale, double[] min,
+      double[] max) {
+
+    for (int j = 0; j < m_NumDims; j++) {
+      min[j] = Double.POSITIVE_INFINITY;
+      max[j] = Double.NEGATIVE_INFINITY;
+    }
+    for (int p = start, base = start * m_NumDims; p < end; p++) {
+      for (int j = 0; j < m_NumDims; j++, base++) {
+        double value = m_Coords[base];
+        if (value < min[j])
+          min[j] = value;
+        if (value > max[j])
+          max[j] = value;
+      }
+    }
+
+    int widest = -1;
+    double widestSpread = 0;
+    for (int j = 0; j < m_NumDims; j++) {
+      double spread = (max[j] > min[j]) ? (max[j] - min[j]) * scale[j] : 0;
+      if (m_Nominal[j] && spread > 0)
+        spread = 1;
+      if (spread > widestSpread) {
+        widestSpread = spread;
+        widest = j;
+      }
+    }
+
+    return widest;
+  }
+
+  /**
+   * Rearranges the given points so that the point at position k has the
+   * value it would have if the points were sorted in the given dimension,
+   * the points before it have smaller or equal values and the points after
+   * it larger or equal values.
+   *
+   * @param left	the first point
+   * @param right	the last point
+   * @param k		the position to select
+   * @param dim		the dimension
+   */
+  protected void select(int left, int right, int k, int dim) {
+    while (right > left) {
+      double a = m_Coords[left * m_NumDims + dim];
+      double b = m_Coords[((left + right) >>> 1) * m_NumDims + dim];
+      double c = m_Coords[right * m_NumDims + dim];
+      double pivot = (a < b) ? ((b < c) ? b : ((a < c) ? c : a))
+                             : ((a < c) ? a : ((b < c) ? c : b));
+      int i = left;
+      int j = right;
+      while (i <= j) {
+        while (m_Coords[i * m_NumDims + dim] < pivot)
+          i++;
+        while (m_Coords[j * m_NumDims + dim] > pivot)
+          j--;
+        if (i <= j) {
+          swap(i, j);
+          i++;
+          j--;
+        }
+      }
+      if (k <= j)
+        right = j;
+      else if (k >= i)
+        left = i;
+      else
+        break;
+    }
+  }
+
+  /**
+   * Swaps two points.
+   *
+   * @param p		the first point
+   * @param q		the second point
+   */
+  protected void swap(int p, int q) {
+    int index = m_Index[p];
+    m_Index[p] = m_Index[q];
+    m_Index[q] = index;
+    for (int j = 0, bp = p * m_NumDims, bq = q * m_NumDims; j < m_NumDims;
+         j++, bp++, bq++) {
+      double value = m_Coords[bp];
+      m_Coords[bp] = m_Coords[bq];
+      m_Coords[bq] = value;
+    }
+  }
+
+  /**
+   * Returns the squared distance of the target of the query to the given
+   * point, computed like the EuclideanDistance does.
+   *
+   * @param query	the query
+   * @param point	the point
+   * @param cutOff	the distance beyond which the computation can be
+   * 			abandoned
+   * @return		the squared distance, or infinity if it is larger
+   * 			than the cut-off
+   */
+  protected double distance(Query query, int point, double cutOff) {
+    double distance = 0;
+    double diff;
+    int base = point * m_NumDims;
+
+    for (int j = 0; j < m_NumDims; j++) {
+      switch (query.m_Kind[j]) {
+        case NORMALIZED:
+          diff = query.m_Norm[j]
+            - (m_Coords[base + j] - query.m_Min[j]) / query.m_Width[j];
+          break;
+        case RAW:
+          diff = query.m_Norm[j] - m_Coords[base + j];
+          break;
+        case NOMINAL:
+          diff = ((int) query.m_Norm[j] != (int) m_Coords[base + j]) ? 1 : 0;
+          break;
+        default:
+          continue;
+      }
+      if (m_Stats != null)
+        m_Stats.incrCoordCount();
+      distance += diff * diff;
+      if (distance > cutOff)
+        return Double.POSITIVE_INFINITY;
+    }
+
+    return distance;
+  }
+
+  /**
+   * Returns the distance of the target of the query to the split value of a
+   * node in the given dimension, i.e., to the cell of the far child.
+   *
+   * @param query	the query
+   * @param dim		the split dimension
+   * @param value	the split value
+   * @return		the distance in that dimension
+   */
+  protected double offset(Query query, int dim, double value) {
+    switch (query.m_Kind[dim]) {
+      case NORMALIZED:
+        return query.m_Norm[dim]
+          - (value - query.m_Min[dim]) / query.m_Width[dim];
+      case RAW:
+        return query.m_Norm[dim] - value;
+      case NOMINAL:
+        return ((int) query.m_Norm[dim] != (int) value) ? 1 : 0;
+      default:
+        return 0;
+    }
+  }
+
+  /**
+   * Offers the given points to the query.
+   *
+   * @param query	the query
+   * @param start	the first point
+   * @param end		the point after the last point
+   */
+  protected void scan(Query query, int start, int end) {
+    if (m_TreeStats != null) {
+      m_TreeStats.updatePointCount(end - start);
+      m_TreeStats.incrLeafCount();
+    }
+    for (int p = start; p < end; p++) {
+      double bound = query.bound();
+      double distance = distance(query, p, bound);
+      if (distance > bound)
+        continue;
+      if (query.m_Target == m_Instances.instance(m_Index[p])) // for
+                                                              // hold-one-out
+                                                              // cross-validation
+        continue;
+      query.offer(p, distance);
+    }
+  }
+
+  /**
+   * Searches the given node for the neighbours of the target of the query.
+   * The query holds the distances of the target to the cell of the node in
+   * each dimension, which are increased when the search enters the far
+   * child of a node and restored afterwards. The squared distance to the
+   * cell is summed in the order of the dimensions like a distance, so that
+   * it can't exceed the distance to any point of the cell through rounding.
+   *
+   * @param query	the query
+   * @param node	the node
+   */
+  protected void search(Query query, int node) {
+    int dim = m_NodeSplitDim[node];
+    if (dim < 0) {
+      scan(query, m_NodeStart[node], m_NodeEnd[node]);
+      return;
+    }
+    if (m_TreeStats != null)
+      m_TreeStats.incrIntNodeCount();
+
+    double value = m_NodeSplitValue[node];
+    int near, far;
+    if (query.m_Raw[dim] <= value) {
+      near = m_NodeLeft[node];
+      far = m_NodeRight[node];
+    }
+    else {
+      near = m_NodeRight[node];
+      far = m_NodeLeft[node];
+    }
+    search(query, near);
+
+    double old = query.m_Off[dim];
+    double off = offset(query, dim, value);
+    query.m_Off[dim] = off;
+    double cellDistance = 0;
+    for (int j = 0; j < m_NumDims; j++)
+      cellDistance += query.m_Off[j] * query.m_Off[j];
+    if (cellDistance <= query.bound())
+      search(query, far);
+    query.m_Off[dim] = old;
+  }
+
+  /**
+   * Finds the neighbours of the given target.
+   *
+   * @param query	the state of the query to use
+   * @param target	the target
+   * @param k		the number of neighbours to find
+   * @throws Exception	if the target has missing values
+   */
+  protected void findNeighbours(Query query, Instance target, int k)
+    throws Exception {
+
+    query.reset(target, k);
+    if (m_NumTreePoints > 0)
+      search(query, 0);
+    if (m_NumPoints > m_NumTreePoints)
+      scan(query, m_NumTreePoints, m_NumPoints);
+  }
+
+  /**
+   * Returns the k nearest neighbours of the supplied instance.
+   * &gt;k neighbours are returned if there are more than one
+   * neighbours at the kth boundary.
+   *
+   * @param target	The instance to find the nearest neighbours for.
+   * @param k 		The number of neighbours to find.
+   * @return The k nearest neighbours (or &gt;k if more there are than
+   * one neighbours at the kth boundary).
+   * @throws Exception 	if the nearest neighbour could not be found.
+   */
+  public Instances kNearestNeighbours(Instance target, int k) throws Exception {
+    if (m_Instances == null)
+      throw new Exception("No instances supplied yet. Have to call "
+          + "setInstances(instances) with a set of Instances first.");
+    if (m_Query == null)
+      m_Query = new Query();
+
+    if (m_Stats != null)
+      m_Stats.searchStart();
+
+    findNeighbours(m_Query, target, k);
+
+    if (m_Stats != null)
+      m_Stats.searchFinish();
+
+    int[] indices = new int[m_Query.numNeighbours()];
+    m_DistanceList = new double[indices.length];
+    m_Query.drainTo(indices, m_DistanceList);
+    m_EuclideanDistance.postProcessDistances(m_DistanceList);
+
+    Instances neighbours = new Instances(m_Instances, indices.length);
+    for (int i = 0; i < indices.length; i++)
+      neighbours.add(m_Instances.instance(indices[i]));
+
+    return neighbours;
+  }
+
+  /**
+   * Returns the nearest neighbour of the supplied target
+   * instance.
+   *
+   * @param target	The instance to find the nearest neighbour for.
+   * @return The nearest neighbour from among the previously
+   * supplied training instances.
+   * @throws Exception 	if the neighbours could not be found.
+   */
+  public Instance nearestNeighbour(Instance target) throws Exception {
+    return (kNearestNeighbours(target, 1)).instance(0);
+  }
+
+  /**
+   * Returns whether this search supports bulk queries, which it does.
+   *
+   * @return		true
+   */
+  public boolean supportsBulkQueries() {
+    return true;
+  }
+
+  /**
+   * Finds the k nearest neighbours of each of the given query instances,
+   * with one reused query state per execution slot.
+   *
+   * @param targets	the query instances
+   * @param k		the number of neighbours to find
+   * @param indices	an array with one row per query, in which the indices
+   * 			of the neighbours are stored, nearest first
+   * @param distances	an array with one row per query, in which the
+   * 			distances of the neighbours are stored
+   * @throws Exception	if the neighbours could not be found
+   */
+  public void kNearestNeighbours(final Instances targets, final int k,
+      final int[][] indices, final double[][] distances) throws Exception {
+
+    if (m_Instances == null)
+      throw new Exception("No instances supplied yet. Have to call "
+          + "setInstances(instances) with a set of Instances first.");
+
+    processQueries(targets.numInstances(), new QueryTask() {
+      public void process(int from, int to) throws Exception {
+        Query query = new Query();
+        for (int q = from; q < to; q++) {
+          if (m_Stats != null)
+            m_Stats.searchStart();
+          findNeighbours(query, targets.instance(q), k);
+          if (m_Stats != null)
+            m_Stats.searchFinish();
+          indices[q] = new int[query.numNeighbours()];
+          distances[q] = new double[indices[q].length];
+          query.drainTo(indices[q], distances[q]);
+          m_EuclideanDistance.postProcessDistances(distances[q]);
+        }
+      }
+    });
+  }
+
+  /**
+   * Returns the distances to the kNearest or 1 nearest neighbour currently
+   * found with either the kNearestNeighbours or the nearestNeighbour method.
+   *
+   * @return 		array containing the distances of the
+   *         		nearestNeighbours. The length and ordering of the array
+   *         		is the same as that of the instances returned by
+   *         		nearestNeighbour functions.
+   * @throws Exception 	if called before calling kNearestNeighbours or
+   *            	nearestNeighbours.
+   */
+  public double[] getDistances() throws Exception {
+    if ((m_Instances == null) || (m_DistanceList == null))
+      throw new Exception("The tree has not been supplied with a set of "
+          + "instances or getDistances() has been called "
+          + "before calling kNearestNeighbours().");
+    return m_DistanceList;
+  }
+
+  /**
+   * Builds the tree on the given set of instances.
+   *
+   * @param instances	The insances to build the tree on
+   * @throws Exception	if something goes wrong
+   */
+  public void setInstances(Instances instances) throws Exception {
+    super.setInstances(instances);
+    buildCompactKDTree(instances);
+  }
+
+  /**
+   * Adds the last instance of the set of instances to the search. The
+   * instance is searched linearly, until the instances added since the
+   * tree was built are more than an eighth of those in the tree, when the
+   * tree is rebuilt.
+   *
+   * @param instance	the instance to add
+   * @throws Exception	if the instance has missing values, or if no
+   * 			instances have been supplied yet
+   */
+  public void update(Instance instance) throws Exception {
+    if (m_Instances == null)
+      throw new Exception("No instances supplied yet. Have to call "
+          + "setInstances(instances) with a set of Instances " + "first.");
+
+    checkMissing(instance);
+    addInstanceInfo(instance);
+    ensureCapacity(m_NumPoints + 1);
+    addPoint(instance, m_Instances.numInstances() - 1);
+    if (m_NumPoints - m_NumTreePoints
+        > Math.max(m_MaxInstInLeaf, m_NumTreePoints / 8))
+      buildTree();
+  }
+
+  /**
+   * Adds the given instance's info. This implementation updates the range
+   * datastructures of the EuclideanDistance. The values are normalized
+   * while searching, so the tree stays valid when the ranges change.
+   *
+   * @param instance	the instance to add the info for
+   */
+  public void addInstanceInfo(Instance instance) {
+    m_EuclideanDistance.updateRanges(instance);
+  }
+
+  /**
+   * Checks if there is any instance with missing values. Throws an
+   * exception if there is, as the tree does not handle missing values.
+   *
+   * @param ins		the instance to check
+   * @throws Exception	if the instance has missing values
+   */
+  protected void checkMissing(Instance ins) throws Exception {
+    for (int j = 0; j < ins.numValues(); j++) {
+      if (ins.index(j) != ins.classIndex())
+        if (ins.isMissingSparse(j)) {
+          throw new Exception("ERROR: CompactKDTree can not deal with missing "
+              + "values. Please run ReplaceMissingValues filter "
+              + "on the dataset before passing it on to the CompactKDTree.");
+        }
+    }
+  }
+
+  /**
+   * Returns the size of the tree.
+   *
+   * @return 		the size of the tree
+   */
+  public double measureTreeSize() {
+    return m_NumNodes;
+  }
+
+  /**
+   * Returns the number of leaves.
+   *
+   * @return 		the number of leaves
+   */
+  public double measureNumLeaves() {
+    return m_NumLeaves;
+  }
+
+  /**
+   * Returns the depth of the tree.
+   *
+   * @return 		the number of rules
+   */
+  public double measureMaxDepth() {
+    return m_MaxDepth;
+  }
+
+  /**
+   * Returns an enumeration of the additional measure names.
+   *
+   * @return 		an enumeration of the measure names
+   */
+  public Enumeration enumerateMeasures() {
+    Vector newVector = new Vector();
+    newVector.addElement("measureTreeSize");
+    newVector.addElement("measureNumLeaves");
+    newVector.addElement("measureMaxDepth");
+    if (m_Stats != null) {
+      for (Enumeration e = m_Stats.enumerateMeasures(); e.hasMoreElements();) {
+        newVector.addElement(e.nextElement());
+      }
+    }
+    return newVector.elements();
+  }
+
+  /**
+   * Returns the value of the named measure.
+   *
+   * @param additionalMeasureName 	the name of the measure to query for
+   * 					its value
+   * @return 				the value of the named measure
+   * @throws IllegalArgumentException 	if the named measure is not supported
+   */
+  public double getMeasure(String additionalMeasureName) {
+    if (additionalMeasureName.compareToIgnoreCase("measureMaxDepth") == 0) {
+      return measureMaxDepth();
+    } else if (additionalMeasureName.compareToIgnoreCase("measureTreeSize") == 0) {
+      return measureTreeSize();
+    } else if (additionalMeasureName.compareToIgnoreCase("measureNumLeaves") == 0) {
+      return measureNumLeaves();
+    } else if (m_Stats != null) {
+      return m_Stats.getMeasure(additionalMeasureName);
+    } else {
+      throw new IllegalArgumentException(additionalMeasureName
+          + " not supported (CompactKDTree)");
+    }
+  }
+
+  /**
+   * Sets whether to calculate the performance statistics or not.
+   *
+   * @param measurePerformance 	if true then the performance is calculated
+   */
+  public void setMeasurePerformance(boolean measurePerformance) {
+    m_MeasurePerformance = measurePerformance;
+    if (m_MeasurePerformance) {
+      if (m_Stats == null)
+        m_Stats = m_TreeStats = new TreePerformanceStats();
+    } else
+      m_Stats = m_TreeStats = null;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return 		tip text for this property suitable for
+   * 			displaying in the explorer/experimenter gui
+   */
+  public String maxInstInLeafTipText() {
+    return "The max number of instances in a leaf.";
+  }
+
+  /**
+   * Sets the maximum number of instances in a leaf.
+   *
+   * @param i 		the maximum number of instances in a leaf
+   */
+  public void setMaxInstInLeaf(int i) {
+    m_MaxInstInLeaf = i;
+  }
+
+  /**
+   * Get the maximum number of instances in a leaf.
+   *
+   * @return 		the maximum number of instances in a leaf
+   */
+  public int getMaxInstInLeaf() {
+    return m_MaxInstInLeaf;
+  }
+
+  /**
+   * returns the distance function currently in use.
+   *
+   * @return 		the distance function
+   */
+  public DistanceFunction getDistanceFunction() {
+    return (DistanceFunction) m_EuclideanDistance;
+  }
+
+  /**
+   * sets the distance function to use for nearest neighbour search.
+   *
+   * @param df 		the distance function to use
+   * @throws Exception 	if not EuclideanDistance
+   */
+  public void setDistanceFunction(DistanceFunction df) throws Exception {
+    if (!(df instanceof EuclideanDistance))
+      throw new Exception("CompactKDTree currently only works with "
+          + "EuclideanDistanceFunction.");
+    m_DistanceFunction = m_EuclideanDistance = (EuclideanDistance) df;
+  }
+
+  /**
+   * Returns an enumeration describing the available options.
+   *
+   * @return an enumeration of all the available options.
+   */
+  public Enumeration listOptions() {
+    Vector newVector = new Vector();
+
+    Enumeration enm = super.listOptions();
+    while (enm.hasMoreElements())
+      newVector.add(enm.nextElement());
+
+    newVector.addElement(new Option(
+	"\tMaximal number of instances in a leaf\n"
+        + "\t(default: 40).",
+        "L", 1, "-L <num>"));
+
+    return newVector.elements();
+  }
+
+  /**
+   * Parses a given list of options. <p/>
+   *
+   <!-- options-start -->
+   * Valid options are: <p/>
+   *
+   * <pre> -A &lt;classname and options&gt;
+   *  Distance function to use.
+   *  (default: weka.core.EuclideanDistance)</pre>
+   *
+   * <pre> -P
+   *  Calculate performance statistics.</pre>
+   *
+   * <pre> -num-slots &lt;num&gt;
+   *  Number of execution slots for bulk queries.
+   *  (default 1 - i.e. no parallelism)</pre>
+   *
+   * <pre> -L &lt;num&gt;
+   *  Maximal number of instances in a leaf
+   *  (default: 40).</pre>
+   *
+   <!-- options-end -->
+   *
+   * @param options	the list of options as an array of strings
+   * @throws Exception	if an option is not supported
+   */
+  public void setOptions(String[] options) throws Exception {
+    super.setOptions(options);
+
+    String optionString = Utils.getOption('L', options);
+    if (optionString.length() != 0)
+      setMaxInstInLeaf(Integer.parseInt(optionString));
+    else
+      setMaxInstInLeaf(40);
+  }
+
+  /**
+   * Gets the current settings of the CompactKDTree.
+   *
+   * @return 		an array of strings suitable for passing to setOptions
+   */
+  public String[] getOptions() {
+    Vector<String>	result;
+    String[]		options;
+    int			i;
+
+    result = new Vector<String>();
+
+    options = super.getOptions();
+    for (i = 0; i < options.length; i++)
+      result.add(options[i]);
+
+    result.add("-L");
+    result.add("" + getMaxInstInLeaf());
+
+    return result.toArray(new String[result.size()]);
+  }
+
+  /**
+   * Returns the revision string.
+   *
+   * @return		the revision
+   */
+  public String getRevision() {
+    return RevisionUtils.extract("$Revision: 1.1 $");
+  }
+}
@@ -0,0 +1,1193 @@
+/*
+ *    This program is free software; you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation; either version 2 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program; if not, write to the Free Software
+ *    Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+/*
+ * HNSW.java
+ *
+ */
+
+package weka.core.neighboursearch;
+
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.core.Option;
+import weka.core.RevisionUtils;
+import weka.core.TechnicalInformation;
+import weka.core.TechnicalInformationHandler;
+import weka.core.Utils;
+import weka.core.TechnicalInformation.Field;
+import weka.core.TechnicalInformation.Type;
+
+import java.util.Enumeration;
+import java.util.Random;
+import java.util.Vector;
+
+/**
+ <!-- globalinfo-start -->
+ * Class implementing approximate nearest neighbour search with a Hierarchical Navigable Small World graph. Each instance is a node of a graph with several layers, which are searched greedily from the top layer down. The neighbours found are not guaranteed to be the nearest ones, but the search looks at a small fraction of the instances even for high-dimensional data, on which the exact tree-based searches degenerate to linear scans.<br/>
+ * The recall and the speed are traded off with the maximum number of links of a node (option -M), the size of the candidate list while building the graph (option -C) and while searching (option -E): larger values give a higher recall at a higher cost. With performance statistics enabled (option -P), each query is also answered with a linear search and the recall of the approximate neighbours is recorded, which is slow but shows how well the settings work for the data.<br/>
+ * Any distance function can be used.<br/>
+ * <br/>
+ * For more information see:<br/>
+ * <br/>
+ * Yu. A. Malkov, D. A. Yashunin (2016). Efficient and robust approximate nearest neighbor search using Hierarchical Navigable Small World graphs. CoRR. abs/1603.09320.
+ * <p/>
+ <!-- globalinfo-end -->
+ *
+ <!-- technical-bibtex-start -->
+ * BibTeX:
+ * <pre>
+ * &#64;article{Malkov2016,
+ *    author = {Yu. A. Malkov and D. A. Yashunin},
+ *    journal = {CoRR},
+ *    title = {Efficient and robust approximate nearest neighbor search using Hierarchical Navigable Small World graphs},
+ *    volume = {abs/1603.09320},
+ *    year = {2016}
+ * }
+ * </pre>
+ * <p/>
+ <!-- technical-bibtex-end -->
+ *
+ <!-- options-start -->
+ * Valid options are: <p/>
+ *
+ * <pre> -A &lt;classname and options&gt;
+ *  Distance function to use.
+ *  (default: weka.core.EuclideanDistance)</pre>
+ *
+ * <pre> -P
+ *  Calculate performance statistics.</pre>
+ *
+ * <pre> -num-slots &lt;num&gt;
+ *  Number of execution slots for bulk queries.
+ *  (default 1 - i.e. no parallelism)</pre>
+ *
+ * <pre> -M &lt;num&gt;
+ *  Maximum number of links of a node in the upper layers,
+ *  twice as many in the bottom layer.
+ *  (default: 16)</pre>
+ *
+ * <pre> -C &lt;num&gt;
+ *  Size of the candidate list while building the graph.
+ *  (default: 100)</pre>
+ *
+ * <pre> -E &lt;num&gt;
+ *  Size of the candidate list while searching,
+ *  at least the number of neighbours.
+ *  (default: 50)</pre>
+ *
+ * <pre> -S &lt;num&gt;
+ *  Random number seed for the layers of the nodes.
+ *  (default: 1)</pre>
+ *
+ <!-- options-end -->
+ *
+ * @version $Revision: 1.1 $
+ */
+public class HNSW
+  extends NearestNeighbourSearch
+  implements TechnicalInformationHandler {
+
+  /** For serialization. */
+  private static final long serialVersionUID = 7402398148557616092L;
+
+  /** The maximum number of links of a node in the upper layers. */
+  protected int m_MaxLinks = 16;
+
+  /** The size of the candidate list while building the graph. */
+  protected int m_EfConstruction = 100;
+
+  /** The size of the candidate list while searching. */
+  protected int m_Ef = 50;
+
+  /** The seed for the layers of the nodes. */
+  protected int m_Seed = 1;
+
+  /** The distances of the neighbours found by the last query. */
+  protected double[] m_DistanceList;
+
+  /** The number of nodes in the graph, i.e., instances 0 to m_NumNodes - 1. */
+  protected int m_NumNodes;
+
+  /** The top layer of each node. */
+  protected int[] m_Levels;
+
+  /** The links in the bottom layer: the number of links of node i at
+   * i * (2 * m_MaxLinks + 1), followed by the links. */
+  protected int[] m_Links0;
+
+  /** The links in the upper layers: the number of links of node i in layer
+   * l at m_UpperLinks[i][(l - 1) * (m_MaxLinks + 1)], followed by the
+   * links. */
+  protected int[][] m_UpperLinks;
+
+  /** The node the searches start from, in the top layer. */
+  protected int m_EntryPoint = -1;
+
+  /** The top layer of the graph. */
+  protected int m_MaxLevel = -1;
+
+  /** The random number generator for the layers of the nodes. */
+  protected Random m_Random;
+
+  /** Stats variables. */
+  protected ApproximatePerformanceStats m_ApproximateStats = null;
+
+  /** The state of the single queries, reused by each query. */
+  protected transient Query m_Query;
+
+  /** The state of the searches done while adding nodes. */
+  protected transient Query m_BuildQuery;
+
+  /**
+   * A max-heap of nodes with keys, in primitive arrays.
+   */
+  protected static class Heap {
+
+    /** The nodes. */
+    protected int[] m_Node = new int[16];
+
+    /** The keys of the nodes. */
+    protected double[] m_Key = new double[16];
+
+    /** The number of nodes in the heap. */
+    protected int m_Size;
+
+    /**
+     * Returns the number of nodes in the heap.
+     *
+     * @return		the number of nodes
+     */
+    protected int size() {
+      return m_Size;
+    }
+
+    /**
+     * Empties the heap.
+     */
+    protected void clear() {
+      m_Size = 0;
+    }
+
+    /**
+     * Returns the node with the largest key.
+     *
+     * @return		the node
+     */
+    protected int topNode() {
+      return m_Node[0];
+    }
+
+    /**
+     * Returns the largest key.
+     *
+     * @return		the key
+     */
+    protected double topKey() {
+      return m_Key[0];
+    }
+
+    /**
+     * Adds a node.
+     *
+     * @param node	the node
+     * @param key		the key of the node
+     */
+    protected void push(int node, double key) {
+      if (m_Size == m_Node.length) {
+        int[] nodes = new int[2 * m_Size];
+        double[] keys = new double[2 * m_Size];
+        System.arraycopy(m_Node, 0, nodes, 0, m_Size);
+        System.arraycopy(m_Key, 0, keys, 0, m_Size);
+        m_Node = nodes;
+        m_Key = keys;
+      }
+      int i = m_Size++;
+      while (i > 0) {
+        int parent = (i - 1) >> 1;
+        if (m_Key[parent] >= key)
+          break;
+        m_Node[i] = m_Node[parent];
+        m_Key[i] = m_Key[parent];
+        i = parent;
+      }
+      m_Node[i] = node;
+      m_Key[i] = key;
+    }
+
+    /**
+     * Removes the node with the largest key.
+     */
+    protected void pop() {
+      m_Size--;
+      if (m_Size == 0)
+        return;
+      int node = m_Node[m_Size];
+      double key = m_Key[m_Size];
+      int i = 0;
+      while (true) {
+        int child = 2 * i + 1;
+        if (child >= m_Size)
+          break;
+        if (child + 1 < m_Size && m_Key[child + 1] > m_Key[child])
+          child++;
+        if (m_Key[child] <= key)
+          break;
+        m_Node[i] = m_Node[child];
+        m_Key[i] = m_Key[child];
+        i = child;
+      }
+      m_Node[i] = node;
+      m_Key[i] = key;
+    }
+  }
+
+  /**
+   * The state of a search: the visited nodes, the candidates and the
+   * results. It is reused for all the searches of a thread.
+   */
+  protected class Query {
+
+    /** The mark of each visited node. */
+    protected int[] m_Visited = new int[0];
+
+    /** The mark of the nodes visited by the current search. */
+    protected int m_Mark;
+
+    /** The candidates to expand, keyed by their negated distance. */
+    protected Heap m_Candidates = new Heap();
+
+    /** The nearest nodes found, keyed by their distance. */
+    protected Heap m_Results = new Heap();
+
+    /** The nodes found, sorted by distance. */
+    protected int[] m_SortedNode = new int[16];
+
+    /** The distances of the sorted nodes. */
+    protected double[] m_SortedDist = new double[16];
+
+    /** The number of sorted nodes. */
+    protected int m_NumSorted;
+
+    /**
+     * Starts a new search, with no node visited.
+     */
+    protected void newVisit() {
+      if (m_Visited.length < m_NumNodes) {
+        m_Visited = new int[Math.max(m_NumNodes, 2 * m_Visited.length)];
+        m_Mark = 0;
+      }
+      if (m_Mark == Integer.MAX_VALUE) {
+        for (int i = 0; i < m_Visited.length; i++)
+          m_Visited[i] = 0;
+        m_Mark = 0;
+      }
+      m_Mark++;
+    }
+
+    /**
+     * Marks a node as visited.
+     *
+     * @param node	the node
+     * @return		false if the node was visited already
+     */
+    protected boolean visit(int node) {
+      if (m_Visited[node] == m_Mark)
+        return false;
+      m_Visited[node] = m_Mark;
+      return true;
+    }
+
+    /**
+     * Moves the results into the sorted arrays, nearest first.
+     */
+    protected void sortResults() {
+      m_NumSorted = m_Results.size();
+      if (m_SortedNode.length < m_NumSorted) {
+        m_SortedNode = new int[m_NumSorted];
+        m_SortedDist = new double[m_NumSorted];
+      }
+      for (int i = m_NumSorted - 1; i >= 0; i--) {
+        m_SortedNode[i] = m_Results.topNode();
+        m_SortedDist[i] = m_Results.topKey();
+        m_Results.pop();
+      }
+    }
+  }
+
+  /**
+   * Creates a new instance of HNSW.
+   */
+  public HNSW() {
+    super();
+    if (getMeasurePerformance())
+      m_Stats = m_ApproximateStats = new ApproximatePerformanceStats();
+  }
+
+  /**
+   * Creates a new instance of HNSW.
+   *
+   * @param insts 	the instances to build the graph on
+   */
+  public HNSW(Instances insts) {
+    super(insts);
+    if (getMeasurePerformance())
+      m_Stats = m_ApproximateStats = new ApproximatePerformanceStats();
+  }
+
+  /**
+   * Returns an instance of a TechnicalInformation object, containing detailed
+   * information about the technical background of this class, e.g., paper
+   * reference or book this class is based on.
+   *
+   * @return		the technical information about this class
+   */
+  public TechnicalInformation getTechnicalInformation() {
+    TechnicalInformation result;
+
+    result = new TechnicalInformation(Type.ARTICLE);
+    result.setValue(Field.AUTHOR, "Yu. A. Malkov and D. A. Yashunin");
+    result.setValue(Field.YEAR, "2016");
+    result.setValue(Field.TITLE, "Efficient and robust approximate nearest neighbor search using Hierarchical Navigable Small World graphs");
+    result.setValue(Field.JOURNAL, "CoRR");
+    result.setValue(Field.VOLUME, "abs/1603.09320");
+
+    return result;
+  }
+
+  /**
+   * Returns a string describing this nearest neighbour search algorithm.
+   *
+   * @return 		a description of the algorithm for displaying in the
+   *         		explorer/experimenter gui
+   */
+  public String globalInfo() {
+    return
+        "Class implementing approximate nearest neighbour search with a "
+      + "Hierarchical Navigable Small World graph. Each instance is a node of "
+      + "a graph with several layers, which are searched greedily from the "
+      + "top layer down. The neighbours found are not guaranteed to be the "
+      + "nearest ones, but the search looks at a small fraction of the "
+      + "instances even for high-dimensional data, on which the exact "
+      + "tree-based searches degenerate to linear scans.\n"
+      + "The recall and the speed are traded off with the maximum number of "
+      + "links of a node (option -M), the size of the candidate list while "
+      + "building the graph (option -C) and while searching (option -E): "
+      + "larger values give a higher recall at a higher cost. With "
+      + "performance statistics enabled (option -P), each query is also "
+      + "answered with a linear search and the recall of the approximate "
+      + "neighbours is recorded, which is slow but shows how well the "
+      + "settings work for the data.\n"
+      + "Any distance function can be used.\n\n"
+      + "For more information see:\n\n"
+      + getTechnicalInformation().toString();
+  }
+
+  /**
+   * Returns the distance of the given instance to a node.
+   *
+   * @param target	the instance
+   * @param node	the node
+   * @param cutOff	the distance beyond which the computation can be
+   * 			abandoned
+   * @param stats	the statistics to update, may be null
+   * @return		the distance, infinity if larger than the cut-off
+   */
+  protected double distance(Instance target, int node, double cutOff,
+      PerformanceStats stats) {
+
+    if (stats != null)
+      stats.incrPointCount();
+    return m_DistanceFunction.distance(target, m_Instances.instance(node),
+                                       cutOff, stats);
+  }
+
+  /**
+   * Searches a layer of the graph for the nearest nodes of the target,
+   * starting from the nodes in the results of the query, which are replaced
+   * by the ef nearest nodes found.
+   *
+   * @param query	the query
+   * @param target	the instance to find the nearest nodes for
+   * @param layer	the layer
+   * @param ef		the number of nodes to find
+   * @param stats	the statistics to update, may be null
+   */
+  protected void searchLayer(Query query, Instance target, int layer, int ef,
+      PerformanceStats stats) {
+
+    Heap candidates = query.m_Candidates;
+    Heap results = query.m_Results;
+
+    query.newVisit();
+    candidates.clear();
+    for (int i = 0; i < results.size(); i++) {
+      query.visit(results.m_Node[i]);
+      candidates.push(results.m_Node[i], -results.m_Key[i]);
+    }
+
+    while (candidates.size() > 0) {
+      int current = candidates.topNode();
+      double currentDist = -candidates.topKey();
+      candidates.pop();
+      if (results.size() >= ef && currentDist > results.topKey())
+        break;
+
+      int[] links;
+      int base;
+      if (layer == 0) {
+        links = m_Links0;
+        base = current * (2 * m_MaxLinks + 1);
+      }
+      else {
+        links = m_UpperLinks[current];
+        base = (layer - 1) * (m_MaxLinks + 1);
+      }
+      int end = base + 1 + links[base];
+      for (int i = base + 1; i < end; i++) {
+        int node = links[i];
+        if (!query.visit(node))
+          continue;
+        double bound = (results.size() < ef)
+          ? Double.POSITIVE_INFINITY : results.topKey();
+        double dist = distance(target, node, bound, stats);
+        if (dist < bound) {
+          candidates.push(node, -dist);
+          results.push(node, dist);
+          if (results.size() > ef)
+            results.pop();
+        }
+      }
+    }
+  }
+
+  /**
+   * Searches the graph for the nearest nodes of the target, leaving them
+   * sorted in the query.
+   *
+   * @param query	the query
+   * @param target	the instance to find the nearest nodes for
+   * @param ef		the number of nodes to find in the bottom layer
+   * @param stats	the statistics to update, may be null
+   */
+  protected void search(Query query, Instance target, int ef,
+      PerformanceStats stats) {
+
+    query.m_Results.clear();
+    if (m_EntryPoint >= 0) {
+      query.m_Results.push(m_EntryPoint, distance(target, m_EntryPoint,
+          Double.POSITIVE_INFINITY, stats));
+      for (int layer = m_MaxLevel; layer > 0; layer--)
+        searchLayer(query, target, layer, 1, stats);
+      searchLayer(query, target, 0, ef, stats);
+    }
+    query.sortResults();
+  }
+
+  /**
+   * Sorts the given nodes by their distances, in place.
+   *
+   * @param nodes	the nodes
+   * @param dists	the distances of the nodes
+   * @param n		the number of nodes
+   */
+  protected static void sort(int[] nodes, double[] dists, int n) {
+    for (int i = 1; i < n; i++) {
+      int node = nodes[i];
+      double dist = dists[i];
+      int j = i - 1;
+      while (j >= 0 && dists[j] > dist) {
+        nodes[j + 1] = nodes[j];
+        dists[j + 1] = dists[j];
+        j--;
+      }
+      nodes[j + 1] = node;
+      dists[j + 1] = dist;
+    }
+  }
+
+  /**
+   * Selects the nodes to link to with the heuristic of the paper: a
+   * candidate is selected if it is nearer to the base node than to all
+   * candidates selected before it, so that the links point into different
+   * directions. If there are too few such candidates, the nearest of the
+   * others are added.
+   *
+   * @param nodes	the candidates, nearest first
+   * @param dists	the distances of the candidates to the base node
+   * @param n		the number of candidates
+   * @param max		the maximum number of nodes to select
+   * @param selected	the array for the selected nodes
+   * @return		the number of nodes selected
+   */
+  protected int selectNeighbours(int[] nodes, double[] dists, int n, int max,
+      int[] selected) {
+
+    int numSelected = 0;
+    boolean[] pruned = new boolean[n];
+    for (int i = 0; i < n && numSelected < max; i++) {
+      Instance candidate = m_Instances.instance(nodes[i]);
+      for (int j = 0; j < numSelected; j++) {
+        if (distance(candidate, selected[j], dists[i], null) < dists[i]) {
+          pruned[i] = true;
+          break;
+        }
+      }
+      if (!pruned[i])
+        selected[numSelected++] = nodes[i];
+    }
+    for (int i = 0; i < n && numSelected < max; i++) {
+      if (pruned[i])
+        selected[numSelected++] = nodes[i];
+    }
+
+    return numSelected;
+  }
+
+  /**
+   * Adds a link from one node to another in the given layer. If the node
+   * has too many links then, its links are selected anew.
+   *
+   * @param from	the node to link from
+   * @param to		the node to link to
+   * @param layer	the layer
+   */
+  protected void addLink(int from, int to, int layer) {
+    int[] links;
+    int base;
+    int max;
+    if (layer == 0) {
+      links = m_Links0;
+      max = 2 * m_MaxLinks;
+      base = from * (max + 1);
+    }
+    else {
+      links = m_UpperLinks[from];
+      max = m_MaxLinks;
+      base = (layer - 1) * (max + 1);
+    }
+
+    int count = links[base];
+    if (count < max) {
+      links[base + 1 + count] = to;
+      links[base]++;
+      return;
+    }
+
+    // shrink the links
+    int[] nodes = new int[count + 1];
+    double[] dists = new double[count + 1];
+    Instance instance = m_Instances.instance(from);
+    for (int i = 0; i < count; i++)
+      nodes[i] = links[base + 1 + i];
+    nodes[count] = to;
+    for (int i = 0; i <= count; i++)
+      dists[i] = distance(instance, nodes[i], Double.POSITIVE_INFINITY, null);
+    sort(nodes, dists, count + 1);
+    int[] selected = new int[max];
+    int numSelected = selectNeighbours(nodes, dists, count + 1, max, selected);
+    System.arraycopy(selected, 0, links, base + 1, numSelected);
+    links[base] = numSelected;
+  }
+
+  /**
+   * Adds the instance with the given index to the graph, which must hold
+   * the instances before it already.
+   *
+   * @param index	the index of the instance
+   */
+  protected void insert(int index) {
+    Instance instance = m_Instances.instance(index);
+    int level = (int) (-Math.log(1.0 - m_Random.nextDouble())
+                       / Math.log(m_MaxLinks));
+    m_Levels[index] = level;
+    m_Links0[index * (2 * m_MaxLinks + 1)] = 0;
+    m_UpperLinks[index] = (level > 0) ? new int[level * (m_MaxLinks + 1)] : null;
+    m_NumNodes = index + 1;
+
+    if (m_EntryPoint < 0) {
+      m_EntryPoint = index;
+      m_MaxLevel = level;
+      return;
+    }
+
+    if (m_BuildQuery == null)
+      m_BuildQuery = new Query();
+    Query query = m_BuildQuery;
+    Heap results = query.m_Results;
+    results.clear();
+    results.push(m_EntryPoint, distance(instance, m_EntryPoint,
+        Double.POSITIVE_INFINITY, null));
+    for (int layer = m_MaxLevel; layer > level; layer--)
+      searchLayer(query, instance, layer, 1, null);
+
+    int[] selected = new int[m_MaxLinks];
+    for (int layer = Math.min(level, m_MaxLevel); layer >= 0; layer--) {
+      searchLayer(query, instance, layer, m_EfConstruction, null);
+      query.sortResults();
+      int numSelected = selectNeighbours(query.m_SortedNode,
+          query.m_SortedDist, query.m_NumSorted, m_MaxLinks, selected);
+
+      int[] links = (layer == 0) ? m_Links0 : m_UpperLinks[index];
+      int base = (layer == 0)
+        ? index * (2 * m_MaxLinks + 1) : (layer - 1) * (m_MaxLinks + 1);
+      links[base] = numSelected;
+      System.arraycopy(selected, 0, links, base + 1, numSelected);
+      for (int i = 0; i < numSelected; i++)
+        addLink(selected[i], index, layer);
+
+      // the nodes found are the entry points for the next layer
+      for (int i = 0; i < query.m_NumSorted; i++)
+        results.push(query.m_SortedNode[i], query.m_SortedDist[i]);
+    }
+
+    if (level > m_MaxLevel) {
+      m_MaxLevel = level;
+      m_EntryPoint = index;
+    }
+  }
+
+  /**
+   * Makes sure that the graph has room for the given number of nodes.
+   *
+   * @param numNodes	the number of nodes
+   */
+  protected void ensureCapacity(int numNodes) {
+    if (m_Levels != null && m_Levels.length >= numNodes)
+      return;
+    int capacity = numNodes;
+    if (m_Levels != null)
+      capacity = Math.max(numNodes, 2 * m_Levels.length);
+
+    int[] levels = new int[capacity];
+    int[] links0 = new int[capacity * (2 * m_MaxLinks + 1)];
+    int[][] upperLinks = new int[capacity][];
+    if (m_Levels != null) {
+      System.arraycopy(m_Levels, 0, levels, 0, m_NumNodes);
+      System.arraycopy(m_Links0, 0, links0, 0,
+                       m_NumNodes * (2 * m_MaxLinks + 1));
+      System.arraycopy(m_UpperLinks, 0, upperLinks, 0, m_NumNodes);
+    }
+    m_Levels = levels;
+    m_Links0 = links0;
+    m_UpperLinks = upperLinks;
+  }
+
+  /**
+   * Builds the graph on the given set of instances.
+   *
+   * @param insts	the instances to build the graph on
+   * @throws Exception	if the settings are invalid
+   */
+  public void setInstances(Instances insts) throws Exception {
+    if (m_MaxLinks < 2)
+      throw new Exception("HNSW needs at least 2 links per node.");
+
+    super.setInstances(insts);
+    m_DistanceFunction.setInstances(insts);
+
+    m_Random = new Random(m_Seed);
+    m_Levels = null;
+    m_Links0 = null;
+    m_UpperLinks = null;
+    m_NumNodes = 0;
+    m_EntryPoint = -1;
+    m_MaxLevel = -1;
+    m_Query = null;
+    m_BuildQuery = null;
+
+    ensureCapacity(insts.numInstances());
+    for (int i = 0; i < insts.numInstances(); i++)
+      insert(i);
+  }
+
+  /**
+   * Adds the last instance of the set of instances to the graph.
+   *
+   * @param ins 	the instance to add
+   * @throws Exception	if no instances have been supplied yet
+   */
+  public void update(Instance ins) throws Exception {
+    if (m_Instances == null)
+      throw new Exception("No instances supplied yet. Have to call "
+          + "setInstances(instances) with a set of Instances first.");
+
+    m_DistanceFunction.update(ins);
+    ensureCapacity(m_Instances.numInstances());
+    insert(m_Instances.numInstances() - 1);
+  }
+
+  /**
+   * Adds the given instance info. This implementation updates the range
+   * datastructures of the DistanceFunction class.
+   *
+   * @param ins 	the instance to add the information of
+   */
+  public void addInstanceInfo(Instance ins) {
+    if (m_Instances != null)
+      m_DistanceFunction.update(ins);
+  }
+
+  /**
+   * Finds the approximate k nearest neighbours of the target, including the
+   * neighbours found at the same distance as the kth one, and records the
+   * recall if performance statistics are measured.
+   *
+   * @param query	the state of the search to use
+   * @param target	the instance to find the neighbours for
+   * @param k		the number of neighbours
+   * @return		the number of neighbours, which are stored at the
+   * 			start of the sorted nodes of the query
+   */
+  protected int findNeighbours(Query query, Instance target, int k) {
+    if (m_Stats != null)
+      m_Stats.searchStart();
+    search(query, target, Math.max(m_Ef, k + 1), m_Stats);
+    if (m_Stats != null)
+      m_Stats.searchFinish();
+
+    // remove the target itself (for hold-one-out cross-validation)
+    int n = 0;
+    for (int i = 0; i < query.m_NumSorted; i++) {
+      if (target == m_Instances.instance(query.m_SortedNode[i]))
+        continue;
+      query.m_SortedNode[n] = query.m_SortedNode[i];
+      query.m_SortedDist[n] = query.m_SortedDist[i];
+      n++;
+    }
+    int numNeighbours = Math.min(k, n);
+    while (numNeighbours > 0 && numNeighbours < n
+        && query.m_SortedDist[numNeighbours] == query.m_SortedDist[numNeighbours - 1])
+      numNeighbours++;
+
+    if (m_ApproximateStats != null)
+      measureRecall(query, target, k, numNeighbours);
+
+    return numNeighbours;
+  }
+
+  /**
+   * Finds the true k nearest neighbours of the target with a linear search
+   * and records the fraction of them found by the approximate search.
+   *
+   * @param query	the query, holding the approximate neighbours
+   * @param target	the instance the neighbours were found for
+   * @param k		the number of neighbours
+   * @param numNeighbours	the number of approximate neighbours
+   */
+  protected void measureRecall(Query query, Instance target, int k,
+      int numNeighbours) {
+
+    Heap nearest = new Heap();
+    for (int i = 0; i < m_Instances.numInstances(); i++) {
+      if (target == m_Instances.instance(i))
+        continue;
+      double bound = (nearest.size() < k)
+        ? Double.POSITIVE_INFINITY : nearest.topKey();
+      double dist = distance(target, i, bound, null);
+      if (dist < bound) {
+        nearest.push(i, dist);
+        if (nearest.size() > k)
+          nearest.pop();
+      }
+    }
+    if (nearest.size() == 0)
+      return;
+
+    int found = 0;
+    for (int i = 0; i < Math.min(k, numNeighbours); i++) {
+      if (query.m_SortedDist[i] <= nearest.topKey())
+        found++;
+    }
+    m_ApproximateStats.updateRecall(found / (double) nearest.size());
+  }
+
+  /**
+   * Returns the approximate k nearest neighbours of the supplied instance.
+   * &gt;k neighbours are returned if the search found more than one
+   * neighbour at the kth boundary.
+   *
+   * @param target	The instance to find the nearest neighbours for.
+   * @param k 		The number of neighbours to find.
+   * @return 		the k nearest neighbours found
+   * @throws Exception 	if the nearest neighbours could not be found.
+   */
+  public Instances kNearestNeighbours(Instance target, int k) throws Exception {
+    if (m_Instances == null)
+      throw new Exception("No instances supplied yet. Have to call "
+          + "setInstances(instances) with a set of Instances first.");
+    if (m_Query == null)
+      m_Query = new Query();
+
+    int numNeighbours = findNeighbours(m_Query, target, k);
+
+    Instances neighbours = new Instances(m_Instances, numNeighbours);
+    m_DistanceList = new double[numNeighbours];
+    for (int i = 0; i < numNeighbours; i++) {
+      neighbours.add(m_Instances.instance(m_Query.m_SortedNode[i]));
+      m_DistanceList[i] = m_Query.m_SortedDist[i];
+    }
+    m_DistanceFunction.postProcessDistances(m_DistanceList);
+
+    return neighbours;
+  }
+
+  /**
+   * Returns the approximate nearest neighbour of the supplied target
+   * instance.
+   *
+   * @param target	The instance to find the nearest neighbour for.
+   * @return 		the nearest neighbour found
+   * @throws Exception 	if the neighbours could not be found.
+   */
+  public Instance nearestNeighbour(Instance target) throws Exception {
+    return (kNearestNeighbours(target, 1)).instance(0);
+  }
+
+  /**
+   * Returns whether this search supports bulk queries, which it does.
+   *
+   * @return		true
+   */
+  public boolean supportsBulkQueries() {
+    return true;
+  }
+
+  /**
+   * Finds the approximate k nearest neighbours of each of the given query
+   * instances, with one reused search state per execution slot.
+   *
+   * @param targets	the query instances
+   * @param k		the number of neighbours to find
+   * @param indices	an array with one row per query, in which the indices
+   * 			of the neighbours are stored, nearest first
+   * @param distances	an array with one row per query, in which the
+   * 			distances of the neighbours are stored
+   * @throws Exception	if the neighbours could not be found
+   */
+  public void kNearestNeighbours(final Instances targets, final int k,
+      final int[][] indices, final double[][] distances) throws Exception {
+
+    if (m_Instances == null)
+      throw new Exception("No instances supplied yet. Have to call "
+          + "setInstances(instances) with a set of Instances first.");
+
+    processQueries(targets.numInstances(), new QueryTask() {
+      public void process(int from, int to) throws Exception {
+        Query query = new Query();
+        for (int q = from; q < to; q++) {
+          int numNeighbours = findNeighbours(query, targets.instance(q), k);
+          indices[q] = new int[numNeighbours];
+          distances[q] = new double[numNeighbours];
+          System.arraycopy(query.m_SortedNode, 0, indices[q], 0, numNeighbours);
+          System.arraycopy(query.m_SortedDist, 0, distances[q], 0, numNeighbours);
+          m_DistanceFunction.postProcessDistances(distances[q]);
+        }
+      }
+    });
+  }
+
+  /**
+   * Returns the distances of the neighbours found by the last call of
+   * kNearestNeighbours or nearestNeighbour.
+   *
+   * @return 		the distances of the neighbours, in the same order
+   * @throws Exception 	if called before calling kNearestNeighbours or
+   *            	nearestNeighbour.
+   */
+  public double[] getDistances() throws Exception {
+    if ((m_Instances == null) || (m_DistanceList == null))
+      throw new Exception("No distances available. Please call either "
+          + "kNearestNeighbours or nearestNeighbours first.");
+    return m_DistanceList;
+  }
+
+  /**
+   * Sets whether to calculate the performance statistics or not.
+   *
+   * @param measurePerformance 	if true then the performance is calculated
+   */
+  public void setMeasurePerformance(boolean measurePerformance) {
+    m_MeasurePerformance = measurePerformance;
+    if (m_MeasurePerformance) {
+      if (m_Stats == null)
+        m_Stats = m_ApproximateStats = new ApproximatePerformanceStats();
+    } else
+      m_Stats = m_ApproximateStats = null;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return 		tip text for this property suitable for
+   * 			displaying in the explorer/experimenter gui
+   */
+  public String maxLinksTipText() {
+    return "The maximum number of links of a node in the upper layers, "
+      + "twice as many in the bottom layer; more links give a higher recall "
+      + "but need more memory and time.";
+  }
+
+  /**
+   * Sets the maximum number of links of a node in the upper layers.
+   *
+   * @param value	the maximum number of links
+   */
+  public void setMaxLinks(int value) {
+    m_MaxLinks = value;
+  }
+
+  /**
+   * Gets the maximum number of links of a node in the upper layers.
+   *
+   * @return		the maximum number of links
+   */
+  public int getMaxLinks() {
+    return m_MaxLinks;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return 		tip text for this property suitable for
+   * 			displaying in the explorer/experimenter gui
+   */
+  public String efConstructionTipText() {
+    return "The size of the candidate list while building the graph; larger "
+      + "values give a better graph but take longer to build.";
+  }
+
+  /**
+   * Sets the size of the candidate list while building the graph.
+   *
+   * @param value	the size
+   */
+  public void setEfConstruction(int value) {
+    m_EfConstruction = value;
+  }
+
+  /**
+   * Gets the size of the candidate list while building the graph.
+   *
+   * @return		the size
+   */
+  public int getEfConstruction() {
+    return m_EfConstruction;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return 		tip text for this property suitable for
+   * 			displaying in the explorer/experimenter gui
+   */
+  public String efTipText() {
+    return "The size of the candidate list while searching, at least the "
+      + "number of neighbours; larger values give a higher recall but make "
+      + "the searches slower.";
+  }
+
+  /**
+   * Sets the size of the candidate list while searching.
+   *
+   * @param value	the size
+   */
+  public void setEf(int value) {
+    m_Ef = value;
+  }
+
+  /**
+   * Gets the size of the candidate list while searching.
+   *
+   * @return		the size
+   */
+  public int getEf() {
+    return m_Ef;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return 		tip text for this property suitable for
+   * 			displaying in the explorer/experimenter gui
+   */
+  public String seedTipText() {
+    return "The random number seed for the layers of the nodes.";
+  }
+
+  /**
+   * Sets the random number seed.
+   *
+   * @param value	the seed
+   */
+  public void setSeed(int value) {
+    m_Seed = value;
+  }
+
+  /**
+   * Gets the random number seed.
+   *
+   * @return		the seed
+   */
+  public int getSeed() {
+    return m_Seed;
+  }
+
+  /**
+   * Returns an enumeration describing the available options.
+   *
+   * @return an enumeration of all the available options.
+   */
+  public Enumeration listOptions() {
+    Vector newVector = new Vector();
+
+    Enumeration enm = super.listOptions();
+    while (enm.hasMoreElements())
+      newVector.add(enm.nextElement());
+
+    newVector.addElement(new Option(
+	"\tMaximum number of links of a node in the upper layers,\n"
+	+ "\ttwice as many in the bottom layer.\n"
+	+ "\t(default: 16)",
+	"M", 1, "-M <num>"));
+
+    newVector.addElement(new Option(
+	"\tSize of the candidate list while building the graph.\n"
+	+ "\t(default: 100)",
+	"C", 1, "-C <num>"));
+
+    newVector.addElement(new Option(
+	"\tSize of the candidate list while searching,\n"
+	+ "\tat least the number of neighbours.\n"
+	+ "\t(default: 50)",
+	"E", 1, "-E <num>"));
+
+    newVector.addElement(new Option(
+	"\tRandom number seed for the layers of the nodes.\n"
+	+ "\t(default: 1)",
+	"S", 1, "-S <num>"));
+
+    return newVector.elements();
+  }
+
+  /**
+   * Parses a given list of options. <p/>
+   *
+   <!-- options-start -->
+   * Valid options are: <p/>
+   *
+   * <pre> -A &lt;classname and options&gt;
+   *  Distance function to use.
+   *  (default: weka.core.EuclideanDistance)</pre>
+   *
+   * <pre> -P
+   *  Calculate performance statistics.</pre>
+   *
+   * <pre> -num-slots &lt;num&gt;
+   *  Number of execution slots for bulk queries.
+   *  (default 1 - i.e. no parallelism)</pre>
+   *
+   * <pre> -M &lt;num&gt;
+   *  Maximum number of links of a node in the upper layers,
+   *  twice as many in the bottom layer.
+   *  (default: 16)</pre>
+   *
+   * <pre> -C &lt;num&gt;
+   *  Size of the candidate list while building the graph.
+   *  (default: 100)</pre>
+   *
+   * <pre> -E &lt;num&gt;
+   *  Size of the candidate list while searching,
+   *  at least the number of neighbours.
+   *  (default: 50)</pre>
+   *
+   * <pre> -S &lt;num&gt;
+   *  Random number seed for the layers of the nodes.
+   *  (default: 1)</pre>
+   *
+   <!-- options-end -->
+   *
+   * @param options	the list of options as an array of strings
+   * @throws Exception	if an option is not supported
+   */
+  public void setOptions(String[] options) throws Exception {
+    super.setOptions(options);
+
+    String optionString = Utils.getOption('M', options);
+    if (optionString.length() != 0)
+      setMaxLinks(Integer.parseInt(optionString));
+    else
+      setMaxLinks(16);
+
+    optionString = Utils.getOption('C', options);
+    if (optionString.length() != 0)
+      setEfConstruction(Integer.parseInt(optionString));
+    else
+      setEfConstruction(100);
+
+    optionString = Utils.getOption('E', options);
+    if (optionString.length() != 0)
+      setEf(Integer.parseInt(optionString));
+    else
+      setEf(50);
+
+    optionString = Utils.getOption('S', options);
+    if (optionString.length() != 0)
+      setSeed(Integer.parseInt(optionString));
+    else
+      setSeed(1);
+  }
+
+  /**
+   * Gets the current settings of the HNSW.
+   *
+   * @return 		an array of strings suitable for passing to setOptions
+   */
+  public String[] getOptions() {
+    Vector<String>	result;
+    String[]		options;
+    int			i;
+
+    result = new Vector<String>();
+
+    options = super.getOptions();
+    for (i = 0; i < options.length; i++)
+      result.add(options[i]);
+
+    result.add("-M");
+    result.add("" + getMaxLinks());
+
+    result.add("-C");
+    result.add("" + getEfConstruction());
+
+    result.add("-E");
+    result.add("" + getEf());
+
+    result.add("-S");
+    result.add("" + getSeed());
+
+    return result.toArray(new String[result.size()]);
+  }
+
+  /**
+   * Returns the revision string.
+   *
+   * @return		the revision
+   */
+  public String getRevision() {
+    return RevisionUtils.extract("$Revision: 1.1 $");
+  }
+}
@@ -420,6 +420,32 @@ public class KDTree
   }
   
 
+  /**
+   * Returns whether this search supports bulk queries, which it does.
+   * 
+   * @return		true
+   */
+  public boolean supportsBulkQueries() {
+    return true;
+  }
+
+  /**
+   * Finds the k nearest neighbours of a single query of a bulk query.
+   * 
+   * @param target	the query instance
+   * @param k		the number of neighbours to find
+   * @return		the heap with the neighbours
+   * @throws Exception	if the query has missing values
+   */
+  protected MyHeap kNearestNeighbourHeap(Instance target, int k) 
+    throws Exception {
+    
+    checkMissing(target);
+    MyHeap heap = new MyHeap(k);
+    findNearestNeighbours(target, m_Root, k, heap, 0.0);
+    return heap;
+  }
+
   /**
    * Returns the nearest neighbour of the supplied target 
    * instance. 
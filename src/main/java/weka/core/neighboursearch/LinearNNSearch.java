@@ -58,6 +58,14 @@ public class LinearNNSearch
    *  both by nearestNeighbour() and kNearestNeighbours(). 
    */
   protected double[] m_Distances;
+
+  /** The number of queries that scan the neighbourhood together in a bulk 
+   *  query. */
+  protected static final int QUERY_BLOCK = 64;
+
+  /** The number of instances that the queries of a block scan before they
+   *  move on to the next instances in a bulk query. */
+  protected static final int INSTANCE_BLOCK = 512;
     
   /** Whether to skip instances from the neighbours that are identical to the query instance. */
   protected boolean m_SkipIdentical = false;
@@ -204,22 +212,68 @@ public class LinearNNSearch
    */
   public Instances kNearestNeighbours(Instance target, int kNN) throws Exception {
   
-    //debug
-    boolean print=false;
-
     if(m_Stats!=null)
       m_Stats.searchStart();
  
     MyHeap heap = new MyHeap(kNN);
-    double distance; int firstkNN=0;
-    for(int i=0; i<m_Instances.numInstances(); i++) {
+    scan(target, 0, m_Instances.numInstances(), kNN, heap, 0);
+    
+    Instances neighbours = new Instances(m_Instances, (heap.size()+heap.noOfKthNearest()));
+    m_Distances = new double[heap.size()+heap.noOfKthNearest()];
+    int [] indices = new int[heap.size()+heap.noOfKthNearest()];
+    int i=1; MyHeapElement h;
+    while(heap.noOfKthNearest()>0) {
+      h = heap.getKthNearest();
+      indices[indices.length-i] = h.index;
+      m_Distances[indices.length-i] = h.distance;
+      i++;
+    }
+    while(heap.size()>0) {
+      h = heap.get();
+      indices[indices.length-i] = h.index;
+      m_Distances[indices.length-i] = h.distance;
+      i++;
+    }
+    
+    m_DistanceFunction.postProcessDistances(m_Distances);
+    
+    for(int k=0; k<indices.length; k++) {
+      neighbours.add(m_Instances.instance(indices[k]));
+    }
+    
+    if(m_Stats!=null)
+      m_Stats.searchFinish();
+    
+    return neighbours;    
+  }
+  
+  /**
+   * Scans the instances in the given range of the neighbourhood and puts 
+   * those that are nearer to the target than the current neighbours into 
+   * the heap. A query scans the neighbourhood in ascending ranges, passing 
+   * on the number of neighbours that were put into the heap unconditionally 
+   * so far, so that the outcome doesn't depend on the ranges.
+   * 
+   * @param target	the instance to find the neighbours for
+   * @param from	the index of the first instance to scan
+   * @param to		the index after the last instance to scan
+   * @param kNN		the number of neighbours to find
+   * @param heap	the heap with the neighbours found so far
+   * @param firstkNN	the number of neighbours put into the heap so far, 
+   * 			before it was full
+   * @return		the updated number of neighbours put into the heap
+   * @throws Exception	if the distance could not be computed
+   */
+  protected int scan(Instance target, int from, int to, int kNN, 
+      MyHeap heap, int firstkNN) throws Exception {
+
+    double distance;
+    for(int i=from; i<to; i++) {
       if(target == m_Instances.instance(i)) //for hold-one-out cross-validation
         continue;
       if(m_Stats!=null) 
         m_Stats.incrPointCount();
       if(firstkNN<kNN) {
-        if(print)
-          System.out.println("K(a): "+(heap.size()+heap.noOfKthNearest()));
         distance = m_DistanceFunction.distance(target, m_Instances.instance(i), Double.POSITIVE_INFINITY, m_Stats);
         if(distance == 0.0 && m_SkipIdentical)
           if(i<m_Instances.numInstances()-1)
@@ -231,8 +285,6 @@ public class LinearNNSearch
       }
       else {
         MyHeapElement temp = heap.peek();
-        if(print)
-          System.out.println("K(b): "+(heap.size()+heap.noOfKthNearest()));
         distance = m_DistanceFunction.distance(target, m_Instances.instance(i), temp.distance, m_Stats);
         if(distance == 0.0 && m_SkipIdentical)
           continue;
@@ -242,37 +294,71 @@ public class LinearNNSearch
         else if(distance == temp.distance) {
           heap.putKthNearest(i, distance);
         }
-
       }
     }
     
-    Instances neighbours = new Instances(m_Instances, (heap.size()+heap.noOfKthNearest()));
-    m_Distances = new double[heap.size()+heap.noOfKthNearest()];
-    int [] indices = new int[heap.size()+heap.noOfKthNearest()];
-    int i=1; MyHeapElement h;
-    while(heap.noOfKthNearest()>0) {
-      h = heap.getKthNearest();
-      indices[indices.length-i] = h.index;
-      m_Distances[indices.length-i] = h.distance;
-      i++;
-    }
-    while(heap.size()>0) {
-      h = heap.get();
-      indices[indices.length-i] = h.index;
-      m_Distances[indices.length-i] = h.distance;
-      i++;
-    }
-    
-    m_DistanceFunction.postProcessDistances(m_Distances);
-    
-    for(int k=0; k<indices.length; k++) {
-      neighbours.add(m_Instances.instance(indices[k]));
-    }
-    
-    if(m_Stats!=null)
-      m_Stats.searchFinish();
+    return firstkNN;
+  }
+
+  /**
+   * Returns whether this search supports bulk queries, which it does.
+   * 
+   * @return		true
+   */
+  public boolean supportsBulkQueries() {
+    return true;
+  }
+
+  /**
+   * Finds the k nearest neighbours of each of the given query instances.
+   * The queries of each execution slot are answered in blocks of 
+   * QUERY_BLOCK queries, which scan the neighbourhood together in blocks of 
+   * INSTANCE_BLOCK instances, so that a block of instances is reused from 
+   * the cache by all the queries of a block. Each query still scans the 
+   * neighbourhood in order, so the neighbours are the same as those found 
+   * by kNearestNeighbours(Instance, int).
+   * 
+   * @param targets	the query instances
+   * @param k		the number of neighbours to find
+   * @param indices	an array with one row per query, in which the indices
+   * 			of the neighbours are stored, nearest first
+   * @param distances	an array with one row per query, in which the 
+   * 			distances of the neighbours are stored
+   * @throws Exception	if the neighbours could not be found
+   */
+  public void kNearestNeighbours(final Instances targets, final int k,
+      final int[][] indices, final double[][] distances) throws Exception {
     
-    return neighbours;    
+    final int n = m_Instances.numInstances();
+    processQueries(targets.numInstances(), new QueryTask() {
+      public void process(int from, int to) throws Exception {
+        int queryBlock = (m_Stats!=null) ? 1 : QUERY_BLOCK;
+        int instanceBlock = (m_Stats!=null) ? n : INSTANCE_BLOCK;
+        MyHeap[] heaps = new MyHeap[queryBlock];
+        int[] firstkNN = new int[queryBlock];
+        for(int q=from; q<to; q+=queryBlock) {
+          int numQueries = Math.min(queryBlock, to - q);
+          for(int j=0; j<numQueries; j++) {
+            heaps[j] = new MyHeap(k);
+            firstkNN[j] = 0;
+          }
+          if(m_Stats!=null)
+            m_Stats.searchStart();
+          for(int i=0; i<n; i+=instanceBlock) {
+            int end = Math.min(n, i + instanceBlock);
+            for(int j=0; j<numQueries; j++)
+              firstkNN[j] = scan(targets.instance(q + j), i, end, k, 
+                                 heaps[j], firstkNN[j]);
+          }
+          if(m_Stats!=null)
+            m_Stats.searchFinish();
+          for(int j=0; j<numQueries; j++) {
+            storeNeighbours(heaps[j], q + j, indices, distances);
+            heaps[j] = null;
+          }
+        }
+      }
+    });
   }
   
   /** 
@@ -33,8 +33,16 @@ import weka.core.RevisionUtils;
 import weka.core.Utils;
 
 import java.io.Serializable;
+import java.util.ArrayList;
 import java.util.Enumeration;
+import java.util.List;
 import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Abstract class for nearest neighbour search. All algorithms (classes) that
@@ -544,6 +552,9 @@ public abstract class NearestNeighbourSearch
   
   /** Should we measure Performance. */
   protected boolean m_MeasurePerformance = false;
+
+  /** The number of threads to use for bulk queries. */
+  protected int m_NumExecutionSlots = 1;
   
   /**
    * Constructor.
@@ -592,6 +603,11 @@ public abstract class NearestNeighbourSearch
 	"\tCalculate performance statistics.",
 	"P", 0,"-P"));
     
+    newVector.add(new Option(
+	"\tNumber of execution slots for bulk queries.\n"
+	+ "\t(default 1 - i.e. no parallelism)",
+	"num-slots", 1,"-num-slots <num>"));
+    
     return newVector.elements();
   }
   
@@ -623,6 +639,12 @@ public abstract class NearestNeighbourSearch
     }
     
     setMeasurePerformance(Utils.getFlag('P',options));
+    
+    String slots = Utils.getOption("num-slots", options);
+    if(slots.length() != 0)
+      setNumExecutionSlots(Integer.parseInt(slots));
+    else
+      setNumExecutionSlots(1);
   }
 
   /**
@@ -642,6 +664,11 @@ public abstract class NearestNeighbourSearch
     if(getMeasurePerformance())
       result.add("-P");
     
+    if (getNumExecutionSlots() > 1) {
+      result.add("-num-slots");
+      result.add("" + getNumExecutionSlots());
+    }
+    
     return result.toArray(new String[result.size()]);
   }
 
@@ -710,6 +737,35 @@ public abstract class NearestNeighbourSearch
       m_Stats = null;
   }
     
+  /**
+   * Returns the tip text for this property.
+   * 
+   * @return 		tip text for this property suitable for
+   *         		displaying in the explorer/experimenter gui
+   */
+  public String numExecutionSlotsTipText() {
+    return "The number of execution slots (threads) to use for bulk " +
+           "queries.";
+  }
+  
+  /**
+   * Gets the number of execution slots (threads) to use for bulk queries.
+   * 
+   * @return		the number of slots
+   */
+  public int getNumExecutionSlots() {
+    return m_NumExecutionSlots;
+  }
+  
+  /**
+   * Sets the number of execution slots (threads) to use for bulk queries.
+   * 
+   * @param numSlots	the number of slots
+   */
+  public void setNumExecutionSlots(int numSlots) {
+    m_NumExecutionSlots = numSlots;
+  }
+    
   /** 
    * Returns the nearest instance in the current neighbourhood to the supplied
    * instance.
@@ -731,6 +787,172 @@ public abstract class NearestNeighbourSearch
    */
   public abstract Instances kNearestNeighbours(Instance target, int k) throws Exception;
  
+  /**
+   * Returns whether this search supports bulk queries with 
+   * kNearestNeighbours(Instances, int, int[][], double[][]).
+   * 
+   * @return		true if bulk queries are supported
+   */
+  public boolean supportsBulkQueries() {
+    return false;
+  }
+
+  /**
+   * Finds the k nearest neighbours of each of the given query instances in
+   * the current neighbourhood, like kNearestNeighbours(Instance, int) does
+   * for a single instance, including the extra neighbours at the same 
+   * distance as the kth one. Instead of copies of the neighbours, their 
+   * indices in the neighbourhood are returned, which makes the neighbours
+   * of many queries cheap to keep. The queries are divided among the 
+   * execution slots. A query that is one of the instances of the 
+   * neighbourhood (the same object) doesn't find itself, so the 
+   * neighbourhood itself can be used for hold-one-out cross-validation.
+   * 
+   * @param targets	the query instances
+   * @param k		the number of neighbours to find
+   * @param indices	an array with one row per query, in which the indices
+   * 			of the neighbours are stored, nearest first
+   * @param distances	an array with one row per query, in which the 
+   * 			distances of the neighbours are stored
+   * @throws Exception	if the neighbours could not be found
+   */
+  public void kNearestNeighbours(final Instances targets, final int k,
+      final int[][] indices, final double[][] distances) throws Exception {
+    
+    processQueries(targets.numInstances(), new QueryTask() {
+      public void process(int from, int to) throws Exception {
+        for(int q=from; q<to; q++) {
+          if(m_Stats!=null)
+            m_Stats.searchStart();
+          MyHeap heap = kNearestNeighbourHeap(targets.instance(q), k);
+          if(m_Stats!=null)
+            m_Stats.searchFinish();
+          storeNeighbours(heap, q, indices, distances);
+        }
+      }
+    });
+  }
+
+  /**
+   * Finds the k nearest neighbours of a single query for a bulk query. Has
+   * to be safe to call from several threads at once, if performance 
+   * statistics aren't measured. Searches that support bulk queries 
+   * override either this method or 
+   * kNearestNeighbours(Instances, int, int[][], double[][]).
+   * 
+   * @param target	the query instance
+   * @param k		the number of neighbours to find
+   * @return		the heap with the neighbours
+   * @throws Exception	if the neighbours could not be found
+   */
+  protected MyHeap kNearestNeighbourHeap(Instance target, int k) 
+    throws Exception {
+    
+    throw new Exception(getClass().getName() 
+        + " does not support bulk queries.");
+  }
+
+  /**
+   * Stores the neighbours in the given heap as the result of a query of a
+   * bulk query, nearest first.
+   * 
+   * @param heap	the heap with the neighbours, emptied by this method
+   * @param query	the index of the query
+   * @param indices	the indices of the neighbours of all queries
+   * @param distances	the distances of the neighbours of all queries
+   * @throws Exception	if the heap is inconsistent
+   */
+  protected void storeNeighbours(MyHeap heap, int query, int[][] indices, 
+      double[][] distances) throws Exception {
+    
+    indices[query] = new int[heap.totalSize()];
+    distances[query] = new double[heap.totalSize()];
+    int i = indices[query].length - 1;
+    MyHeapElement h;
+    while(heap.noOfKthNearest()>0) {
+      h = heap.getKthNearest();
+      indices[query][i] = h.index;
+      distances[query][i] = h.distance;
+      i--;
+    }
+    while(heap.size()>0) {
+      h = heap.get();
+      indices[query][i] = h.index;
+      distances[query][i] = h.distance;
+      i--;
+    }
+    m_DistanceFunction.postProcessDistances(distances[query]);
+  }
+
+  /**
+   * The work done by one thread on a range of the queries of a bulk query.
+   */
+  protected interface QueryTask {
+    
+    /**
+     * Answers the queries in the given range.
+     * 
+     * @param from	the index of the first query
+     * @param to		the index after the last query
+     * @throws Exception	if a query fails
+     */
+    void process(int from, int to) throws Exception;
+  }
+
+  /**
+   * Answers the queries 0 to n - 1 of a bulk query, in one consecutive 
+   * range of queries per execution slot. The first query is answered by 
+   * the calling thread before the others, so that the distance function
+   * has initialized itself before it is shared. If performance statistics
+   * are measured, the calling thread answers all queries.
+   * 
+   * @param n		the number of queries
+   * @param task	the work to do on a range of queries
+   * @throws Exception	if a query fails
+   */
+  protected void processQueries(int n, final QueryTask task) 
+    throws Exception {
+    
+    if(n == 0)
+      return;
+    task.process(0, 1);
+    
+    int numRanges = (m_Stats != null) ? 1 : Math.min(m_NumExecutionSlots, n - 1);
+    if(numRanges <= 1) {
+      task.process(1, n);
+      return;
+    }
+    
+    ThreadPoolExecutor executorPool = new ThreadPoolExecutor(numRanges, 
+        numRanges, 120, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>());
+    try {
+      List<Future<Object>> futures = new ArrayList<Future<Object>>();
+      for(int r=0; r<numRanges; r++) {
+        final int from = 1 + (int) ((long) (n - 1) * r / numRanges);
+        final int to = 1 + (int) ((long) (n - 1) * (r + 1) / numRanges);
+        futures.add(executorPool.submit(new Callable<Object>() {
+          public Object call() throws Exception {
+            task.process(from, to);
+            return null;
+          }
+        }));
+      }
+      for(Future<Object> future : futures) {
+        try {
+          future.get();
+        }
+        catch(ExecutionException e) {
+          if(e.getCause() instanceof Exception)
+            throw (Exception) e.getCause();
+          throw e;
+        }
+      }
+    }
+    finally {
+      executorPool.shutdown();
+    }
+  }
+  
   /**
    * Returns the distances of the k nearest neighbours. The kNearestNeighbours
    * or nearestNeighbour needs to be called first for this to work.
@@ -102,9 +102,24 @@ public class NormalEstimator
       return;
     }
     data = round(data);
-    m_SumOfWeights += weight;
-    m_SumOfValues += data * weight;
-    m_SumOfValuesSq += data * data * weight;
+    addSums(weight, data * weight, data * data * weight);
+  }
+
+  /**
+   * Add the sums of a set of data values, which have been rounded to the
+   * precision of this estimator already, to the current estimator. This 
+   * allows the values to be counted elsewhere, e.g., in a table.
+   *
+   * @param sumOfWeights the sum of the weights of the values
+   * @param sumOfValues the sum of the weighted values
+   * @param sumOfValuesSq the sum of the weighted squared values
+   */
+  public void addSums(double sumOfWeights, double sumOfValues, 
+		      double sumOfValuesSq) {
+
+    m_SumOfWeights += sumOfWeights;
+    m_SumOfValues += sumOfValues;
+    m_SumOfValuesSq += sumOfValuesSq;
 
     if (m_SumOfWeights > 0) {
       m_Mean = m_SumOfValues / m_SumOfWeights;
@@ -29,10 +29,13 @@ import weka.core.Instance;
 import weka.core.Instances;
 import weka.core.Option;
 import weka.core.OptionHandler;
+import weka.core.ParallelRanges;
 import weka.core.Range;
+import weka.core.RangeTask;
 import weka.core.RevisionHandler;
 import weka.core.RevisionUtils;
 import weka.core.SelectedTag;
+import weka.core.SerializedObject;
 import weka.core.SparseInstance;
 import weka.core.Stopwords;
 import weka.core.Tag;
@@ -47,15 +50,21 @@ import weka.filters.UnsupervisedFilter;
 
 import java.io.File;
 import java.io.Serializable;
+import java.util.Arrays;
 import java.util.Enumeration;
+import java.util.HashSet;
 import java.util.Hashtable;
 import java.util.Iterator;
+import java.util.List;
 import java.util.TreeMap;
 import java.util.Vector;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 /** 
  <!-- globalinfo-start -->
- * Converts String attributes into a set of attributes representing word occurrence (depending on the tokenizer) information from the text contained in the strings. The set of words (attributes) is determined by the first batch filtered (typically training data).
+ * Converts String attributes into a set of attributes representing word occurrence (depending on the tokenizer) information from the text contained in the strings. The set of words (attributes) is determined by the first batch filtered (typically training data). Alternatively, the words can be hashed into a fixed number of attributes, which needs no dictionary and allows the instances to be converted as they arrive.
  * <p/>
  <!-- globalinfo-end -->
  * 
@@ -130,6 +139,17 @@ import java.util.Vector;
  *  The tokenizing algorihtm (classname plus parameters) to use.
  *  (default: weka.core.tokenizers.WordTokenizer)</pre>
  * 
+ * <pre> -hash-buckets &lt;num&gt;
+ *  The number of hash buckets to map the words to with a signed
+ *  hash, instead of building a dictionary. The instances are then
+ *  converted as they arrive (unless -I or -N 1 is used), and -W,
+ *  -M, -O and -prune-rate are ignored.
+ *  (default: 0, i.e., build a dictionary)</pre>
+ * 
+ * <pre> -num-slots &lt;num&gt;
+ *  The number of execution slots (threads) to use for
+ *  tokenizing the documents. (default 1 - i.e. no parallelism)</pre>
+ * 
  <!-- options-end -->
  *
  * @author Len Trigg (len@reeltwo.com)
@@ -234,6 +254,25 @@ public class StringToWordVector
   /** the tokenizer algorithm to use. */
   private Tokenizer m_Tokenizer = new WordTokenizer();
 
+  /** the number of hash buckets, 0 if a dictionary is built instead. */
+  private int m_NumHashBuckets = 0;
+
+  /** the number of execution slots (threads) to use for tokenizing. */
+  private int m_executionSlots = 1;
+
+  /** the number of instances per execution slot that are buffered before
+   * they are tokenized together. */
+  protected static final int INSTANCES_PER_SLOT = 1000;
+
+  /** whether the instances of the first batch are converted as they 
+   * arrive, i.e., hashing is used and neither the IDF transform nor the
+   * normalization of all data needs statistics of the whole batch. */
+  private boolean m_Streaming = false;
+
+  /** the stoplist used when hashing (with a dictionary the stopwords are
+   * removed from the dictionary instead). */
+  private transient Stopwords m_StopwordList;
+
   /**
    * Default constructor. Targets 1000 words in the output.
    */
@@ -332,6 +371,19 @@ public class StringToWordVector
 	+ "\t(default: " + WordTokenizer.class.getName() + ")",
 	"tokenizer", 1, "-tokenizer <spec>"));
 
+    result.addElement(new Option(
+	"\tThe number of hash buckets to map the words to with a signed\n"
+	+ "\thash, instead of building a dictionary. The instances are then\n"
+	+ "\tconverted as they arrive (unless -I or -N 1 is used), and -W,\n"
+	+ "\t-M, -O and -prune-rate are ignored.\n"
+	+ "\t(default: 0, i.e., build a dictionary)",
+	"hash-buckets", 1, "-hash-buckets <num>"));
+
+    result.addElement(new Option(
+	"\tThe number of execution slots (threads) to use for\n"
+	+ "\ttokenizing the documents. (default 1 - i.e. no parallelism)",
+	"num-slots", 1, "-num-slots <num>"));
+
     return result.elements();
   }
 
@@ -409,6 +461,17 @@ public class StringToWordVector
          *  The tokenizing algorihtm (classname plus parameters) to use.
          *  (default: weka.core.tokenizers.WordTokenizer)</pre>
          * 
+         * <pre> -hash-buckets &lt;num&gt;
+         *  The number of hash buckets to map the words to with a signed
+         *  hash, instead of building a dictionary. The instances are then
+         *  converted as they arrive (unless -I or -N 1 is used), and -W,
+         *  -M, -O and -prune-rate are ignored.
+         *  (default: 0, i.e., build a dictionary)</pre>
+         * 
+         * <pre> -num-slots &lt;num&gt;
+         *  The number of execution slots (threads) to use for
+         *  tokenizing the documents. (default 1 - i.e. no parallelism)</pre>
+         * 
          <!-- options-end -->
    *
    * @param options the list of options as an array of strings
@@ -504,6 +567,18 @@ public class StringToWordVector
 	((OptionHandler) tokenizer).setOptions(tokenizerSpec);
       setTokenizer(tokenizer);
     }
+
+    value = Utils.getOption("hash-buckets", options);
+    if (value.length() != 0)
+      setNumHashBuckets(Integer.parseInt(value));
+    else
+      setNumHashBuckets(0);
+
+    value = Utils.getOption("num-slots", options);
+    if (value.length() != 0)
+      setNumExecutionSlots(Integer.parseInt(value));
+    else
+      setNumExecutionSlots(1);
   }
 
   /**
@@ -578,6 +653,16 @@ public class StringToWordVector
 	  ((OptionHandler) getTokenizer()).getOptions());
     result.add(spec.trim());
 
+    if (getNumHashBuckets() > 0) {
+      result.add("-hash-buckets");
+      result.add(String.valueOf(getNumHashBuckets()));
+    }
+
+    if (getNumExecutionSlots() > 1) {
+      result.add("-num-slots");
+      result.add(String.valueOf(getNumExecutionSlots()));
+    }
+
     return (String[]) result.toArray(new String[result.size()]);
   }
 
@@ -663,7 +748,19 @@ public class StringToWordVector
     m_SelectedRange.setUpper(instanceInfo.numAttributes() - 1);
     m_AvgDocLength = -1;
     m_NumInstances = -1;
-    return false;
+    m_Streaming = false;
+    if (m_NumHashBuckets == 0) {
+      return false;
+    }
+
+    // with hashing, the attributes are known in advance
+    determineHashBuckets();
+    m_Streaming = !m_IDFTransform && (m_filterType != FILTER_NORMALIZE_ALL);
+    if (m_Streaming) {
+      m_NumInstances = 0;
+      m_AvgDocLength = 0;
+    }
+    return true;
   }
 
   /**
@@ -684,14 +781,20 @@ public class StringToWordVector
       resetQueue();
       m_NewBatch = false;
     }
-    if (isFirstBatchDone()) {
+    if (isFirstBatchDone() || m_Streaming) {
+      if (m_executionSlots > 1) {
+	// tokenize a block of instances at once
+	bufferInput(instance);
+	if (getInputFormat().numInstances() 
+	    < m_executionSlots * INSTANCES_PER_SLOT) {
+	  return false;
+	}
+	convertBufferedInput();
+	return true;
+      }
       FastVector fv = new FastVector();
       int firstCopy = convertInstancewoDocNorm(instance, fv);
-      Instance inst = (Instance)fv.elementAt(0);
-      if (m_filterType != FILTER_NONE) {
-	normalizeInstance(inst, firstCopy);
-      }
-      push(inst);
+      pushConverted((Instance)fv.elementAt(0), firstCopy);
       return true;
     } else {
       bufferInput(instance);
@@ -699,6 +802,49 @@ public class StringToWordVector
     }
   }
 
+  /**
+   * Converts the buffered input instances, tokenizing them in parallel, 
+   * pushes them into the output queue and flushes the input.
+   * 
+   * @throws Exception if the conversion fails
+   */
+  private void convertBufferedInput() throws Exception {
+    Instances instances = getInputFormat();
+    WordVector[] words = determineWordVectors(instances);
+    FastVector fv = new FastVector();
+    int firstCopy = 0;
+    for (int i = 0; i < instances.numInstances(); i++) {
+      firstCopy = convertInstancewoDocNorm(instances.instance(i), words[i], fv);
+    }
+    for (int i = 0; i < fv.size(); i++) {
+      pushConverted((Instance) fv.elementAt(i), firstCopy);
+    }
+    flushInput();
+  }
+
+  /**
+   * Pushes a converted instance into the output queue, normalizing it 
+   * if necessary. Instances of a first batch that is converted as it 
+   * arrives are counted and their length is added up instead.
+   * 
+   * @param inst the converted instance
+   * @param firstCopy the index of the first word attribute
+   * @throws Exception if the normalization fails
+   */
+  private void pushConverted(Instance inst, int firstCopy) throws Exception {
+    if (isFirstBatchDone()) {
+      if (m_filterType != FILTER_NONE) {
+	normalizeInstance(inst, firstCopy);
+      }
+    } else {
+      m_NumInstances++;
+      if (m_filterType != FILTER_NONE) {
+	m_AvgDocLength += documentLength(inst, firstCopy);
+      }
+    }
+    push(inst);
+  }
+
   /**
    * Signify that this batch of input to the filter is finished. 
    * If the filter requires all instances prior to filtering,
@@ -716,38 +862,52 @@ public class StringToWordVector
     // We only need to do something in this method
     // if the first batch hasn't been processed. Otherwise
     // input() has already done all the work.
-    if (!isFirstBatchDone()) {
+    if (isFirstBatchDone() || m_Streaming) {
+      // Convert the instances still buffered for tokenizing
+      if (getInputFormat().numInstances() > 0) {
+	convertBufferedInput();
+      }
+      if (!isFirstBatchDone() && (m_filterType != FILTER_NONE)
+	  && (m_NumInstances > 0)) {
+	m_AvgDocLength /= m_NumInstances;
+      }
+    } else {
       
-      // turn of per-class mode if the class is not nominal (or is all missing)!
-      if (getInputFormat().classIndex() >= 0) {
-        if (!getInputFormat().classAttribute().isNominal() || 
-            getInputFormat().attributeStats(getInputFormat().classIndex()).missingCount == getInputFormat().numInstances()) {
-          m_doNotOperateOnPerClassBasis = true;
-        }
+      if (m_NumHashBuckets == 0) {
+	// turn of per-class mode if the class is not nominal (or is all missing)!
+	if (getInputFormat().classIndex() >= 0) {
+	  if (!getInputFormat().classAttribute().isNominal() || 
+	      getInputFormat().attributeStats(getInputFormat().classIndex()).missingCount == getInputFormat().numInstances()) {
+	    m_doNotOperateOnPerClassBasis = true;
+	  }
+	}
+
+	// Determine the dictionary from the first batch (training data)
+	determineDictionary();
+      } else {
+	m_NumInstances = getInputFormat().numInstances();
       }
 
-      // Determine the dictionary from the first batch (training data)
-      determineDictionary();
+      // Tokenize all instances
+      WordVector[] words = determineWordVectors(getInputFormat());
+      if ((m_NumHashBuckets > 0) && m_IDFTransform) {
+	determineBucketDocCounts(words);
+      }
 
       // Convert all instances w/o normalization
       FastVector fv = new FastVector();
       int firstCopy=0;
       for(int i=0; i < m_NumInstances; i++) {
-	firstCopy = convertInstancewoDocNorm(getInputFormat().instance(i), fv);
+	firstCopy = convertInstancewoDocNorm(getInputFormat().instance(i), 
+	    words[i], fv);
+	words[i] = null;
       }
 
       // Need to compute average document length if necessary
       if (m_filterType != FILTER_NONE) {
 	m_AvgDocLength = 0;
 	for(int i=0; i<fv.size(); i++) {
-	  Instance inst = (Instance) fv.elementAt(i);
-	  double docLength = 0;
-	  for(int j=0; j<inst.numValues(); j++) {
-	    if(inst.index(j)>=firstCopy) {
-	      docLength += inst.valueSparse(j) * inst.valueSparse(j);
-	    }
-	  }        
-	  m_AvgDocLength += Math.sqrt(docLength);
+	  m_AvgDocLength += documentLength((Instance) fv.elementAt(i), firstCopy);
 	}
 	m_AvgDocLength /= m_NumInstances;
       }
@@ -784,7 +944,10 @@ public class StringToWordVector
     "Converts String attributes into a set of attributes representing "
     + "word occurrence (depending on the tokenizer) information from the "
     + "text contained in the strings. The set of words (attributes) is "
-    + "determined by the first batch filtered (typically training data).";
+    + "determined by the first batch filtered (typically training data). "
+    + "Alternatively, the words can be hashed into a fixed number of "
+    + "attributes, which needs no dictionary and allows the instances to "
+    + "be converted as they arrive.";
   }  
 
   /**
@@ -1318,6 +1481,76 @@ public class StringToWordVector
     return "The tokenizing algorithm to use on the strings.";
   }
 
+  /**
+   * Sets the number of hash buckets, 0 to build a dictionary instead.
+   *
+   * @param value     the number of hash buckets
+   */
+  public void setNumHashBuckets(int value) {
+    m_NumHashBuckets = Math.max(value, 0);
+  }
+
+  /**
+   * Gets the number of hash buckets, 0 if a dictionary is built instead.
+   *
+   * @return          the number of hash buckets
+   */
+  public int getNumHashBuckets() {
+    return m_NumHashBuckets;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return tip text for this property suitable for
+   * displaying in the explorer/experimenter gui
+   */
+  public String numHashBucketsTipText() {
+    return "The number of hash buckets (attributes) to map the words to, "
+      + "0 to build a dictionary from the first batch. Each word is added "
+      + "to its bucket with the sign of its hash, so that colliding words "
+      + "tend to cancel out rather than add up. No dictionary is kept in "
+      + "memory, the instances are converted as they arrive (unless the "
+      + "IDF transform or the normalization of all data is used), and the "
+      + "words to keep, minimum term frequency, per-class setting and "
+      + "periodic pruning are ignored.";
+  }
+
+  /**
+   * Sets the number of execution slots (threads) to use for tokenizing
+   * the documents.
+   *
+   * @param slots     the number of slots to use
+   * @throws Exception if the number of slots is smaller than 1
+   */
+  public void setNumExecutionSlots(int slots) throws Exception {
+    if (slots <= 0) {
+      throw new Exception("Number of execution slots must be > 0");
+    }
+    m_executionSlots = slots;
+  }
+
+  /**
+   * Gets the number of execution slots (threads) to use for tokenizing
+   * the documents.
+   *
+   * @return          the number of slots to use
+   */
+  public int getNumExecutionSlots() {
+    return m_executionSlots;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return tip text for this property suitable for
+   * displaying in the explorer/experimenter gui
+   */
+  public String numExecutionSlotsTipText() {
+    return "The number of execution slots (threads) to use for "
+      + "tokenizing the documents.";
+  }
+
   /**
    * sorts an array.
    * 
@@ -1374,10 +1607,11 @@ public class StringToWordVector
   }
 
   /**
-   * determines the dictionary.
+   * initializes the stopwords.
+   * 
+   * @return the stopwords
    */
-  private void determineDictionary() {
-    // initialize stopwords
+  private Stopwords loadStopwords() {
     Stopwords stopwords = new Stopwords();
     if (getUseStoplist()) {
       try {
@@ -1388,13 +1622,28 @@ public class StringToWordVector
 	e.printStackTrace();
       }
     }
+    return stopwords;
+  }
 
-    // Operate on a per-class basis if class attribute is set
-    int classInd = getInputFormat().classIndex();
-    int values = 1;
-    if (!m_doNotOperateOnPerClassBasis && (classInd != -1)) {
-      values = getInputFormat().attribute(classInd).numValues();
-    }
+  /**
+   * Counts the words of a range of instances of the first batch, for 
+   * determining the dictionary.
+   * 
+   * @param from the index of the first instance
+   * @param to the index after the last instance
+   * @param values the number of class values to count separately for
+   * @param classInd the index of the class attribute
+   * @param pruneRate the number of instances after which to prune the
+   * counts, 0 or less for no periodic pruning
+   * @param stopwords the stopwords to ignore
+   * @return the counts of the words, per class value
+   * @throws Exception if the tokenizer or stemmer can't be copied
+   */
+  private TreeMap[] countWords(int from, int to, int values, int classInd,
+      long pruneRate, Stopwords stopwords) throws Exception {
+
+    Tokenizer tokenizer = tokenizerForThread();
+    Stemmer stemmer = stemmerForThread();
 
     //TreeMap dictionaryArr [] = new TreeMap[values];
     TreeMap [] dictionaryArr = new TreeMap[values];
@@ -1402,13 +1651,7 @@ public class StringToWordVector
       dictionaryArr[i] = new TreeMap();
     }
 
-    // Make sure we know which fields to convert
-    determineSelectedRange();
-
-    // Tokenize all training text into an orderedMap of "words".
-    long pruneRate = 
-      Math.round((m_PeriodicPruningRate/100.0)*getInputFormat().numInstances());
-    for (int i = 0; i < getInputFormat().numInstances(); i++) {
+    for (int i = from; i < to; i++) {
       Instance instance = getInputFormat().instance(i);
       int vInd = 0;
       if (!m_doNotOperateOnPerClassBasis && (classInd != -1)) {
@@ -1421,17 +1664,18 @@ public class StringToWordVector
 	if (m_SelectedRange.isInRange(j) && (instance.isMissing(j) == false)) {
 
 	  // Get tokenizer
-	  m_Tokenizer.tokenize(instance.stringValue(j));
+	  tokenizer.tokenize(instance.stringValue(j));
 
 	  // Iterate through tokens, perform stemming, and remove stopwords
 	  // (if required)
-	  while (m_Tokenizer.hasMoreElements()) {
-	    String word = ((String)m_Tokenizer.nextElement()).intern();
+	  while (tokenizer.hasMoreElements()) {
+	    String word = ((String)tokenizer.nextElement()).intern();
 
 	    if(this.m_lowerCaseTokens==true)
 	      word = word.toLowerCase();
 
-	    word = m_Stemmer.stem(word);
+	    word = stemmer.stem(word);
+
 
 	    if(this.m_useStoplist==true)
 	      if(stopwords.is(word))
@@ -1484,6 +1728,92 @@ public class StringToWordVector
       }
     }
 
+
+    return dictionaryArr;
+  }
+
+  /**
+   * Returns the tokenizer to use in a thread processing a range of
+   * instances, a copy of the configured one if several threads are used.
+   * 
+   * @return the tokenizer
+   * @throws Exception if the tokenizer can't be copied
+   */
+  private Tokenizer tokenizerForThread() throws Exception {
+    if (m_executionSlots > 1)
+      return (Tokenizer) new SerializedObject(m_Tokenizer).getObject();
+    return m_Tokenizer;
+  }
+
+  /**
+   * Returns the stemmer to use in a thread processing a range of
+   * instances, a copy of the configured one if several threads are used.
+   * 
+   * @return the stemmer
+   * @throws Exception if the stemmer can't be copied
+   */
+  private Stemmer stemmerForThread() throws Exception {
+    if (m_executionSlots > 1)
+      return (Stemmer) new SerializedObject(m_Stemmer).getObject();
+    return m_Stemmer;
+  }
+
+  /**
+   * determines the dictionary.
+   * 
+   * @throws Exception if tokenizing fails
+   */
+  private void determineDictionary() throws Exception {
+    // initialize stopwords
+    final Stopwords stopwords = loadStopwords();
+
+    // Operate on a per-class basis if class attribute is set
+    final int classInd = getInputFormat().classIndex();
+    final int values;
+    if (!m_doNotOperateOnPerClassBasis && (classInd != -1)) {
+      values = getInputFormat().attribute(classInd).numValues();
+    } else {
+      values = 1;
+    }
+
+    // Make sure we know which fields to convert
+    determineSelectedRange();
+
+    // Tokenize all training text into an orderedMap of "words".
+    final long pruneRate = 
+      Math.round((m_PeriodicPruningRate/100.0)*getInputFormat().numInstances());
+    RangeTask<TreeMap[]> task = new RangeTask<TreeMap[]>() {
+      public TreeMap[] process(int from, int to) throws Exception {
+	return countWords(from, to, values, classInd, pruneRate, stopwords);
+      }
+    };
+    TreeMap [] dictionaryArr;
+    if (pruneRate > 0) {
+      // periodic pruning depends on the order of the instances
+      dictionaryArr = task.process(0, getInputFormat().numInstances());
+    } else {
+      Iterator parts = processRanges(getInputFormat().numInstances(), task)
+	.iterator();
+      dictionaryArr = (TreeMap[]) parts.next();
+      while (parts.hasNext()) {
+	TreeMap[] part = (TreeMap[]) parts.next();
+	for (int z = 0; z < values; z++) {
+	  Iterator it = part[z].keySet().iterator();
+	  while (it.hasNext()) {
+	    String word = (String) it.next();
+	    Count partCount = (Count) part[z].get(word);
+	    Count count = (Count) dictionaryArr[z].get(word);
+	    if (count == null) {
+	      dictionaryArr[z].put(word, partCount);
+	    } else {
+	      count.count += partCount.count;
+	      count.docCount += partCount.docCount;
+	    }
+	  }
+	}
+      }
+    }
+
     // Figure out the minimum required word frequency
     int totalsize = 0;
     int prune[] = new int[values];
@@ -1574,14 +1904,352 @@ public class StringToWordVector
     setOutputFormat(outputFormat);
   }
 
+  /**
+   * determines the output format when hashing, with one attribute per
+   * hash bucket.
+   */
+  private void determineHashBuckets() {
+
+    // Make sure we know which fields to convert
+    determineSelectedRange();
+
+    FastVector attributes = new FastVector(m_NumHashBuckets +
+	getInputFormat().numAttributes());
+
+    // Add the non-converted attributes 
+    int classIndex = -1;
+    for (int i = 0; i < getInputFormat().numAttributes(); i++) {
+      if (!m_SelectedRange.isInRange(i)) { 
+	if (getInputFormat().classIndex() == i) {
+	  classIndex = attributes.size();
+	}
+	attributes.addElement(getInputFormat().attribute(i).copy());
+      }     
+    }
+
+    // Add the hash bucket attributes
+    for (int i = 0; i < m_NumHashBuckets; i++) {
+      attributes.addElement(new Attribute(m_Prefix + "hash" + i));
+    }
+
+    m_Dictionary = new TreeMap();
+    m_DocsCounts = null;
+    m_StopwordList = loadStopwords();
+
+    // Set the filter's output format
+    Instances outputFormat = new Instances(getInputFormat().relationName(), 
+	attributes, 0);
+    outputFormat.setClassIndex(classIndex);
+    setOutputFormat(outputFormat);
+  }
+
+  /**
+   * Computes the document frequencies of the hash buckets from the word
+   * attributes of the first batch.
+   * 
+   * @param words the word attributes of the instances of the first batch
+   */
+  private void determineBucketDocCounts(WordVector[] words) {
+    m_DocsCounts = new int[outputFormatPeek().numAttributes()];
+    for (int i = 0; i < words.length; i++) {
+      for (int j = 0; j < words[i].indices.length; j++) {
+	m_DocsCounts[words[i].indices[j]]++;
+      }
+    }
+  }
+
+  /**
+   * Computes the length of the vector of the word attributes of a 
+   * converted instance.
+   * 
+   * @param inst the converted instance
+   * @param firstCopy the index of the first word attribute
+   * @return the length of the document
+   */
+  private static double documentLength(Instance inst, int firstCopy) {
+    double docLength = 0;
+    for(int j=0; j<inst.numValues(); j++) {
+      if(inst.index(j)>=firstCopy) {
+	docLength += inst.valueSparse(j) * inst.valueSparse(j);
+      }
+    }        
+    return Math.sqrt(docLength);
+  }
+
+  /**
+   * Holds the word attributes of a converted instance, before the IDF
+   * transform.
+   */
+  private static class WordVector {
+
+    /** the indices of the word attributes, in ascending order. */
+    public int[] indices;
+
+    /** the values of the word attributes. */
+    public double[] values;
+
+    /**
+     * the constructor.
+     * 
+     * @param indices the indices of the word attributes
+     * @param values the values of the word attributes
+     */
+    public WordVector(int[] indices, double[] values) {
+      this.indices = indices;
+      this.values = values;
+    }
+  }
+
+  /**
+   * Processes the indices 0 to n - 1 in consecutive ranges, one per
+   * execution slot, with a thread pool that only lives for this call. With
+   * a single execution slot, the calling thread processes all indices as a
+   * single range.
+   * 
+   * @param n the number of indices
+   * @param task the work to do on a range
+   * @return the results for the ranges, in the order of the ranges
+   * @throws Exception if a range could not be processed
+   */
+  protected <T> List<T> processRanges(int n, RangeTask<T> task)
+    throws Exception {
+
+    int numRanges = Math.min(m_executionSlots, n);
+    if (numRanges < 2) {
+      return ParallelRanges.processRanges(null, 1, n, task);
+    }
+
+    ThreadPoolExecutor executorPool = new ThreadPoolExecutor(numRanges,
+	numRanges, 120, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>());
+    try {
+      return ParallelRanges.processRanges(executorPool, numRanges, n, task);
+    } finally {
+      executorPool.shutdown();
+    }
+  }
+
+  /**
+   * Tokenizes the given instances and determines their word attributes,
+   * in parallel if several execution slots are used.
+   * 
+   * @param instances the instances to tokenize
+   * @return the word attributes of the instances
+   * @throws Exception if tokenizing fails
+   */
+  private WordVector[] determineWordVectors(final Instances instances) 
+    throws Exception {
+
+    if ((m_NumHashBuckets > 0) && (m_StopwordList == null)) {
+      m_StopwordList = loadStopwords();
+    }
+    final WordVector[] result = new WordVector[instances.numInstances()];
+    processRanges(result.length, new RangeTask<Object>() {
+      public Object process(int from, int to) throws Exception {
+	Tokenizer tokenizer = tokenizerForThread();
+	Stemmer stemmer = stemmerForThread();
+	for (int i = from; i < to; i++) {
+	  result[i] = determineWordVector(instances.instance(i), 
+	      tokenizer, stemmer);
+	}
+	return null;
+      }
+    });
+    return result;
+  }
+
+  /**
+   * Tokenizes the instance and determines its word attributes, either 
+   * from the dictionary or by hashing.
+   * 
+   * @param instance the instance to tokenize
+   * @param tokenizer the tokenizer to use
+   * @param stemmer the stemmer to use
+   * @return the word attributes, before the IDF transform
+   */
+  private WordVector determineWordVector(Instance instance, 
+      Tokenizer tokenizer, Stemmer stemmer) {
+
+    if (m_NumHashBuckets > 0) {
+      return hashWordVector(instance, tokenizer, stemmer);
+    }
+
+    // Convert the instance into a sorted set of indexes
+    TreeMap contained = new TreeMap();
+
+    for (int j = 0; j < instance.numAttributes(); j++) { 
+      //if ((getInputFormat().attribute(j).type() == Attribute.STRING) 
+      if (m_SelectedRange.isInRange(j)
+	  && (instance.isMissing(j) == false)) {          
+
+	tokenizer.tokenize(instance.stringValue(j));
+
+	while (tokenizer.hasMoreElements()) {
+	  String word = (String)tokenizer.nextElement(); 
+	  if(this.m_lowerCaseTokens==true)
+	    word = word.toLowerCase();
+	  word = stemmer.stem(word);
+	  Integer index = (Integer) m_Dictionary.get(word);
+	  if (index != null) {
+	    if (m_OutputCounts) { // Separate if here rather than two lines down to avoid hashtable lookup
+	      Double count = (Double)contained.get(index);
+	    if (count != null) {
+	      contained.put(index, new Double(count.doubleValue() + 1.0));
+	    } else {
+	      contained.put(index, new Double(1));
+	    }
+	    } else {
+	      contained.put(index, new Double(1));
+	    }                
+	  }
+	}
+      }
+    }
+
+    //Doing TFTransform
+    if(m_TFTransform==true) {
+      Iterator it = contained.keySet().iterator();
+      for(int i=0; it.hasNext(); i++) {
+	Integer index = (Integer)it.next();
+	double val = ((Double)contained.get(index)).doubleValue();
+	val = Math.log(val+1);
+	contained.put(index, new Double(val));
+      }
+    }
+
+
+    // Convert the set to arrays
+    int [] indices = new int [contained.size()];
+    double [] values = new double [contained.size()];
+    Iterator it = contained.keySet().iterator();
+    for (int i = 0; it.hasNext(); i++) {
+      Integer index = (Integer)it.next();
+      indices[i] = index.intValue();
+      values[i] = ((Double)contained.get(index)).doubleValue();
+    }
+
+    return new WordVector(indices, values);
+  }
+
+  /**
+   * Returns the hash of a word, which is its hash code with the bits
+   * mixed by the finalizer of MurmurHash3. The lower bits determine the
+   * bucket of the word and the highest bit its sign.
+   * 
+   * @param word the word
+   * @return the hash
+   */
+  protected static int hash(String word) {
+    int h = word.hashCode();
+    h ^= h >>> 16;
+    h *= 0x85ebca6b;
+    h ^= h >>> 13;
+    h *= 0xc2b2ae35;
+    h ^= h >>> 16;
+    return h;
+  }
+
+  /**
+   * Tokenizes the instance and hashes its words into the buckets.
+   * 
+   * @param instance the instance to tokenize
+   * @param tokenizer the tokenizer to use
+   * @param stemmer the stemmer to use
+   * @return the word attributes, before the IDF transform
+   */
+  private WordVector hashWordVector(Instance instance, 
+      Tokenizer tokenizer, Stemmer stemmer) {
+
+    int offset = outputFormatPeek().numAttributes() - m_NumHashBuckets;
+
+    // collect bucket and sign of each (distinct) word as 2 * bucket + sign
+    long[] hashes = new long[16];
+    int numHashes = 0;
+    HashSet seen = m_OutputCounts ? null : new HashSet();
+    for (int j = 0; j < instance.numAttributes(); j++) { 
+      if (m_SelectedRange.isInRange(j)
+	  && (instance.isMissing(j) == false)) {          
+
+	tokenizer.tokenize(instance.stringValue(j));
+
+	while (tokenizer.hasMoreElements()) {
+	  String word = (String)tokenizer.nextElement(); 
+	  if(this.m_lowerCaseTokens==true)
+	    word = word.toLowerCase();
+	  word = stemmer.stem(word);
+	  if(this.m_useStoplist==true)
+	    if(m_StopwordList.is(word))
+	      continue;
+	  if ((seen != null) && !seen.add(word))
+	    continue;
+
+	  int h = hash(word);
+	  if (numHashes == hashes.length) {
+	    long[] newHashes = new long[2 * numHashes];
+	    System.arraycopy(hashes, 0, newHashes, 0, numHashes);
+	    hashes = newHashes;
+	  }
+	  hashes[numHashes++] = 
+	    2L * ((h & 0x7fffffff) % m_NumHashBuckets) + (h >>> 31);
+	}
+      }
+    }
+
+    // add up the signs per bucket, dropping the buckets that cancel out
+    Arrays.sort(hashes, 0, numHashes);
+    int [] indices = new int [numHashes];
+    double [] values = new double [numHashes];
+    int numValues = 0;
+    for (int i = 0; i < numHashes; ) {
+      int bucket = (int) (hashes[i] >>> 1);
+      double val = 0;
+      for (; (i < numHashes) && ((int) (hashes[i] >>> 1) == bucket); i++) {
+	val += ((hashes[i] & 1) == 0) ? 1 : -1;
+      }
+      if (val != 0) {
+	if (m_TFTransform) {
+	  val = (val > 0) ? Math.log(val + 1) : -Math.log(1 - val);
+	}
+	indices[numValues] = offset + bucket;
+	values[numValues] = val;
+	numValues++;
+      }
+    }
+
+    int [] resultIndices = new int [numValues];
+    double [] resultValues = new double [numValues];
+    System.arraycopy(indices, 0, resultIndices, 0, numValues);
+    System.arraycopy(values, 0, resultValues, 0, numValues);
+    return new WordVector(resultIndices, resultValues);
+  }
+
   /**
    * Converts the instance w/o normalization.
    * 
    * @oaram instance the instance to convert
    * @param v
    * @return the conerted instance
+   * @throws Exception if tokenizing fails
    */
-  private int convertInstancewoDocNorm(Instance instance, FastVector v) {
+  private int convertInstancewoDocNorm(Instance instance, FastVector v) 
+    throws Exception {
+
+    if ((m_NumHashBuckets > 0) && (m_StopwordList == null)) {
+      m_StopwordList = loadStopwords();
+    }
+    return convertInstancewoDocNorm(instance, 
+	determineWordVector(instance, m_Tokenizer, m_Stemmer), v);
+  }
+
+  /**
+   * Converts the instance w/o normalization, given its word attributes.
+   * 
+   * @oaram instance the instance to convert
+   * @param words the word attributes of the instance
+   * @param v
+   * @return the conerted instance
+   */
+  private int convertInstancewoDocNorm(Instance instance, WordVector words,
+      FastVector v) {
 
     // Convert the instance into a sorted set of indexes
     TreeMap contained = new TreeMap();
@@ -1633,72 +2301,36 @@ public class StringToWordVector
       }     
     }
 
-    for (int j = 0; j < instance.numAttributes(); j++) { 
-      //if ((getInputFormat().attribute(j).type() == Attribute.STRING) 
-      if (m_SelectedRange.isInRange(j)
-	  && (instance.isMissing(j) == false)) {          
-
-	m_Tokenizer.tokenize(instance.stringValue(j));
-
-	while (m_Tokenizer.hasMoreElements()) {
-	  String word = (String)m_Tokenizer.nextElement(); 
-	  if(this.m_lowerCaseTokens==true)
-	    word = word.toLowerCase();
-	  word = m_Stemmer.stem(word);
-	  Integer index = (Integer) m_Dictionary.get(word);
-	  if (index != null) {
-	    if (m_OutputCounts) { // Separate if here rather than two lines down to avoid hashtable lookup
-	      Double count = (Double)contained.get(index);
-	    if (count != null) {
-	      contained.put(index, new Double(count.doubleValue() + 1.0));
-	    } else {
-	      contained.put(index, new Double(1));
-	    }
-	    } else {
-	      contained.put(index, new Double(1));
-	    }                
-	  }
-	}
-      }
-    }
-
-    //Doing TFTransform
-    if(m_TFTransform==true) {
-      Iterator it = contained.keySet().iterator();
-      for(int i=0; it.hasNext(); i++) {
-	Integer index = (Integer)it.next();
-	if( index.intValue() >= firstCopy ) { 
-	  double val = ((Double)contained.get(index)).doubleValue();
-	  val = Math.log(val+1);
-	  contained.put(index, new Double(val));
-	}
-      }
-    }
-
     //Doing IDFTransform
-    if(m_IDFTransform==true) {
-      Iterator it = contained.keySet().iterator();
-      for(int i=0; it.hasNext(); i++) {
-	Integer index = (Integer)it.next();
-	if( index.intValue() >= firstCopy ) {
-	  double val = ((Double)contained.get(index)).doubleValue();
-	  val = val*Math.log( m_NumInstances /
-	      (double) m_DocsCounts[index.intValue()] );
-	  contained.put(index, new Double(val));
+    int numWords = 0;
+    for (int i = 0; i < words.indices.length; i++) {
+      double val = words.values[i];
+      if(m_IDFTransform==true) {
+	int docsCount = m_DocsCounts[words.indices[i]];
+	if (docsCount == 0) {
+	  // a hash bucket that was empty in the first batch
+	  continue;
 	}
-      }        
+	val = val*Math.log( m_NumInstances / (double) docsCount );
+      }
+      words.indices[numWords] = words.indices[i];
+      words.values[numWords] = val;
+      numWords++;
     }
 
     // Convert the set to structures needed to create a sparse instance.
-    double [] values = new double [contained.size()];
-    int [] indices = new int [contained.size()];
+    double [] values = new double [contained.size() + numWords];
+    int [] indices = new int [contained.size() + numWords];
     Iterator it = contained.keySet().iterator();
-    for (int i = 0; it.hasNext(); i++) {
+    int pos = 0;
+    for (; it.hasNext(); pos++) {
       Integer index = (Integer)it.next();
       Double value = (Double)contained.get(index);
-      values[i] = value.doubleValue();
-      indices[i] = index.intValue();
+      values[pos] = value.doubleValue();
+      indices[pos] = index.intValue();
     }
+    System.arraycopy(words.indices, 0, indices, pos, numWords);
+    System.arraycopy(words.values, 0, values, pos, numWords);
 
     Instance inst = new SparseInstance(instance.weight(), values, indices, 
 	outputFormatPeek().numAttributes());
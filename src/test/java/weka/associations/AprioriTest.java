@@ -22,6 +22,13 @@ package weka.associations;
 
 import weka.associations.AbstractAssociatorTest;
 import weka.associations.Associator;
+import weka.core.Attribute;
+import weka.core.FastVector;
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.core.Utils;
+
+import java.util.Random;
 
 import junit.framework.Test;
 import junit.framework.TestSuite;
@@ -45,6 +52,57 @@ public class AprioriTest
     return new Apriori();
   }
 
+  /**
+   * tests that counting the support with the hash tree, with TID lists
+   * and with several execution slots generates the same rules
+   */
+  public void testCountingModes() {
+    FastVector	atts = new FastVector();
+    for (int i = 0; i < 6; i++) {
+      FastVector values = new FastVector();
+      for (int j = 0; j < 3; j++)
+	values.addElement("v" + j);
+      atts.addElement(new Attribute("att" + i, values));
+    }
+    Instances data = new Instances("counting", atts, 0);
+    Random random = new Random(1);
+    for (int n = 0; n < 300; n++) {
+      double[] vals = new double[data.numAttributes()];
+      for (int i = 0; i < vals.length; i++) {
+	if (random.nextInt(20) == 0)
+	  vals[i] = Instance.missingValue();
+	else if ((i > 0) && random.nextBoolean())
+	  vals[i] = vals[i - 1];
+	else
+	  vals[i] = random.nextInt(3);
+      }
+      data.add(new Instance(1, vals));
+    }
+
+    String[] base = new String[]{
+	"-N 50 -M 0.05 -C 0.6",
+	"-N 50 -M 0.05 -C 0.6 -A -c 1"};
+    String[] modes = new String[]{
+	"-tid-lists", "-num-slots 3", "-tid-lists -num-slots 3"};
+    try {
+      for (int i = 0; i < base.length; i++) {
+	Apriori reference = new Apriori();
+	reference.setOptions(Utils.splitOptions(base[i]));
+	reference.buildAssociations(data);
+	for (int j = 0; j < modes.length; j++) {
+	  Apriori apriori = new Apriori();
+	  apriori.setOptions(Utils.splitOptions(base[i] + " " + modes[j]));
+	  apriori.buildAssociations(data);
+	  assertEquals(base[i] + " " + modes[j], 
+	      reference.toString(), apriori.toString());
+	}
+      }
+    }
+    catch (Exception e) {
+      fail("Building associations failed: " + e);
+    }
+  }
+
   public static Test suite() {
     return new TestSuite(AprioriTest.class);
   }
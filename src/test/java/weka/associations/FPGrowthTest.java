@@ -22,6 +22,16 @@ package weka.associations;
 
 import weka.associations.AbstractAssociatorTest;
 import weka.associations.Associator;
+import weka.core.Attribute;
+import weka.core.FastVector;
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.core.converters.ArffLoader;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.util.Random;
 
 import junit.framework.Test;
 import junit.framework.TestSuite;
@@ -45,6 +55,57 @@ public class FPGrowthTest
     return new FPGrowth();
   }
 
+  /**
+   * tests whether reading the transactions incrementally from a loader 
+   * finds the same rules as mining them in memory
+   */
+  public void testLoader() {
+    FastVector	atts = new FastVector();
+    FastVector	values = new FastVector();
+    values.addElement("f");
+    values.addElement("t");
+    for (int i = 0; i < 8; i++)
+      atts.addElement(new Attribute("item" + i, values));
+    Instances data = new Instances("baskets", atts, 0);
+    Random random = new Random(1);
+    for (int n = 0; n < 200; n++) {
+      double[] vals = new double[data.numAttributes()];
+      boolean large = random.nextBoolean();
+      for (int i = 0; i < vals.length; i++)
+	vals[i] = (random.nextInt(10) < ((large && i < 3) ? 8 : 3)) ? 1 : 0;
+      data.add(new Instance(1, vals));
+    }
+
+    File file = null;
+    try {
+      file = File.createTempFile("weka_associations_fpgrowth", ".arff");
+      BufferedWriter writer = new BufferedWriter(new FileWriter(file));
+      writer.write(data.toString());
+      writer.newLine();
+      writer.close();
+
+      String[] options = new String[]{"-S", "-M", "0.1", "-C", "0.5"};
+      FPGrowth memory = new FPGrowth();
+      memory.setOptions(options.clone());
+      memory.buildAssociations(data);
+      FPGrowth streaming = new FPGrowth();
+      streaming.setOptions(options.clone());
+      ArffLoader loader = new ArffLoader();
+      loader.setFile(file);
+      streaming.buildAssociations(loader);
+
+      assertTrue("No rules found", memory.toString().startsWith("FPGrowth found"));
+      assertEquals(memory.toString(), streaming.toString());
+    }
+    catch (Exception e) {
+      fail("Building associations failed: " + e);
+    }
+    finally {
+      if (file != null)
+	file.delete();
+    }
+  }
+
   public static Test suite() {
     return new TestSuite(FPGrowthTest.class);
   }
@@ -30,6 +30,8 @@ import weka.core.OptionHandler;
 import weka.core.CheckScheme.PostProcessor;
 import weka.test.Regression;
 
+import java.util.Random;
+
 import junit.framework.TestCase;
 
 /**
@@ -980,6 +982,85 @@ public abstract class AbstractClassifierTest
     }
   }
   
+  /**
+   * tests whether the distributions predicted for a whole set of instances
+   * in one go are the same as the ones predicted one instance at a time
+   * 
+   * @see Classifier#distributionsForInstances(Instances, double[][])
+   */
+  public void testDistributionsForInstances() throws Exception {
+    int		i;
+    int		n;
+    int		k;
+    Instances   data;
+    Instances	train;
+    Instances	test;
+    Random	random;
+    double[][]	expected;
+    double[][]	dists;
+    
+    // don't bother if not working correctly
+    if (m_Tester.hasClasspathProblems())
+      return;
+    
+    for (i = FIRST_CLASSTYPE; i <= LAST_CLASSTYPE; i++) {
+      // does the classifier support this type of class at all?
+      if (!canPredict(i))
+        continue;
+        
+      data = m_Tester.makeTestDataset(
+          42, m_Tester.getNumInstances(), 
+  	  m_NominalPredictors[i] ? m_Tester.getNumNominal() : 0,
+  	  m_NumericPredictors[i] ? m_Tester.getNumNumeric() : 0, 
+          m_StringPredictors[i] ? m_Tester.getNumString() : 0,
+          m_DatePredictors[i] ? m_Tester.getNumDate() : 0,
+          m_RelationalPredictors[i] ? m_Tester.getNumRelational() : 0,
+          m_NClasses, 
+          i,
+          m_multiInstanceHandler);
+
+      // 20% missing values in the test data, if they can be handled
+      train = new Instances(data, 0, data.numInstances() / 2);
+      test = new Instances(data, train.numInstances(), 
+	  data.numInstances() - train.numInstances());
+      if (m_handleMissingPredictors[i]) {
+	random = new Random(1);
+	for (n = 0; n < test.numInstances(); n++) {
+	  for (k = 0; k < test.numAttributes(); k++) {
+	    if ((k != test.classIndex()) && (random.nextInt(100) < 20))
+	      test.instance(n).setMissing(k);
+	  }
+	}
+      }
+
+      try {
+	m_Classifier.buildClassifier(train);
+      }
+      catch (Exception e) {
+	// the regression and the other tests report this
+	continue;
+      }
+
+      expected = new double[test.numInstances()][];
+      for (n = 0; n < test.numInstances(); n++)
+	expected[n] = m_Classifier.distributionForInstance(test.instance(n));
+
+      // rebuilt, since some classifiers (e.g., LWL) update their state
+      // with every instance they classify
+      m_Classifier.buildClassifier(train);
+      dists = new double[test.numInstances()][];
+      m_Classifier.distributionsForInstances(test, dists);
+      for (n = 0; n < test.numInstances(); n++) {
+	assertEquals("length of distribution " + n + " (" 
+	    + getClassTypeString(i) + " class)", 
+	    expected[n].length, dists[n].length);
+	for (k = 0; k < expected[n].length; k++)
+	  assertEquals("distribution " + n + " (" + getClassTypeString(i) 
+	      + " class)", expected[n][k], dists[n][k], 1e-12);
+      }
+    }
+  }
+  
   /**
    * tests the listing of the options
    */
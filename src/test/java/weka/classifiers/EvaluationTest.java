@@ -21,11 +21,19 @@ package weka.classifiers;
 
 import java.io.IOException;
 import java.io.StringReader;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import junit.framework.Test;
 import junit.framework.TestCase;
 import junit.framework.TestSuite;
+import weka.classifiers.trees.J48;
+import weka.classifiers.trees.REPTree;
+import weka.core.Attribute;
 import weka.core.Instances;
+import weka.core.Range;
+import weka.core.TestInstances;
 
 /**
  * Tests Evaluation. So far just does a simple regression test for
@@ -80,6 +88,64 @@ public class EvaluationTest extends TestCase {
     }
   }
 
+  /**
+   * Cross-validates the classifier sequentially, with a number of execution
+   * slots and on an executor, and checks that the statistics, the confusion
+   * matrix and the printed predictions are the same.
+   * 
+   * @param classifier the classifier to cross-validate
+   * @param data the data
+   * @throws Exception if the cross-validation fails
+   */
+  protected void checkParallelCrossValidation(Classifier classifier,
+    Instances data) throws Exception {
+
+    Evaluation serial = new Evaluation(data);
+    StringBuffer serialPreds = new StringBuffer();
+    serial.crossValidateModel(classifier, data, 10, new Random(1),
+      serialPreds, new Range("first"), Boolean.TRUE);
+
+    Evaluation slots = new Evaluation(data);
+    slots.crossValidateModel(classifier, data, 10, new Random(1), 3);
+
+    Evaluation executor = new Evaluation(data);
+    StringBuffer executorPreds = new StringBuffer();
+    ExecutorService service = Executors.newFixedThreadPool(2);
+    try {
+      executor.crossValidateModel(classifier, data, 10, new Random(1),
+        service, executorPreds, new Range("first"), Boolean.TRUE);
+    } finally {
+      service.shutdown();
+    }
+
+    Evaluation[] parallel = new Evaluation[] { slots, executor };
+    for (int i = 0; i < parallel.length; i++) {
+      assertEquals(serial.toSummaryString(), parallel[i].toSummaryString());
+      if (data.classAttribute().isNominal()) {
+        assertEquals(serial.toMatrixString(), parallel[i].toMatrixString());
+        assertEquals(serial.toClassDetailsString(),
+          parallel[i].toClassDetailsString());
+      }
+    }
+    assertEquals(serialPreds.toString(), executorPreds.toString());
+  }
+
+  public void testParallelCrossValidation() throws Exception {
+    TestInstances test = new TestInstances();
+    test.setNumNominal(3);
+    test.setNumNumeric(3);
+    test.setNumInstances(200);
+
+    test.setClassType(Attribute.NOMINAL);
+    test.setNumClasses(3);
+    J48 j48 = new J48();
+    j48.setUnpruned(true);
+    checkParallelCrossValidation(j48, test.generate());
+
+    test.setClassType(Attribute.NUMERIC);
+    checkParallelCrossValidation(new REPTree(), test.generate());
+  }
+
   public static Test suite() {
     return new TestSuite(weka.classifiers.EvaluationTest.class);
   }
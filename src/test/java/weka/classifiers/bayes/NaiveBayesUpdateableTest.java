@@ -22,6 +22,11 @@ package weka.classifiers.bayes;
 
 import weka.classifiers.AbstractClassifierTest;
 import weka.classifiers.Classifier;
+import weka.core.Attribute;
+import weka.core.Instances;
+import weka.core.TestInstances;
+
+import java.util.Random;
 
 import junit.framework.Test;
 import junit.framework.TestSuite;
@@ -42,6 +47,51 @@ public class NaiveBayesUpdateableTest extends AbstractClassifierTest {
     return new NaiveBayesUpdateable();
   }
 
+  /**
+   * tests whether updating with a set of instances at once gives the same
+   * model as updating with one instance after the other, also with missing
+   * values, instance weights and kernel estimators
+   */
+  public void testBulkUpdate() throws Exception {
+    TestInstances test = new TestInstances();
+    test.setClassType(Attribute.NOMINAL);
+    test.setNumClasses(3);
+    test.setClassIndex(2);
+    test.setNumNominal(3);
+    test.setNumNominalValues(4);
+    test.setNumNumeric(3);
+    test.setNumInstances(200);
+    Instances data = test.generate();
+    Random random = new Random(1);
+    for (int i = 0; i < data.numInstances(); i++) {
+      data.instance(i).setWeight(1 + random.nextInt(3) / 2.0);
+      if (random.nextInt(10) == 0)
+	data.instance(i).setMissing(random.nextInt(data.numAttributes()));
+    }
+
+    boolean[] kernel = new boolean[]{false, true};
+    for (int k = 0; k < kernel.length; k++) {
+      NaiveBayesUpdateable single = new NaiveBayesUpdateable();
+      single.setUseKernelEstimator(kernel[k]);
+      single.buildClassifier(new Instances(data, 0));
+      for (int i = 0; i < data.numInstances(); i++)
+	single.updateClassifier(data.instance(i));
+
+      NaiveBayesUpdateable bulk = new NaiveBayesUpdateable();
+      bulk.setUseKernelEstimator(kernel[k]);
+      bulk.buildClassifier(new Instances(data, 0));
+      bulk.updateClassifier(data);
+
+      assertEquals(single.toString(), bulk.toString());
+      for (int i = 0; i < data.numInstances(); i++) {
+	double[] expected = single.distributionForInstance(data.instance(i));
+	double[] actual = bulk.distributionForInstance(data.instance(i));
+	for (int j = 0; j < expected.length; j++)
+	  assertEquals(expected[j], actual[j], 0);
+      }
+    }
+  }
+
   public static Test suite() {
     return new TestSuite(NaiveBayesUpdateableTest.class);
   }
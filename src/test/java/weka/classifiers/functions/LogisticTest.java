@@ -22,6 +22,9 @@ package weka.classifiers.functions;
 
 import weka.classifiers.AbstractClassifierTest;
 import weka.classifiers.Classifier;
+import weka.core.Instances;
+import weka.core.SparseInstance;
+import weka.core.TestInstances;
 
 import junit.framework.Test;
 import junit.framework.TestSuite;
@@ -42,6 +45,40 @@ public class LogisticTest extends AbstractClassifierTest {
     return new Logistic();
   }
 
+  /**
+   * tests whether a model built from sparse instances, which are not
+   * densified, predicts the same as one built from the dense instances
+   */
+  public void testSparseData() {
+    try {
+      TestInstances test = new TestInstances();
+      test.setNumNominal(2);
+      test.setNumNumeric(4);
+      test.setNumInstances(40);
+      test.setClassIndex(2);
+      Instances dense = test.generate();
+      Instances sparse = new Instances(dense, dense.numInstances());
+      for (int i = 0; i < dense.numInstances(); i++)
+	sparse.add(new SparseInstance(dense.instance(i)));
+
+      Logistic denseModel = new Logistic();
+      denseModel.buildClassifier(dense);
+      Logistic sparseModel = new Logistic();
+      sparseModel.buildClassifier(sparse);
+      for (int i = 0; i < dense.numInstances(); i++) {
+	double[] expected = denseModel.distributionForInstance(dense.instance(i));
+	double[] actual = sparseModel.distributionForInstance(sparse.instance(i));
+	for (int j = 0; j < expected.length; j++)
+	  assertEquals("Different distribution for instance #" + (i+1),
+	      expected[j], actual[j], 1e-6);
+      }
+    }
+    catch (Exception e) {
+      e.printStackTrace();
+      fail("Sparse data failed: " + e);
+    }
+  }
+
   public static Test suite() {
     return new TestSuite(LogisticTest.class);
   }
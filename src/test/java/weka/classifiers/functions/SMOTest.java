@@ -22,6 +22,9 @@ package weka.classifiers.functions;
 
 import weka.classifiers.AbstractClassifierTest;
 import weka.classifiers.Classifier;
+import weka.core.Attribute;
+import weka.core.Instances;
+import weka.core.TestInstances;
 
 import junit.framework.Test;
 import junit.framework.TestSuite;
@@ -42,6 +45,63 @@ public class SMOTest extends AbstractClassifierTest {
     return new SMO();
   }
 
+  /**
+   * builds the pairwise models of a multi-class problem with one and with
+   * three execution slots and compares the results
+   *
+   * @param logistic whether to fit logistic models to the outputs
+   * @throws Exception if the classifiers can't be built
+   */
+  protected void checkNumExecutionSlots(boolean logistic) throws Exception {
+    TestInstances test = new TestInstances();
+    test.setClassType(Attribute.NOMINAL);
+    test.setNumClasses(6);
+    test.setNumNominal(3);
+    test.setNumNumeric(3);
+    test.setNumInstances(200);
+    Instances data = test.generate();
+
+    SMO[] classifiers = new SMO[2];
+    for (int i = 0; i < classifiers.length; i++) {
+      classifiers[i] = new SMO();
+      classifiers[i].setBuildLogisticModels(logistic);
+      classifiers[i].setNumExecutionSlots((i == 0) ? 1 : 3);
+      classifiers[i].buildClassifier(data);
+    }
+
+    assertEquals(classifiers[0].toString(), classifiers[1].toString());
+    for (int n = 0; n < data.numInstances(); n++) {
+      double[] expected = classifiers[0].distributionForInstance(data.instance(n));
+      double[] actual = classifiers[1].distributionForInstance(data.instance(n));
+      for (int j = 0; j < expected.length; j++)
+        assertEquals(expected[j], actual[j], 0);
+    }
+  }
+
+  /**
+   * tests whether several execution slots give the same pairwise models
+   */
+  public void testNumExecutionSlots() throws Exception {
+    checkNumExecutionSlots(false);
+  }
+
+  /**
+   * tests whether several execution slots give the same pairwise models
+   * when logistic models are fit to the outputs (-M)
+   */
+  public void testNumExecutionSlotsLogistic() throws Exception {
+    checkNumExecutionSlots(true);
+  }
+
+  /**
+   * tests whether the batch predictions are the same as the ones for
+   * single instances when logistic models are fit to the outputs (-M)
+   */
+  public void testDistributionsForInstancesLogistic() throws Exception {
+    ((SMO) m_Classifier).setBuildLogisticModels(true);
+    testDistributionsForInstances();
+  }
+
   public static Test suite() {
     return new TestSuite(SMOTest.class);
   }
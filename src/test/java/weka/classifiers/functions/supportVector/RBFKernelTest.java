@@ -22,6 +22,9 @@ package weka.classifiers.functions.supportVector;
 
 import weka.classifiers.functions.supportVector.AbstractKernelTest;
 import weka.classifiers.functions.supportVector.Kernel;
+import weka.core.Attribute;
+import weka.core.Instances;
+import weka.core.TestInstances;
 
 import junit.framework.Test;
 import junit.framework.TestSuite;
@@ -45,6 +48,147 @@ public class RBFKernelTest
     return new RBFKernel();
   }
 
+  /**
+   * generates numeric data with a nominal class
+   *
+   * @param numInstances the number of instances
+   * @return the data
+   * @throws Exception if the data can't be generated
+   */
+  protected Instances generateData(int numInstances) throws Exception {
+    TestInstances test = new TestInstances();
+    test.setClassType(Attribute.NOMINAL);
+    test.setNumNominal(0);
+    test.setNumNumeric(5);
+    test.setNumInstances(numInstances);
+    return test.generate();
+  }
+
+  /**
+   * builds a kernel with the given cache mode and row cache memory
+   *
+   * @param data the data to build the kernel with
+   * @param cacheSize the cache mode
+   * @param cacheMemory the memory of the row cache in megabytes
+   * @return the kernel
+   * @throws Exception if the kernel can't be built
+   */
+  protected RBFKernel newKernel(Instances data, int cacheSize,
+      double cacheMemory) throws Exception {
+    RBFKernel kernel = new RBFKernel();
+    kernel.setCacheSize(cacheSize);
+    kernel.setCacheMemory(cacheMemory);
+    kernel.buildKernel(data);
+    return kernel;
+  }
+
+  /**
+   * evaluates all pairs of instances twice and compares the results with
+   * the full kernel matrix
+   *
+   * @param kernel the kernel to evaluate
+   * @param full the kernel with the full cache
+   * @param data the data
+   * @throws Exception if the kernel can't be evaluated
+   */
+  protected void checkAllPairs(Kernel kernel, Kernel full, Instances data)
+    throws Exception {
+    for (int pass = 0; pass < 2; pass++) {
+      for (int i = 0; i < data.numInstances(); i++) {
+	for (int j = 0; j < data.numInstances(); j++)
+	  assertEquals(full.eval(i, j, data.instance(i)),
+	      kernel.eval(i, j, data.instance(i)), 1e-12);
+      }
+    }
+  }
+
+  /**
+   * tests whether the row cache evaluates every entry once if all rows fit
+   * into the memory
+   */
+  public void testRowCache() throws Exception {
+    Instances data = generateData(100);
+    int n = data.numInstances();
+    RBFKernel full = newKernel(data, 0, 40);
+    RBFKernel kernel = newKernel(data, 1, 40);
+
+    checkAllPairs(kernel, full, data);
+    assertEquals(n, kernel.m_maxRows);
+    assertEquals(n * (n + 1) / 2, kernel.numCacheMisses());
+    assertEquals(kernel.numCacheMisses(), kernel.numEvals());
+    assertEquals(2 * n * n, kernel.numCacheHits() + kernel.numCacheMisses());
+  }
+
+  /**
+   * tests whether a small memory budget limits the number of cached rows
+   * and evicts rows without changing the results
+   */
+  public void testRowCacheEviction() throws Exception {
+    Instances data = generateData(500);
+    int n = data.numInstances();
+    RBFKernel full = newKernel(data, 0, 40);
+
+    // a row takes 8 * 500 bytes, so 0.2 MB hold 52 rows
+    RBFKernel kernel = newKernel(data, 1, 0.2);
+    checkAllPairs(kernel, full, data);
+    assertEquals(52, kernel.m_maxRows);
+    assertEquals(52, kernel.m_numRows);
+    assertTrue(kernel.numCacheMisses() > n * (n + 1) / 2);
+    assertEquals(kernel.numCacheMisses(), kernel.numEvals());
+    assertEquals(2 * n * n, kernel.numCacheHits() + kernel.numCacheMisses());
+
+    // the smallest cache still holds two rows
+    kernel = newKernel(data, 1, 0.001);
+    checkAllPairs(kernel, full, data);
+    assertEquals(2, kernel.m_maxRows);
+    assertEquals(kernel.numCacheMisses(), kernel.numEvals());
+    assertEquals(2 * n * n, kernel.numCacheHits() + kernel.numCacheMisses());
+  }
+
+  /**
+   * tests whether several threads can evaluate one kernel with a small row
+   * cache at the same time
+   */
+  public void testConcurrentEval() throws Exception {
+    final Instances data = generateData(300);
+    final int n = data.numInstances();
+    final RBFKernel full = newKernel(data, 0, 40);
+    final RBFKernel kernel = newKernel(data, 1, 0.05);
+
+    final int numThreads = 4;
+    final Throwable[] errors = new Throwable[numThreads];
+    Thread[] threads = new Thread[numThreads];
+    for (int t = 0; t < numThreads; t++) {
+      final int offset = t;
+      threads[t] = new Thread() {
+	public void run() {
+	  try {
+	    for (int k = 0; k < n; k++) {
+	      int i = (k + offset * n / numThreads) % n;
+	      for (int j = 0; j < n; j++)
+		assertEquals(full.eval(i, j, data.instance(i)),
+		    kernel.eval(i, j, data.instance(i)), 1e-12);
+	    }
+	  }
+	  catch (Throwable e) {
+	    errors[offset] = e;
+	  }
+	}
+      };
+      threads[t].start();
+    }
+    for (int t = 0; t < numThreads; t++) {
+      threads[t].join();
+      if (errors[t] != null)
+	fail("Thread " + t + " failed: " + errors[t]);
+    }
+
+    assertTrue(kernel.m_numRows <= kernel.m_maxRows);
+    assertEquals(kernel.numCacheMisses(), kernel.numEvals());
+    assertEquals(numThreads * n * n,
+	kernel.numCacheHits() + kernel.numCacheMisses());
+  }
+
   public static Test suite() {
     return new TestSuite(RBFKernelTest.class);
   }
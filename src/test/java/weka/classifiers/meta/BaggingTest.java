@@ -22,6 +22,9 @@ package weka.classifiers.meta;
 
 import weka.classifiers.AbstractClassifierTest;
 import weka.classifiers.Classifier;
+import weka.core.Attribute;
+import weka.core.Instances;
+import weka.core.TestInstances;
 
 import junit.framework.Test;
 import junit.framework.TestSuite;
@@ -42,6 +45,38 @@ public class BaggingTest extends AbstractClassifierTest {
     return new Bagging();
   }
 
+  /**
+   * tests whether the ensemble built with several execution slots is the
+   * same as the one built with a single slot, including the out-of-bag error
+   */
+  public void testNumExecutionSlots() throws Exception {
+    TestInstances test = new TestInstances();
+    test.setClassType(Attribute.NOMINAL);
+    test.setNumClasses(3);
+    test.setNumNominal(3);
+    test.setNumNumeric(3);
+    test.setNumInstances(200);
+    Instances data = test.generate();
+
+    Bagging[] classifiers = new Bagging[2];
+    for (int i = 0; i < classifiers.length; i++) {
+      classifiers[i] = new Bagging();
+      classifiers[i].setCalcOutOfBag(true);
+      classifiers[i].setNumExecutionSlots((i == 0) ? 1 : 3);
+      classifiers[i].buildClassifier(data);
+    }
+
+    assertEquals(classifiers[0].toString(), classifiers[1].toString());
+    assertEquals(classifiers[0].measureOutOfBagError(),
+        classifiers[1].measureOutOfBagError(), 0);
+    for (int n = 0; n < data.numInstances(); n++) {
+      double[] expected = classifiers[0].distributionForInstance(data.instance(n));
+      double[] actual = classifiers[1].distributionForInstance(data.instance(n));
+      for (int j = 0; j < expected.length; j++)
+        assertEquals(expected[j], actual[j], 0);
+    }
+  }
+
   public static Test suite() {
     return new TestSuite(BaggingTest.class);
   }
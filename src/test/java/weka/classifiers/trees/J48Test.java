@@ -22,6 +22,14 @@ package weka.classifiers.trees;
 
 import weka.classifiers.AbstractClassifierTest;
 import weka.classifiers.Classifier;
+import weka.classifiers.trees.j48.CompiledTree;
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.core.Utils;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.util.Random;
 
 import junit.framework.Test;
 import junit.framework.TestSuite;
@@ -42,6 +50,55 @@ public class J48Test extends AbstractClassifierTest {
     return new J48();
   }
 
+  /**
+   * returns the heart-c data with about a tenth of the attribute values set
+   * to missing, which gives trees with nominal and numeric splits
+   *
+   * @return the data
+   * @throws Exception if the data can't be loaded
+   */
+  public static Instances missingValuesData() throws Exception {
+    Instances data = new Instances(new BufferedReader(new InputStreamReader(
+        ClassLoader.getSystemResourceAsStream(
+          "weka/classifiers/pmml/data/heart-c.arff"))));
+    data.setClassIndex(data.numAttributes() - 1);
+    Random random = new Random(1);
+    for (int i = 0; i < data.numInstances(); i++) {
+      for (int j = 0; j < data.numAttributes(); j++) {
+	if ((j != data.classIndex()) && (random.nextInt(10) == 0))
+	  data.instance(i).setMissing(j);
+      }
+    }
+    return data;
+  }
+
+  /**
+   * tests whether the compiled tree gives the same distributions and
+   * predictions as the tree it was compiled from, pruned and unpruned,
+   * with multi-way and binary splits
+   */
+  public void testCompile() throws Exception {
+    Instances data = missingValuesData();
+    String[] options = new String[]{"", "-U", "-B", "-U -B"};
+    for (int n = 0; n < options.length; n++) {
+      J48 tree = new J48();
+      tree.setOptions(Utils.splitOptions(options[n]));
+      tree.buildClassifier(data);
+      CompiledTree compiled = tree.compile();
+
+      double[] dist = new double[data.numClasses()];
+      for (int i = 0; i < data.numInstances(); i++) {
+	Instance inst = data.instance(i);
+	double[] expected = tree.distributionForInstance(inst);
+	compiled.distribution(inst.toDoubleArray(), dist);
+	for (int j = 0; j < expected.length; j++)
+	  assertEquals("options: " + options[n], expected[j], dist[j], 1e-12);
+	assertEquals("options: " + options[n], (int) tree.classifyInstance(inst),
+	    compiled.predict(inst.toDoubleArray()));
+      }
+    }
+  }
+
   public static Test suite() {
     return new TestSuite(J48Test.class);
   }
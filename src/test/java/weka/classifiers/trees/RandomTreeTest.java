@@ -22,6 +22,9 @@ package weka.classifiers.trees;
 
 import weka.classifiers.AbstractClassifierTest;
 import weka.classifiers.Classifier;
+import weka.core.Attribute;
+import weka.core.Instances;
+import weka.core.TestInstances;
 
 import junit.framework.Test;
 import junit.framework.TestSuite;
@@ -45,6 +48,36 @@ public class RandomTreeTest
     return new RandomTree();
   }
 
+  /**
+   * tests whether the tree grown with several execution slots is the same
+   * for different numbers of slots
+   */
+  public void testNumExecutionSlots() throws Exception {
+    TestInstances test = new TestInstances();
+    test.setClassType(Attribute.NOMINAL);
+    test.setNumClasses(3);
+    test.setNumNominal(3);
+    test.setNumNumeric(5);
+    test.setNumInstances(5000);
+    Instances data = test.generate();
+
+    RandomTree[] trees = new RandomTree[3];
+    for (int i = 0; i < trees.length; i++) {
+      trees[i] = new RandomTree();
+      trees[i].setNumExecutionSlots(i + 2);
+      trees[i].buildClassifier(data);
+    }
+    for (int i = 1; i < trees.length; i++) {
+      assertEquals(trees[0].toString(), trees[i].toString());
+      for (int n = 0; n < data.numInstances(); n++) {
+	double[] expected = trees[0].distributionForInstance(data.instance(n));
+	double[] actual = trees[i].distributionForInstance(data.instance(n));
+	for (int j = 0; j < expected.length; j++)
+	  assertEquals(expected[j], actual[j], 0);
+      }
+    }
+  }
+
   public static Test suite() {
     return new TestSuite(RandomTreeTest.class);
   }
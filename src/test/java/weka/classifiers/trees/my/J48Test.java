@@ -0,0 +1,205 @@
+/*
+ *    This program is free software; you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation; either version 2 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program; if not, write to the Free Software
+ *    Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+package weka.classifiers.trees.my;
+
+import weka.classifiers.trees.j48.CompiledTree;
+import weka.core.Instance;
+import weka.core.Instances;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Tests trees.my.J48. Run from the command line with:<p/>
+ * java weka.classifiers.trees.my.J48Test
+ *
+ * @version $Revision: 1.1 $
+ */
+public class J48Test
+  extends TestCase {
+
+  /**
+   * Constructs the <code>J48Test</code>.
+   *
+   * @param name 	the name of the test class
+   */
+  public J48Test(String name) {
+    super(name);
+  }
+
+  /**
+   * tests that instances with missing values are passed down the non-empty
+   * children, so that their class probabilities add up to one, and that the
+   * compiled tree gives the same probabilities
+   */
+  public void testMissingValues() throws Exception {
+    Instances data = weka.classifiers.trees.J48Test.missingValuesData();
+    boolean[] presort = new boolean[]{false, true};
+    for (int n = 0; n < presort.length; n++) {
+      J48 tree = new J48();
+      tree.setPresort(presort[n]);
+      tree.buildClassifier(data);
+      CompiledTree compiled = tree.compile();
+
+      double[] dist = new double[data.numClasses()];
+      int numMissing = 0;
+      for (int i = 0; i < data.numInstances(); i++) {
+	Instance inst = data.instance(i);
+	if (inst.hasMissingValue())
+	  numMissing++;
+	double[] expected = tree.distributionForInstance(inst, false);
+	double sum = 0;
+	for (int j = 0; j < expected.length; j++)
+	  sum += expected[j];
+	assertEquals(1, sum, 1e-12);
+	compiled.distribution(inst.toDoubleArray(), dist);
+	for (int j = 0; j < expected.length; j++)
+	  assertEquals(expected[j], dist[j], 1e-12);
+      }
+      assertTrue(numMissing > 0);
+    }
+  }
+
+  /**
+   * checks that two trees have the same structure, splits and class
+   * distributions
+   *
+   * @param expected the reference tree
+   * @param actual the tree to check
+   * @param tol the tolerance for the split points and distributions
+   */
+  protected void assertSameTree(J48 expected, J48 actual, double tol) {
+    assertEquals(expected.leaf, actual.leaf);
+    assertEquals(expected.empty, actual.empty);
+    assertEquals(expected.localModel.getAttributeIndex(),
+	actual.localModel.getAttributeIndex());
+    assertEquals(expected.localModel.getSplitPoint(),
+	actual.localModel.getSplitPoint(), tol);
+    double[][] expectedDist = expected.localModel.getDistribution().matrix();
+    double[][] actualDist = actual.localModel.getDistribution().matrix();
+    assertEquals(expectedDist.length, actualDist.length);
+    for (int i = 0; i < expectedDist.length; i++) {
+      for (int j = 0; j < expectedDist[i].length; j++)
+	assertEquals(expectedDist[i][j], actualDist[i][j], tol);
+    }
+    if (!expected.leaf) {
+      assertEquals(expected.children.length, actual.children.length);
+      for (int i = 0; i < expected.children.length; i++)
+	assertSameTree(expected.children[i], actual.children[i], tol);
+    }
+  }
+
+  /**
+   * checks that two trees give the same class distributions for the data
+   *
+   * @param expected the reference tree
+   * @param actual the tree to check
+   * @param data the data to classify
+   * @param tol the tolerance for the probabilities
+   * @throws Exception if the instances can't be classified
+   */
+  protected void assertSamePredictions(J48 expected, J48 actual,
+      Instances data, double tol) throws Exception {
+    for (int i = 0; i < data.numInstances(); i++) {
+      Instance inst = data.instance(i);
+      double[] expectedDist = expected.distributionForInstance(inst, false);
+      double[] actualDist = actual.distributionForInstance(inst, false);
+      for (int j = 0; j < expectedDist.length; j++)
+	assertEquals(expectedDist[j], actualDist[j], tol);
+    }
+  }
+
+  /**
+   * tests that evaluating the candidate splits with several threads gives
+   * the same tree as the serial evaluation, with and without presorting
+   */
+  public void testNumExecutionSlots() throws Exception {
+    Instances data = weka.classifiers.trees.J48Test.missingValuesData();
+    boolean[] presort = new boolean[]{false, true};
+    for (int n = 0; n < presort.length; n++) {
+      J48 serial = new J48();
+      serial.setPresort(presort[n]);
+      serial.buildClassifier(data);
+
+      J48 parallel = new J48();
+      parallel.setPresort(presort[n]);
+      parallel.setNumExecutionSlots(3);
+      parallel.buildClassifier(data);
+
+      assertSameTree(serial, parallel, 0);
+      assertSamePredictions(serial, parallel, data, 0);
+    }
+  }
+
+  /**
+   * tests that the histogram splits give the exact tree when there are at
+   * least as many bins as distinct values
+   */
+  public void testMaxBinsExact() throws Exception {
+    Instances data = weka.classifiers.trees.J48Test.missingValuesData();
+    J48 exact = new J48();
+    exact.buildClassifier(data);
+
+    J48 binned = new J48();
+    binned.setMaxBins(data.numInstances());
+    binned.buildClassifier(data);
+
+    assertSameTree(exact, binned, 1e-9);
+    assertEquals(exact.numNodes(), binned.numNodes());
+    assertSamePredictions(exact, binned, data, 1e-9);
+  }
+
+  /**
+   * tests that trees with only a few bins per attribute can be built and
+   * classify instances with missing values
+   */
+  public void testFewBins() throws Exception {
+    Instances data = weka.classifiers.trees.J48Test.missingValuesData();
+    int[] maxBins = new int[]{2, 4, 16};
+    for (int n = 0; n < maxBins.length; n++) {
+      J48 tree = new J48();
+      tree.setMaxBins(maxBins[n]);
+      tree.buildClassifier(data);
+      CompiledTree compiled = tree.compile();
+      assertTrue(tree.numNodes() > 1);
+
+      double[] dist = new double[data.numClasses()];
+      for (int i = 0; i < data.numInstances(); i++) {
+	Instance inst = data.instance(i);
+	double[] expected = tree.distributionForInstance(inst, false);
+	double sum = 0;
+	for (int j = 0; j < expected.length; j++)
+	  sum += expected[j];
+	assertEquals("bins: " + maxBins[n], 1, sum, 1e-12);
+	int predicted = (int) tree.classifyInstance(inst);
+	assertTrue((predicted >= 0) && (predicted < data.numClasses()));
+	compiled.distribution(inst.toDoubleArray(), dist);
+	for (int j = 0; j < expected.length; j++)
+	  assertEquals("bins: " + maxBins[n], expected[j], dist[j], 1e-12);
+      }
+    }
+  }
+
+  public static Test suite() {
+    return new TestSuite(J48Test.class);
+  }
+
+  public static void main(String[] args){
+    junit.textui.TestRunner.run(suite());
+  }
+}
@@ -0,0 +1,136 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * Copyright (C) 2005 University of Waikato, Hamilton, New Zealand
+ */
+
+package weka.clusterers;
+
+import weka.core.Attribute;
+import weka.core.FastVector;
+import weka.core.Instance;
+import weka.core.Instances;
+
+import java.util.Random;
+
+/**
+ * Abstract Test class for the clusterers that query a database of the
+ * package weka.clusterers.forOPTICSAndDBScan, i.e., DBSCAN and OPTICS.
+ *
+ * @version $Revision: 1.1 $
+ */
+public abstract class AbstractDatabaseClustererTest 
+  extends AbstractClustererTest {
+
+  /** the KD-tree database */
+  public final static String KDTREE_DATABASE = 
+    "weka.clusterers.forOPTICSAndDBScan.Databases.KDTreeDatabase";
+
+  /** the Manhattan distance */
+  public final static String MANHATTAN_DISTANCE = 
+    "weka.clusterers.forOPTICSAndDBScan.DataObjects.ManhattanDataObject";
+
+  public AbstractDatabaseClustererTest(String name) { 
+    super(name);  
+  }
+
+  /**
+   * Creates a clusterer with the given epsilon.
+   *
+   * @param epsilon	the radius of the neighbourhoods
+   * @return		the clusterer
+   */
+  protected abstract Clusterer getClusterer(double epsilon);
+
+  /**
+   * Sets the database type of the clusterer.
+   *
+   * @param clusterer	the clusterer to configure
+   * @param type	the classname of the database
+   */
+  protected abstract void setDatabaseType(Clusterer clusterer, String type);
+
+  /**
+   * Sets the distance type of the clusterer.
+   *
+   * @param clusterer	the clusterer to configure
+   * @param type	the classname of the data objects
+   */
+  protected abstract void setDistanceType(Clusterer clusterer, String type);
+
+  /**
+   * generates four blobs of points in the plane
+   *
+   * @return		the data
+   */
+  protected Instances blobs() {
+    FastVector	atts = new FastVector();
+    atts.addElement(new Attribute("x"));
+    atts.addElement(new Attribute("y"));
+    Instances data = new Instances("blobs", atts, 0);
+    Random random = new Random(1);
+    for (int n = 0; n < 300; n++) {
+      int blob = random.nextInt(4);
+      data.add(new Instance(1, new double[]{
+	  blob + random.nextGaussian() * 0.3, 
+	  (blob % 2) + random.nextGaussian() * 0.3}));
+    }
+    return data;
+  }
+
+  /**
+   * removes the lines with the index and the elapsed time from the output
+   * of the clusterer
+   *
+   * @param clusterer	the clusterer
+   * @return		the remaining output
+   */
+  protected String results(Clusterer clusterer) {
+    StringBuffer	result = new StringBuffer();
+    String[]		lines = clusterer.toString().split("\n");
+    for (int i = 0; i < lines.length; i++) {
+      if (!lines[i].startsWith("Index") && !lines[i].startsWith("Elapsed"))
+	result.append(lines[i] + "\n");
+    }
+    return result.toString();
+  }
+
+  /**
+   * tests that the KDTreeDatabase produces the same results as the
+   * SequentialDatabase, for the Euclidean and the Manhattan distance
+   */
+  public void testKDTreeDatabase() {
+    Instances data = blobs();
+
+    try {
+      Clusterer sequential = getClusterer(0.05);
+      Clusterer indexed = getClusterer(0.05);
+      setDatabaseType(indexed, KDTREE_DATABASE);
+      for (int i = 0; i < 2; i++) {
+	if (i == 1) {
+	  setDistanceType(sequential, MANHATTAN_DISTANCE);
+	  setDistanceType(indexed, MANHATTAN_DISTANCE);
+	}
+	sequential.buildClusterer(data);
+	indexed.buildClusterer(data);
+	assertEquals(results(sequential), results(indexed));
+      }
+    }
+    catch (Exception e) {
+      fail("Clustering failed: " + e);
+    }
+  }
+}
@@ -19,7 +19,7 @@
 
 package weka.clusterers;
 
-import weka.clusterers.AbstractClustererTest;
+import weka.clusterers.AbstractDatabaseClustererTest;
 import weka.clusterers.Clusterer;
 
 import junit.framework.Test;
@@ -33,7 +33,7 @@ import junit.framework.TestSuite;
  * @version $Revision: 8108 $
  */
 public class DBSCANTest 
-  extends AbstractClustererTest {
+  extends AbstractDatabaseClustererTest {
 
   public DBSCANTest(String name) { 
     super(name);  
@@ -44,6 +44,23 @@ public class DBSCANTest
     return new DBSCAN();
   }
 
+  /** Creates a DBSCAN with the given epsilon */
+  protected Clusterer getClusterer(double epsilon) {
+    DBSCAN dbscan = (DBSCAN) getClusterer();
+    dbscan.setEpsilon(epsilon);
+    return dbscan;
+  }
+
+  /** Sets the database type of DBSCAN */
+  protected void setDatabaseType(Clusterer clusterer, String type) {
+    ((DBSCAN) clusterer).setDatabase_Type(type);
+  }
+
+  /** Sets the distance type of DBSCAN */
+  protected void setDistanceType(Clusterer clusterer, String type) {
+    ((DBSCAN) clusterer).setDatabase_distanceType(type);
+  }
+
   public static Test suite() {
     return new TestSuite(DBSCANTest.class);
   }
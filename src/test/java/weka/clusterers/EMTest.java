@@ -22,6 +22,8 @@ package weka.clusterers;
 
 import weka.clusterers.AbstractClustererTest;
 import weka.clusterers.Clusterer;
+import weka.core.Instances;
+import weka.core.TestInstances;
 
 import junit.framework.Test;
 import junit.framework.TestSuite;
@@ -45,6 +47,49 @@ public class EMTest
     return new EM();
   }
 
+  /**
+   * builds EM with 1 and 3 execution slots and compares the models
+   *
+   * @param numClusters the number of clusters, -1 for cross-validation
+   * @throws Exception if the clusterers can't be built
+   */
+  protected void checkNumExecutionSlots(int numClusters) throws Exception {
+    TestInstances test = new TestInstances();
+    test.setClassIndex(TestInstances.NO_CLASS);
+    test.setNumNominal(2);
+    test.setNumNumeric(3);
+    test.setNumInstances(200);
+    Instances data = test.generate();
+
+    EM serial = new EM();
+    serial.setNumClusters(numClusters);
+    serial.setNumExecutionSlots(1);
+    serial.buildClusterer(data);
+    EM parallel = new EM();
+    parallel.setNumClusters(numClusters);
+    parallel.setNumExecutionSlots(3);
+    parallel.buildClusterer(data);
+
+    assertEquals(serial.numberOfClusters(), parallel.numberOfClusters());
+    assertEquals(serial.toString(), parallel.toString());
+  }
+
+  /**
+   * tests whether several execution slots give the same model for a fixed
+   * number of clusters
+   */
+  public void testNumExecutionSlots() throws Exception {
+    checkNumExecutionSlots(3);
+  }
+
+  /**
+   * tests whether several execution slots select the same number of
+   * clusters by cross-validation
+   */
+  public void testNumExecutionSlotsCV() throws Exception {
+    checkNumExecutionSlots(-1);
+  }
+
   public static Test suite() {
     return new TestSuite(EMTest.class);
   }
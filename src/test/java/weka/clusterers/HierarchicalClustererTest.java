@@ -22,6 +22,13 @@ package weka.clusterers;
 
 import weka.clusterers.AbstractClustererTest;
 import weka.clusterers.Clusterer;
+import weka.core.Attribute;
+import weka.core.FastVector;
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.core.Utils;
+
+import java.util.Random;
 
 import junit.framework.Test;
 import junit.framework.TestSuite;
@@ -45,6 +52,45 @@ public class HierarchicalClustererTest
     return new HierarchicalClusterer();
   }
 
+  /**
+   * tests that the memory efficient algorithms build the same hierarchy and
+   * clusters as the default ones for single, complete and average link
+   */
+  public void testMemoryEfficient() {
+    FastVector	atts = new FastVector();
+    atts.addElement(new Attribute("x"));
+    atts.addElement(new Attribute("y"));
+    Instances data = new Instances("blobs", atts, 0);
+    Random random = new Random(1);
+    for (int n = 0; n < 100; n++) {
+      int blob = random.nextInt(3);
+      data.add(new Instance(1, new double[]{
+	  blob + random.nextGaussian() * 0.4, random.nextGaussian() * 0.4}));
+    }
+
+    String[] linkTypes = new String[]{"SINGLE", "COMPLETE", "AVERAGE"};
+    try {
+      for (int i = 0; i < linkTypes.length; i++) {
+	for (int n = 1; n <= 3; n += 2) {
+	  String options = "-P -N " + n + " -L " + linkTypes[i];
+	  HierarchicalClusterer standard = new HierarchicalClusterer();
+	  standard.setOptions(Utils.splitOptions(options));
+	  standard.buildClusterer(data);
+	  HierarchicalClusterer efficient = new HierarchicalClusterer();
+	  efficient.setOptions(Utils.splitOptions(options + " -M"));
+	  efficient.buildClusterer(data);
+	  assertEquals(options, standard.toString(), efficient.toString());
+	  for (int j = 0; j < data.numInstances(); j++)
+	    assertEquals(options, standard.clusterInstance(data.instance(j)), 
+		efficient.clusterInstance(data.instance(j)));
+	}
+      }
+    }
+    catch (Exception e) {
+      fail("Clustering failed: " + e);
+    }
+  }
+
   public static Test suite() {
     return new TestSuite(HierarchicalClustererTest.class);
   }
@@ -19,7 +19,7 @@
 
 package weka.clusterers;
 
-import weka.clusterers.AbstractClustererTest;
+import weka.clusterers.AbstractDatabaseClustererTest;
 import weka.clusterers.Clusterer;
 
 import junit.framework.Test;
@@ -33,7 +33,7 @@ import junit.framework.TestSuite;
  * @version $Revision: 9435 $
  */
 public class OPTICSTest 
-  extends AbstractClustererTest {
+  extends AbstractDatabaseClustererTest {
 
   public OPTICSTest(String name) { 
     super(name);  
@@ -46,6 +46,23 @@ public class OPTICSTest
     return ops;
   }
 
+  /** Creates an OPTICS with the given epsilon */
+  protected Clusterer getClusterer(double epsilon) {
+    OPTICS ops = (OPTICS) getClusterer();
+    ops.setEpsilon(epsilon);
+    return ops;
+  }
+
+  /** Sets the database type of OPTICS */
+  protected void setDatabaseType(Clusterer clusterer, String type) {
+    ((OPTICS) clusterer).setDatabase_Type(type);
+  }
+
+  /** Sets the distance type of OPTICS */
+  protected void setDistanceType(Clusterer clusterer, String type) {
+    ((OPTICS) clusterer).setDatabase_distanceType(type);
+  }
+
   public static Test suite() {
     return new TestSuite(OPTICSTest.class);
   }
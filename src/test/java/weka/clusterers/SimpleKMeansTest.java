@@ -22,6 +22,8 @@ package weka.clusterers;
 
 import weka.clusterers.AbstractClustererTest;
 import weka.clusterers.Clusterer;
+import weka.core.Instances;
+import weka.core.TestInstances;
 
 import junit.framework.Test;
 import junit.framework.TestSuite;
@@ -45,6 +47,109 @@ public class SimpleKMeansTest
     return new SimpleKMeans();
   }
 
+  /**
+   * generates data without a class attribute
+   *
+   * @param numNominal the number of nominal attributes
+   * @param numNumeric the number of numeric attributes
+   * @param numInstances the number of instances
+   * @return the data
+   * @throws Exception if the data can't be generated
+   */
+  protected Instances generateData(int numNominal, int numNumeric,
+      int numInstances) throws Exception {
+    TestInstances test = new TestInstances();
+    test.setClassIndex(TestInstances.NO_CLASS);
+    test.setNumNominal(numNominal);
+    test.setNumNumeric(numNumeric);
+    test.setNumInstances(numInstances);
+    return test.generate();
+  }
+
+  /**
+   * builds a SimpleKMeans with 3 clusters that keeps the assignments
+   *
+   * @return the clusterer
+   * @throws Exception if the clusterer can't be set up
+   */
+  protected SimpleKMeans newKMeans() throws Exception {
+    SimpleKMeans kmeans = new SimpleKMeans();
+    kmeans.setNumClusters(3);
+    kmeans.setPreserveInstancesOrder(true);
+    return kmeans;
+  }
+
+  /**
+   * tests whether Hamerly's bounds give exactly the same clusters
+   */
+  public void testFastDistanceCalc() throws Exception {
+    Instances data = generateData(0, 5, 500);
+
+    SimpleKMeans standard = newKMeans();
+    standard.buildClusterer(data);
+    SimpleKMeans fast = newKMeans();
+    fast.setFastDistanceCalc(true);
+    fast.buildClusterer(data);
+
+    assertEquals(standard.toString(), fast.toString());
+    assertEquals(standard.getSquaredError(), fast.getSquaredError(), 0);
+    int[] expected = standard.getAssignments();
+    int[] actual = fast.getAssignments();
+    for (int i = 0; i < expected.length; i++)
+      assertEquals(expected[i], actual[i]);
+  }
+
+  /**
+   * tests whether several execution slots give the same clusters, with
+   * centroids and errors that only differ by rounding
+   */
+  public void testNumExecutionSlots() throws Exception {
+    Instances data = generateData(2, 4, 500);
+
+    SimpleKMeans serial = newKMeans();
+    serial.buildClusterer(data);
+    SimpleKMeans parallel = newKMeans();
+    parallel.setNumExecutionSlots(3);
+    parallel.buildClusterer(data);
+
+    int[] expected = serial.getAssignments();
+    int[] actual = parallel.getAssignments();
+    for (int i = 0; i < expected.length; i++)
+      assertEquals(expected[i], actual[i]);
+    for (int i = 0; i < serial.getClusterSizes().length; i++)
+      assertEquals(serial.getClusterSizes()[i], parallel.getClusterSizes()[i]);
+    assertEquals(serial.getSquaredError(), parallel.getSquaredError(), 1e-8);
+    Instances centroids = serial.getClusterCentroids();
+    for (int i = 0; i < centroids.numInstances(); i++) {
+      for (int j = 0; j < centroids.numAttributes(); j++)
+	assertEquals(centroids.instance(i).value(j),
+	    parallel.getClusterCentroids().instance(i).value(j), 1e-8);
+    }
+  }
+
+  /**
+   * tests whether mini-batch k-means builds and assigns every instance to
+   * one of the clusters
+   */
+  public void testMiniBatch() throws Exception {
+    Instances data = generateData(0, 5, 1000);
+
+    SimpleKMeans kmeans = newKMeans();
+    kmeans.setMiniBatchSize(50);
+    kmeans.buildClusterer(data);
+
+    int[] assignments = kmeans.getAssignments();
+    assertEquals(data.numInstances(), assignments.length);
+    int[] sizes = new int[kmeans.numberOfClusters()];
+    for (int i = 0; i < assignments.length; i++) {
+      assertTrue((assignments[i] >= 0)
+	  && (assignments[i] < kmeans.numberOfClusters()));
+      sizes[assignments[i]]++;
+    }
+    for (int i = 0; i < sizes.length; i++)
+      assertEquals(sizes[i], kmeans.getClusterSizes()[i]);
+  }
+
   public static Test suite() {
     return new TestSuite(SimpleKMeansTest.class);
   }
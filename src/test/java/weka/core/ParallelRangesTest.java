@@ -0,0 +1,150 @@
+/*
+ *    This program is free software; you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation; either version 2 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program; if not, write to the Free Software
+ *    Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+package weka.core;
+
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Tests ParallelRanges. Run from the command line with:<p/>
+ * java weka.core.ParallelRangesTest
+ *
+ * @version $Revision: 1.1 $
+ */
+public class ParallelRangesTest
+  extends TestCase {
+
+  /** the thread pool */
+  protected ThreadPoolExecutor m_Executor;
+
+  /**
+   * Constructs the <code>ParallelRangesTest</code>.
+   *
+   * @param name 	the name of the test class
+   */
+  public ParallelRangesTest(String name) {
+    super(name);
+  }
+
+  /**
+   * Called by JUnit before each test method.
+   *
+   * @throws Exception 	if an error occurs
+   */
+  protected void setUp() throws Exception {
+    super.setUp();
+
+    m_Executor = new ThreadPoolExecutor(3, 3, 120, TimeUnit.SECONDS,
+	new LinkedBlockingQueue<Runnable>());
+  }
+
+  /**
+   * Called by JUnit after each test method
+   *
+   * @throws Exception 	if an error occurs
+   */
+  protected void tearDown() throws Exception {
+    super.tearDown();
+
+    m_Executor.shutdown();
+    m_Executor = null;
+  }
+
+  /**
+   * the task that returns its range
+   */
+  protected static class Bounds
+    implements RangeTask<int[]> {
+
+    public int[] process(int from, int to) {
+      return new int[]{from, to};
+    }
+  }
+
+  /**
+   * checks that the ranges are consecutive and cover 0 to n - 1
+   *
+   * @param ranges	the ranges
+   * @param n		the number of indices
+   */
+  protected void checkRanges(List<int[]> ranges, int n) {
+    int next = 0;
+    for (int[] range : ranges) {
+      assertEquals(next, range[0]);
+      assertTrue(range[1] >= range[0]);
+      next = range[1];
+    }
+    assertEquals(n, next);
+  }
+
+  /**
+   * tests that the indices are split into one range per thread, in order
+   */
+  public void testRanges() throws Exception {
+    int[] sizes = new int[]{0, 1, 2, 3, 10, 1001};
+    for (int i = 0; i < sizes.length; i++) {
+      List<int[]> ranges = ParallelRanges.processRanges(m_Executor, 3,
+	  sizes[i], new Bounds());
+      assertEquals(Math.max(1, Math.min(3, sizes[i])), ranges.size());
+      checkRanges(ranges, sizes[i]);
+    }
+  }
+
+  /**
+   * tests that all indices form a single range without a thread pool
+   */
+  public void testWithoutExecutor() throws Exception {
+    List<int[]> ranges = ParallelRanges.processRanges(null, 3, 10,
+	new Bounds());
+    assertEquals(1, ranges.size());
+    checkRanges(ranges, 10);
+  }
+
+  /**
+   * tests that the exception of a range is passed on
+   */
+  public void testException() throws Exception {
+    try {
+      ParallelRanges.processRanges(m_Executor, 3, 10,
+	  new RangeTask<Object>() {
+	    public Object process(int from, int to) throws Exception {
+	      if (from > 0)
+		throw new IllegalStateException("range " + from);
+	      return null;
+	    }
+	  });
+      fail("Exception expected");
+    }
+    catch (IllegalStateException e) {
+      // expected
+    }
+  }
+
+  public static Test suite() {
+    return new TestSuite(ParallelRangesTest.class);
+  }
+
+  public static void main(String[] args){
+    junit.textui.TestRunner.run(suite());
+  }
+}
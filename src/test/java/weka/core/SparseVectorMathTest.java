@@ -0,0 +1,174 @@
+/*
+ *    This program is free software; you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation; either version 2 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program; if not, write to the Free Software
+ *    Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+package weka.core;
+
+import java.util.Random;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Tests SparseVectorMath. Run from the command line with:<p/>
+ * java weka.core.SparseVectorMathTest
+ *
+ * @version $Revision: 1.1 $
+ */
+public class SparseVectorMathTest
+  extends TestCase {
+
+  /** the number of attributes of the vectors */
+  protected static final int NUM_ATTRIBUTES = 50;
+
+  /** for generating the vectors */
+  protected Random m_Random;
+
+  /**
+   * Constructs the <code>SparseVectorMathTest</code>.
+   *
+   * @param name 	the name of the test class
+   */
+  public SparseVectorMathTest(String name) {
+    super(name);
+  }
+
+  /**
+   * Called by JUnit before each test method.
+   *
+   * @throws Exception 	if an error occurs
+   */
+  protected void setUp() throws Exception {
+    super.setUp();
+
+    m_Random = new Random(1);
+  }
+
+  /**
+   * Called by JUnit after each test method
+   *
+   * @throws Exception 	if an error occurs
+   */
+  protected void tearDown() throws Exception {
+    super.tearDown();
+
+    m_Random = null;
+  }
+
+  /**
+   * generates a dense vector with about a fifth of the values non-zero
+   *
+   * @return		the vector
+   */
+  protected double[] randomVector() {
+    double[] result = new double[NUM_ATTRIBUTES];
+    for (int i = 0; i < NUM_ATTRIBUTES; i++) {
+      if (m_Random.nextInt(5) == 0)
+	result[i] = m_Random.nextInt(7) - 3;
+    }
+    return result;
+  }
+
+  /**
+   * tests the operations on instances against dense loops, for sparse and
+   * dense instances
+   */
+  public void testInstances() {
+    for (int n = 0; n < 20; n++) {
+      double[] first = randomVector();
+      double[] second = randomVector();
+      int skip = m_Random.nextInt(NUM_ATTRIBUTES);
+      double dot = 0;
+      double norm = 0;
+      for (int i = 0; i < NUM_ATTRIBUTES; i++) {
+	if (i != skip) {
+	  dot += first[i] * second[i];
+	  norm += first[i] * first[i];
+	}
+      }
+
+      Instance[] firsts = new Instance[]{
+	  new Instance(1, first), new SparseInstance(1, first)};
+      Instance[] seconds = new Instance[]{
+	  new Instance(1, second), new SparseInstance(1, second)};
+      for (int i = 0; i < firsts.length; i++) {
+	assertEquals(norm, SparseVectorMath.squaredNorm(firsts[i], skip), 0);
+	assertEquals(dot, SparseVectorMath.dotProduct(firsts[i], second, skip), 0);
+	for (int j = 0; j < seconds.length; j++)
+	  assertEquals(dot,
+	      SparseVectorMath.dotProduct(firsts[i], seconds[j], skip), 0);
+
+	double[] sum = (double[]) second.clone();
+	SparseVectorMath.axpy(2, firsts[i], sum, skip);
+	for (int k = 0; k < NUM_ATTRIBUTES; k++)
+	  assertEquals(
+	      second[k] + ((k != skip) ? 2 * first[k] : 0), sum[k], 0);
+      }
+    }
+  }
+
+  /**
+   * tests the operations on index/value arrays against dense loops
+   */
+  public void testArrays() {
+    for (int n = 0; n < 20; n++) {
+      double[] first = randomVector();
+      double[] second = randomVector();
+      SparseInstance firstSparse = new SparseInstance(1, first);
+      SparseInstance secondSparse = new SparseInstance(1, second);
+      int[] indices1 = new int[firstSparse.numValues()];
+      double[] values1 = new double[firstSparse.numValues()];
+      for (int p = 0; p < indices1.length; p++) {
+	indices1[p] = firstSparse.index(p);
+	values1[p] = firstSparse.valueSparse(p);
+      }
+      int[] indices2 = new int[secondSparse.numValues()];
+      double[] values2 = new double[secondSparse.numValues()];
+      for (int p = 0; p < indices2.length; p++) {
+	indices2[p] = secondSparse.index(p);
+	values2[p] = secondSparse.valueSparse(p);
+      }
+
+      double dot = 0;
+      double norm = 0;
+      for (int i = 0; i < NUM_ATTRIBUTES; i++) {
+	dot += first[i] * second[i];
+	norm += first[i] * first[i];
+      }
+      assertEquals(dot,
+	  SparseVectorMath.dotProduct(indices1, values1, indices2, values2), 0);
+      assertEquals(norm, SparseVectorMath.squaredNorm(values1), 0);
+
+      // the dense vector holds "second" in a block starting at 3
+      double[] dense = new double[NUM_ATTRIBUTES + 5];
+      System.arraycopy(second, 0, dense, 3, NUM_ATTRIBUTES);
+      assertEquals(dot,
+	  SparseVectorMath.dotProduct(indices1, values1, dense, 3), 0);
+      SparseVectorMath.axpy(-1, indices1, values1, dense, 3);
+      for (int k = 0; k < NUM_ATTRIBUTES; k++)
+	assertEquals(second[k] - first[k], dense[k + 3], 0);
+      assertEquals(0, dense[0] + dense[1] + dense[2], 0);
+    }
+  }
+
+  public static Test suite() {
+    return new TestSuite(SparseVectorMathTest.class);
+  }
+
+  public static void main(String[] args){
+    junit.textui.TestRunner.run(suite());
+  }
+}
@@ -0,0 +1,238 @@
+/*
+ *    This program is free software; you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation; either version 2 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program; if not, write to the Free Software
+ *    Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+package weka.core.converters;
+
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.core.Utils;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.Random;
+
+/**
+ * Compares the time ArffLoader.ArffReader and FastArffReader take to read
+ * the same ARFF data. The data is held in memory, so that only parsing is
+ * measured. Each reader is run for a number of warmup iterations, whose
+ * times are discarded, and then for a number of measured iterations, and
+ * the mean and standard deviation of the measured times are printed. Before
+ * that, the data read by both readers is checked to be the same. Run from
+ * the command line with:<p/>
+ *
+ * java weka.core.converters.ArffReaderBenchmark [-t file.arff]
+ * [-rows n] [-warmup n] [-iterations n]<p/>
+ *
+ * Without a file, a dataset with numeric and nominal attributes and the
+ * given number of rows is generated.
+ *
+ * @version $Revision: 1.1 $
+ */
+public class ArffReaderBenchmark {
+
+  /** the data to read */
+  protected byte[] m_Data;
+
+  /** sink for the results, so that the reading can't be optimized away */
+  protected double m_Sink;
+
+  /**
+   * Creates the benchmark for the given data.
+   *
+   * @param data the ARFF data
+   */
+  public ArffReaderBenchmark(byte[] data) {
+    m_Data = data;
+  }
+
+  /**
+   * Generates an ARFF file with ten numeric attributes, five nominal
+   * attributes and a nominal class.
+   *
+   * @param rows the number of rows
+   * @param seed the seed for the values
+   * @return the data
+   */
+  public static byte[] generate(int rows, long seed) {
+    Random random = new Random(seed);
+    StringBuffer text = new StringBuffer();
+
+    text.append("@relation benchmark\n\n");
+    for (int i = 0; i < 10; i++) {
+      text.append("@attribute num" + i + " numeric\n");
+    }
+    for (int i = 0; i < 5; i++) {
+      text.append("@attribute nom" + i + " {red,green,blue,yellow,black}\n");
+    }
+    text.append("@attribute class {yes,no}\n\n@data\n");
+
+    String[] colours = new String[]{"red", "green", "blue", "yellow", "black"};
+    for (int row = 0; row < rows; row++) {
+      for (int i = 0; i < 10; i++) {
+        if (random.nextInt(100) == 0) {
+          text.append("?,");
+        } else {
+          text.append(Utils.doubleToString(random.nextGaussian() * 100, 6)
+                      + ",");
+        }
+      }
+      for (int i = 0; i < 5; i++) {
+        text.append(colours[random.nextInt(colours.length)] + ",");
+      }
+      text.append(random.nextBoolean() ? "yes\n" : "no\n");
+    }
+
+    return text.toString().getBytes();
+  }
+
+  /**
+   * Reads the data with ArffLoader.ArffReader.
+   *
+   * @return the data
+   * @throws Exception if reading fails
+   */
+  public Instances readTokenizer() throws Exception {
+    return new ArffLoader.ArffReader(new BufferedReader(new InputStreamReader(
+      new ByteArrayInputStream(m_Data)))).getData();
+  }
+
+  /**
+   * Reads the data with the FastArffReader.
+   *
+   * @return the data
+   * @throws Exception if reading fails
+   */
+  public Instances readFast() throws Exception {
+    return new FastArffReader(new ByteArrayInputStream(m_Data)).getData();
+  }
+
+  /**
+   * Consumes the data, so that the JIT can't skip reading it.
+   *
+   * @param data the data
+   */
+  protected void consume(Instances data) {
+    Instance last = data.instance(data.numInstances() - 1);
+    m_Sink += data.numInstances() + last.value(0);
+  }
+
+  /**
+   * Runs one of the readers and prints the time per run.
+   *
+   * @param fast whether to run the FastArffReader
+   * @param warmup the number of warmup iterations
+   * @param iterations the number of measured iterations
+   * @return the mean time per run in milliseconds
+   * @throws Exception if reading fails
+   */
+  public double run(boolean fast, int warmup, int iterations)
+    throws Exception {
+
+    double[] times = new double[iterations];
+
+    for (int i = 0; i < warmup + iterations; i++) {
+      long start = System.nanoTime();
+      consume(fast ? readFast() : readTokenizer());
+      if (i >= warmup) {
+        times[i - warmup] = (System.nanoTime() - start) / 1e6;
+      }
+    }
+
+    double mean = Utils.mean(times);
+    double stdDev = (iterations > 1) ? Math.sqrt(Utils.variance(times)) : 0;
+    System.out.println((fast ? "FastArffReader " : "ArffReader     ")
+                       + Utils.doubleToString(mean, 10, 2) + " ms/op +- "
+                       + Utils.doubleToString(stdDev, 2) + " ("
+                       + Utils.doubleToString(m_Data.length / (mean * 1e3),
+                                              2)
+                       + " MB/s)");
+
+    return mean;
+  }
+
+  /**
+   * Checks that both readers read the same data.
+   *
+   * @throws Exception if the data differs
+   */
+  public void check() throws Exception {
+    Instances expected = readTokenizer();
+    Instances actual = readFast();
+
+    if (!expected.equalHeaders(actual)
+        || (expected.numInstances() != actual.numInstances())) {
+      throw new Exception("Readers read different headers or sizes");
+    }
+    for (int i = 0; i < expected.numInstances(); i++) {
+      Instance e = expected.instance(i);
+      Instance a = actual.instance(i);
+      if (e.weight() != a.weight()) {
+        throw new Exception("Different weight in row " + i);
+      }
+      for (int j = 0; j < expected.numAttributes(); j++) {
+        if (Double.doubleToLongBits(e.value(j))
+            != Double.doubleToLongBits(a.value(j))) {
+          throw new Exception("Different value in row " + i
+                              + ", column " + j);
+        }
+      }
+    }
+  }
+
+  /**
+   * Runs the benchmark.
+   *
+   * @param args the commandline arguments
+   * @throws Exception if something goes wrong
+   */
+  public static void main(String[] args) throws Exception {
+    String file = Utils.getOption('t', args);
+    String rows = Utils.getOption("rows", args);
+    String warmup = Utils.getOption("warmup", args);
+    String iterations = Utils.getOption("iterations", args);
+
+    byte[] data;
+    if (file.length() != 0) {
+      InputStream in = new FileInputStream(file);
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      byte[] buffer = new byte[1 << 16];
+      int count;
+      while ((count = in.read(buffer)) > 0) {
+        out.write(buffer, 0, count);
+      }
+      in.close();
+      data = out.toByteArray();
+    } else {
+      data = generate((rows.length() != 0) ? Integer.parseInt(rows) : 100000,
+                      1);
+    }
+
+    ArffReaderBenchmark benchmark = new ArffReaderBenchmark(data);
+    benchmark.check();
+    System.out.println("Data: " + data.length + " bytes");
+
+    int w = (warmup.length() != 0) ? Integer.parseInt(warmup) : 5;
+    int n = (iterations.length() != 0) ? Integer.parseInt(iterations) : 10;
+    double tokenizer = benchmark.run(false, w, n);
+    double fast = benchmark.run(true, w, n);
+    System.out.println("Speedup: " + Utils.doubleToString(tokenizer / fast, 2)
+                       + " (sink " + benchmark.m_Sink + ")");
+  }
+}
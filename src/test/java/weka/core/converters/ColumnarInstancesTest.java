@@ -0,0 +1,131 @@
+/*
+ *    This program is free software; you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation; either version 2 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program; if not, write to the Free Software
+ *    Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+package weka.core.converters;
+
+import weka.core.TestInstances;
+
+import java.io.File;
+import java.io.FileInputStream;
+
+import junit.framework.Test;
+import junit.framework.TestSuite;
+
+/**
+ * Tests ColumnarInstancesLoader/ColumnarInstancesSaver. Run from the command
+ * line with:<p/>
+ * java weka.core.converters.ColumnarInstancesTest
+ *
+ * @version $Revision: 1.1 $
+ */
+public class ColumnarInstancesTest
+  extends AbstractFileConverterTest {
+
+  /**
+   * Constructs the <code>ColumnarInstancesTest</code>.
+   *
+   * @param name the name of the test class
+   */
+  public ColumnarInstancesTest(String name) {
+    super(name);
+  }
+
+  /**
+   * returns the loader used in the tests
+   *
+   * @return the configured loader
+   */
+  public AbstractLoader getLoader() {
+    return new ColumnarInstancesLoader();
+  }
+
+  /**
+   * returns the saver used in the tests
+   *
+   * @return the configured saver
+   */
+  public AbstractSaver getSaver() {
+    return new ColumnarInstancesSaver();
+  }
+
+  /**
+   * returns the test data generator, with attributes of all types
+   *
+   * @return 	the configured test data generator
+   */
+  protected TestInstances getTestInstances() {
+    TestInstances result = super.getTestInstances();
+    result.setNumNumeric(2);
+    result.setNumString(1);
+    result.setNumDate(1);
+    result.setNumRelational(1);
+    return result;
+  }
+
+  /**
+   * tests the random access to the columns of a mapped file
+   */
+  public void testColumnarReader() {
+    try {
+      m_Saver.setInstances(m_Instances);
+      m_Saver.setFile(new File(m_ExportFilename));
+      m_Saver.writeBatch();
+
+      ColumnarInstancesLoader.ColumnarReader reader =
+        new ColumnarInstancesLoader.ColumnarReader(
+          new FileInputStream(m_ExportFilename));
+      assertEquals(m_Instances.numInstances(), reader.numInstances());
+      double[] column = new double[m_Instances.numInstances() + 2];
+      for (int j = 0; j < m_Instances.numAttributes(); j++) {
+        reader.readColumn(j, 1, column, 2, m_Instances.numInstances() - 1);
+        for (int i = 0; i < m_Instances.numInstances(); i++) {
+          double expected = m_Instances.instance(i).value(j);
+          assertEquals(Double.doubleToLongBits(expected),
+                       Double.doubleToLongBits(reader.value(i, j)));
+          if (i > 0) {
+            assertEquals(Double.doubleToLongBits(expected),
+                         Double.doubleToLongBits(column[i + 1]));
+          }
+        }
+      }
+      for (int i = 0; i < m_Instances.numInstances(); i++) {
+        assertEquals(m_Instances.instance(i).weight(), reader.weight(i), 0);
+      }
+    }
+    catch (Exception e) {
+      e.printStackTrace();
+      fail("Columnar access failed: " + e.toString());
+    }
+  }
+
+  /**
+   * returns a test suite
+   *
+   * @return the test suite
+   */
+  public static Test suite() {
+    return new TestSuite(ColumnarInstancesTest.class);
+  }
+
+  /**
+   * for running the test from commandline
+   *
+   * @param args the commandline arguments - ignored
+   */
+  public static void main(String[] args){
+    junit.textui.TestRunner.run(suite());
+  }
+}
@@ -0,0 +1,212 @@
+/*
+ *    This program is free software; you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation; either version 2 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program; if not, write to the Free Software
+ *    Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+package weka.core.converters;
+
+import weka.core.Instance;
+import weka.core.Instances;
+
+import java.io.ByteArrayInputStream;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+
+import junit.framework.Test;
+import junit.framework.TestSuite;
+
+/**
+ * Tests ArffLoader with the FastArffReader, and ArffSaver. Run from the
+ * command line with:<p/>
+ * java weka.core.converters.FastArffTest
+ *
+ * @version $Revision: 1.1 $
+ */
+public class FastArffTest
+  extends AbstractFileConverterTest {
+
+  /** a dataset that uses most of the features of the ARFF format */
+  protected static final String DATA =
+      "% comment\n"
+    + "@relation 'test relation'\n"
+    + "\n"
+    + "@attribute num numeric\n"
+    + "@attribute 'nom att' {a, 'b c', \"d,e\", '?', 'x\\ty'}\n"
+    + "@attribute str string\n"
+    + "@attribute dat date \"yyyy-MM-dd\"\n"
+    + "@attribute rel relational\n"
+    + "  @attribute inner {u,v}\n"
+    + "@end rel\n"
+    + "@attribute int integer\n"
+    + "\n"
+    + "@data\n"
+    + "1.5,a,hello,2008-01-02,'u\\nv',1\n"
+    + "-0,'b c','with space',?,'v',-12\n"
+    + "\r\n"
+    + "3e5, \"d,e\" ,'',2009-12-31,'u',007 % trailing comment\r\n"
+    + ".25,'?',?,?,?,?,{2.5}\n"
+    + "12345678901234567,'x\\ty',\"a\\\\b\",1999-01-01,'u\\nu',1e-30\n"
+    + "{0 -1.0E-7, 1 'b c', 5 ?}\n"
+    + "{}\n"
+    + "{1 a,2 s} {0.5}\n"
+    + "0.1,a,s,2000-02-29,'v',4.9E-324\n";
+
+  /**
+   * Constructs the <code>FastArffTest</code>.
+   *
+   * @param name the name of the test class
+   */
+  public FastArffTest(String name) {
+    super(name);
+  }
+
+  /**
+   * returns the loader used in the tests
+   *
+   * @return the configured loader
+   */
+  public AbstractLoader getLoader() {
+    ArffLoader loader = new ArffLoader();
+    loader.setUseFastReader(true);
+    return loader;
+  }
+
+  /**
+   * returns the saver used in the tests
+   *
+   * @return the configured saver
+   */
+  public AbstractSaver getSaver() {
+    return new ArffSaver();
+  }
+
+  /**
+   * Checks that the data and the weights read by the two readers are the
+   * same.
+   *
+   * @param expected the data read by ArffLoader.ArffReader
+   * @param actual the data read by the FastArffReader
+   * @throws Exception if the datasets differ
+   */
+  protected void compareReaders(Instances expected, Instances actual)
+    throws Exception {
+
+    compareDatasets(expected, actual);
+    assertEquals(expected.toString(), actual.toString());
+    for (int i = 0; i < expected.numInstances(); i++) {
+      assertEquals("weight of instance " + i,
+                   expected.instance(i).weight(), actual.instance(i).weight(),
+                   0);
+      for (int j = 0; j < expected.numAttributes(); j++) {
+        assertEquals("value " + j + " of instance " + i,
+                     Double.doubleToLongBits(expected.instance(i).value(j)),
+                     Double.doubleToLongBits(actual.instance(i).value(j)));
+      }
+    }
+  }
+
+  /**
+   * tests whether the FastArffReader reads the same data as the
+   * ArffLoader.ArffReader
+   */
+  public void testSameData() {
+    try {
+      Instances expected =
+        new ArffLoader.ArffReader(new StringReader(DATA)).getData();
+
+      compareReaders(expected,
+        new FastArffReader(new ByteArrayInputStream(DATA.getBytes())).getData());
+      compareReaders(expected,
+        new FastArffReader(ByteBuffer.wrap(DATA.getBytes())).getData());
+    }
+    catch (Exception e) {
+      fail("Reading failed: " + e);
+    }
+  }
+
+  /**
+   * tests whether the FastArffReader reads the same data as the
+   * ArffLoader.ArffReader incrementally
+   */
+  public void testSameDataIncremental() {
+    try {
+      ArffLoader.ArffReader reader =
+        new ArffLoader.ArffReader(new StringReader(DATA), 1);
+      FastArffReader fast =
+        new FastArffReader(new ByteArrayInputStream(DATA.getBytes()), 1);
+      Instances expected = reader.getStructure();
+      Instances actual = fast.getStructure();
+      Instance inst;
+      while ((inst = reader.readInstance(expected)) != null) {
+        expected.add(inst);
+        actual.add(fast.readInstance(actual));
+      }
+      assertNull(fast.readInstance(actual));
+      compareReaders(expected, actual);
+    }
+    catch (Exception e) {
+      fail("Reading failed: " + e);
+    }
+  }
+
+  /**
+   * tests whether invalid values are reported like the ArffLoader.ArffReader
+   * reports them
+   */
+  public void testErrors() {
+    String[] invalid = new String[]{
+      "1,x,s,?,?,1\n",
+      "one,a,s,?,?,1\n",
+      "1,a,s,?,?\n",
+      "{6 1}\n",
+      "{1 a, 0 1}\n",
+      "1,a,s,?,?,1,{2\n"};
+    for (int i = 0; i < invalid.length; i++) {
+      String data = DATA + invalid[i];
+      String expected = null;
+      try {
+        new ArffLoader.ArffReader(new StringReader(data));
+      }
+      catch (Exception e) {
+        expected = e.getMessage();
+      }
+      assertNotNull("Invalid data accepted: " + invalid[i], expected);
+      try {
+        new FastArffReader(new ByteArrayInputStream(data.getBytes()));
+        fail("Invalid data accepted: " + invalid[i]);
+      }
+      catch (Exception e) {
+        assertEquals(expected, e.getMessage());
+      }
+    }
+  }
+
+  /**
+   * returns a test suite
+   *
+   * @return the test suite
+   */
+  public static Test suite() {
+    return new TestSuite(FastArffTest.class);
+  }
+
+  /**
+   * for running the test from commandline
+   *
+   * @param args the commandline arguments - ignored
+   */
+  public static void main(String[] args){
+    junit.textui.TestRunner.run(suite());
+  }
+}
@@ -311,6 +311,55 @@ public abstract class AbstractNearestNeighbourSearchTest
     }
   }
 
+  /**
+   * tests whether bulk queries, with one and with several execution slots,
+   * find the same neighbours as single queries (if they are supported)
+   */
+  public void testBulkQueries() {
+    int		i;
+    int		n;
+    int		m;
+    int[][]	indices;
+    double[][]	distances;
+    Instances	inst;
+    double[]	dist;
+    
+    if (!m_NearestNeighbourSearch.supportsBulkQueries())
+      return;
+    
+    for (i = 1; i <= 2; i++) {
+      try {
+	m_NearestNeighbourSearch.setNumExecutionSlots(i);
+	m_NearestNeighbourSearch.setInstances(m_Instances);
+	indices   = new int[m_Instances.numInstances()][];
+	distances = new double[m_Instances.numInstances()][];
+	m_NearestNeighbourSearch.kNearestNeighbours(
+	    m_Instances, m_NumNeighbors, indices, distances);
+	
+	for (n = 0; n < m_Instances.numInstances(); n++) {
+	  inst = m_NearestNeighbourSearch.kNearestNeighbours(
+	      		m_Instances.instance(n), m_NumNeighbors);
+	  dist = m_NearestNeighbourSearch.getDistances();
+	  assertEquals(
+	      "Different number of neighbors for instance #" + (n+1), 
+	      inst.numInstances(), indices[n].length);
+	  for (m = 0; m < inst.numInstances(); m++) {
+	    assertEquals(
+		"Different neighbor for instance #" + (n+1), 
+		inst.instance(m).toString(), 
+		m_Instances.instance(indices[n][m]).toString());
+	    assertEquals(
+		"Different distance for instance #" + (n+1), 
+		dist[m], distances[n][m], 0);
+	  }
+	}
+      }
+      catch (Exception e) {
+	fail("Bulk query with " + i + " slots failed: " + e);
+      }
+    }
+  }
+
   /**
    * Runs the NearestNeighbourSearch with the given data and returns the 
    * generated results.
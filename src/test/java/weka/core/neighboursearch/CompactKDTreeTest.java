@@ -0,0 +1,97 @@
+/*
+ *    This program is free software; you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation; either version 2 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program; if not, write to the Free Software
+ *    Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+package weka.core.neighboursearch;
+
+import weka.core.Instances;
+
+import junit.framework.Test;
+import junit.framework.TestSuite;
+
+/**
+ * Tests CompactKDTree. Run from the command line with: <p/>
+ * java weka.core.neighboursearch.CompactKDTreeTest
+ *
+ * @version $Revision: 1.1 $
+ */
+public class CompactKDTreeTest
+  extends AbstractNearestNeighbourSearchTest {
+
+  public CompactKDTreeTest(String name) {
+    super(name);
+  }
+
+  /** Creates a default CompactKDTree */
+  public NearestNeighbourSearch getNearestNeighbourSearch() {
+    return new CompactKDTree();
+  }
+
+  /**
+   * tests whether the distances of the neighbours are the same as those
+   * found by a linear search, also with instances added incrementally and
+   * with small leaves
+   */
+  public void testSameAsLinearSearch() {
+    LinearNNSearch	linear;
+    CompactKDTree	tree;
+    Instances		data;
+    Instances		inst;
+    double[]		expected;
+    double[]		actual;
+    int			i;
+    int			n;
+    int			m;
+
+    try {
+      tree = new CompactKDTree();
+      tree.setMaxInstInLeaf(4);
+      data = new Instances(m_Instances, 0, m_Instances.numInstances() / 2);
+      tree.setInstances(data);
+      for (i = data.numInstances(); i < m_Instances.numInstances(); i++) {
+	data.add(m_Instances.instance(i));
+	tree.update(data.instance(data.numInstances() - 1));
+      }
+      linear = new LinearNNSearch(data);
+
+      for (n = 0; n < data.numInstances(); n++) {
+	for (m = 1; m <= m_NumNeighbors; m++) {
+	  inst     = linear.kNearestNeighbours(data.instance(n), m);
+	  expected = linear.getDistances();
+	  inst     = tree.kNearestNeighbours(data.instance(n), m);
+	  actual   = tree.getDistances();
+	  assertEquals(
+	      "Different number of neighbors for instance #" + (n+1),
+	      expected.length, inst.numInstances());
+	  for (i = 0; i < expected.length; i++)
+	    assertEquals(
+		"Different distance for instance #" + (n+1),
+		expected[i], actual[i], 0);
+	}
+      }
+    }
+    catch (Exception e) {
+      fail("Search failed: " + e);
+    }
+  }
+
+  public static Test suite() {
+    return new TestSuite(CompactKDTreeTest.class);
+  }
+
+  public static void main(String[] args){
+    junit.textui.TestRunner.run(suite());
+  }
+}
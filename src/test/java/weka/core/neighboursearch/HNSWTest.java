@@ -0,0 +1,83 @@
+/*
+ *    This program is free software; you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation; either version 2 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program; if not, write to the Free Software
+ *    Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+package weka.core.neighboursearch;
+
+import weka.core.Instances;
+
+import junit.framework.Test;
+import junit.framework.TestSuite;
+
+/**
+ * Tests HNSW. Run from the command line with: <p/>
+ * java weka.core.neighboursearch.HNSWTest
+ *
+ * @version $Revision: 1.1 $
+ */
+public class HNSWTest
+  extends AbstractNearestNeighbourSearchTest {
+
+  public HNSWTest(String name) {
+    super(name);
+  }
+
+  /** Creates a default HNSW */
+  public NearestNeighbourSearch getNearestNeighbourSearch() {
+    return new HNSW();
+  }
+
+  /**
+   * tests whether the recall measured against a linear search is high,
+   * also with instances added incrementally
+   */
+  public void testRecall() {
+    HNSW				search;
+    ApproximatePerformanceStats	stats;
+    Instances				data;
+    int					i;
+    int					n;
+
+    try {
+      search = new HNSW();
+      search.setMeasurePerformance(true);
+      data = new Instances(m_Instances, 0, m_Instances.numInstances() / 2);
+      search.setInstances(data);
+      for (i = data.numInstances(); i < m_Instances.numInstances(); i++) {
+	data.add(m_Instances.instance(i));
+	search.update(data.instance(data.numInstances() - 1));
+      }
+
+      for (n = 0; n < data.numInstances(); n++)
+	search.kNearestNeighbours(data.instance(n), m_NumNeighbors);
+
+      stats = (ApproximatePerformanceStats) search.getPerformanceStats();
+      assertTrue(
+	  "Mean recall too low: " + stats.getMeanRecall(),
+	  stats.getMeanRecall() >= 0.9);
+    }
+    catch (Exception e) {
+      fail("Search failed: " + e);
+    }
+  }
+
+  public static Test suite() {
+    return new TestSuite(HNSWTest.class);
+  }
+
+  public static void main(String[] args){
+    junit.textui.TestRunner.run(suite());
+  }
+}
@@ -61,6 +61,53 @@ public class StringToWordVectorTest extends AbstractFilterTest {
     assertEquals(m_Instances.numAttributes() - 2 + 3, result.numAttributes());
   }
 
+  public void testHashing() {
+    ((StringToWordVector)m_Filter).setNumHashBuckets(16);
+    Instances result = useFilter();
+    // Number of instances shouldn't change
+    assertEquals(m_Instances.numInstances(),  result.numInstances());
+
+    // Number of attributes will be minus 2 string attributes plus
+    // the hash buckets
+    assertEquals(m_Instances.numAttributes() - 2 + 16, result.numAttributes());
+  }
+
+  public void testHashingIncremental() throws Exception {
+    ((StringToWordVector)m_Filter).setNumHashBuckets(16);
+    ((StringToWordVector)m_Filter).setOutputWordCounts(true);
+    Instances batch = useFilter();
+
+    // with hashing, the instances are converted as they arrive
+    Instances icopy = new Instances(m_Instances);
+    assertTrue(m_Filter.setInputFormat(icopy));
+    Instances result = new Instances(m_Filter.getOutputFormat(), 0);
+    for (int i = 0; i < icopy.numInstances(); i++) {
+      assertTrue(m_Filter.input(icopy.instance(i)));
+      result.add(m_Filter.output());
+    }
+    m_Filter.batchFinished();
+    assertEquals(batch.toString(), result.toString());
+  }
+
+  public void testExecutionSlots() throws Exception {
+    String[][] options = new String[][]{
+	{"-C", "-I", "-N", "1"},
+	{"-C", "-T", "-hash-buckets", "16"},
+	{"-I", "-hash-buckets", "16"}};
+    for (int i = 0; i < options.length; i++) {
+      m_Filter = getFilter();
+      ((StringToWordVector)m_Filter).setOptions((String[]) options[i].clone());
+      Instances expected = useFilter();
+      m_Filter = getFilter();
+      ((StringToWordVector)m_Filter).setOptions((String[]) options[i].clone());
+      ((StringToWordVector)m_Filter).setNumExecutionSlots(3);
+      Instances result = useFilter();
+      // the relation name contains the options
+      result.setRelationName(expected.relationName());
+      assertEquals(expected.toString(), result.toString());
+    }
+  }
+
 
   public static Test suite() {
     return new TestSuite(StringToWordVectorTest.class);